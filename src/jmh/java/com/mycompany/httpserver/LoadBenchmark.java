@@ -0,0 +1,126 @@
+package com.mycompany.httpserver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generador de carga por loopback: cada hilo de JMH mantiene una conexión
+ * keep-alive y hace GET /bench/hello en bucle contra el servidor real.
+ * {@code throughput} reporta peticiones/s; {@code latency} la distribución
+ * (p50, p99, p99.9) por petición. Cada trial arranca su propio
+ * {@link WebServer} y lo detiene al terminar.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar LoadBenchmark -t 32 -p engine=NIO
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(16)
+public class LoadBenchmark {
+
+    @Param({"BLOCKING", "NIO"})
+    public String engine;
+
+    @Param("36300")
+    public int port;
+
+    private static final byte[] REQUEST = ("GET /bench/hello?name=load HTTP/1.1\r\n"
+            + "Host: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private WebServer server;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        // start() vuelve con el socket ya escuchando: no hace falta sondear el puerto
+        server = new WebServer()
+                .engine(HttpServer.Engine.valueOf(engine))
+                .keepAlive(30_000, Integer.MAX_VALUE)
+                .get("/bench/hello", (req, resp) -> "{\"message\":\"Hello " + req.getValues("name") + "\"}")
+                .start(ServerConfig.port(port));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop(Duration.ofSeconds(5));
+    }
+
+    /** Conexión por hilo de JMH. */
+    @State(Scope.Thread)
+    public static class Client {
+        private Socket socket;
+        private OutputStream out;
+        private InputStream in;
+
+        @Setup(Level.Trial)
+        public void connect(LoadBenchmark server) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress("localhost", server.port));
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream(), 8192);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        /** Envía la petición y consume la respuesta completa; devuelve el código de estado. */
+        int roundTrip() throws IOException {
+            out.write(REQUEST);
+            out.flush();
+
+            int status = -1;
+            long length = 0;
+            StringBuilder line = new StringBuilder(64);
+            while (true) {
+                line.setLength(0);
+                int c;
+                while ((c = in.read()) != '\n') {
+                    if (c < 0) throw new EOFException("el servidor cerró la conexión");
+                    if (c != '\r') line.append((char) c);
+                }
+                if (line.length() == 0) break;
+                String h = line.toString();
+                if (status < 0) {
+                    status = Integer.parseInt(h.substring(9, 12));
+                } else if (h.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    length = Long.parseLong(h.substring(15).trim());
+                }
+            }
+            while (length > 0) {
+                long n = in.skip(length);
+                if (n <= 0) throw new EOFException("cuerpo incompleto");
+                length -= n;
+            }
+            return status;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int throughput(Client client) throws IOException {
+        return client.roundTrip();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int latency(Client client) throws IOException {
+        return client.roundTrip();
+    }
+}
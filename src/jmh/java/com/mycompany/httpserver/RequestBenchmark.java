@@ -0,0 +1,55 @@
+package com.mycompany.httpserver;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parseo de la cabeza HTTP desde bytes y acceso a la query. La diferencia
+ * entre {@code parseHead} y los demás es el costo de leer path/query/headers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+
+    private static final byte[] HEAD = ("GET /app/search?q=hello%20world&page=2&sort=desc&tag=a&tag=b HTTP/1.1\r\n"
+            + "Host: localhost:35000\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Accept-Language: es-CO,es;q=0.9,en;q=0.8\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final RequestParser parser = new RequestParser(RequestParser.DEFAULT_MAX_HEAD, RequestParser.DEFAULT_MAX_HEADERS);
+
+    @Benchmark
+    public Object parseHead() throws Exception {
+        return parser.parse(HEAD, 0, HEAD.length);
+    }
+
+    @Benchmark
+    public void parseAndReadPath(Blackhole bh) throws Exception {
+        HttpRequest req = parser.parse(HEAD, 0, HEAD.length);
+        bh.consume(req.getPath());
+        bh.consume(req.getHeader("Connection"));
+    }
+
+    @Benchmark
+    public Object parseAndQueryMap() throws Exception {
+        return parser.parse(HEAD, 0, HEAD.length).getQueryMap();
+    }
+
+    @Benchmark
+    public void parseAndSingleValues(Blackhole bh) throws Exception {
+        HttpRequest req = parser.parse(HEAD, 0, HEAD.length);
+        bh.consume(req.getValues("q"));
+        bh.consume(req.getInt("page", 1));
+    }
+}
@@ -0,0 +1,138 @@
+package com.mycompany.httpserver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización de respuestas: {@code write} con un cuerpo JSON chico, el
+ * despacho completo a un handler y {@code serveStatic} para un archivo chico
+ * (desde la caché, con y sin gzip) y uno grande (desde el mapeo del índice).
+ * Correr desde la raíz del proyecto: copia src/main/resources/static/index.html.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+    private static final byte[] JSON = "{\"message\":\"Hello John\",\"pi\":3.141592653589793}".getBytes(StandardCharsets.UTF_8);
+    private static final String LARGE = "/bench-large.bin";
+
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream(64 * 1024);
+    private final NullSink sink = new NullSink();
+    private final RequestParser parser = new RequestParser(RequestParser.DEFAULT_MAX_HEAD, RequestParser.DEFAULT_MAX_HEADERS);
+
+    private HttpRequest hello;
+    private HttpRequest small;
+    private HttpRequest smallGzip;
+    private HttpRequest large;
+
+    @Setup
+    public void setup() throws Exception {
+        // Carpeta aparte para no dejar el archivo grande entre los estáticos del proyecto
+        Path dir = Files.createTempDirectory("bench-static");
+        dir.toFile().deleteOnExit();
+        Files.copy(Paths.get("src/main/resources/static/index.html"), dir.resolve("index.html"));
+        Files.write(dir.resolve(LARGE.substring(1)), new byte[8 * 1024 * 1024]);
+        dir.resolve("index.html").toFile().deleteOnExit();
+        dir.resolve(LARGE.substring(1)).toFile().deleteOnExit();
+        HttpServer.staticfiles(dir);
+
+        HttpServer.get("/bench/hello", (req, resp) -> "{\"message\":\"Hello " + req.getValues("name") + "\"}");
+        hello = request("GET /bench/hello?name=John HTTP/1.1\r\nHost: x\r\n\r\n");
+        small = request("GET /index.html HTTP/1.1\r\nHost: x\r\n\r\n");
+        smallGzip = request("GET /index.html HTTP/1.1\r\nHost: x\r\nAccept-Encoding: gzip\r\n\r\n");
+        large = request("GET " + LARGE + " HTTP/1.1\r\nHost: x\r\n\r\n");
+    }
+
+    @Benchmark
+    public int writeJson() throws IOException {
+        buf.reset();
+        HttpServer.write(buf, "HTTP/1.1", 200, "application/json; charset=utf-8", JSON, true);
+        return buf.size();
+    }
+
+    @Benchmark
+    public int dispatchHandler() throws IOException {
+        buf.reset();
+        HttpServer.respond(buf, hello, true);
+        return buf.size();
+    }
+
+    @Benchmark
+    public int serveStaticSmall() throws IOException {
+        buf.reset();
+        HttpServer.serveStatic(buf, small, true);
+        return buf.size();
+    }
+
+    @Benchmark
+    public int serveStaticSmallGzip() throws IOException {
+        buf.reset();
+        HttpServer.serveStatic(buf, smallGzip, true);
+        return buf.size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long serveStaticLarge() throws IOException {
+        sink.bytes = 0;
+        HttpServer.serveStatic(sink, large, true);
+        return sink.bytes;
+    }
+
+    private HttpRequest request(String raw) throws Exception {
+        byte[] b = raw.getBytes(StandardCharsets.US_ASCII);
+        return parser.parse(b, 0, b.length);
+    }
+
+    /** Destino que descarta los bytes; acepta transferencias y buffers mapeados como un socket. */
+    private static final class NullSink extends OutputStream implements FileTransfer, GatheringOutput {
+        private static final WritableByteChannel DISCARD = Channels.newChannel(OutputStream.nullOutputStream());
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+
+        @Override
+        public void writeGathered(byte[] head, int headLength, byte[] body, int off, int len) {
+            bytes += headLength + len;
+        }
+
+        @Override
+        public void writeGathered(byte[] head, int headLength, ByteBuffer body) {
+            bytes += headLength + body.remaining();
+        }
+
+        @Override
+        public void transfer(FileChannel file, long position, long length) throws IOException {
+            while (length > 0) {
+                long n = file.transferTo(position, length, DISCARD);
+                position += n;
+                length -= n;
+                bytes += n;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mycompany.httpserver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda en el árbol de rutas con una tabla parecida a una API real:
+ * 100 rutas literales y con parámetro, más un comodín.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private Router router;
+
+    @Setup
+    public void setup() {
+        router = new Router();
+        Service s = (req, resp) -> "";
+        for (int i = 0; i < 50; i++) {
+            router.add("GET", "/api/v1/resource" + i, s);
+            router.add("GET", "/api/v1/resource" + i + "/:id", s);
+        }
+        router.add("GET", "/app/hello", s);
+        router.add("POST", "/app/hello", s);
+        router.add("GET", "/files/*path", s);
+    }
+
+    @Benchmark
+    public Object literal() {
+        return router.find("GET", "/app/hello");
+    }
+
+    @Benchmark
+    public Object literalMixedCase() {
+        return router.find("GET", "/App/Hello");
+    }
+
+    @Benchmark
+    public Object param() {
+        return router.find("GET", "/api/v1/resource42/12345");
+    }
+
+    @Benchmark
+    public Object wildcard() {
+        return router.find("GET", "/files/docs/2024/report.pdf");
+    }
+
+    @Benchmark
+    public Object miss() {
+        return router.find("GET", "/no/such/route");
+    }
+}
@@ -0,0 +1,372 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Access log asíncrono en formato Common Log más la latencia en
+ * microsegundos ({@code %h - - [%t] "%r" %>s %b %D}).
+ *
+ * <p>Los hilos de las peticiones no escriben: copian los campos de la
+ * respuesta en un registro preasignado de un ring buffer (un CAS para tomar
+ * el lugar, sin locks ni asignaciones) y siguen. Un único hilo escritor
+ * formatea los registros en un buffer directo y lo vuelca al archivo con
+ * {@link FileChannel} por lotes, rotando por tamaño. Con el ring lleno la
+ * política decide: {@link Overflow#DROP} descarta el registro (y el servidor
+ * lo cuenta en {@code access_log_dropped_total}); {@link Overflow#BLOCK}
+ * espera a que el escritor libere lugar.
+ *
+ * <p>Una instancia por servidor: el servidor la abre al iniciar y la cierra
+ * (vaciando lo pendiente) al detenerse.
+ */
+public final class AccessLog implements AutoCloseable {
+
+    /** Qué hacer cuando el escritor no da abasto y el ring está lleno. */
+    public enum Overflow { DROP, BLOCK }
+
+    // Tope de caracteres de path + query por línea (lo que sobra se corta)
+    static final int MAX_TARGET = 4096;
+    // Buffer del escritor: un lote se vuelca al llenarse o al vaciarse el ring
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // Peor caso de una línea: target escapado (4 bytes por char) + resto de campos
+    private static final int MAX_LINE = MAX_TARGET * 4 + 512;
+    // Registros que el escritor devuelve juntos a los productores
+    private static final int RELEASE_BATCH = 64;
+    // Espera del escritor con el ring vacío: crece hasta MAX_PARK sin actividad
+    private static final long MIN_PARK = 50_000, MAX_PARK = 20_000_000;
+
+    private static final DateTimeFormatter CLF_TIME =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    /** Registro de tamaño fijo: se reutiliza, los productores solo copian referencias y números. */
+    private static final class Entry {
+        long time;          // epoch ms
+        long nanos;         // latencia
+        long bytes;         // -1 = desconocido
+        int status;
+        InetAddress client;
+        String method, path, query, version;
+    }
+
+    private final Path file;
+    private int capacity = 8192;
+    private Overflow overflow = Overflow.DROP;
+    private long maxFileBytes = 64L * 1024 * 1024;
+    private int keepFiles = 5;
+
+    // ====== Ring (MPSC) ======
+    private Entry[] slots;
+    private AtomicLongArray published;      // secuencia publicada en cada lugar
+    private int mask;
+    private final AtomicLong head = new AtomicLong();   // próximo lugar a tomar (productores)
+    private volatile long tail;                         // próximo lugar a escribir (escritor)
+
+    // ====== Escritor ======
+    private Thread writer;
+    private volatile boolean closing;
+    private FileChannel channel;
+    private long fileSize;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES + MAX_LINE);
+    private long stampSecond = Long.MIN_VALUE;
+    private byte[] stamp;
+
+    public AccessLog(Path file) {
+        this.file = file;
+        allocate();
+    }
+
+    /** Registros en espera (se redondea a potencia de 2; 8192 por defecto). */
+    public synchronized AccessLog capacity(int entries) {
+        checkNotOpen();
+        if (entries < 2) throw new IllegalArgumentException("capacity debe ser >= 2: " + entries);
+        capacity = Integer.highestOneBit(entries - 1) << 1;
+        allocate();
+        return this;
+    }
+
+    /** Política con el ring lleno (DROP por defecto: el log nunca frena una respuesta). */
+    public synchronized AccessLog whenFull(Overflow policy) {
+        checkNotOpen();
+        overflow = policy;
+        return this;
+    }
+
+    /**
+     * Rota al superar {@code maxBytes}: el archivo pasa a {@code nombre.1},
+     * el anterior a {@code nombre.2}, y se conservan {@code keep} (64 MB y 5
+     * por defecto; con 0 simplemente se trunca).
+     */
+    public synchronized AccessLog rotate(long maxBytes, int keep) {
+        checkNotOpen();
+        if (maxBytes < 1 || keep < 0) throw new IllegalArgumentException("rotate(" + maxBytes + ", " + keep + ")");
+        maxFileBytes = maxBytes;
+        keepFiles = keep;
+        return this;
+    }
+
+    private void allocate() {
+        slots = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) slots[i] = new Entry();
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) published.set(i, -1);
+        mask = capacity - 1;
+    }
+
+    private void checkNotOpen() {
+        if (writer != null || head.get() != 0) throw new IllegalStateException("El access log ya está en uso");
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    // ================== Productores ==================
+
+    /**
+     * Encola la respuesta a {@code req}. Devuelve false si se descartó (ring
+     * lleno con DROP, o log cerrado). Lo escrito antes de {@link #open} queda
+     * en el ring hasta que arranca el escritor.
+     */
+    boolean log(HttpRequest req, int status, long bytes, long nanos) {
+        long seq = claim();
+        if (seq < 0) return false;
+        Entry e = slots[(int) seq & mask];
+        e.time = System.currentTimeMillis();
+        e.nanos = nanos;
+        e.bytes = bytes;
+        e.status = status;
+        e.client = req.getRemoteAddress();
+        e.method = req.getMethod();
+        e.path = req.getPath();
+        e.query = req.getRawQuery();
+        e.version = req.getVersion();
+        published.setRelease((int) seq & mask, seq);
+        return true;
+    }
+
+    /** Toma el próximo lugar libre; -1 si no hay y la política es DROP (o el log se cerró). */
+    private long claim() {
+        int spins = 0;
+        while (!closing) {
+            long seq = head.get();
+            if (seq - tail >= capacity) {
+                if (overflow == Overflow.DROP) return -1;
+                // BLOCK: el escritor libera de a lotes, la espera es corta
+                if (++spins < 100) Thread.onSpinWait();
+                else LockSupport.parkNanos(MIN_PARK);
+                continue;
+            }
+            if (head.compareAndSet(seq, seq + 1)) return seq;
+        }
+        return -1;
+    }
+
+    // ================== Ciclo de vida ==================
+
+    /** Abre (o crea) el archivo y arranca el escritor. Idempotente. */
+    synchronized void open() throws IOException {
+        if (writer != null) return;
+        if (closing) throw new IllegalStateException("El access log ya fue cerrado");
+        openChannel();
+        writer = Thread.ofPlatform().name("access-log").daemon(true).unstarted(this::drain);
+        writer.start();
+    }
+
+    /** Escribe lo pendiente, detiene el escritor y cierra el archivo. */
+    @Override
+    public synchronized void close() {
+        if (closing) return;
+        closing = true;
+        if (writer == null) return;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void openChannel() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    // ================== Escritor ==================
+
+    private void drain() {
+        long park = MIN_PARK;
+        try {
+            while (true) {
+                long next = tail;
+                int batch = 0;
+                while (batch < RELEASE_BATCH && published.getAcquire((int) next & mask) == next) {
+                    format(slots[(int) next & mask]);
+                    if (buffer.position() >= BUFFER_BYTES) flush();
+                    next++;
+                    batch++;
+                }
+                if (batch > 0) {
+                    tail = next;
+                    park = MIN_PARK;
+                    continue;
+                }
+                // Ring vacío: el lote va al archivo
+                if (buffer.position() > 0) flush();
+                if (closing && head.get() == next) break;
+                LockSupport.parkNanos(park);
+                park = Math.min(park * 2, MAX_PARK);
+            }
+        } finally {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            if (channel == null) openChannel(); // una rotación anterior falló al reabrir
+            if (fileSize > 0 && fileSize + buffer.remaining() > maxFileBytes) rotateNow();
+            while (buffer.hasRemaining()) fileSize += channel.write(buffer);
+        } catch (IOException e) {
+            // El lote se pierde; el servidor sigue respondiendo
+            System.err.println("[access-log] " + file + ": " + e.getMessage());
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void rotateNow() throws IOException {
+        channel.close();
+        channel = null;
+        if (keepFiles == 0) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.deleteIfExists(rotated(keepFiles));
+            for (int i = keepFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        openChannel();
+    }
+
+    private Path rotated(int n) {
+        return file.resolveSibling(file.getFileName() + "." + n);
+    }
+
+    // ================== Formato ==================
+
+    private void format(Entry e) {
+        ByteBuffer b = buffer;
+        if (e.client != null) ascii(b, e.client.getHostAddress());
+        else b.put((byte) '-');
+        ascii(b, " - - [");
+        b.put(stamp(e.time));
+        ascii(b, "] \"");
+        escaped(b, e.method, 32);
+        b.put((byte) ' ');
+        int left = escaped(b, e.path, MAX_TARGET);
+        if (e.query != null && left > 0) {
+            b.put((byte) '?');
+            escaped(b, e.query, left - 1);
+        }
+        b.put((byte) ' ');
+        ascii(b, e.version);
+        ascii(b, "\" ");
+        number(b, e.status);
+        b.put((byte) ' ');
+        if (e.bytes >= 0) number(b, e.bytes);
+        else b.put((byte) '-');
+        b.put((byte) ' ');
+        number(b, e.nanos / 1000);
+        b.put((byte) '\n');
+        // Sin referencias colgando del registro hasta que se reutilice
+        e.client = null;
+        e.method = e.path = e.query = e.version = null;
+    }
+
+    /** "[dd/MMM/yyyy:HH:mm:ss +0000]" cambia una vez por segundo: se formatea solo entonces. */
+    private byte[] stamp(long millis) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != stampSecond) {
+            stampSecond = second;
+            stamp = CLF_TIME.format(Instant.ofEpochSecond(second)).getBytes(StandardCharsets.US_ASCII);
+        }
+        return stamp;
+    }
+
+    private static void ascii(ByteBuffer b, String s) {
+        for (int i = 0, n = s.length(); i < n; i++) b.put((byte) s.charAt(i));
+    }
+
+    private static void number(ByteBuffer b, long v) {
+        if (v < 0) {
+            b.put((byte) '-');
+            v = -v;
+        }
+        int start = b.position();
+        do {
+            b.put((byte) ('0' + v % 10));
+            v /= 10;
+        } while (v > 0);
+        for (int i = start, j = b.position() - 1; i < j; i++, j--) {
+            byte t = b.get(i);
+            b.put(i, b.get(j));
+            b.put(j, t);
+        }
+    }
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * UTF-8 con comillas, barra invertida y controles como {@code \xhh}: una
+     * petición no puede partir una línea ni falsear campos. Escribe hasta
+     * {@code max} caracteres y devuelve cuántos quedan.
+     */
+    private static int escaped(ByteBuffer b, String s, int max) {
+        int n = Math.min(s.length(), max);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c == 0x7f || c == '"' || c == '\\') {
+                b.put((byte) '\\').put((byte) 'x').put(HEX[c >> 4]).put(HEX[c & 0xf]);
+            } else if (c < 0x80) {
+                b.put((byte) c);
+            } else if (c < 0x800) {
+                b.put((byte) (0xc0 | c >> 6)).put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b.put((byte) (0xf0 | cp >> 18)).put((byte) (0x80 | cp >> 12 & 0x3f))
+                        .put((byte) (0x80 | cp >> 6 & 0x3f)).put((byte) (0x80 | cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                b.put((byte) '?');
+            } else {
+                b.put((byte) (0xe0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3f)).put((byte) (0x80 | c & 0x3f));
+            }
+        }
+        return max - n;
+    }
+}
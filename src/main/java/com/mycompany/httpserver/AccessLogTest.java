@@ -0,0 +1,116 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AccessLogTest {
+
+    private static HttpRequest request(String target) {
+        return new HttpRequest(URI.create(target));
+    }
+
+    @Test
+    public void writesCommonLogLinesWithBytesAndLatency_blocking() throws Exception {
+        logsOverHttp(HttpServer.Engine.BLOCKING);
+    }
+
+    @Test
+    public void writesCommonLogLinesWithBytesAndLatency_nio() throws Exception {
+        logsOverHttp(HttpServer.Engine.NIO);
+    }
+
+    private static void logsOverHttp(HttpServer.Engine engine) throws Exception {
+        Path file = Files.createTempDirectory("access-log").resolve("logs/access.log");
+        WebServer server = new WebServer().engine(engine).ioThreads(1)
+                .accessLog(file)
+                .get("/hello", (req, resp) -> "hola " + req.getValues("name"))
+                .start(ServerConfig.port(0));
+        try (Socket s = new Socket("localhost", server.port())) {
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            out.write(("GET /hello?name=ana HTTP/1.1\r\nHost: x\r\n\r\n"
+                    + "GET /nada%22x HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            s.getInputStream().readAllBytes();
+        } finally {
+            assertTrue(server.stop(Duration.ofSeconds(5)));
+        }
+
+        // Al detenerse el servidor lo pendiente ya está en el archivo
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(lines.toString(), 2, lines.size());
+        String hello = lines.get(0);
+        assertTrue(hello, hello.matches("127\\.0\\.0\\.1 - - \\[\\d{2}/\\w{3}/\\d{4}:\\d{2}:\\d{2}:\\d{2} \\+0000\\] "
+                + "\"GET /hello\\?name=ana HTTP/1\\.1\" 200 \\d+ \\d+"));
+        long bytes = Long.parseLong(hello.split(" ")[9]);
+        assertTrue(hello, bytes > "hola ana".length()); // cabecera + cuerpo
+        // La comilla del path no puede cerrar el campo
+        assertTrue(lines.get(1), lines.get(1).contains("\"GET /nada\\x22x HTTP/1.1\" 404 "));
+        assertEquals(0, server.metrics.accessLogDropped.sum());
+    }
+
+    @Test
+    public void rotatesBySizeKeepingOnlyTheConfiguredFiles() throws Exception {
+        Path dir = Files.createTempDirectory("access-rotate");
+        Path file = dir.resolve("access.log");
+        try (AccessLog log = new AccessLog(file).rotate(300, 2).capacity(4).whenFull(AccessLog.Overflow.BLOCK)) {
+            log.open();
+            for (int i = 0; i < 20; i++) {
+                assertTrue(log.log(request("/r/" + i), 200, 10, 1_000));
+                Thread.sleep(25); // el escritor vuelca cada línea por separado (su espera máxima es 20 ms)
+            }
+        }
+        assertTrue(Files.exists(file));
+        assertTrue(Files.exists(dir.resolve("access.log.1")));
+        assertTrue(Files.exists(dir.resolve("access.log.2")));
+        assertFalse(Files.exists(dir.resolve("access.log.3")));
+        assertTrue(Files.size(dir.resolve("access.log.1")) <= 300);
+        // Lo más nuevo queda en el archivo activo
+        List<String> current = Files.readAllLines(file);
+        assertTrue(current.toString(), current.get(current.size() - 1).contains("\"GET /r/19 HTTP/1.1\" 200 10 1"));
+    }
+
+    @Test
+    public void dropPolicy_neverWaitsForTheWriter() throws Exception {
+        Path file = Files.createTempDirectory("access-drop").resolve("access.log");
+        AccessLog log = new AccessLog(file).capacity(4);
+        // Sin escritor todavía: el ring se llena y lo que sobra se descarta
+        for (int i = 0; i < 4; i++) assertTrue(log.log(request("/d/" + i), 200, 0, 0));
+        assertFalse(log.log(request("/d/4"), 200, 0, 0));
+        log.open();
+        log.close();
+        assertEquals(4, Files.readAllLines(file).size());
+        assertFalse("cerrado: se descarta", log.log(request("/late"), 200, 0, 0));
+        assertThrows(IllegalStateException.class, () -> log.capacity(8));
+    }
+
+    @Test
+    public void blockPolicy_waitsForRoomInsteadOfDropping() throws Exception {
+        Path file = Files.createTempDirectory("access-block").resolve("access.log");
+        AccessLog log = new AccessLog(file).capacity(4).whenFull(AccessLog.Overflow.BLOCK);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 10; i++) log.log(request("/b/" + i), 200, 0, 0);
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("espera lugar en el ring", producer.isAlive());
+        log.open();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(producer.isAlive());
+        log.close();
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(10, lines.size());
+        for (int i = 0; i < 10; i++) assertTrue(lines.get(i), lines.get(i).contains("/b/" + i + " "));
+    }
+}
@@ -0,0 +1,59 @@
+package com.mycompany.httpserver;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ruta registrada con un {@link AsyncService}. Se guarda en el router como un
+ * {@link Service} más; el servidor la reconoce y, en el motor NIO, no espera
+ * el future en un hilo sino que escribe la respuesta al completarse.
+ */
+final class AsyncRoute implements Service {
+
+    private final AsyncService handler;
+    private final long timeoutMs; // <= 0: usa el timeout global del servidor
+    private final WebServer server;
+
+    AsyncRoute(AsyncService handler, long timeoutMs, WebServer server) {
+        this.handler = handler;
+        this.timeoutMs = timeoutMs;
+        this.server = server;
+    }
+
+    /** Arranca el handler; el future falla con TimeoutException si vence el plazo. */
+    CompletableFuture<String> start(HttpRequest req, HttpResponse resp, long defaultTimeoutMs) {
+        CompletableFuture<String> f;
+        try {
+            f = handler.handleAsync(req, resp);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (f == null) return CompletableFuture.completedFuture(null);
+        long limit = timeoutMs > 0 ? timeoutMs : defaultTimeoutMs;
+        // Copia: el vencimiento no completa el future del handler (que quizá compartan otros)
+        return f.copy().orTimeout(limit, TimeUnit.MILLISECONDS);
+    }
+
+    /** Uso síncrono (p.ej. desde otro handler o envuelto en una caché). */
+    @Override
+    public String handle(HttpRequest req, HttpResponse resp) throws Exception {
+        try {
+            return start(req, resp, server.asyncTimeoutMs()).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /** Causa real de un fallo asíncrono. */
+    static Exception unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof Exception e) return e;
+        if (t instanceof Error e) throw e;
+        return new CancellationException(String.valueOf(t));
+    }
+}
@@ -0,0 +1,62 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncRouteTest {
+
+    private static HttpRequest request(String target) throws Exception {
+        byte[] raw = ("GET " + target + " HTTP/1.1\r\nHost: x\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        return new RequestParser(4096, 10).parse(raw, 0, raw.length);
+    }
+
+    @Test
+    public void respondAsync_writesWhenFutureCompletes_withoutHoldingCaller() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        HttpServer.getAsync("/async/later/:id", (req, resp) -> {
+            resp.status(202);
+            return upstream.thenApply(v -> "{\"id\":\"" + req.getPathParam("id") + "\",\"v\":" + v + "}");
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompletableFuture<Boolean> done = HttpServer.respondAsync(out, request("/async/later/7"), true, Runnable::run);
+        assertFalse(done.isDone());
+        assertEquals(0, out.size());
+
+        upstream.complete("42");
+        assertTrue(done.get(1, TimeUnit.SECONDS));
+        String raw = out.toString(StandardCharsets.UTF_8);
+        assertTrue(raw.startsWith("HTTP/1.1 202 "));
+        assertTrue(raw.endsWith("{\"id\":\"7\",\"v\":42}"));
+    }
+
+    @Test
+    public void slowHandler_getsGatewayTimeout_onBothPaths() throws Exception {
+        HttpServer.getAsync("/async/never", (req, resp) -> new CompletableFuture<>(), Duration.ofMillis(50));
+
+        ByteArrayOutputStream blocking = new ByteArrayOutputStream();
+        assertTrue(HttpServer.respond(blocking, request("/async/never"), true));
+        assertTrue(blocking.toString(StandardCharsets.UTF_8).startsWith("HTTP/1.1 504 "));
+
+        ByteArrayOutputStream nonBlocking = new ByteArrayOutputStream();
+        HttpServer.respondAsync(nonBlocking, request("/async/never"), true, Runnable::run).get(1, TimeUnit.SECONDS);
+        assertTrue(nonBlocking.toString(StandardCharsets.UTF_8).startsWith("HTTP/1.1 504 "));
+    }
+
+    @Test
+    public void failedFuture_becomes500() throws Exception {
+        HttpServer.getAsync("/async/fail", (req, resp) -> CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServer.respond(out, request("/async/fail"), false);
+        String raw = out.toString(StandardCharsets.UTF_8);
+        assertTrue(raw.startsWith("HTTP/1.1 500 "));
+        assertTrue(raw.endsWith("Internal Server Error: boom"));
+    }
+}
@@ -0,0 +1,14 @@
+package com.mycompany.httpserver;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handler asíncrono: devuelve el cuerpo como un future y el servidor escribe
+ * la respuesta cuando se completa. Sirve para handlers que esperan red
+ * (p.ej. {@code HttpClient.sendAsync}) sin ocupar un hilo mientras tanto.
+ * Se registra con {@link HttpServer#getAsync} / {@link HttpServer#postAsync}.
+ */
+@FunctionalInterface
+public interface AsyncService {
+    CompletableFuture<String> handleAsync(HttpRequest req, HttpResponse resp) throws Exception;
+}
@@ -0,0 +1,169 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+
+/**
+ * Delimita el cuerpo de una petición (Content-Length o chunked) sobre los
+ * bytes crudos de la conexión. Es incremental y no copia: cada
+ * {@link #step(byte[], int, int)} consume lo que puede y deja en
+ * [{@link #dataFrom}, {@link #dataTo}) el tramo de datos encontrado. Lo usan
+ * los dos motores: el bloqueante desde el stream del socket y el NIO desde
+ * el event loop, que así sabe dónde empieza la siguiente petición.
+ */
+final class BodyDecoder {
+
+    /** Cuerpo inválido (400) o más grande que el máximo (413); la conexión no puede reutilizarse. */
+    static final class BodyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        BodyException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // Estados del framing chunked
+    private static final int SIZE = 0, SIZE_EXT = 1, SIZE_LF = 2, DATA = 3, DATA_CR = 4, DATA_LF = 5,
+            TRAILER_START = 6, TRAILER = 7, TRAILER_END_LF = 8, DONE = 9;
+    private static final int MAX_LINE = 4096; // tamaño + extensiones, o cada trailer
+
+    private final boolean chunked;
+    private final long maxBytes;
+    private final long declaredLength;
+    private int state;
+    private long remaining;   // bytes de datos que faltan del chunk (o del cuerpo con Content-Length)
+    private long total;       // datos entregados hasta ahora
+    private int sizeDigits;
+    private int lineBytes;
+
+    /** Tramo de datos del último {@link #step}; vacío si solo hubo framing. */
+    int dataFrom, dataTo;
+
+    private BodyDecoder(boolean chunked, long length, long maxBytes) {
+        this.chunked = chunked;
+        this.maxBytes = maxBytes;
+        this.declaredLength = chunked ? -1 : length;
+        this.remaining = chunked ? 0 : length;
+        this.state = chunked ? SIZE : (length == 0 ? DONE : DATA);
+    }
+
+    /**
+     * Decodificador para la petición, o null si no trae cuerpo. Rechaza
+     * Content-Length inválido, codificaciones distintas de chunked,
+     * Transfer-Encoding junto a Content-Length (request smuggling) y cuerpos
+     * declarados más grandes que {@code maxBytes}.
+     */
+    static BodyDecoder forRequest(HttpRequest req, long maxBytes) throws RequestParser.ParseException {
+        String te = req.getHeader("Transfer-Encoding");
+        String cl = req.getHeader("Content-Length");
+        if (te != null) {
+            if (cl != null) throw new RequestParser.ParseException(400, "Transfer-Encoding y Content-Length juntos");
+            if (!te.trim().equalsIgnoreCase("chunked")) {
+                throw new RequestParser.ParseException(501, "Transfer-Encoding no soportado: " + te);
+            }
+            return new BodyDecoder(true, -1, maxBytes);
+        }
+        long length = HttpServer.contentLength(req);
+        if (length < 0) throw new RequestParser.ParseException(400, "Content-Length inválido");
+        if (length > maxBytes) throw new RequestParser.ParseException(413, "cuerpo de " + length + " bytes (máximo " + maxBytes + ")");
+        return length == 0 ? null : new BodyDecoder(false, length, maxBytes);
+    }
+
+    boolean isChunked() {
+        return chunked;
+    }
+
+    /** Content-Length declarado, o -1 si es chunked. */
+    long declaredLength() {
+        return declaredLength;
+    }
+
+    boolean isDone() {
+        return state == DONE;
+    }
+
+    /**
+     * Consume bytes de {@code b[from, to)} hasta encontrar un tramo de datos
+     * (que queda en dataFrom/dataTo) o agotar la entrada. Devuelve los bytes
+     * consumidos (framing + datos).
+     */
+    int step(byte[] b, int from, int to) throws BodyException {
+        dataFrom = dataTo = from;
+        int p = from;
+        while (p < to && state != DONE) {
+            if (state == DATA) {
+                int n = (int) Math.min(remaining, to - p);
+                total += n;
+                if (total > maxBytes) throw new BodyException(413, "cuerpo de más de " + maxBytes + " bytes");
+                dataFrom = p;
+                dataTo = p + n;
+                remaining -= n;
+                if (remaining == 0) state = chunked ? DATA_CR : DONE;
+                return dataTo - from;
+            }
+            byte c = b[p++];
+            switch (state) {
+                case SIZE -> {
+                    int d = Character.digit(c, 16);
+                    if (d >= 0) {
+                        if (++sizeDigits > 15) throw new BodyException(400, "tamaño de chunk demasiado grande");
+                        remaining = remaining * 16 + d;
+                    } else if (sizeDigits == 0) {
+                        throw new BodyException(400, "tamaño de chunk inválido");
+                    } else if (c == ';' || c == ' ' || c == '\t') {
+                        state = SIZE_EXT;
+                    } else if (c == '\r') {
+                        state = SIZE_LF;
+                    } else if (c == '\n') {
+                        endOfSizeLine();
+                    } else {
+                        throw new BodyException(400, "tamaño de chunk inválido");
+                    }
+                }
+                case SIZE_EXT -> {
+                    if (++lineBytes > MAX_LINE) throw new BodyException(400, "extensión de chunk demasiado larga");
+                    if (c == '\n') endOfSizeLine();
+                }
+                case SIZE_LF -> {
+                    if (c != '\n') throw new BodyException(400, "se esperaba LF tras el tamaño de chunk");
+                    endOfSizeLine();
+                }
+                case DATA_CR -> {
+                    if (c == '\r') state = DATA_LF;
+                    else if (c == '\n') state = SIZE;
+                    else throw new BodyException(400, "falta CRLF al final del chunk");
+                }
+                case DATA_LF -> {
+                    if (c != '\n') throw new BodyException(400, "falta CRLF al final del chunk");
+                    state = SIZE;
+                }
+                case TRAILER_START -> {
+                    if (c == '\r') state = TRAILER_END_LF;
+                    else if (c == '\n') state = DONE;
+                    else {
+                        lineBytes = 1;
+                        state = TRAILER;
+                    }
+                }
+                case TRAILER -> { // los trailers se descartan
+                    if (++lineBytes > MAX_LINE) throw new BodyException(400, "trailer demasiado largo");
+                    if (c == '\n') state = TRAILER_START;
+                }
+                case TRAILER_END_LF -> {
+                    if (c != '\n') throw new BodyException(400, "fin de trailers inválido");
+                    state = DONE;
+                }
+                default -> throw new IllegalStateException();
+            }
+        }
+        return p - from;
+    }
+
+    private void endOfSizeLine() {
+        sizeDigits = 0;
+        lineBytes = 0;
+        state = remaining == 0 ? TRAILER_START : DATA;
+    }
+}
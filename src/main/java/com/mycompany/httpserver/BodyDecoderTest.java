@@ -0,0 +1,104 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class BodyDecoderTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static HttpRequest head(String headers) throws Exception {
+        byte[] b = bytes("POST /up HTTP/1.1\r\n" + headers + "\r\n");
+        return new RequestParser(1024, 10).parse(b, 0, b.length);
+    }
+
+    /** Decodifica entregando la entrada en pedazos de {@code piece} bytes; el resto queda sin consumir. */
+    private static String decode(BodyDecoder d, byte[] raw, int piece, int[] consumed) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int p = 0;
+        while (p < raw.length && !d.isDone()) {
+            int to = Math.min(raw.length, p + piece);
+            while (p < to && !d.isDone()) {
+                p += d.step(raw, p, to);
+                out.write(raw, d.dataFrom, d.dataTo - d.dataFrom);
+            }
+        }
+        consumed[0] = p;
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void chunked_decodesAcrossEverySplit_andStopsAtTheEnd() throws Exception {
+        byte[] raw = bytes("5;name=v\r\nhello\r\n1A\r\n abcdefghijklmnopqrstuvwxy\r\n0\r\nX-Trailer: 1\r\n\r\nGET /next");
+        for (int piece = 1; piece <= raw.length; piece++) {
+            BodyDecoder d = BodyDecoder.forRequest(head("Transfer-Encoding: chunked\r\n"), 1000);
+            int[] consumed = new int[1];
+            assertEquals("hello abcdefghijklmnopqrstuvwxy", decode(d, raw, piece, consumed));
+            assertTrue(d.isDone());
+            assertEquals("piece=" + piece, raw.length - "GET /next".length(), consumed[0]);
+        }
+    }
+
+    @Test
+    public void contentLength_delimitsBody_andRejectsInvalidFraming() throws Exception {
+        BodyDecoder d = BodyDecoder.forRequest(head("Content-Length: 3\r\n"), 10);
+        int[] consumed = new int[1];
+        assertEquals("abc", decode(d, bytes("abcGET"), 2, consumed));
+        assertEquals(3, consumed[0]);
+        assertNull(BodyDecoder.forRequest(head(""), 10));
+
+        assertEquals(413, assertThrows(RequestParser.ParseException.class,
+                () -> BodyDecoder.forRequest(head("Content-Length: 11\r\n"), 10)).status);
+        assertEquals(400, assertThrows(RequestParser.ParseException.class,
+                () -> BodyDecoder.forRequest(head("Content-Length: 1\r\nTransfer-Encoding: chunked\r\n"), 10)).status);
+        assertEquals(501, assertThrows(RequestParser.ParseException.class,
+                () -> BodyDecoder.forRequest(head("Transfer-Encoding: gzip\r\n"), 10)).status);
+
+        BodyDecoder chunked = BodyDecoder.forRequest(head("Transfer-Encoding: chunked\r\n"), 4);
+        assertEquals(413, assertThrows(BodyDecoder.BodyException.class,
+                () -> decode(chunked, bytes("5\r\nhello\r\n0\r\n\r\n"), 100, new int[1])).status);
+        BodyDecoder garbage = BodyDecoder.forRequest(head("Transfer-Encoding: chunked\r\n"), 100);
+        assertEquals(400, assertThrows(BodyDecoder.BodyException.class,
+                () -> decode(garbage, bytes("zz\r\n"), 100, new int[1])).status);
+    }
+
+    @Test
+    public void blockingStream_readsBody_thenNextPipelinedRequest() throws Exception {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes(
+                "POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2\r\nde\r\n0\r\n\r\nGET /b HTTP/1.1\r\n\r\n"));
+        RequestParser p = new RequestParser(1024, 10);
+        HttpRequest first = p.read(in);
+        InputStream body = p.body(in, BodyDecoder.forRequest(first, 100));
+        assertEquals("abcde", new String(body.readAllBytes(), StandardCharsets.ISO_8859_1));
+        assertEquals(-1, body.read());
+        assertEquals("/b", p.read(in).getPath());
+    }
+
+    @Test
+    public void request_decodesFormLazily_andExposesBodyViews() throws Exception {
+        HttpRequest form = HttpRequest.withBody("POST", URI.create("/f"), "application/x-www-form-urlencoded",
+                bytes("name=Ana+Mar%C3%ADa&tag=a&&tag=b&empty="));
+        assertTrue(form.hasBody());
+        assertEquals("Ana María", form.getFormValue("name"));
+        assertEquals(java.util.List.of("a", "b"), form.getFormValues("tag"));
+        assertEquals("", form.getFormValue("empty"));
+        assertEquals("", form.getFormValue("missing"));
+        assertEquals('e', form.getBodyBuffer().get(3));
+        assertTrue(form.getBodyBuffer().isReadOnly());
+
+        HttpRequest json = HttpRequest.withBody("POST", URI.create("/j"), "application/json; charset=ISO-8859-1",
+                new byte[]{'"', (byte) 0xF1, '"'});
+        assertEquals("\"ñ\"", json.getBodyAsString());
+        assertEquals("", json.getFormValue("x")); // no es un formulario
+        assertFalse(new HttpRequest(URI.create("/g")).hasBody());
+    }
+}
@@ -0,0 +1,149 @@
+package com.mycompany.httpserver;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresión gzip/deflate de respuestas dinámicas según Accept-Encoding.
+ * Solo se comprimen cuerpos de al menos {@code minBytes} con un Content-Type
+ * de la lista; los {@link Deflater} (y su buffer de salida) salen de un pool
+ * para no pagar la reserva de memoria nativa en cada respuesta.
+ */
+final class Compression {
+
+    enum Coding {
+        GZIP("gzip", "-gz"), DEFLATE("deflate", "-df");
+
+        final String token;
+        final String etagSuffix; // la variante comprimida es otra representación: otro ETag
+
+        Coding(String token, String etagSuffix) {
+            this.token = token;
+            this.etagSuffix = etagSuffix;
+        }
+    }
+
+    static final int DEFAULT_MIN_BYTES = 1024;
+
+    // Nivel bajo: en JSON la ganancia de 4 a 9 es marginal y cuesta varias veces más CPU
+    private static final int LEVEL = 4;
+    private static final int MAX_POOLED_SCRATCH = 256 * 1024;
+
+    private static final SlotPool<Encoder> GZIP_POOL = SlotPool.perProcessor();
+    private static final SlotPool<Encoder> DEFLATE_POOL = SlotPool.perProcessor();
+
+    private final int minBytes;
+    private final String[] contentTypes; // prefijos; vacío = StaticCache.isCompressible
+
+    Compression(int minBytes, String... contentTypes) {
+        if (minBytes < 0) throw new IllegalArgumentException("minBytes debe ser >= 0: " + minBytes);
+        this.minBytes = minBytes;
+        this.contentTypes = contentTypes.clone();
+    }
+
+    /** ¿Vale la pena comprimir este cuerpo? (independiente del cliente: decide también el Vary) */
+    boolean eligible(String contentType, int length) {
+        if (length < minBytes || contentType == null) return false;
+        if (contentTypes.length == 0) return StaticCache.isCompressible(contentType);
+        for (String prefix : contentTypes) {
+            if (contentType.regionMatches(true, 0, prefix, 0, prefix.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Codificación preferida por el cliente, o null. Respeta q-values y
+     * "*"; ante empate gana gzip.
+     */
+    static Coding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) return null;
+        double gzip = -1, deflate = -1, any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] p = part.trim().split(";");
+            double q = 1;
+            for (int i = 1; i < p.length; i++) {
+                String param = p[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            String coding = p[0].trim();
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) gzip = q;
+            else if (coding.equalsIgnoreCase("deflate")) deflate = q;
+            else if (coding.equals("*")) any = q;
+        }
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+        if (gzip <= 0 && deflate <= 0) return null;
+        return gzip >= deflate ? Coding.GZIP : Coding.DEFLATE;
+    }
+
+    /** Cuerpo comprimido, o null si no sale más chico que el original. */
+    static byte[] encode(byte[] body, Coding coding) {
+        SlotPool<Encoder> pool = coding == Coding.GZIP ? GZIP_POOL : DEFLATE_POOL;
+        Encoder e = pool.poll();
+        if (e == null) e = new Encoder(coding == Coding.GZIP);
+        try {
+            return e.encode(body);
+        } finally {
+            e.reset();
+            if (e.scratch.length > MAX_POOLED_SCRATCH || !pool.offer(e)) e.deflater.end();
+        }
+    }
+
+    /** Deflater + buffer de salida reutilizables; gzip usa deflate crudo con cabecera y trailer propios. */
+    private static final class Encoder {
+        private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        final boolean gzip;
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        byte[] scratch = new byte[8192];
+
+        Encoder(boolean gzip) {
+            this.gzip = gzip;
+            this.deflater = new Deflater(LEVEL, gzip);
+        }
+
+        byte[] encode(byte[] body) {
+            int pos = 0;
+            if (gzip) {
+                System.arraycopy(GZIP_HEADER, 0, scratch, 0, GZIP_HEADER.length);
+                pos = GZIP_HEADER.length;
+                crc.update(body);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            int limit = body.length - (gzip ? 8 : 0); // a partir de acá ya no conviene
+            while (!deflater.finished()) {
+                if (pos >= limit) return null;
+                if (pos == scratch.length) scratch = Arrays.copyOf(scratch, Math.min(scratch.length * 2, Math.max(limit, 16)));
+                pos += deflater.deflate(scratch, pos, Math.min(scratch.length, limit) - pos);
+            }
+            if (gzip) {
+                if (scratch.length < pos + 8) scratch = Arrays.copyOf(scratch, pos + 8);
+                pos = putIntLE(scratch, pos, (int) crc.getValue());
+                pos = putIntLE(scratch, pos, body.length);
+            }
+            return pos < body.length ? Arrays.copyOf(scratch, pos) : null;
+        }
+
+        void reset() {
+            deflater.reset();
+            crc.reset();
+        }
+
+        private static int putIntLE(byte[] b, int pos, int v) {
+            b[pos] = (byte) v;
+            b[pos + 1] = (byte) (v >>> 8);
+            b[pos + 2] = (byte) (v >>> 16);
+            b[pos + 3] = (byte) (v >>> 24);
+            return pos + 4;
+        }
+    }
+}
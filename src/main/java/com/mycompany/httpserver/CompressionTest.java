@@ -0,0 +1,104 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest {
+
+    private static final String JSON = "{\"rows\":[" + "{\"open\":\"123.45\",\"close\":\"124.50\"},".repeat(200) + "{}]}";
+
+    private static HttpRequest request(String target, String acceptEncoding) throws Exception {
+        String head = "GET " + target + " HTTP/1.1\r\nHost: x\r\n"
+                + (acceptEncoding == null ? "" : "Accept-Encoding: " + acceptEncoding + "\r\n") + "\r\n";
+        byte[] raw = head.getBytes(StandardCharsets.US_ASCII);
+        return new RequestParser(4096, 10).parse(raw, 0, raw.length);
+    }
+
+    /** Cabecera y cuerpo de la respuesta cruda. */
+    private static String[] split(byte[] raw) {
+        String s = new String(raw, StandardCharsets.ISO_8859_1);
+        int end = s.indexOf("\r\n\r\n");
+        return new String[]{s.substring(0, end + 2), s.substring(end + 4)};
+    }
+
+    @Test
+    public void negotiate_honoursQValuesAndWildcard() {
+        assertNull(Compression.negotiate(null));
+        assertNull(Compression.negotiate("identity"));
+        assertNull(Compression.negotiate("gzip;q=0, deflate;q=0"));
+        assertEquals(Compression.Coding.GZIP, Compression.negotiate("gzip, deflate, br"));
+        assertEquals(Compression.Coding.DEFLATE, Compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals(Compression.Coding.DEFLATE, Compression.negotiate("gzip;q=0, *"));
+        assertEquals(Compression.Coding.GZIP, Compression.negotiate("*;q=0.1"));
+    }
+
+    @Test
+    public void encode_roundTrips_andGivesUpOnIncompressibleData() throws Exception {
+        byte[] body = JSON.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 3; i++) { // pasa por el pool
+            byte[] gz = Compression.encode(body, Compression.Coding.GZIP);
+            assertTrue(gz.length < body.length / 4);
+            assertArrayEquals(body, new GZIPInputStream(new ByteArrayInputStream(gz)).readAllBytes());
+
+            byte[] df = Compression.encode(body, Compression.Coding.DEFLATE);
+            assertArrayEquals(body, new InflaterInputStream(new ByteArrayInputStream(df)).readAllBytes());
+        }
+        byte[] noise = new byte[4096];
+        new java.util.Random(1).nextBytes(noise);
+        assertNull(Compression.encode(noise, Compression.Coding.GZIP));
+        assertNull(Compression.encode(new byte[5], Compression.Coding.GZIP));
+    }
+
+    @Test
+    public void handlerResponses_areCompressedOnlyWhenLargeAndAccepted() throws Exception {
+        HttpServer.get("/compression/big", (req, resp) -> {
+            resp.header("ETag", "\"v7\"");
+            return JSON;
+        });
+        HttpServer.get("/compression/small", (req, resp) -> "{\"ok\":true}");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServer.respond(out, request("/compression/big", "gzip, deflate"), true);
+        String[] parts = split(out.toByteArray());
+        assertTrue(parts[0].contains("Content-Encoding: gzip\r\n"));
+        assertTrue(parts[0].contains("Vary: Accept-Encoding\r\n"));
+        assertTrue(parts[0].contains("ETag: \"v7-gz\"\r\n"));
+        byte[] body = parts[1].getBytes(StandardCharsets.ISO_8859_1);
+        assertTrue(parts[0].contains("Content-Length: " + body.length + "\r\n"));
+        assertEquals(JSON, new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes(), StandardCharsets.UTF_8));
+
+        out.reset();
+        HttpServer.respond(out, request("/compression/big", null), true);
+        parts = split(out.toByteArray());
+        assertFalse(parts[0].contains("Content-Encoding"));
+        assertTrue(parts[0].contains("Vary: Accept-Encoding\r\n"));
+        assertTrue(parts[0].contains("ETag: \"v7\"\r\n"));
+        assertEquals(JSON, parts[1]);
+
+        out.reset();
+        HttpServer.respond(out, request("/compression/small", "gzip"), true);
+        parts = split(out.toByteArray());
+        assertFalse(parts[0].contains("Content-Encoding"));
+        assertFalse(parts[0].contains("Vary"));
+        assertEquals("{\"ok\":true}", parts[1]);
+    }
+
+    @Test
+    public void policy_filtersByContentTypePrefix() {
+        Compression onlyCsv = new Compression(10, "text/csv");
+        assertTrue(onlyCsv.eligible("text/csv; charset=utf-8", 100));
+        assertFalse(onlyCsv.eligible("application/json", 100));
+        assertFalse(onlyCsv.eligible("text/csv", 9));
+
+        Compression defaults = new Compression(0);
+        assertTrue(defaults.eligible("application/json; charset=utf-8", 1));
+        assertFalse(defaults.eligible("image/png", 1 << 20));
+    }
+}
@@ -0,0 +1,439 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Controladores anotados ({@link RestController}): búsqueda en el classpath
+ * y enlace de sus métodos a handlers. Cada método se enlaza una sola vez, al
+ * arrancar: con la forma {@code String m(HttpRequest, HttpResponse)} se
+ * genera un {@link Service} con {@link LambdaMetafactory} (igual a una
+ * lambda escrita a mano); con otros parámetros, un {@link MethodHandle}
+ * que ya incluye los extractores de cada argumento. En cada petición no hay
+ * reflexión ni búsquedas por nombre de método.
+ */
+final class Controllers {
+
+    /** Ruta enlazada: método HTTP, patrón y handler (uno de los dos). */
+    record Binding(String method, String route, Service handler, AsyncService async) {}
+
+    /** Parámetro ausente o inválido: el handler responde 400. */
+    static final class BadParam extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadParam(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    // (HttpRequest, HttpResponse) -> cada uno de los dos
+    private static final MethodHandle REQUEST = MethodHandles.dropArguments(
+            MethodHandles.identity(HttpRequest.class), 1, HttpResponse.class);
+    private static final MethodHandle RESPONSE = MethodHandles.dropArguments(
+            MethodHandles.identity(HttpResponse.class), 0, HttpRequest.class);
+
+    private static final MethodHandle QUERY, PATH, GET_INT, GET_LONG, GET_BOOLEAN,
+            TO_INT, TO_LONG, TO_DOUBLE, TO_BOOLEAN;
+    static {
+        try {
+            QUERY = LOOKUP.findStatic(Controllers.class, "query",
+                    MethodType.methodType(String.class, String.class, String.class, boolean.class, HttpRequest.class));
+            PATH = LOOKUP.findVirtual(HttpRequest.class, "getPathParam", MethodType.methodType(String.class, String.class));
+            GET_INT = LOOKUP.findVirtual(HttpRequest.class, "getInt", MethodType.methodType(int.class, String.class, int.class));
+            GET_LONG = LOOKUP.findVirtual(HttpRequest.class, "getLong", MethodType.methodType(long.class, String.class, long.class));
+            GET_BOOLEAN = LOOKUP.findVirtual(HttpRequest.class, "getBoolean",
+                    MethodType.methodType(boolean.class, String.class, boolean.class));
+            TO_INT = converter("toInt", int.class);
+            TO_LONG = converter("toLong", long.class);
+            TO_DOUBLE = converter("toDouble", double.class);
+            TO_BOOLEAN = converter("toBoolean", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle converter(String name, Class<?> type) throws ReflectiveOperationException {
+        return LOOKUP.findStatic(Controllers.class, name, MethodType.methodType(type, String.class, String.class));
+    }
+
+    private Controllers() {}
+
+    // ================== Búsqueda en el classpath ==================
+
+    /**
+     * Clases {@link RestController} de {@code basePackage} y subpaquetes, en
+     * directorios o jars. Solo se cargan (sin inicializar) las clases cuyo
+     * bytecode menciona la anotación: el resto se descarta con una búsqueda
+     * de bytes, sin definir la clase.
+     */
+    static List<Class<?>> scan(String basePackage, ClassLoader loader) throws IOException {
+        String dir = basePackage.replace('.', '/');
+        byte[] marker = ('L' + RestController.class.getName().replace('.', '/') + ';')
+                .getBytes(StandardCharsets.ISO_8859_1);
+        TreeSet<String> names = new TreeSet<>();
+        Enumeration<URL> roots = loader.getResources(dir);
+        while (roots.hasMoreElements()) {
+            URL url = roots.nextElement();
+            if ("file".equals(url.getProtocol())) {
+                scanDirectory(url, basePackage, marker, names);
+            } else if ("jar".equals(url.getProtocol())) {
+                scanJar(url, dir, marker, names);
+            }
+        }
+        List<Class<?>> found = new ArrayList<>(names.size());
+        for (String name : names) {
+            Class<?> type;
+            try {
+                type = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                continue;
+            }
+            if (type.isAnnotationPresent(RestController.class)) found.add(type);
+        }
+        return found;
+    }
+
+    private static void scanDirectory(URL url, String basePackage, byte[] marker, TreeSet<String> names) throws IOException {
+        Path root;
+        try {
+            root = Path.of(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Ruta inválida: " + url, e);
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (!fileName.endsWith(".class") || fileName.endsWith("-info.class")) continue;
+                if (!contains(Files.readAllBytes(file), marker)) continue;
+                String relative = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), ".");
+                names.add(basePackage + "." + relative.substring(0, relative.length() - 6));
+            }
+        }
+    }
+
+    private static void scanJar(URL url, String dir, byte[] marker, TreeSet<String> names) throws IOException {
+        URLConnection connection = url.openConnection();
+        if (!(connection instanceof JarURLConnection jarConnection)) return;
+        jarConnection.setUseCaches(false); // el JarFile es propio: se puede cerrar
+        try (JarFile jar = jarConnection.getJarFile()) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                String name = entry.getName();
+                if (!name.startsWith(dir + "/") || !name.endsWith(".class") || name.endsWith("-info.class")) continue;
+                try (InputStream in = jar.getInputStream(entry)) {
+                    if (!contains(in.readAllBytes(), marker)) continue;
+                }
+                names.add(name.substring(0, name.length() - 6).replace('/', '.'));
+            }
+        }
+    }
+
+    private static boolean contains(byte[] data, byte[] marker) {
+        byte first = marker[0];
+        outer:
+        for (int i = 0, last = data.length - marker.length; i <= last; i++) {
+            if (data[i] != first) continue;
+            for (int j = 1; j < marker.length; j++) {
+                if (data[i + j] != marker[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Instancia un controlador encontrado por {@link #scan} con su constructor sin argumentos. */
+    static Object instantiate(Class<?> type) {
+        try {
+            MethodHandle ctor = lookup(type).findConstructor(type, MethodType.methodType(void.class));
+            return ctor.invoke();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " necesita un constructor sin argumentos"
+                    + " (o registrar una instancia con controller(obj))", e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("No se pudo crear " + type.getName(), e);
+        }
+    }
+
+    // ================== Enlace ==================
+
+    /** Rutas de los métodos anotados de {@code controller}. */
+    static List<Binding> bind(Object controller) {
+        Class<?> type = controller.getClass();
+        RestController annotation = type.getAnnotation(RestController.class);
+        String prefix = annotation == null ? "" : annotation.value();
+        MethodHandles.Lookup lookup = lookup(type);
+        List<Binding> bindings = new ArrayList<>();
+        for (Method m : type.getDeclaredMethods()) {
+            GetMapping get = m.getAnnotation(GetMapping.class);
+            PostMapping post = m.getAnnotation(PostMapping.class);
+            if (get == null && post == null) continue;
+            Binding template = bind(lookup, controller, m);
+            if (get != null) bindings.add(new Binding("GET", join(prefix, get.value()), template.handler(), template.async()));
+            if (post != null) bindings.add(new Binding("POST", join(prefix, post.value()), template.handler(), template.async()));
+        }
+        if (bindings.isEmpty()) throw new IllegalArgumentException(type.getName() + " no tiene métodos @GetMapping/@PostMapping");
+        return bindings;
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, LOOKUP);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Sin acceso a " + type.getName(), e);
+        }
+    }
+
+    private static String join(String prefix, String route) {
+        if (prefix.isEmpty()) return route;
+        if (prefix.endsWith("/")) prefix = prefix.substring(0, prefix.length() - 1);
+        return route.isEmpty() || route.equals("/") ? prefix : prefix + (route.startsWith("/") ? route : "/" + route);
+    }
+
+    private static Binding bind(MethodHandles.Lookup lookup, Object controller, Method m) {
+        try {
+            MethodHandle direct = lookup.unreflect(m);
+            boolean isStatic = Modifier.isStatic(m.getModifiers());
+            Class<?>[] params = m.getParameterTypes();
+
+            // Misma forma que Service: una lambda generada que llama al método directo
+            if (m.getReturnType() == String.class && params.length == 2
+                    && params[0] == HttpRequest.class && params[1] == HttpResponse.class) {
+                MethodType factory = isStatic ? MethodType.methodType(Service.class)
+                        : MethodType.methodType(Service.class, controller.getClass());
+                MethodType sam = MethodType.methodType(String.class, HttpRequest.class, HttpResponse.class);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "handle", factory, sam, direct, sam);
+                Service service = (Service) (isStatic ? site.getTarget().invoke() : site.getTarget().invoke(controller));
+                return new Binding(null, null, service, null);
+            }
+
+            MethodHandle target = isStatic ? direct : direct.bindTo(controller);
+            target = withExtractors(target, m);
+            if (CompletionStage.class.isAssignableFrom(m.getReturnType())) {
+                MethodHandle future = target.asType(MethodType.methodType(CompletionStage.class, HttpRequest.class, HttpResponse.class));
+                return new Binding(null, null, null, new AsyncInvoker(future));
+            }
+            return new Binding(null, null, new Invoker(target.asType(
+                    MethodType.methodType(Object.class, HttpRequest.class, HttpResponse.class))), null);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("No se pudo enlazar " + m, e);
+        }
+    }
+
+    /**
+     * Reemplaza cada parámetro de {@code target} por su extractor
+     * {@code (HttpRequest, HttpResponse) -> tipo}, y todos esos pares por
+     * uno solo: queda {@code (HttpRequest, HttpResponse) -> retorno}.
+     */
+    private static MethodHandle withExtractors(MethodHandle target, Method m) {
+        Parameter[] params = m.getParameters();
+        if (params.length == 0) return MethodHandles.dropArguments(target, 0, HttpRequest.class, HttpResponse.class);
+        for (int i = params.length - 1; i >= 0; i--) {
+            target = MethodHandles.collectArguments(target, i, extractor(params[i], m));
+        }
+        int[] reorder = new int[params.length * 2];
+        for (int i = 0; i < reorder.length; i++) reorder[i] = i % 2;
+        return MethodHandles.permuteArguments(target,
+                MethodType.methodType(target.type().returnType(), HttpRequest.class, HttpResponse.class), reorder);
+    }
+
+    private static MethodHandle extractor(Parameter p, Method m) {
+        Class<?> type = p.getType();
+        if (type == HttpRequest.class) return REQUEST;
+        if (type == HttpResponse.class) return RESPONSE;
+
+        RequestParam query = p.getAnnotation(RequestParam.class);
+        PathVariable path = p.getAnnotation(PathVariable.class);
+        MethodHandle raw; // (HttpRequest) -> tipo del parámetro
+        if (query != null) {
+            raw = queryExtractor(name(query.value(), p, m), query, type, m);
+        } else if (path != null) {
+            String name = name(path.value(), p, m);
+            raw = convert(MethodHandles.insertArguments(PATH, 1, name), name, type, m);
+        } else {
+            throw new IllegalArgumentException("Parámetro sin @RequestParam/@PathVariable: " + p + " en " + m);
+        }
+        return MethodHandles.dropArguments(raw.asType(MethodType.methodType(type, HttpRequest.class)), 1, HttpResponse.class);
+    }
+
+    /**
+     * Con default (o no requerido) los números y booleanos van directo a
+     * {@link HttpRequest#getInt} y compañía, como en un handler a mano; el
+     * resto lee el texto y lo convierte.
+     */
+    private static MethodHandle queryExtractor(String name, RequestParam a, Class<?> type, Method m) {
+        String def = a.defaultValue().isEmpty() ? null : a.defaultValue();
+        boolean required = a.required() && def == null;
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        if (!required) {
+            try {
+                if (primitive == int.class) return MethodHandles.insertArguments(GET_INT, 1, name, def == null ? 0 : Integer.parseInt(def.trim()));
+                if (primitive == long.class) return MethodHandles.insertArguments(GET_LONG, 1, name, def == null ? 0L : Long.parseLong(def.trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("defaultValue inválido para '" + name + "' en " + m + ": " + def);
+            }
+            if (primitive == boolean.class) return MethodHandles.insertArguments(GET_BOOLEAN, 1, name, def != null && toBoolean(name, def));
+        }
+        if (def != null && type != String.class) convert(MethodHandles.constant(String.class, def), name, type, m); // valida al arrancar
+        return convert(MethodHandles.insertArguments(QUERY, 0, name, def, required), name, type, m);
+    }
+
+    /** {@code raw: (HttpRequest) -> String} seguido del conversor del tipo. */
+    private static MethodHandle convert(MethodHandle raw, String name, Class<?> type, Method m) {
+        if (type == String.class) return raw;
+        Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+        MethodHandle conv;
+        if (primitive == int.class) conv = TO_INT;
+        else if (primitive == long.class) conv = TO_LONG;
+        else if (primitive == double.class) conv = TO_DOUBLE;
+        else if (primitive == boolean.class) conv = TO_BOOLEAN;
+        else throw new IllegalArgumentException("Tipo de parámetro no soportado: " + type.getName() + " en " + m);
+        if (raw.type().parameterCount() == 0) { // default constante: se prueba la conversión ya
+            try {
+                conv.invoke(name, (String) raw.invoke());
+            } catch (BadParam e) {
+                throw new IllegalArgumentException("defaultValue inválido para '" + name + "' en " + m);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return raw;
+        }
+        return MethodHandles.filterReturnValue(raw, MethodHandles.insertArguments(conv, 0, name));
+    }
+
+    private static String name(String declared, Parameter p, Method m) {
+        if (!declared.isEmpty()) return declared;
+        if (!p.isNamePresent()) {
+            throw new IllegalArgumentException("Falta el nombre de " + p + " en " + m + " (o compilar con -parameters)");
+        }
+        return p.getName();
+    }
+
+    // ================== Extractores y conversores ==================
+
+    static String query(String name, String def, boolean required, HttpRequest req) {
+        String v = req.getValues(name);
+        if (!v.isEmpty()) return v;
+        if (required) throw new BadParam("Falta el parámetro '" + name + "'");
+        return def;
+    }
+
+    static int toInt(String name, String raw) {
+        long v = toLong(name, raw);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) throw new BadParam("'" + name + "' fuera de rango: " + raw);
+        return (int) v;
+    }
+
+    static long toLong(String name, String raw) {
+        if (raw == null) return 0;
+        try {
+            return Long.parseLong(raw.trim());
+        } catch (NumberFormatException e) {
+            throw new BadParam("'" + name + "' no es un entero: " + raw);
+        }
+    }
+
+    static double toDouble(String name, String raw) {
+        if (raw == null) return 0;
+        try {
+            double v = Double.parseDouble(raw.trim());
+            if (Double.isFinite(v)) return v;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new BadParam("'" + name + "' no es un número: " + raw);
+    }
+
+    static boolean toBoolean(String name, String raw) {
+        if (raw == null) return false;
+        return switch (raw.trim().toLowerCase(Locale.ROOT)) {
+            case "true", "1", "yes", "on" -> true;
+            case "false", "0", "no", "off" -> false;
+            default -> throw new BadParam("'" + name + "' no es un booleano: " + raw);
+        };
+    }
+
+    // ================== Invocación ==================
+
+    /** Resultado del método como cuerpo: String tal cual, byte[] ya codificado, lo demás a JSON. */
+    static String render(Object value, HttpResponse resp) {
+        if (value == null || value instanceof String) return (String) value;
+        if (value instanceof byte[] bytes) {
+            resp.body(bytes);
+            return null;
+        }
+        return JsonWriter.write(resp, value);
+    }
+
+    private static String badRequest(HttpResponse resp, BadParam e) {
+        resp.status(400).type("text/plain; charset=utf-8");
+        return "Bad Request: " + e.getMessage();
+    }
+
+    /** Método con extractores: {@code (HttpRequest, HttpResponse) -> Object}. */
+    private record Invoker(MethodHandle target) implements Service {
+        @Override
+        public String handle(HttpRequest req, HttpResponse resp) throws Exception {
+            Object value;
+            try {
+                value = (Object) target.invokeExact(req, resp);
+            } catch (BadParam e) {
+                return badRequest(resp, e);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+            return render(value, resp);
+        }
+    }
+
+    /** Método que devuelve un {@link CompletionStage}: se registra como ruta asíncrona. */
+    private record AsyncInvoker(MethodHandle target) implements AsyncService {
+        @Override
+        public CompletableFuture<String> handleAsync(HttpRequest req, HttpResponse resp) throws Exception {
+            CompletionStage<?> stage;
+            try {
+                stage = (CompletionStage<?>) target.invokeExact(req, resp);
+            } catch (BadParam e) {
+                return CompletableFuture.completedFuture(badRequest(resp, e));
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+            if (stage == null) return null;
+            return stage.toCompletableFuture().thenApply(value -> render(value, resp));
+        }
+    }
+}
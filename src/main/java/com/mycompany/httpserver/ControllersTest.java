@@ -0,0 +1,133 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ControllersTest {
+
+    @RestController("/api")
+    static class Api {
+        private final String greeting = "hola";
+
+        @GetMapping("/raw")
+        String raw(HttpRequest req, HttpResponse resp) {
+            return greeting + " " + req.getValues("name");
+        }
+
+        @GetMapping("/sum")
+        long sum(@RequestParam("a") long a, @RequestParam(value = "b", defaultValue = "10") int b) {
+            return a + b;
+        }
+
+        @GetMapping("/users/:id")
+        @PostMapping("/users/:id")
+        Map<String, Object> user(@PathVariable("id") long id, HttpRequest req,
+                                 @RequestParam(value = "verbose", required = false) boolean verbose, HttpResponse resp) {
+            resp.header("X-Method", req.getMethod());
+            return Map.of("id", id, "verbose", verbose);
+        }
+
+        @GetMapping("/ratio")
+        String ratio(@RequestParam("r") Double r, @RequestParam(value = "label", required = false) String label) {
+            return label + "=" + r;
+        }
+
+        @GetMapping("/later")
+        CompletableFuture<List<String>> later(@RequestParam("x") String x) {
+            return CompletableFuture.supplyAsync(() -> List.of(x, x));
+        }
+    }
+
+    // Sin @RestController: solo se registra a mano y no lo encuentra scan()
+    static class Unannotated {
+        @GetMapping("/bare")
+        void bare(HttpRequest req) {}
+
+        @GetMapping("/bad")
+        String bad(String missingAnnotation) {
+            return missingAnnotation;
+        }
+    }
+
+    static class UnsupportedType {
+        @GetMapping("/x")
+        String x(@RequestParam("d") java.time.Duration d) {
+            return "";
+        }
+    }
+
+    static class InvalidDefault {
+        @GetMapping("/x")
+        String x(@RequestParam(value = "n", defaultValue = "diez") int n) {
+            return "";
+        }
+    }
+
+    @Test
+    public void scan_findsAnnotatedControllersOnly() throws Exception {
+        List<Class<?>> found = Controllers.scan("com.mycompany.httpserver", ControllersTest.class.getClassLoader());
+        assertTrue(found.toString(), found.contains(Api.class));
+        assertFalse(found.contains(Unannotated.class));
+        assertTrue(Controllers.scan("com.mycompany.nothing.here", ControllersTest.class.getClassLoader()).isEmpty());
+    }
+
+    @Test
+    public void bind_usesGeneratedLambdaForServiceShapedMethods() throws Exception {
+        List<Controllers.Binding> bindings = Controllers.bind(new Api());
+        Controllers.Binding raw = bindings.stream().filter(b -> b.route().equals("/api/raw")).findFirst().orElseThrow();
+        assertTrue(raw.handler().getClass().isHidden()); // LambdaMetafactory, no un invocador genérico
+        assertEquals("hola ana", raw.handler().handle(new HttpRequest(URI.create("/api/raw?name=ana")), new HttpResponse()));
+        assertEquals(2, bindings.stream().filter(b -> b.route().equals("/api/users/:id")).count());
+        assertNotNull(bindings.stream().filter(b -> b.route().equals("/api/later")).findFirst().orElseThrow().async());
+    }
+
+    @Test
+    public void bind_failsAtStartupOnUnusableMethods() {
+        assertThrows(IllegalArgumentException.class, () -> Controllers.bind(new Unannotated()));
+        assertThrows(IllegalArgumentException.class, () -> Controllers.bind(new UnsupportedType()));
+        assertThrows(IllegalArgumentException.class, () -> Controllers.bind(new InvalidDefault()));
+        assertThrows(IllegalArgumentException.class, () -> Controllers.bind(new Object()));
+    }
+
+    @Test
+    public void scannedRoutes_bindParametersAndRenderResults() throws Exception {
+        WebServer server = new WebServer().scan("com.mycompany.httpserver").start(ServerConfig.port(0));
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            assertEquals("13", get(client, server, "/api/sum?a=3").body());
+            assertEquals("5", get(client, server, "/api/sum?a=3&b=2").body());
+            assertEquals("13", get(client, server, "/api/sum?a=3&b=x").body()); // con default: igual que getInt
+
+            java.net.http.HttpResponse<String> missing = get(client, server, "/api/sum");
+            assertEquals(400, missing.statusCode());
+            assertTrue(missing.body(), missing.body().contains("'a'"));
+            assertEquals(400, get(client, server, "/api/sum?a=tres").statusCode());
+
+            java.net.http.HttpResponse<String> user = get(client, server, "/api/users/42?verbose=true");
+            assertEquals(200, user.statusCode());
+            assertTrue(user.body(), user.body().contains("\"id\":42") && user.body().contains("\"verbose\":true"));
+            assertEquals("application/json; charset=utf-8", user.headers().firstValue("Content-Type").orElse(null));
+            assertEquals("GET", user.headers().firstValue("X-Method").orElse(null));
+            assertEquals(400, get(client, server, "/api/users/abc").statusCode());
+
+            assertEquals("null=2.5", get(client, server, "/api/ratio?r=2.5").body());
+            assertEquals("[\"z\",\"z\"]", get(client, server, "/api/later?x=z").body());
+            assertEquals(400, get(client, server, "/api/later").statusCode());
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    private static java.net.http.HttpResponse<String> get(HttpClient client, WebServer server, String path) throws Exception {
+        return client.send(java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString());
+    }
+}
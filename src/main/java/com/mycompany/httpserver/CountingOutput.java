@@ -0,0 +1,11 @@
+package com.mycompany.httpserver;
+
+/**
+ * Destino de respuesta que lleva la cuenta de lo escrito (cabecera y
+ * cuerpo); el access log la usa para los bytes de cada respuesta.
+ */
+interface CountingOutput {
+
+    /** Bytes escritos en la respuesta en curso. */
+    long written();
+}
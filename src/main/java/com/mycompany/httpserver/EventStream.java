@@ -0,0 +1,372 @@
+package com.mycompany.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Fan-out de Server-Sent Events por tópico (p.ej. un símbolo de bolsa). Cada
+ * tópico tiene un solo {@link Producer}: arranca con el primer suscriptor y
+ * se cierra con el último, así N clientes mirando lo mismo cuestan una sola
+ * fuente. Cada evento se codifica una vez y se encola en una cola acotada
+ * por cliente; al que no la vacía a tiempo se lo desconecta, y al reconectar
+ * con {@code Last-Event-ID} recupera lo que perdió del buffer de repetición.
+ * Se publica en una ruta con {@link WebServer#sse}.
+ */
+public final class EventStream {
+
+    /** Fuente de eventos de un tópico. */
+    @FunctionalInterface
+    public interface Producer {
+        /**
+         * Empieza a publicar eventos de {@code topic} en {@code out}. Lo
+         * devuelto (puede ser null) se cierra cuando el tópico queda sin suscriptores.
+         */
+        AutoCloseable start(String topic, Publisher out) throws Exception;
+    }
+
+    /** Canal de publicación de un tópico. */
+    @FunctionalInterface
+    public interface Publisher {
+        /** Publica {@code data} con nombre de evento {@code event} (null = "message"). */
+        void publish(String event, String data);
+    }
+
+    // Marca de fin en la cola de un suscriptor (se compara por identidad)
+    private static final byte[] END = new byte[0];
+
+    // Un hilo para todos los productores por sondeo: solo dispara fetches asíncronos
+    private static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sse-poller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Producer producer;
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+
+    // Ids crecientes entre tópicos y entre reinicios (base en el reloj): un
+    // Last-Event-ID de otra vida del servidor no se confunde con uno reciente
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private volatile int queueSize = 64;
+    private volatile int replaySize = 16;
+    private volatile long heartbeatMs = 15_000;
+    private volatile long retryMs = 3_000;
+    private volatile int maxTopics = 1024;
+
+    /** Sin productor: los eventos llegan solo por {@link #publish}. */
+    public EventStream() {
+        this(null);
+    }
+
+    public EventStream(Producer producer) {
+        this.producer = producer;
+    }
+
+    /**
+     * Productor que consulta {@code fetch} cada {@code period} mientras el
+     * tópico tenga suscriptores y publica solo si el resultado cambió. Si una
+     * consulta sigue en curso al llegar la siguiente, esa se saltea.
+     */
+    public static Producer polling(Duration period, Function<String, CompletableFuture<String>> fetch) {
+        long ms = period.toMillis();
+        if (ms < 1) throw new IllegalArgumentException("El período debe ser >= 1 ms: " + period);
+        Objects.requireNonNull(fetch);
+        return (topic, out) -> {
+            AtomicBoolean busy = new AtomicBoolean();
+            String[] last = {null}; // solo se toca dentro del callback, de a una consulta por vez
+            ScheduledFuture<?> task = POLLER.scheduleAtFixedRate(() -> {
+                if (!busy.compareAndSet(false, true)) return;
+                CompletableFuture<String> f;
+                try {
+                    f = fetch.apply(topic);
+                } catch (RuntimeException e) {
+                    busy.set(false);
+                    System.err.println("[sse] " + topic + ": " + e);
+                    return;
+                }
+                f.whenComplete((data, err) -> {
+                    if (data != null && !data.equals(last[0])) {
+                        last[0] = data;
+                        out.publish(null, data);
+                    }
+                    busy.set(false);
+                });
+            }, 0, ms, TimeUnit.MILLISECONDS);
+            return () -> task.cancel(false);
+        };
+    }
+
+    // ====== Configuración ======
+
+    /** Eventos pendientes por cliente (64); al llenarse el cliente se desconecta. */
+    public EventStream queueSize(int events) {
+        if (events < 1) throw new IllegalArgumentException("queueSize debe ser >= 1: " + events);
+        queueSize = events;
+        return this;
+    }
+
+    /** Últimos eventos por tópico que se repiten al reconectar con Last-Event-ID (16). */
+    public EventStream replay(int events) {
+        if (events < 1) throw new IllegalArgumentException("replay debe ser >= 1: " + events);
+        replaySize = events;
+        return this;
+    }
+
+    /** Intervalo del comentario vacío que mantiene viva la conexión sin eventos (15 s). */
+    public EventStream heartbeat(Duration interval) {
+        long ms = interval.toMillis();
+        if (ms < 1) throw new IllegalArgumentException("heartbeat debe ser >= 1 ms: " + interval);
+        heartbeatMs = ms;
+        return this;
+    }
+
+    /** Espera sugerida al navegador antes de reconectar (campo "retry", 3 s). */
+    public EventStream retry(Duration delay) {
+        if (delay.isNegative()) throw new IllegalArgumentException("retry debe ser >= 0: " + delay);
+        retryMs = delay.toMillis();
+        return this;
+    }
+
+    /** Tope de tópicos en memoria; los sin suscriptores se descartan para hacer lugar (1024). */
+    public EventStream maxTopics(int max) {
+        if (max < 1) throw new IllegalArgumentException("maxTopics debe ser >= 1: " + max);
+        maxTopics = max;
+        return this;
+    }
+
+    long heartbeatMs() {
+        return heartbeatMs;
+    }
+
+    long retryMs() {
+        return retryMs;
+    }
+
+    // ====== Publicación ======
+
+    /** Publica en {@code topic} aunque no tenga productor (p.ej. desde otro handler). */
+    public void publish(String topic, String event, String data) {
+        Topic t = topic(topic);
+        if (t != null) publish(t, event, data);
+    }
+
+    /** Clientes conectados a {@code topic}. */
+    public int subscribers(String topic) {
+        Topic t = topics.get(topic);
+        if (t == null) return 0;
+        synchronized (t) {
+            return t.subscribers.size();
+        }
+    }
+
+    private void publish(Topic t, String event, String data) {
+        synchronized (t) {
+            if (t.removed) return;
+            long id = sequence.incrementAndGet();
+            byte[] frame = encode(id, event, data);
+            t.replay.addLast(new Event(id, frame));
+            while (t.replay.size() > replaySize) t.replay.removeFirst();
+            for (Iterator<Subscription> it = t.subscribers.iterator(); it.hasNext(); ) {
+                Subscription s = it.next();
+                if (!s.queue.offer(frame)) { // cliente lento: se lo corta en vez de frenar a los demás
+                    it.remove();
+                    s.dropped = true;
+                    s.end();
+                }
+            }
+        }
+    }
+
+    /** "id", "event" y una línea "data" por línea de {@code data}, terminado en línea vacía. */
+    static byte[] encode(long id, String event, String data) {
+        StringBuilder sb = new StringBuilder(data.length() + 32);
+        sb.append("id: ").append(id).append('\n');
+        if (event != null) sb.append("event: ").append(event.replaceAll("[\r\n]", "")).append('\n');
+        int from = 0;
+        for (int i = 0; i <= data.length(); i++) {
+            char c = i < data.length() ? data.charAt(i) : '\n';
+            if (c != '\n' && c != '\r') continue;
+            sb.append("data: ").append(data, from, i).append('\n');
+            if (c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') i++;
+            from = i + 1;
+        }
+        return sb.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // ====== Suscripción ======
+
+    /**
+     * Suscribe un cliente a {@code topic}. Sin {@code lastEventId} (o con
+     * uno que no corresponde al tópico) recibe primero el último evento, que
+     * es el estado actual; con uno válido, los eventos posteriores que siguen
+     * en el buffer. Null si se alcanzó el tope de tópicos.
+     */
+    Subscription subscribe(String topic, String lastEventId) throws Exception {
+        long after = parseId(lastEventId);
+        while (true) {
+            Topic t = topic(topic);
+            if (t == null) return null;
+            synchronized (t) {
+                if (t.removed) continue; // se descartó entre la búsqueda y el lock
+                Subscription s = new Subscription(t, queueSize);
+                t.replayTo(s, after);
+                t.subscribers.add(s);
+                if (!t.producing && producer != null) {
+                    try {
+                        t.handle = producer.start(topic, (event, data) -> publish(t, event, data));
+                    } catch (Exception e) {
+                        t.subscribers.remove(s);
+                        throw e;
+                    }
+                    t.producing = true;
+                }
+                return s;
+            }
+        }
+    }
+
+    private Topic topic(String name) {
+        Topic t = topics.get(name);
+        if (t != null) return t;
+        if (topics.size() >= maxTopics) evictIdle();
+        if (topics.size() >= maxTopics) return null;
+        return topics.computeIfAbsent(name, Topic::new);
+    }
+
+    private void evictIdle() {
+        for (Topic t : topics.values()) {
+            synchronized (t) {
+                if (t.subscribers.isEmpty()) {
+                    t.removed = true;
+                    topics.remove(t.name, t);
+                }
+            }
+        }
+    }
+
+    private static long parseId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 19) return -1;
+        long v = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private record Event(long id, byte[] frame) {}
+
+    /** Estado de un tópico; todo se toca con su monitor tomado. */
+    private static final class Topic {
+        final String name;
+        final List<Subscription> subscribers = new ArrayList<>();
+        final ArrayDeque<Event> replay = new ArrayDeque<>();
+        AutoCloseable handle; // productor en marcha (puede ser null aunque produzca)
+        boolean producing;
+        boolean removed;
+
+        Topic(String name) {
+            this.name = name;
+        }
+
+        void replayTo(Subscription s, long after) {
+            if (replay.isEmpty()) return;
+            long newest = replay.peekLast().id();
+            if (after < 0 || after > newest) {
+                s.queue.offer(replay.peekLast().frame()); // sin id útil: solo el estado actual
+                return;
+            }
+            // Si se perdió más de lo que guarda el buffer, se repite todo lo que hay
+            int skip = 0;
+            for (Event e : replay) if (e.id() <= after) skip++;
+            // No más de lo que entra en la cola: lo más viejo se pierde
+            skip = Math.max(skip, replay.size() - s.queue.remainingCapacity());
+            Iterator<Event> it = replay.iterator();
+            for (int i = 0; it.hasNext(); i++) {
+                Event e = it.next();
+                if (i >= skip) s.queue.offer(e.frame());
+            }
+        }
+
+        void leave(Subscription s) {
+            subscribers.remove(s);
+            if (subscribers.isEmpty() && producing) {
+                producing = false;
+                AutoCloseable h = handle;
+                handle = null;
+                if (h != null) {
+                    try {
+                        h.close();
+                    } catch (Exception e) {
+                        System.err.println("[sse] " + name + ": " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Suscripción de un cliente: la escribe el hilo de su conexión. */
+    static final class Subscription implements AutoCloseable {
+        private final Topic topic;
+        private final ArrayBlockingQueue<byte[]> queue;
+        private volatile boolean ended;
+        private volatile boolean dropped;
+
+        private Subscription(Topic topic, int capacity) {
+            this.topic = topic;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Espera hasta {@code timeoutMs} y agrega a {@code batch} todo lo
+         * pendiente. Devuelve la cantidad de eventos agregados (0 si venció el plazo) o
+         * -1 si la suscripción terminó.
+         */
+        int poll(List<byte[]> batch, long timeoutMs) throws InterruptedException {
+            if (ended) return -1;
+            byte[] first = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+            if (first == null) return ended ? -1 : 0;
+            int before = batch.size();
+            batch.add(first);
+            queue.drainTo(batch);
+            if (ended || batch.removeIf(f -> f == END)) return -1;
+            return batch.size() - before;
+        }
+
+        /** Termina la suscripción: el hilo de la conexión sale de {@link #poll}. */
+        void end() {
+            ended = true;
+            queue.clear();
+            queue.offer(END);
+        }
+
+        /** ¿Se la cortó por no consumir a tiempo? */
+        boolean dropped() {
+            return dropped;
+        }
+
+        @Override
+        public void close() {
+            synchronized (topic) {
+                topic.leave(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EventStreamTest {
+
+    private static String text(List<byte[]> frames) {
+        StringBuilder sb = new StringBuilder();
+        for (byte[] f : frames) sb.append(new String(f, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    @Test
+    public void encode_splitsLinesIntoDataFields() {
+        assertEquals("id: 7\nevent: quote\ndata: a\ndata: b\ndata: \ndata: c\n\n",
+                new String(EventStream.encode(7, "quote", "a\r\nb\n\rc"), StandardCharsets.UTF_8));
+        assertEquals("id: 1\ndata: \n\n", new String(EventStream.encode(1, null, ""), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void oneProducerPerTopic_startsWithFirstAndStopsWithLastSubscriber() throws Exception {
+        AtomicInteger started = new AtomicInteger(), stopped = new AtomicInteger();
+        EventStream.Publisher[] out = new EventStream.Publisher[1];
+        EventStream stream = new EventStream((topic, publisher) -> {
+            started.incrementAndGet();
+            out[0] = publisher;
+            return stopped::incrementAndGet;
+        });
+
+        List<EventStream.Subscription> subs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) subs.add(stream.subscribe("IBM", null));
+        assertEquals(1, started.get());
+        assertEquals(5, stream.subscribers("IBM"));
+
+        out[0].publish(null, "{\"p\":1}");
+        for (EventStream.Subscription s : subs) {
+            List<byte[]> batch = new ArrayList<>();
+            assertEquals(1, s.poll(batch, 1000));
+            assertTrue(text(batch).endsWith("data: {\"p\":1}\n\n"));
+        }
+        for (EventStream.Subscription s : subs) s.close();
+        assertEquals(1, stopped.get());
+        assertEquals(0, stream.subscribers("IBM"));
+
+        // Un nuevo suscriptor vuelve a arrancar el productor y recibe el último estado
+        EventStream.Subscription again = stream.subscribe("IBM", null);
+        assertEquals(2, started.get());
+        List<byte[]> batch = new ArrayList<>();
+        assertEquals(1, again.poll(batch, 1000));
+        assertTrue(text(batch).contains("{\"p\":1}"));
+        again.close();
+    }
+
+    @Test
+    public void lastEventId_replaysOnlyMissedEvents() throws Exception {
+        EventStream stream = new EventStream().replay(8);
+        EventStream.Subscription first = stream.subscribe("t", null);
+        for (int i = 0; i < 5; i++) stream.publish("t", null, "e" + i);
+        List<byte[]> batch = new ArrayList<>();
+        assertEquals(5, first.poll(batch, 1000));
+        String secondId = text(batch.subList(1, 2)).substring(4, text(batch.subList(1, 2)).indexOf('\n'));
+        first.close();
+
+        EventStream.Subscription resumed = stream.subscribe("t", secondId);
+        batch.clear();
+        assertEquals(3, resumed.poll(batch, 1000));
+        assertTrue(text(batch).contains("data: e2\n") && text(batch).contains("data: e4\n"));
+        assertFalse(text(batch).contains("data: e1\n"));
+        resumed.close();
+
+        // Un id desconocido (p.ej. de otro servidor) solo trae el estado actual
+        EventStream.Subscription unknown = stream.subscribe("t", "not-an-id");
+        batch.clear();
+        assertEquals(1, unknown.poll(batch, 1000));
+        assertTrue(text(batch).contains("data: e4\n"));
+        unknown.close();
+    }
+
+    @Test
+    public void slowConsumer_isDroppedWithoutBlockingOthers() throws Exception {
+        EventStream stream = new EventStream().queueSize(4);
+        EventStream.Subscription slow = stream.subscribe("t", null);
+        EventStream.Subscription fast = stream.subscribe("t", null);
+        List<byte[]> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            stream.publish("t", null, "e" + i);
+            assertEquals(1, fast.poll(batch, 1000));
+        }
+        assertEquals(-1, slow.poll(batch, 1000));
+        assertTrue(slow.dropped());
+        assertFalse(fast.dropped());
+        assertEquals(1, stream.subscribers("t"));
+        slow.close();
+        fast.close();
+    }
+
+    @Test
+    public void maxTopics_evictsIdleTopicsAndRejectsWhenAllBusy() throws Exception {
+        EventStream stream = new EventStream().maxTopics(1);
+        EventStream.Subscription a = stream.subscribe("A", null);
+        assertNull(stream.subscribe("B", null));
+        a.close();
+        EventStream.Subscription b = stream.subscribe("B", null);
+        assertNotNull(b);
+        b.close();
+    }
+
+    @Test
+    public void sseRoute_streamsEventsAndHeartbeats_blocking() throws Exception {
+        streamsOverHttp(HttpServer.Engine.BLOCKING);
+    }
+
+    @Test
+    public void sseRoute_streamsEventsAndHeartbeats_nio() throws Exception {
+        streamsOverHttp(HttpServer.Engine.NIO);
+    }
+
+    private static void streamsOverHttp(HttpServer.Engine engine) throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch polled = new CountDownLatch(1);
+        EventStream stream = new EventStream(EventStream.polling(Duration.ofMillis(50), symbol -> {
+            fetches.incrementAndGet();
+            polled.countDown();
+            return CompletableFuture.completedFuture("{\"symbol\":\"" + symbol + "\"}"); // sin cambios: se publica una vez
+        })).heartbeat(Duration.ofMillis(100));
+        WebServer server = new WebServer().engine(engine).ioThreads(1)
+                .sse("/stream", stream, req -> req.getValues("s"))
+                .start(ServerConfig.port(0));
+        try (Socket a = new Socket("localhost", server.port()); Socket b = new Socket("localhost", server.port())) {
+            BufferedReader ra = open(a, "/stream?s=IBM");
+            BufferedReader rb = open(b, "/stream?s=IBM");
+            for (BufferedReader r : List.of(ra, rb)) {
+                String head = readUntil(r, "");
+                assertTrue(head, head.startsWith("HTTP/1.1 200"));
+                assertTrue(head, head.contains("Content-Type: text/event-stream; charset=utf-8"));
+                assertTrue(head, head.contains("Cache-Control: no-store"));
+                assertTrue(readUntil(r, "data: {\"symbol\":\"IBM\"}").contains("id: "));
+                // Sin eventos nuevos solo llegan heartbeats
+                assertTrue(readUntil(r, ":").length() > 0);
+            }
+            assertTrue(polled.await(5, TimeUnit.SECONDS));
+            assertEquals(2, stream.subscribers("IBM"));
+            assertEquals(2, server.metrics.sseClients.sum());
+
+            // Al detenerse el servidor los streams terminan (chunk final) sin esperar al plazo
+            assertTrue(server.stop(Duration.ofSeconds(5)));
+            assertEquals(0, stream.subscribers("IBM"));
+            int count = fetches.get();
+            Thread.sleep(200);
+            assertEquals("el productor se detuvo con el último suscriptor", count, fetches.get());
+        } finally {
+            server.stop(Duration.ofSeconds(1));
+        }
+    }
+
+    @Test
+    public void sseRoute_rejectsRequestsWithoutTopic() throws Exception {
+        WebServer server = new WebServer()
+                .sse("/stream", new EventStream(), req -> req.getValues("s").isEmpty() ? null : req.getValues("s"))
+                .start(ServerConfig.port(0));
+        try (Socket s = new Socket("localhost", server.port())) {
+            assertTrue(readUntil(open(s, "/stream"), "").startsWith("HTTP/1.1 400"));
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    private static BufferedReader open(Socket s, String path) throws Exception {
+        s.setSoTimeout(5000);
+        OutputStream out = s.getOutputStream();
+        out.write(("GET " + path + " HTTP/1.1\r\nHost: x\r\nAccept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /** Lee líneas hasta una que contenga {@code marker} (vacía = fin de la cabecera) y devuelve lo leído. */
+    private static String readUntil(BufferedReader r, String marker) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = r.readLine()) != null) {
+            sb.append(line).append('\n');
+            if (marker.isEmpty() ? line.isEmpty() : line.contains(marker)) return sb.toString();
+        }
+        fail("fin del stream sin encontrar " + marker + ": " + sb);
+        return null;
+    }
+}
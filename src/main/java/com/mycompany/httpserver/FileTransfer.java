@@ -0,0 +1,14 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Destino de respuesta capaz de enviar una región de archivo sin pasarla por
+ * un byte[] entero en el heap (transferTo o bloques acotados, según el motor).
+ */
+interface FileTransfer {
+
+    /** Envía {@code length} bytes de {@code file} desde {@code position}, después de lo ya escrito. */
+    void transfer(FileChannel file, long position, long length) throws IOException;
+}
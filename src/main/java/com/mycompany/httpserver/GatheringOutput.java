@@ -0,0 +1,25 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destino de respuesta que puede enviar cabecera y cuerpo juntos (una
+ * escritura con varios buffers) en lugar de dos escrituras seguidas.
+ */
+interface GatheringOutput {
+
+    /**
+     * Escribe {@code head[0..headLength)} seguido de {@code body[off..off+len)}.
+     * {@code head} puede reutilizarse al volver; {@code body} no debe
+     * modificarse después (el motor NIO lo envía más tarde sin copiarlo).
+     */
+    void writeGathered(byte[] head, int headLength, byte[] body, int off, int len) throws IOException;
+
+    /**
+     * Igual, con el cuerpo en un buffer (p.ej. un archivo mapeado): se envían
+     * sus bytes restantes sin copiarlos al heap. No se modifica la posición
+     * de {@code body}.
+     */
+    void writeGathered(byte[] head, int headLength, ByteBuffer body) throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.mycompany.httpserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Método de un {@link RestController} que atiende GET en la ruta dada
+ * (admite {@code :param} y comodín final, como {@link WebServer#get}).
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface GetMapping {
+    String value();
+}
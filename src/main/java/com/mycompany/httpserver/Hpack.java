@@ -0,0 +1,393 @@
+package com.mycompany.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * HPACK (RFC 7541): compresión de headers de HTTP/2. Una conexión tiene un
+ * {@link Decoder} para los bloques que llegan y un {@link Encoder} para los
+ * que envía; cada uno mantiene su tabla dinámica, que debe avanzar en el
+ * mismo orden que los bloques en la conexión.
+ *
+ * <p>Los nombres y valores se tratan como ISO-8859-1: cada byte es un char y
+ * no se pierde nada al ir y volver.
+ */
+final class Hpack {
+
+    /** Bloque de headers mal formado: es un error de conexión (COMPRESSION_ERROR). */
+    static final class HpackException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HpackException(String message) {
+            super(message);
+        }
+    }
+
+    // Tabla estática (índices 1..61); la dinámica sigue desde el 62
+    private static final String[][] STATIC = {
+            {":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"},
+            {":path", "/index.html"}, {":scheme", "http"}, {":scheme", "https"}, {":status", "200"},
+            {":status", "204"}, {":status", "206"}, {":status", "304"}, {":status", "400"},
+            {":status", "404"}, {":status", "500"}, {"accept-charset", ""}, {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""}, {"accept-ranges", ""}, {"accept", ""}, {"access-control-allow-origin", ""},
+            {"age", ""}, {"allow", ""}, {"authorization", ""}, {"cache-control", ""},
+            {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""}, {"content-length", ""},
+            {"content-location", ""}, {"content-range", ""}, {"content-type", ""}, {"cookie", ""},
+            {"date", ""}, {"etag", ""}, {"expect", ""}, {"expires", ""},
+            {"from", ""}, {"host", ""}, {"if-match", ""}, {"if-modified-since", ""},
+            {"if-none-match", ""}, {"if-range", ""}, {"if-unmodified-since", ""}, {"last-modified", ""},
+            {"link", ""}, {"location", ""}, {"max-forwards", ""}, {"proxy-authenticate", ""},
+            {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""},
+            {"retry-after", ""}, {"server", ""}, {"set-cookie", ""}, {"strict-transport-security", ""},
+            {"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""},
+            {"www-authenticate", ""}
+    };
+
+    // Código Huffman de cada símbolo (0..255 y EOS = 256), alineado a la derecha, y su largo en bits (Apéndice B)
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+            0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+            0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+            0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+            0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+            0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+            0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+            0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+            0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+            0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+            0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+            0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+            0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+            0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+            0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+            0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+            0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+            0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+            0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+            0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+            0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee,
+            0x3fffffff
+    };
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+    private static final int EOS = 256;
+
+    // Árbol de decodificación: nodo i tiene hijos TREE[2i] (bit 0) y TREE[2i+1] (bit 1);
+    // un valor negativo es una hoja con el símbolo ~valor
+    private static final int[] TREE = buildTree();
+
+    private Hpack() {
+    }
+
+    private static int[] buildTree() {
+        int[] tree = new int[2 * 512];
+        int nodes = 1;
+        for (int sym = 0; sym <= EOS; sym++) {
+            int node = 0;
+            for (int bit = HUFFMAN_LENGTHS[sym] - 1; bit >= 0; bit--) {
+                int slot = 2 * node + ((HUFFMAN_CODES[sym] >>> bit) & 1);
+                if (bit == 0) {
+                    tree[slot] = ~sym;
+                } else {
+                    if (tree[slot] == 0) tree[slot] = nodes++;
+                    node = tree[slot];
+                }
+            }
+        }
+        return tree;
+    }
+
+    // ================== Tabla dinámica ==================
+
+    /** Entradas más nuevas primero; el tamaño cuenta nombre + valor + 32 por entrada (§4.1). */
+    private static final class Table {
+        private final List<String[]> entries = new ArrayList<>();
+        private int size;
+        private int maxSize;
+
+        Table(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        void add(String name, String value) {
+            int entrySize = name.length() + value.length() + 32;
+            if (entrySize > maxSize) { // no entra ni sola: la tabla queda vacía (§4.4)
+                entries.clear();
+                size = 0;
+                return;
+            }
+            while (size + entrySize > maxSize) evictOldest();
+            entries.add(0, new String[]{name, value});
+            size += entrySize;
+        }
+
+        void resize(int newMax) {
+            maxSize = newMax;
+            while (size > maxSize) evictOldest();
+        }
+
+        private void evictOldest() {
+            String[] e = entries.remove(entries.size() - 1);
+            size -= e[0].length() + e[1].length() + 32;
+        }
+
+        /** Entrada del índice combinado (estática + dinámica), o null si no existe. */
+        String[] get(int index) {
+            if (index >= 1 && index <= STATIC.length) return STATIC[index - 1];
+            int i = index - STATIC.length - 1;
+            return i >= 0 && i < entries.size() ? entries.get(i) : null;
+        }
+
+        /** Índice con nombre y valor iguales, o -(índice) si solo coincide el nombre, o 0. */
+        int find(String name, String value) {
+            int nameOnly = 0;
+            for (int i = 0; i < STATIC.length; i++) {
+                if (!STATIC[i][0].equals(name)) continue;
+                if (STATIC[i][1].equals(value)) return i + 1;
+                if (nameOnly == 0) nameOnly = -(i + 1);
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                String[] e = entries.get(i);
+                if (!e[0].equals(name)) continue;
+                if (e[1].equals(value)) return STATIC.length + 1 + i;
+                if (nameOnly == 0) nameOnly = -(STATIC.length + 1 + i);
+            }
+            return nameOnly;
+        }
+    }
+
+    // ================== Decodificación ==================
+
+    static final class Decoder {
+        private final Table table;
+        private final int maxTableSize;   // lo anunciado en SETTINGS_HEADER_TABLE_SIZE
+
+        Decoder(int maxTableSize) {
+            this.table = new Table(maxTableSize);
+            this.maxTableSize = maxTableSize;
+        }
+
+        /**
+         * Decodifica un bloque completo y agrega a {@code out} pares nombre,
+         * valor en orden. Siempre procesa el bloque entero, aunque los headers
+         * sean demasiados, para que la tabla dinámica no se desincronice.
+         */
+        void decode(byte[] b, int from, int to, List<String> out) throws HpackException {
+            int[] pos = {from};
+            boolean headerSeen = false;
+            while (pos[0] < to) {
+                int first = b[pos[0]] & 0xff;
+                if ((first & 0x80) != 0) {                       // 1xxxxxxx: indexado
+                    int index = readInt(b, pos, to, 7);
+                    String[] e = table.get(index);
+                    if (e == null) throw new HpackException("índice fuera de la tabla: " + index);
+                    out.add(e[0]);
+                    out.add(e[1]);
+                    headerSeen = true;
+                } else if ((first & 0xc0) == 0x40) {             // 01xxxxxx: literal que se indexa
+                    String[] e = literal(b, pos, to, 6);
+                    table.add(e[0], e[1]);
+                    out.add(e[0]);
+                    out.add(e[1]);
+                    headerSeen = true;
+                } else if ((first & 0xe0) == 0x20) {             // 001xxxxx: cambio de tamaño de tabla
+                    if (headerSeen) throw new HpackException("cambio de tamaño de tabla después de un header");
+                    int size = readInt(b, pos, to, 5);
+                    if (size > maxTableSize) throw new HpackException("tamaño de tabla " + size + " > " + maxTableSize);
+                    table.resize(size);
+                } else {                                         // 0000xxxx / 0001xxxx: literal sin indexar
+                    String[] e = literal(b, pos, to, 4);
+                    out.add(e[0]);
+                    out.add(e[1]);
+                    headerSeen = true;
+                }
+            }
+        }
+
+        private String[] literal(byte[] b, int[] pos, int to, int prefix) throws HpackException {
+            int index = readInt(b, pos, to, prefix);
+            String name;
+            if (index == 0) {
+                name = readString(b, pos, to);
+            } else {
+                String[] e = table.get(index);
+                if (e == null) throw new HpackException("índice fuera de la tabla: " + index);
+                name = e[0];
+            }
+            return new String[]{name, readString(b, pos, to)};
+        }
+    }
+
+    /** Entero con prefijo de {@code prefix} bits (§5.1); avanza {@code pos[0]}. */
+    static int readInt(byte[] b, int[] pos, int to, int prefix) throws HpackException {
+        int max = (1 << prefix) - 1;
+        int value = b[pos[0]++] & max;
+        if (value < max) return value;
+        for (int shift = 0; ; shift += 7) {
+            if (pos[0] >= to) throw new HpackException("entero truncado");
+            if (shift > 21) throw new HpackException("entero demasiado grande");
+            int next = b[pos[0]++] & 0xff;
+            value += (next & 0x7f) << shift;
+            if ((next & 0x80) == 0) return value;
+        }
+    }
+
+    private static String readString(byte[] b, int[] pos, int to) throws HpackException {
+        if (pos[0] >= to) throw new HpackException("string truncado");
+        boolean huffman = (b[pos[0]] & 0x80) != 0;
+        int length = readInt(b, pos, to, 7);
+        if (length > to - pos[0]) throw new HpackException("string truncado");
+        int start = pos[0];
+        pos[0] += length;
+        return huffman ? huffmanDecode(b, start, start + length)
+                : new String(b, start, length, StandardCharsets.ISO_8859_1);
+    }
+
+    static String huffmanDecode(byte[] b, int from, int to) throws HpackException {
+        StringBuilder sb = new StringBuilder((to - from) * 8 / 5);
+        int node = 0;
+        int pendingBits = 0;   // bits leídos desde el último símbolo
+        boolean allOnes = true;
+        for (int i = from; i < to; i++) {
+            int octet = b[i] & 0xff;
+            for (int bit = 7; bit >= 0; bit--) {
+                int one = (octet >>> bit) & 1;
+                int next = TREE[2 * node + one];
+                pendingBits++;
+                allOnes &= one == 1;
+                if (next < 0) {
+                    int sym = ~next;
+                    if (sym == EOS) throw new HpackException("EOS dentro de un string Huffman");
+                    sb.append((char) sym);
+                    node = 0;
+                    pendingBits = 0;
+                    allOnes = true;
+                } else {
+                    node = next;
+                }
+            }
+        }
+        // El relleno final es un prefijo de EOS (solo unos) de menos de 8 bits (§5.2)
+        if (pendingBits > 7 || !allOnes) throw new HpackException("relleno Huffman inválido");
+        return sb.toString();
+    }
+
+    // ================== Codificación ==================
+
+    static final class Encoder {
+        // Cambian en cada respuesta: indexarlos solo desplazaría entradas útiles de la tabla
+        private static final Set<String> NOT_INDEXED = Set.of(
+                "content-length", "content-range", "date", "etag", "last-modified", "location", "set-cookie",
+                "retry-after", ":path");
+
+        private final Table table;
+        private int pendingResize = -1;
+
+        Encoder(int maxTableSize) {
+            this.table = new Table(maxTableSize);
+        }
+
+        /** El par anunció otro SETTINGS_HEADER_TABLE_SIZE: se avisa al comienzo del próximo bloque. */
+        void maxTableSize(int size) {
+            pendingResize = size;
+        }
+
+        /** Codifica pares nombre, valor (nombres ya en minúscula). */
+        void encode(List<String> headers, ByteArrayOutputStream out) {
+            if (pendingResize >= 0) {
+                table.resize(pendingResize);
+                writeInt(out, 0x20, 5, pendingResize);
+                pendingResize = -1;
+            }
+            for (int i = 0; i < headers.size(); i += 2) {
+                String name = headers.get(i);
+                String value = headers.get(i + 1);
+                int found = table.find(name, value);
+                if (found > 0) {
+                    writeInt(out, 0x80, 7, found);
+                } else if (NOT_INDEXED.contains(name)) {
+                    writeInt(out, 0x00, 4, -found);
+                    if (found == 0) writeString(out, name);
+                    writeString(out, value);
+                } else {
+                    writeInt(out, 0x40, 6, -found);
+                    if (found == 0) writeString(out, name);
+                    writeString(out, value);
+                    table.add(name, value);
+                }
+            }
+        }
+    }
+
+    static void writeInt(ByteArrayOutputStream out, int pattern, int prefix, int value) {
+        int max = (1 << prefix) - 1;
+        if (value < max) {
+            out.write(pattern | value);
+            return;
+        }
+        out.write(pattern | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /** String con Huffman si así ocupa menos. */
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        long bits = 0;
+        for (int i = 0; i < s.length(); i++) bits += HUFFMAN_LENGTHS[s.charAt(i) & 0xff];
+        int huffmanLength = (int) ((bits + 7) / 8);
+        if (huffmanLength >= s.length()) {
+            writeInt(out, 0x00, 7, s.length());
+            for (int i = 0; i < s.length(); i++) out.write(s.charAt(i));
+            return;
+        }
+        writeInt(out, 0x80, 7, huffmanLength);
+        long acc = 0;
+        int accBits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int sym = s.charAt(i) & 0xff;
+            acc = (acc << HUFFMAN_LENGTHS[sym]) | HUFFMAN_CODES[sym];
+            accBits += HUFFMAN_LENGTHS[sym];
+            while (accBits >= 8) {
+                accBits -= 8;
+                out.write((int) (acc >>> accBits));
+            }
+        }
+        if (accBits > 0) out.write((int) ((acc << (8 - accBits)) | (0xff >>> accBits))); // relleno con unos
+    }
+}
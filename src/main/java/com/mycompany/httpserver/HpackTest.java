@@ -0,0 +1,85 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HpackTest {
+
+    private static byte[] hex(String s) {
+        return HexFormat.of().parseHex(s.replace(" ", ""));
+    }
+
+    private static List<String> decode(Hpack.Decoder decoder, String hex) throws Exception {
+        byte[] b = hex(hex);
+        List<String> out = new ArrayList<>();
+        decoder.decode(b, 0, b.length, out);
+        return out;
+    }
+
+    @Test
+    public void decodesRfcRequestsWithHuffman_sharingTheDynamicTable() throws Exception {
+        // RFC 7541, C.4: tres peticiones seguidas sobre la misma conexión
+        Hpack.Decoder decoder = new Hpack.Decoder(4096);
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decode(decoder, "8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"));
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                        "cache-control", "no-cache"),
+                decode(decoder, "8286 84be 5886 a8eb 1064 9cbf"));
+        assertEquals(List.of(":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com",
+                        "custom-key", "custom-value"),
+                decode(decoder, "8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf"));
+    }
+
+    @Test
+    public void encoderOutputRoundTrips_andReusesTheTable() throws Exception {
+        Hpack.Encoder encoder = new Hpack.Encoder(4096);
+        Hpack.Decoder decoder = new Hpack.Decoder(4096);
+        List<String> headers = List.of(":status", "200", "content-type", "text/html; charset=utf-8",
+                "date", "Sun, 18 Oct 2026 10:00:00 GMT", "x-trace", "ÁÉÿ raw");
+        int previous = Integer.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            encoder.encode(headers, block);
+            byte[] b = block.toByteArray();
+            List<String> out = new ArrayList<>();
+            decoder.decode(b, 0, b.length, out);
+            assertEquals(headers, out);
+            assertTrue(b.length <= previous);
+            previous = b.length;
+        }
+        // Los indexados ya van como un byte cada uno; la fecha siempre literal
+        assertTrue(previous < 30);
+    }
+
+    @Test
+    public void tableSizeUpdateIsSentBeforeTheNextBlock() throws Exception {
+        Hpack.Encoder encoder = new Hpack.Encoder(4096);
+        Hpack.Decoder decoder = new Hpack.Decoder(4096);
+        encoder.maxTableSize(0);
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        encoder.encode(List.of("x-a", "1"), block);
+        byte[] b = block.toByteArray();
+        assertEquals(0x20, b[0]);
+        List<String> out = new ArrayList<>();
+        decoder.decode(b, 0, b.length, out);
+        assertEquals(List.of("x-a", "1"), out);
+    }
+
+    @Test
+    public void rejectsMalformedBlocks() {
+        Hpack.Decoder decoder = new Hpack.Decoder(4096);
+        // Índice fuera de la tabla, entero truncado, string más largo que el bloque, relleno que no es de unos
+        assertThrows(Hpack.HpackException.class, () -> decode(decoder, "be"));
+        assertThrows(Hpack.HpackException.class, () -> decode(decoder, "ff"));
+        assertThrows(Hpack.HpackException.class, () -> decode(decoder, "4085 6162"));
+        assertThrows(Hpack.HpackException.class, () -> decode(new Hpack.Decoder(4096), "4081 00 00"));
+        // Cambio de tamaño mayor al anunciado
+        assertThrows(Hpack.HpackException.class, () -> decode(new Hpack.Decoder(4096), "3fe2 1f"));
+    }
+}
@@ -0,0 +1,1095 @@
+package com.mycompany.httpserver;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * HTTP/2 sin TLS (h2c, RFC 9113) sobre una conexión del motor bloqueante.
+ * El hilo de la conexión lee los frames; cada stream se atiende en su propio
+ * hilo virtual con el mismo {@link WebServer#respond} de HTTP/1.1, así que
+ * handlers, estáticos, compresión y métricas no cambian.
+ *
+ * <p>El servidor escribe la respuesta como siempre (línea de estado, headers
+ * y cuerpo); {@link StreamOutput} la traduce a HEADERS + DATA. Como la
+ * petición llega con versión "HTTP/2.0", el cuerpo nunca sale chunked.
+ *
+ * <p>Control de flujo: los DATA que se envían respetan la ventana del stream
+ * y la de la conexión (el hilo espera un WINDOW_UPDATE si se agotan). Del
+ * lado que recibe, la ventana de la conexión se devuelve enseguida y la de
+ * cada stream recién cuando el handler consume el cuerpo, así un cliente
+ * rápido no llena la memoria.
+ */
+final class Http2Connection {
+
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    static final byte[] SWITCHING_PROTOCOLS =
+            "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    // Versión con la que los streams llegan a los handlers
+    static final String VERSION = "HTTP/2.0";
+
+    // Tipos de frame
+    private static final int DATA = 0x0, HEADERS = 0x1, PRIORITY = 0x2, RST_STREAM = 0x3, SETTINGS = 0x4,
+            PUSH_PROMISE = 0x5, PING = 0x6, GOAWAY = 0x7, WINDOW_UPDATE = 0x8, CONTINUATION = 0x9;
+
+    // Flags
+    private static final int END_STREAM = 0x1, ACK = 0x1, END_HEADERS = 0x4, PADDED = 0x8, PRIORITY_FLAG = 0x20;
+
+    // Códigos de error
+    static final int NO_ERROR = 0x0, PROTOCOL_ERROR = 0x1, INTERNAL_ERROR = 0x2, FLOW_CONTROL_ERROR = 0x3,
+            STREAM_CLOSED = 0x5, FRAME_SIZE_ERROR = 0x6, REFUSED_STREAM = 0x7, COMPRESSION_ERROR = 0x9,
+            ENHANCE_YOUR_CALM = 0xb;
+
+    // Settings
+    private static final int HEADER_TABLE_SIZE = 0x1, ENABLE_PUSH = 0x2, MAX_CONCURRENT_STREAMS = 0x3,
+            INITIAL_WINDOW_SIZE = 0x4, MAX_FRAME_SIZE = 0x5, MAX_HEADER_LIST_SIZE = 0x6;
+
+    // Streams atendidos a la vez por conexión; los que exceden reciben REFUSED_STREAM
+    static final int MAX_STREAMS = 100;
+
+    private static final int DEFAULT_WINDOW = 65_535;
+    private static final int DEFAULT_FRAME = 16_384;
+    private static final int TABLE_SIZE = 4096;
+
+    // Espera, tras el último stream del drenado, a que el cliente cierre su lado (§6.8)
+    private static final long LINGER_MS = 1000;
+
+    // Headers de HTTP/1.1 que no existen en HTTP/2 (§8.2.2)
+    private static final Set<String> CONNECTION_HEADERS =
+            Set.of("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+    /** Error de protocolo: de la conexión (stream 0, se responde GOAWAY) o de un stream (RST_STREAM). */
+    static final class Http2Exception extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+        final int stream;
+
+        Http2Exception(int code, int stream, String message) {
+            super(message);
+            this.code = code;
+            this.stream = stream;
+        }
+    }
+
+    /** Estado de un stream abierto. Las ventanas de envío se protegen con {@code lock}. */
+    private static final class Stream {
+        final int id;
+        int sendWindow;
+        final AtomicInteger recvWindow = new AtomicInteger(DEFAULT_WINDOW);
+        final AtomicInteger unacked = new AtomicInteger();   // bytes ya leídos por el handler sin WINDOW_UPDATE
+        NioServer.BodyPipe pipe;                              // null si la petición no trae cuerpo
+        long declaredLength = -1;
+        long received;
+        int rejectStatus;                                     // != 0: se responde esto sin llamar al handler
+        volatile boolean remoteClosed;
+        volatile boolean reset;
+
+        Stream(int id, int sendWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+        }
+    }
+
+    private final WebServer server;
+    private final Executor workers;
+    private final Socket socket;
+    private final InetAddress remote;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final BooleanSupplier begin;   // primer stream activo: la conexión pasa a ocupada
+    private final Runnable end;            // último stream terminado: vuelve a inactiva
+    private final int maxHeaderBytes;
+    private final long maxBodyBytes;
+
+    // ---- Lector (solo el hilo de la conexión) ----
+    private final Hpack.Decoder decoder = new Hpack.Decoder(TABLE_SIZE);
+    private final byte[] payload = new byte[DEFAULT_FRAME];
+    private byte[] block = new byte[1024];   // bloque de headers acumulado (HEADERS + CONTINUATION)
+    private int blockLength, blockStream, blockFlags;
+    private int continuing;                  // stream que espera CONTINUATION, 0 si ninguno
+    private volatile int lastStreamId;       // lo lee también goAway() desde otros hilos
+    private Thread reader;
+    private final CountDownLatch readerDone = new CountDownLatch(1);
+
+    // ---- Estado compartido: streams y ventanas de envío ----
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition windowOpen = lock.newCondition();
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private int sendWindow = DEFAULT_WINDOW;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+    private boolean closed, goAwaySent;
+    private volatile boolean goAwayReceived, socketClosed;   // socketClosed: lo cerró (o semicerró) release()
+    private volatile int peerMaxFrame = DEFAULT_FRAME;
+
+    // ---- Escritura: frames enteros y el encoder HPACK, en el orden del socket ----
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Hpack.Encoder encoder = new Hpack.Encoder(TABLE_SIZE);
+    private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream(256);
+    private final byte[] frameHead = new byte[9];
+    private int encoderTableSize = TABLE_SIZE;
+
+    Http2Connection(WebServer server, Executor workers, Socket socket, InputStream in, OutputStream out,
+                    BooleanSupplier begin, Runnable end, int maxHeaderBytes, long maxBodyBytes) {
+        this.server = server;
+        this.workers = workers;
+        this.socket = socket;
+        this.remote = socket.getInetAddress();
+        this.in = new DataInputStream(new BufferedInputStream(in, DEFAULT_FRAME));
+        this.out = out;
+        this.begin = begin;
+        this.end = end;
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    // ================== Entrada ==================
+
+    /**
+     * Settings de un pedido de Upgrade a h2c (Upgrade: h2c + HTTP2-Settings
+     * en base64url), o null si la petición no lo pide o no se puede cambiar
+     * de protocolo: con cuerpo habría que leerlo entero en HTTP/1.1 antes.
+     */
+    static byte[] upgradeSettings(HttpRequest req) {
+        String upgrade = req.getHeader("Upgrade");
+        String connection = req.getHeader("Connection");
+        String settings = req.getHeader("HTTP2-Settings");
+        if (upgrade == null || connection == null || settings == null) return null;
+        if (!hasToken(upgrade, "h2c") || !hasToken(connection, "upgrade")) return null;
+        if (req.getHeader("Transfer-Encoding") != null || HttpServer.contentLength(req) != 0) return null;
+        try {
+            byte[] b = Base64.getUrlDecoder().decode(settings.trim());
+            return b.length % 6 == 0 ? b : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean hasToken(String header, String token) {
+        for (String t : header.split(",")) {
+            if (t.trim().equalsIgnoreCase(token)) return true;
+        }
+        return false;
+    }
+
+    /** Conexión con el cupo lleno que abrió con el prefacio: se le avisa con GOAWAY sin atender nada. */
+    static void refuse(OutputStream out) throws IOException {
+        byte[] settings = {0, 0, 0, SETTINGS, 0, 0, 0, 0, 0};
+        byte[] goAway = {0, 0, 8, GOAWAY, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, REFUSED_STREAM};
+        out.write(settings);
+        out.write(goAway);
+        out.flush();
+    }
+
+    /** Atiende la conexión después del prefacio (conocimiento previo); vuelve cuando se cierra. */
+    void serve() throws IOException {
+        serve(null, null);
+    }
+
+    /**
+     * Atiende una conexión que pidió Upgrade: el 101 ya salió, {@code req}
+     * es el stream 1 (ya sin cuerpo) y después llega el prefacio del cliente.
+     */
+    void serveUpgrade(HttpRequest req, byte[] settings) throws IOException {
+        serve(req, settings);
+    }
+
+    private void serve(HttpRequest upgraded, byte[] upgradeSettings) throws IOException {
+        reader = Thread.currentThread();
+        try {
+            writeSettings();
+            if (upgraded != null) {
+                applySettings(upgradeSettings, 0, upgradeSettings.length);
+                lastStreamId = 1;
+                Stream s = open(1);
+                if (s == null) return;
+                s.remoteClosed = true;
+                dispatch(s, upgraded);
+                byte[] preface = new byte[PREFACE.length];
+                in.readFully(preface);
+                if (!Arrays.equals(preface, PREFACE)) throw connectionError(PROTOCOL_ERROR, "prefacio inválido");
+            }
+            readFrames();
+        } catch (Http2Exception e) {
+            goAway(e.code, e.getMessage());
+        } catch (EOFException e) {
+            // El cliente cerró la conexión
+        } catch (IOException e) {
+            if (!socketClosed) throw e; // cerrada por release() al terminar el drenado
+        } finally {
+            shutdown();
+            readerDone.countDown();
+        }
+    }
+
+    private void readFrames() throws IOException {
+        byte[] head = new byte[9];
+        boolean first = true;
+        while (true) {
+            int b0;
+            try {
+                b0 = in.read();
+            } catch (SocketTimeoutException idle) {
+                // Sin streams en curso es una conexión ociosa; con streams, solo el cliente está callado
+                if (isIdle()) {
+                    goAway(NO_ERROR, null);
+                    return;
+                }
+                continue;
+            }
+            if (b0 < 0) return;
+            head[0] = (byte) b0;
+            in.readFully(head, 1, 8);
+            int length = (b0 << 16) | ((head[1] & 0xff) << 8) | (head[2] & 0xff);
+            int type = head[3] & 0xff;
+            int flags = head[4] & 0xff;
+            int stream = int32(head, 5) & 0x7fffffff;
+            if (length > payload.length) throw connectionError(FRAME_SIZE_ERROR, "frame de " + length + " bytes");
+            in.readFully(payload, 0, length);
+
+            if (first && type != SETTINGS) throw connectionError(PROTOCOL_ERROR, "el primer frame debe ser SETTINGS");
+            first = false;
+            if (continuing != 0 && (type != CONTINUATION || stream != continuing)) {
+                throw connectionError(PROTOCOL_ERROR, "se esperaba CONTINUATION del stream " + continuing);
+            }
+            try {
+                switch (type) {
+                    case DATA -> onData(stream, flags, length);
+                    case HEADERS -> onHeaders(stream, flags, length);
+                    case PRIORITY -> onPriority(stream, length);
+                    case RST_STREAM -> onReset(stream, length);
+                    case SETTINGS -> onSettings(stream, flags, length);
+                    case PUSH_PROMISE -> throw connectionError(PROTOCOL_ERROR, "PUSH_PROMISE de un cliente");
+                    case PING -> onPing(stream, flags, length);
+                    case GOAWAY -> onGoAway(stream);
+                    case WINDOW_UPDATE -> onWindowUpdate(stream, length);
+                    case CONTINUATION -> onContinuation(stream, flags, length);
+                    default -> { } // tipos desconocidos se ignoran (§5.5)
+                }
+            } catch (Http2Exception e) {
+                if (e.stream == 0) throw e;
+                reset(e.stream, e.code);
+            }
+            if (goAwayReceived && isIdle()) return;
+        }
+    }
+
+    // ================== Frames recibidos ==================
+
+    private void onData(int id, int flags, int length) throws IOException {
+        if (id == 0) throw connectionError(PROTOCOL_ERROR, "DATA en el stream 0");
+        int from = 0, to = length;
+        if ((flags & PADDED) != 0) {
+            if (length == 0) throw connectionError(FRAME_SIZE_ERROR, "DATA con relleno vacío");
+            from = 1;
+            to = length - (payload[0] & 0xff);
+            if (to < from) throw connectionError(PROTOCOL_ERROR, "relleno más largo que el frame");
+        }
+        // La ventana de la conexión se devuelve enseguida: el límite real lo pone cada stream
+        if (length > 0) windowUpdate(0, length);
+
+        Stream s = stream(id);
+        if (s == null) {
+            if (id > lastStreamId) throw connectionError(PROTOCOL_ERROR, "DATA en el stream " + id + " sin abrir");
+            return; // stream ya terminado o reseteado: pueden quedar frames en camino
+        }
+        if (s.remoteClosed) throw new Http2Exception(STREAM_CLOSED, id, "DATA después de END_STREAM");
+        if (s.recvWindow.addAndGet(-length) < 0) throw new Http2Exception(FLOW_CONTROL_ERROR, id, "ventana del stream excedida");
+
+        int n = to - from;
+        s.received += n;
+        if (s.received > maxBodyBytes) {
+            s.pipe.fail(new BodyDecoder.BodyException(413, "cuerpo de más de " + maxBodyBytes + " bytes"));
+        } else if (n > 0) {
+            s.pipe.offer(payload, from, n);
+        }
+        if ((flags & END_STREAM) != 0) {
+            endOfBody(s);
+            return;
+        }
+        // Ventana del stream: se devuelve si el handler no va atrasado; si no, cuando lea (ver credit)
+        s.unacked.addAndGet(length);
+        if (s.received <= maxBodyBytes && !s.pipe.pauseIfFull()) credit(s);
+    }
+
+    private void endOfBody(Stream s) {
+        s.remoteClosed = true;
+        if (s.declaredLength >= 0 && s.received != s.declaredLength) {
+            s.pipe.fail(new BodyDecoder.BodyException(400, "el cuerpo no coincide con content-length"));
+        } else {
+            s.pipe.end();
+        }
+    }
+
+    /** Devuelve al cliente la ventana que el handler ya consumió. Corre en el lector o en el hilo del handler. */
+    private void credit(Stream s) {
+        int n = s.unacked.getAndSet(0);
+        if (n <= 0 || s.reset || s.remoteClosed) return;
+        s.recvWindow.addAndGet(n);
+        try {
+            windowUpdate(s.id, n);
+        } catch (IOException e) {
+            // La conexión se cayó: el lector se entera por su lado
+        }
+    }
+
+    private void onHeaders(int id, int flags, int length) throws IOException {
+        if (id == 0 || (id & 1) == 0) throw connectionError(PROTOCOL_ERROR, "HEADERS en el stream " + id);
+        int from = 0, to = length;
+        if ((flags & PADDED) != 0) {
+            if (length == 0) throw connectionError(FRAME_SIZE_ERROR, "HEADERS con relleno vacío");
+            from = 1;
+            to = length - (payload[0] & 0xff);
+        }
+        if ((flags & PRIORITY_FLAG) != 0) from += 5; // dependencia y peso: se ignoran
+        if (to < from) throw connectionError(PROTOCOL_ERROR, "HEADERS mal formado");
+
+        blockLength = 0;
+        blockStream = id;
+        blockFlags = flags;
+        appendBlock(from, to);
+        if ((flags & END_HEADERS) != 0) {
+            endOfHeaders();
+        } else {
+            continuing = id;
+        }
+    }
+
+    private void onContinuation(int id, int flags, int length) throws IOException {
+        if (continuing == 0 || id != continuing) throw connectionError(PROTOCOL_ERROR, "CONTINUATION inesperado");
+        appendBlock(0, length);
+        if ((flags & END_HEADERS) != 0) {
+            continuing = 0;
+            endOfHeaders();
+        }
+    }
+
+    private void appendBlock(int from, int to) throws Http2Exception {
+        int n = to - from;
+        // El bloque comprimido nunca debería superar a los headers sin comprimir
+        if (blockLength + n > 2 * maxHeaderBytes) throw connectionError(ENHANCE_YOUR_CALM, "bloque de headers demasiado grande");
+        if (blockLength + n > block.length) block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + n));
+        System.arraycopy(payload, from, block, blockLength, n);
+        blockLength += n;
+    }
+
+    private void endOfHeaders() throws IOException {
+        int id = blockStream;
+        boolean endStream = (blockFlags & END_STREAM) != 0;
+        List<String> fields = new ArrayList<>(32);
+        try {
+            // Se decodifica siempre, aunque el stream se descarte: la tabla dinámica no puede saltearse bloques
+            decoder.decode(block, 0, blockLength, fields);
+        } catch (Hpack.HpackException e) {
+            throw connectionError(COMPRESSION_ERROR, e.getMessage());
+        }
+
+        if (id <= lastStreamId) {
+            // Trailers: cierran el cuerpo y su contenido se ignora
+            Stream s = stream(id);
+            if (s == null || s.remoteClosed) throw new Http2Exception(STREAM_CLOSED, id, "HEADERS en un stream cerrado");
+            if (!endStream) throw new Http2Exception(PROTOCOL_ERROR, id, "trailers sin END_STREAM");
+            endOfBody(s);
+            return;
+        }
+        lastStreamId = id;
+
+        HttpRequest req = request(id, fields);
+        Stream s = open(id);
+        if (s == null) throw new Http2Exception(REFUSED_STREAM, id, "sin lugar para más streams");
+        s.remoteClosed = endStream;
+
+        long size = 0;
+        for (int i = 0; i < fields.size(); i += 2) size += fields.get(i).length() + fields.get(i + 1).length() + 32;
+        if (size > maxHeaderBytes) s.rejectStatus = 431;
+
+        if (!endStream) {
+            String cl = req.getHeader("content-length");
+            long declared = cl == null ? -1 : HttpServer.contentLength(req);
+            if (cl != null && declared < 0) throw new Http2Exception(PROTOCOL_ERROR, id, "content-length inválido");
+            if (declared > maxBodyBytes) s.rejectStatus = 413;
+            s.declaredLength = declared;
+            s.pipe = new NioServer.BodyPipe(() -> credit(s));
+            req.setBody(s.pipe, declared);
+        }
+        dispatch(s, req);
+    }
+
+    private void onPriority(int id, int length) throws Http2Exception {
+        if (id == 0) throw connectionError(PROTOCOL_ERROR, "PRIORITY en el stream 0");
+        if (length != 5) throw new Http2Exception(FRAME_SIZE_ERROR, id, "PRIORITY de " + length + " bytes");
+    }
+
+    private void onReset(int id, int length) throws IOException {
+        if (length != 4) throw connectionError(FRAME_SIZE_ERROR, "RST_STREAM de " + length + " bytes");
+        if (id == 0 || id > lastStreamId) throw connectionError(PROTOCOL_ERROR, "RST_STREAM en el stream " + id);
+        Stream s = stream(id);
+        if (s != null) cancel(s, "stream cancelado por el cliente");
+    }
+
+    private void onSettings(int id, int flags, int length) throws IOException {
+        if (id != 0) throw connectionError(PROTOCOL_ERROR, "SETTINGS en el stream " + id);
+        if ((flags & ACK) != 0) {
+            if (length != 0) throw connectionError(FRAME_SIZE_ERROR, "SETTINGS ACK con contenido");
+            return;
+        }
+        if (length % 6 != 0) throw connectionError(FRAME_SIZE_ERROR, "SETTINGS de " + length + " bytes");
+        applySettings(payload, 0, length);
+        writeFrame(SETTINGS, ACK, 0, payload, 0, 0, true);
+    }
+
+    private void applySettings(byte[] b, int from, int to) throws IOException {
+        for (int p = from; p < to; p += 6) {
+            int key = ((b[p] & 0xff) << 8) | (b[p + 1] & 0xff);
+            long value = int32(b, p + 2) & 0xffffffffL;
+            switch (key) {
+                case HEADER_TABLE_SIZE -> tableSize((int) Math.min(value, TABLE_SIZE));
+                case ENABLE_PUSH -> {
+                    if (value > 1) throw connectionError(PROTOCOL_ERROR, "ENABLE_PUSH inválido");
+                }
+                case INITIAL_WINDOW_SIZE -> {
+                    if (value > Integer.MAX_VALUE) throw connectionError(FLOW_CONTROL_ERROR, "INITIAL_WINDOW_SIZE inválido");
+                    initialWindow((int) value);
+                }
+                case MAX_FRAME_SIZE -> {
+                    if (value < DEFAULT_FRAME || value > 0xffffff) throw connectionError(PROTOCOL_ERROR, "MAX_FRAME_SIZE inválido");
+                    peerMaxFrame = (int) value;
+                }
+                default -> { } // MAX_CONCURRENT_STREAMS (no hay push), MAX_HEADER_LIST_SIZE y desconocidos
+            }
+        }
+    }
+
+    private void tableSize(int size) {
+        writeLock.lock();
+        try {
+            if (size != encoderTableSize) {
+                encoderTableSize = size;
+                encoder.maxTableSize(size);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Un cambio de INITIAL_WINDOW_SIZE se aplica como diferencia a todos los streams abiertos (§6.9.2). */
+    private void initialWindow(int value) throws Http2Exception {
+        lock.lock();
+        try {
+            int delta = value - peerInitialWindow;
+            for (Stream s : streams.values()) {
+                if ((long) s.sendWindow + delta > Integer.MAX_VALUE) {
+                    throw connectionError(FLOW_CONTROL_ERROR, "ventana del stream " + s.id + " desbordada");
+                }
+            }
+            for (Stream s : streams.values()) s.sendWindow += delta;
+            peerInitialWindow = value;
+            windowOpen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onPing(int id, int flags, int length) throws IOException {
+        if (length != 8) throw connectionError(FRAME_SIZE_ERROR, "PING de " + length + " bytes");
+        if (id != 0) throw connectionError(PROTOCOL_ERROR, "PING en el stream " + id);
+        if ((flags & ACK) == 0) writeFrame(PING, ACK, 0, payload, 0, 8, true);
+    }
+
+    private void onGoAway(int id) throws Http2Exception {
+        if (id != 0) throw connectionError(PROTOCOL_ERROR, "GOAWAY en el stream " + id);
+        goAwayReceived = true;
+    }
+
+    private void onWindowUpdate(int id, int length) throws IOException {
+        if (length != 4) throw connectionError(FRAME_SIZE_ERROR, "WINDOW_UPDATE de " + length + " bytes");
+        int increment = int32(payload, 0) & 0x7fffffff;
+        if (increment == 0) {
+            if (id == 0) throw connectionError(PROTOCOL_ERROR, "WINDOW_UPDATE de 0");
+            throw new Http2Exception(PROTOCOL_ERROR, id, "WINDOW_UPDATE de 0");
+        }
+        lock.lock();
+        try {
+            if (id == 0) {
+                if ((long) sendWindow + increment > Integer.MAX_VALUE) {
+                    throw connectionError(FLOW_CONTROL_ERROR, "ventana de la conexión desbordada");
+                }
+                sendWindow += increment;
+            } else {
+                Stream s = streams.get(id);
+                if (s == null) return;
+                if ((long) s.sendWindow + increment > Integer.MAX_VALUE) {
+                    throw new Http2Exception(FLOW_CONTROL_ERROR, id, "ventana del stream desbordada");
+                }
+                s.sendWindow += increment;
+            }
+            windowOpen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ================== Peticiones ==================
+
+    /**
+     * Arma la petición a partir de los headers decodificados: los
+     * pseudo-headers dan método y path, :authority pasa a ser Host y las
+     * cookies repartidas en varios campos se vuelven a juntar (§8.2.3).
+     */
+    private HttpRequest request(int id, List<String> fields) throws Http2Exception {
+        String method = null, scheme = null, path = null, authority = null;
+        boolean regular = false, host = false;
+        StringBuilder cookies = null;
+        for (int i = 0; i < fields.size(); i += 2) {
+            String name = fields.get(i), value = fields.get(i + 1);
+            if (name.startsWith(":")) {
+                if (regular) throw malformed(id, "pseudo-header después de los headers");
+                switch (name) {
+                    case ":method" -> method = single(id, method, value);
+                    case ":scheme" -> scheme = single(id, scheme, value);
+                    case ":path" -> path = single(id, path, value);
+                    case ":authority" -> authority = single(id, authority, value);
+                    default -> throw malformed(id, "pseudo-header desconocido " + name);
+                }
+                continue;
+            }
+            regular = true;
+            for (int k = 0; k < name.length(); k++) {
+                char c = name.charAt(k);
+                if (c >= 'A' && c <= 'Z') throw malformed(id, "header en mayúsculas: " + name);
+            }
+            if (CONNECTION_HEADERS.contains(name)) throw malformed(id, "header de conexión: " + name);
+            if (name.equals("te") && !value.equals("trailers")) throw malformed(id, "te: " + value);
+            if (name.equals("host")) host = true;
+            if (name.equals("cookie")) cookies = cookies == null ? new StringBuilder(value) : cookies.append("; ").append(value);
+        }
+        if (method == null || scheme == null || path == null || path.isEmpty()) {
+            throw malformed(id, "faltan :method, :scheme o :path");
+        }
+
+        // Cabeza en el mismo formato que la de HTTP/1.1: target y luego "nombre: valor\r\n"
+        ByteArrayOutputStream head = new ByteArrayOutputStream(256);
+        int[] idx = new int[fields.size() * 2 + 8];
+        int count = 0;
+        writeAscii(head, path);
+        int targetEnd = head.size();
+        if (authority != null && !host) count = addHeader(head, idx, count, "host", authority);
+        for (int i = 0; i < fields.size(); i += 2) {
+            String name = fields.get(i);
+            if (name.startsWith(":") || name.equals("cookie")) continue;
+            count = addHeader(head, idx, count, name, fields.get(i + 1));
+        }
+        if (cookies != null) count = addHeader(head, idx, count, "cookie", cookies.toString());
+
+        HttpRequest req = new HttpRequest(method, VERSION, head.toByteArray(), 0, targetEnd, Arrays.copyOf(idx, count * 4));
+        req.setRemoteAddress(remote);
+        return req;
+    }
+
+    private static int addHeader(ByteArrayOutputStream head, int[] idx, int count, String name, String value) {
+        int k = count * 4;
+        idx[k] = head.size();
+        writeAscii(head, name);
+        idx[k + 1] = head.size();
+        head.write(':');
+        head.write(' ');
+        idx[k + 2] = head.size();
+        writeAscii(head, value);
+        idx[k + 3] = head.size();
+        head.write('\r');
+        head.write('\n');
+        return count + 1;
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String s) {
+        for (int i = 0; i < s.length(); i++) out.write(s.charAt(i));
+    }
+
+    private static String single(int id, String current, String value) throws Http2Exception {
+        if (current != null) throw malformed(id, "pseudo-header repetido");
+        return value;
+    }
+
+    private static Http2Exception malformed(int id, String message) {
+        return new Http2Exception(PROTOCOL_ERROR, id, message);
+    }
+
+    /** Atiende el stream en un hilo propio; al terminar se cierra su lado y se libera el lugar. */
+    private void dispatch(Stream s, HttpRequest req) {
+        server.metrics.h2Streams.increment();
+        try {
+            workers.execute(() -> respond(s, req));
+        } catch (RejectedExecutionException stopping) {
+            release(s);
+            reset(s.id, REFUSED_STREAM);
+        }
+    }
+
+    private void respond(Stream s, HttpRequest req) {
+        StreamOutput response = new StreamOutput(s);
+        try {
+            if (s.rejectStatus != 0) {
+                server.metrics.status(s.rejectStatus);
+                HttpServer.writeText(response, VERSION, s.rejectStatus, HttpServer.reason(s.rejectStatus), true);
+            } else {
+                String expect = req.getHeader("expect");
+                if (s.pipe != null && expect != null && expect.trim().equalsIgnoreCase("100-continue")) {
+                    writeHeaders(s.id, List.of(":status", "100"), false);
+                    flush();
+                }
+                server.respond(response, req, true);
+            }
+            response.finish();
+            // La respuesta está completa: lo que falte del cuerpo ya no hace falta
+            if (!s.remoteClosed && !s.reset) reset(s.id, NO_ERROR);
+        } catch (IOException | RuntimeException e) {
+            if (!s.reset && !isClosed()) reset(s.id, INTERNAL_ERROR);
+        } finally {
+            if (s.pipe != null) s.pipe.discard();
+            release(s);
+        }
+    }
+
+    // ================== Streams ==================
+
+    /** Registra un stream nuevo; null si no hay lugar o el servidor se está deteniendo. */
+    private Stream open(int id) {
+        lock.lock();
+        try {
+            if (closed || goAwaySent || streams.size() >= MAX_STREAMS || !server.isReady()) return null;
+            if (streams.isEmpty() && !begin.getAsBoolean()) return null;
+            Stream s = new Stream(id, peerInitialWindow);
+            streams.put(id, s);
+            return s;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Stream stream(int id) {
+        lock.lock();
+        try {
+            return streams.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * El servidor empezó a detenerse: GOAWAY con el último stream aceptado,
+     * así el cliente no abre más streams acá y sabe que los que ya abrió se
+     * terminan de atender (§6.8).
+     */
+    void drain() {
+        if (!isClosed()) goAway(NO_ERROR, null);
+    }
+
+    /**
+     * Libera el lugar del stream. Al quedar sin streams la conexión vuelve a
+     * estar inactiva; si el servidor se está deteniendo, se despide con
+     * GOAWAY (si no salió ya en {@link #drain()}) y se cierra.
+     */
+    private void release(Stream s) {
+        boolean last;
+        lock.lock();
+        try {
+            if (streams.remove(s.id) == null || !streams.isEmpty()) return;
+            end.run();
+            last = !server.isReady() || goAwayReceived;
+        } finally {
+            lock.unlock();
+        }
+        if (last) close();
+    }
+
+    /**
+     * Cierre ordenado: se termina la escritura (FIN después del último DATA)
+     * y se deja que el lector siga consumiendo hasta que el cliente cierre.
+     * Cerrar el socket con datos del cliente sin leer manda un RST, y el
+     * cliente puede descartar respuestas que ya había recibido.
+     */
+    private void close() {
+        boolean sent;
+        lock.lock();
+        try {
+            sent = goAwaySent;
+        } finally {
+            lock.unlock();
+        }
+        // Un segundo GOAWAY no puede subir el último stream, y el lector pudo ver streams rechazados
+        if (!sent) goAway(NO_ERROR, null);
+        socketClosed = true;
+        writeLock.lock();
+        try {
+            out.flush();
+            socket.shutdownOutput();
+        } catch (IOException e) {
+            closeSocket();
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+        // Desde el lector no se espera: sigue hasta el EOF del cliente o su timeout
+        if (Thread.currentThread() == reader) return;
+        try {
+            if (readerDone.await(LINGER_MS, TimeUnit.MILLISECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeSocket();
+    }
+
+    private boolean isIdle() {
+        lock.lock();
+        try {
+            return streams.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void cancel(Stream s, String reason) {
+        lock.lock();
+        try {
+            s.reset = true;
+            windowOpen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (s.pipe != null) s.pipe.fail(new IOException(reason));
+    }
+
+    /** RST_STREAM; el handler del stream, si sigue corriendo, falla en su próxima escritura. */
+    private void reset(int id, int code) {
+        Stream s = stream(id);
+        if (s != null) cancel(s, "stream reseteado");
+        byte[] b = new byte[4];
+        putInt(b, 0, code);
+        try {
+            writeFrame(RST_STREAM, 0, id, b, 0, 4, true);
+        } catch (IOException e) {
+            // La conexión ya se cayó
+        }
+    }
+
+    private void shutdown() {
+        List<Stream> open;
+        lock.lock();
+        try {
+            closed = true;
+            open = new ArrayList<>(streams.values());
+            windowOpen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Stream s : open) {
+            if (s.pipe != null) s.pipe.fail(new EOFException("conexión HTTP/2 cerrada"));
+        }
+    }
+
+    private void closeSocket() {
+        socketClosed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ================== Escritura ==================
+
+    private void writeSettings() throws IOException {
+        byte[] b = new byte[12];
+        putSetting(b, 0, MAX_CONCURRENT_STREAMS, MAX_STREAMS);
+        putSetting(b, 6, MAX_HEADER_LIST_SIZE, maxHeaderBytes);
+        writeFrame(SETTINGS, 0, 0, b, 0, b.length, true);
+    }
+
+    private static void putSetting(byte[] b, int at, int key, int value) {
+        b[at] = (byte) (key >>> 8);
+        b[at + 1] = (byte) key;
+        putInt(b, at + 2, value);
+    }
+
+    private void windowUpdate(int id, int increment) throws IOException {
+        byte[] b = new byte[4];
+        putInt(b, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, id, b, 0, 4, true);
+    }
+
+    /** GOAWAY con el último stream aceptado; los errores al enviarlo se ignoran (la conexión se cierra igual). */
+    private void goAway(int code, String debug) {
+        lock.lock();
+        try {
+            goAwaySent = true;
+        } finally {
+            lock.unlock();
+        }
+        byte[] text = debug == null ? new byte[0] : debug.getBytes(StandardCharsets.UTF_8);
+        byte[] b = new byte[8 + text.length];
+        putInt(b, 0, lastStreamId);
+        putInt(b, 4, code);
+        System.arraycopy(text, 0, b, 8, text.length);
+        try {
+            writeFrame(GOAWAY, 0, 0, b, 0, b.length, true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void writeFrame(int type, int flags, int stream, byte[] b, int off, int len, boolean flush) throws IOException {
+        writeLock.lock();
+        try {
+            frameHead[0] = (byte) (len >>> 16);
+            frameHead[1] = (byte) (len >>> 8);
+            frameHead[2] = (byte) len;
+            frameHead[3] = (byte) type;
+            frameHead[4] = (byte) flags;
+            putInt(frameHead, 5, stream);
+            out.write(frameHead);
+            out.write(b, off, len);
+            if (flush) out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** HEADERS (y CONTINUATION si el bloque no entra en un frame); codificar y escribir van juntos. */
+    private void writeHeaders(int stream, List<String> fields, boolean endStream) throws IOException {
+        writeLock.lock();
+        try {
+            headerBlock.reset();
+            encoder.encode(fields, headerBlock);
+            byte[] b = headerBlock.toByteArray();
+            int max = peerMaxFrame;
+            int n = Math.min(b.length, max);
+            writeFrame(HEADERS, (endStream ? END_STREAM : 0) | (n == b.length ? END_HEADERS : 0), stream, b, 0, n, false);
+            for (int off = n; off < b.length; off += n) {
+                n = Math.min(b.length - off, max);
+                writeFrame(CONTINUATION, off + n == b.length ? END_HEADERS : 0, stream, b, off, n, false);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** DATA respetando las ventanas; con {@code end} el último frame lleva END_STREAM. */
+    private void writeData(Stream s, byte[] b, int off, int len, boolean end) throws IOException {
+        if (len == 0 && end) {
+            writeFrame(DATA, END_STREAM, s.id, b, off, 0, false);
+            return;
+        }
+        while (len > 0) {
+            int n = reserve(s, len);
+            writeFrame(DATA, end && n == len ? END_STREAM : 0, s.id, b, off, n, false);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Toma hasta {@code wanted} bytes de las ventanas del stream y de la
+     * conexión. Si están agotadas, envía lo pendiente (el cliente devuelve
+     * ventana a medida que recibe) y espera un WINDOW_UPDATE.
+     */
+    private int reserve(Stream s, int wanted) throws IOException {
+        while (true) {
+            lock.lock();
+            try {
+                int n = available(s, wanted);
+                if (n > 0) {
+                    s.sendWindow -= n;
+                    sendWindow -= n;
+                    return n;
+                }
+            } finally {
+                lock.unlock();
+            }
+            flush();
+            lock.lock();
+            try {
+                while (available(s, wanted) == 0) windowOpen.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrumpido esperando ventana de HTTP/2");
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Bajo {@code lock}: bytes que se pueden enviar ya; falla si el stream o la conexión terminaron. */
+    private int available(Stream s, int wanted) throws IOException {
+        if (s.reset) throw new IOException("stream " + s.id + " cancelado");
+        if (closed) throw new IOException("conexión HTTP/2 cerrada");
+        return Math.max(0, Math.min(wanted, Math.min(peerMaxFrame, Math.min(s.sendWindow, sendWindow))));
+    }
+
+    private void flush() throws IOException {
+        writeLock.lock();
+        try {
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static Http2Exception connectionError(int code, String message) {
+        return new Http2Exception(code, 0, message);
+    }
+
+    private static int int32(byte[] b, int at) {
+        return ((b[at] & 0xff) << 24) | ((b[at + 1] & 0xff) << 16) | ((b[at + 2] & 0xff) << 8) | (b[at + 3] & 0xff);
+    }
+
+    private static void putInt(byte[] b, int at, int v) {
+        b[at] = (byte) (v >>> 24);
+        b[at + 1] = (byte) (v >>> 16);
+        b[at + 2] = (byte) (v >>> 8);
+        b[at + 3] = (byte) v;
+    }
+
+    // ================== Respuesta de un stream ==================
+
+    /**
+     * Salida que ve el servidor al responder un stream: junta la cabecera
+     * HTTP/1.1 que escribe, la convierte en HEADERS (estado, nombres en
+     * minúscula, sin los headers de conexión) y manda el cuerpo como DATA
+     * de hasta 16 KB. Los HEADERS esperan al primer dato o al final, así una
+     * respuesta sin cuerpo sale en un solo frame con END_STREAM.
+     */
+    private final class StreamOutput extends OutputStream implements CountingOutput {
+        private final Stream stream;
+        private long written;
+        private byte[] head = new byte[512];
+        private int headLength;
+        private List<String> fields;          // null hasta completar la cabecera
+        private boolean headersSent, finished;
+        private final byte[] buf = new byte[DEFAULT_FRAME];
+        private int count;
+
+        StreamOutput(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) throw new IOException("respuesta ya terminada");
+            written += len;
+            while (fields == null && len > 0) {
+                if (headLength == head.length) head = Arrays.copyOf(head, head.length * 2);
+                head[headLength++] = b[off++];
+                len--;
+                if (headLength >= 4 && head[headLength - 4] == '\r' && head[headLength - 3] == '\n'
+                        && head[headLength - 2] == '\r' && head[headLength - 1] == '\n') {
+                    fields = translate(head, headLength);
+                }
+            }
+            if (len == 0) return;
+            if (len >= buf.length) { // bloque grande: sale directo, sin pasar por el buffer
+                sendBuffered();
+                sendHeaders();
+                writeData(stream, b, off, len, false);
+                return;
+            }
+            if (len > buf.length - count) sendBuffered();
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public long written() {
+            return written;
+        }
+
+        /** Envía lo acumulado (también los HEADERS, para respuestas en streaming). */
+        @Override
+        public void flush() throws IOException {
+            if (finished || fields == null) return;
+            sendBuffered();
+            sendHeaders();
+            Http2Connection.this.flush();
+        }
+
+        void finish() throws IOException {
+            if (finished) return;
+            if (fields == null) throw new IOException("respuesta sin cabecera completa");
+            finished = true;
+            if (!headersSent && count == 0) {
+                writeHeaders(stream.id, fields, true);
+            } else {
+                sendHeaders();
+                writeData(stream, buf, 0, count, true);
+                count = 0;
+            }
+            Http2Connection.this.flush();
+        }
+
+        private void sendHeaders() throws IOException {
+            if (headersSent) return;
+            headersSent = true;
+            writeHeaders(stream.id, fields, false);
+        }
+
+        private void sendBuffered() throws IOException {
+            if (count == 0) return;
+            sendHeaders();
+            writeData(stream, buf, 0, count, false);
+            count = 0;
+        }
+    }
+
+    /** "HTTP/1.1 200 OK\r\nName: valor\r\n...\r\n\r\n" a pares nombre, valor de HTTP/2. */
+    static List<String> translate(byte[] head, int length) throws IOException {
+        int lineEnd = indexOfCrlf(head, 0, length);
+        if (lineEnd < 12 || head[8] != ' ') throw new IOException("línea de estado inválida");
+        List<String> fields = new ArrayList<>(16);
+        fields.add(":status");
+        fields.add(new String(head, 9, 3, StandardCharsets.ISO_8859_1));
+        for (int p = lineEnd + 2; p < length - 2; ) {
+            int end = indexOfCrlf(head, p, length);
+            int colon = p;
+            while (colon < end && head[colon] != ':') colon++;
+            if (colon < end) {
+                String name = new String(head, p, colon - p, StandardCharsets.ISO_8859_1).trim().toLowerCase(Locale.ROOT);
+                if (!CONNECTION_HEADERS.contains(name)) {
+                    fields.add(name);
+                    fields.add(new String(head, colon + 1, end - colon - 1, StandardCharsets.ISO_8859_1).trim());
+                }
+            }
+            p = end + 2;
+        }
+        return fields;
+    }
+
+    private static int indexOfCrlf(byte[] b, int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            if (b[i] == '\r' && b[i + 1] == '\n') return i;
+        }
+        return to;
+    }
+}
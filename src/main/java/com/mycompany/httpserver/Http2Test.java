@@ -0,0 +1,265 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class Http2Test {
+
+    private static java.net.http.HttpRequest.Builder request(int port, String path) {
+        return java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(10));
+    }
+
+    private static HttpClient h2Client() {
+        return HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+    }
+
+    @Test
+    public void upgrade_servesRoutesAndStaticFilesOverHttp2() throws Exception {
+        Path dir = Files.createTempDirectory("h2-static");
+        Files.writeString(dir.resolve("index.html"), "<h1>h2</h1>");
+        WebServer server = new WebServer().h2c(true).staticfiles(dir)
+                .get("/hello", (req, resp) -> "hola " + req.getValues("name") + " " + req.getVersion()
+                        + " " + req.getHeader("Host"))
+                .start(ServerConfig.port(0));
+        try {
+            HttpClient client = h2Client();
+            // La primera petición pide Upgrade: h2c; las siguientes ya van por streams de la misma conexión
+            for (int i = 0; i < 3; i++) {
+                java.net.http.HttpResponse<String> r = client.send(request(server.port(), "/hello?name=" + i).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofString());
+                assertEquals(HttpClient.Version.HTTP_2, r.version());
+                assertEquals(200, r.statusCode());
+                assertEquals("hola " + i + " HTTP/2.0 localhost:" + server.port(), r.body());
+                assertTrue(r.headers().firstValue("connection").isEmpty());
+            }
+            java.net.http.HttpResponse<String> page = client.send(request(server.port(), "/").build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(HttpClient.Version.HTTP_2, page.version());
+            assertEquals("<h1>h2</h1>", page.body());
+            String etag = page.headers().firstValue("etag").orElseThrow();
+            assertEquals(304, client.send(request(server.port(), "/").header("If-None-Match", etag).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString()).statusCode());
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    public void concurrentStreams_respectFlowControlBothWays() throws Exception {
+        Path dir = Files.createTempDirectory("h2-large");
+        byte[] data = new byte[(int) StaticCache.MAX_ENTRY_BYTES * 2];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 13);
+        Files.write(dir.resolve("big.bin"), data);
+        WebServer server = new WebServer().h2c(true).staticfiles(dir)
+                .post("/echo", (req, resp) -> req.getBodyAsString())
+                .start(ServerConfig.port(0));
+        try {
+            HttpClient client = h2Client();
+            assertEquals(200, client.send(request(server.port(), "/big.bin").build(),
+                    java.net.http.HttpResponse.BodyHandlers.discarding()).statusCode());
+
+            // Todas por la misma conexión: cada archivo supera varias veces la ventana inicial de 64 KB
+            List<CompletableFuture<java.net.http.HttpResponse<byte[]>>> pending = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                pending.add(client.sendAsync(request(server.port(), "/big.bin").build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofByteArray()));
+            }
+            String text = "x".repeat(300_000);
+            java.net.http.HttpResponse<String> echo = client.send(request(server.port(), "/echo")
+                    .POST(java.net.http.HttpRequest.BodyPublishers.ofString(text)).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(HttpClient.Version.HTTP_2, echo.version());
+            assertEquals(text, echo.body());
+            for (CompletableFuture<java.net.http.HttpResponse<byte[]>> f : pending) {
+                java.net.http.HttpResponse<byte[]> r = f.get(30, TimeUnit.SECONDS);
+                assertEquals(HttpClient.Version.HTTP_2, r.version());
+                assertArrayEquals(data, r.body());
+            }
+            assertTrue(server.metrics.h2Streams.sum() >= 18);
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    public void priorKnowledge_rawFrames() throws Exception {
+        WebServer server = new WebServer().h2c(true)
+                .get("/hello", (req, resp) -> "hola " + req.getMethod())
+                .start(ServerConfig.port(0));
+        try (Socket s = new Socket("localhost", server.port())) {
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            out.write(Http2Connection.PREFACE);
+            frame(out, 0x4, 0, 0, new byte[0]);                                    // SETTINGS
+            ByteArrayOutputStream block = new ByteArrayOutputStream();
+            new Hpack.Encoder(4096).encode(List.of(":method", "GET", ":scheme", "http", ":path", "/hello",
+                    ":authority", "localhost"), block);
+            frame(out, 0x1, 0x1 | 0x4, 1, block.toByteArray());                    // HEADERS END_STREAM|END_HEADERS
+            frame(out, 0x6, 0, 0, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});             // PING
+
+            Hpack.Decoder decoder = new Hpack.Decoder(4096);
+            List<String> headers = new ArrayList<>();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            boolean pong = false, ended = false;
+            while (!ended || !pong) {
+                int length = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+                int type = in.readUnsignedByte(), flags = in.readUnsignedByte(), stream = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (type == 0x6) {
+                    assertEquals(0x1, flags);
+                    assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, payload);
+                    pong = true;
+                } else if (type == 0x1) {
+                    assertEquals(1, stream);
+                    decoder.decode(payload, 0, length, headers);
+                    ended |= (flags & 0x1) != 0;
+                } else if (type == 0x0) {
+                    body.write(payload);
+                    ended |= (flags & 0x1) != 0;
+                }
+            }
+            assertEquals(":status", headers.get(0));
+            assertEquals("200", headers.get(1));
+            assertEquals("hola GET", body.toString(StandardCharsets.UTF_8));
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    public void withoutH2c_prefaceIsAnUnsupportedVersion() throws Exception {
+        WebServer server = new WebServer().start(ServerConfig.port(0));
+        try (Socket s = new Socket("localhost", server.port())) {
+            s.setSoTimeout(5000);
+            s.getOutputStream().write(Http2Connection.PREFACE);
+            byte[] reply = s.getInputStream().readNBytes(12);
+            assertEquals("HTTP/1.1 505", new String(reply, StandardCharsets.ISO_8859_1));
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    public void stop_sendsGoAwayAndLetsOpenStreamFinish() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WebServer server = new WebServer().h2c(true)
+                .get("/slow", (req, resp) -> {
+                    entered.countDown();
+                    release.await();
+                    return "done";
+                })
+                .start(ServerConfig.port(0));
+        // Frames crudos: el HttpClient del JDK (antes de 21) falla los streams abiertos al recibir cualquier GOAWAY
+        try (Socket s = new Socket("localhost", server.port())) {
+            s.setSoTimeout(5000);
+            OutputStream out = s.getOutputStream();
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            Hpack.Encoder encoder = new Hpack.Encoder(4096);
+            out.write(Http2Connection.PREFACE);
+            frame(out, 0x4, 0, 0, new byte[0]);                                    // SETTINGS
+            frame(out, 0x1, 0x1 | 0x4, 1, get(encoder, "/slow"));                  // HEADERS END_STREAM|END_HEADERS
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Boolean> stopped = server.shutdown(Duration.ofSeconds(5));
+            assertFalse(stopped.isDone());
+            // Al empezar el drenado: GOAWAY con el último stream aceptado, sin esperar a que termine
+            Frame goAway = next(in, 0x7);
+            assertEquals(0, goAway.stream);
+            assertEquals(1, goAway.int32(0));
+            assertEquals(Http2Connection.NO_ERROR, goAway.int32(4));
+
+            // Un stream nuevo después del GOAWAY se rechaza
+            frame(out, 0x1, 0x1 | 0x4, 3, get(encoder, "/slow"));
+            Frame refused = next(in, 0x3);
+            assertEquals(3, refused.stream);
+            assertEquals(Http2Connection.REFUSED_STREAM, refused.int32(0));
+
+            release.countDown();
+            Hpack.Decoder decoder = new Hpack.Decoder(4096);
+            List<String> headers = new ArrayList<>();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            boolean ended = false;
+            while (!ended) {
+                Frame f = next(in, -1);
+                if (f.type == 0x1) {
+                    assertEquals(1, f.stream);
+                    decoder.decode(f.payload, 0, f.payload.length, headers);
+                } else if (f.type == 0x0) {
+                    assertEquals(1, f.stream);
+                    body.write(f.payload);
+                } else {
+                    fail("frame inesperado de tipo " + f.type);
+                }
+                ended = (f.flags & 0x1) != 0;
+            }
+            assertEquals("200", headers.get(1));
+            assertEquals("done", body.toString(StandardCharsets.UTF_8));
+            // Después del último stream: FIN (semicierre) en vez de un segundo GOAWAY o un RST
+            assertEquals(-1, in.read());
+            s.shutdownOutput(); // EOF del cliente: el servidor deja de esperar
+            assertTrue(stopped.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    private static byte[] get(Hpack.Encoder encoder, String path) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        encoder.encode(List.of(":method", "GET", ":scheme", "http", ":path", path, ":authority", "localhost"), block);
+        return block.toByteArray();
+    }
+
+    private static final class Frame {
+        int type, flags, stream;
+        byte[] payload;
+
+        int int32(int at) {
+            return ((payload[at] & 0xff) << 24) | ((payload[at + 1] & 0xff) << 16)
+                    | ((payload[at + 2] & 0xff) << 8) | (payload[at + 3] & 0xff);
+        }
+    }
+
+    /** Siguiente frame de tipo {@code type} (se saltean SETTINGS y WINDOW_UPDATE); -1 acepta cualquiera. */
+    private static Frame next(DataInputStream in, int type) throws Exception {
+        while (true) {
+            Frame f = new Frame();
+            int length = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+            f.type = in.readUnsignedByte();
+            f.flags = in.readUnsignedByte();
+            f.stream = in.readInt();
+            f.payload = new byte[length];
+            in.readFully(f.payload);
+            if (f.type == type || (type < 0 && f.type != 0x4 && f.type != 0x8)) return f;
+        }
+    }
+
+    private static void frame(OutputStream out, int type, int flags, int stream, byte[] payload) throws Exception {
+        byte[] head = {(byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                (byte) type, (byte) flags, (byte) (stream >>> 24), (byte) (stream >>> 16), (byte) (stream >>> 8), (byte) stream};
+        out.write(head);
+        out.write(payload);
+        out.flush();
+    }
+}
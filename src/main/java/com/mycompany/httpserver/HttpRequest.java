@@ -1,23 +1,319 @@
 package com.mycompany.httpserver;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
 import java.net.URI;
-import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-/** Wrapper simple para leer parámetros de query. */
+/**
+ * Petición HTTP: método, path, query, headers, parámetros de ruta y cuerpo.
+ * Guarda los bytes de la cabeza tal como llegaron y decodifica cada parte
+ * recién cuando se consulta; el cuerpo se lee de la conexión a pedido.
+ */
 public class HttpRequest {
 
-    private final URI rawUri;
+    private final String method;
+    private final String version;
+    private final byte[] head;
+    private final int targetStart, targetEnd;
+    private final int queryStart;     // -1 si no hay '?'
+    private final int[] headerIdx;    // nombreInicio, nombreFin, valorInicio, valorFin (sobre head)
+
+    // Decodificados bajo demanda
+    private String path;
+    private String rawQuery;
+    private String[] headerValues;
+
+    // Query: se indexa una sola vez (posiciones sobre `head`) y cada clave/valor
+    // se decodifica solo la primera vez que se consulta
+    private int[] query;             // claveInicio, claveFin, valorInicio, valorFin
+    private String[] queryKeys;
+    private String[] queryValues;
+
+    // Cuerpo: stream de la conexión (se lee una vez); los helpers lo guardan completo en bodyBytes
+    private InputStream body = InputStream.nullInputStream();
+    private long contentLength;       // -1 si es chunked
+    private byte[] bodyBytes;
+    private UrlEncoded form;
+
+    // Parámetros de ruta (/users/:id): se guardan como límites sobre el path y
+    // el substring se crea solo cuando el handler lo pide
+    private String[] paramNames = new String[0];
+    private int[] paramBounds;
+
+    // IP del cliente (la pone el motor; null en peticiones armadas a mano)
+    private InetAddress remoteAddress;
 
     public HttpRequest(URI uri) {
-        this.rawUri = uri;
+        this("GET", "HTTP/1.1", targetBytes(uri), new int[0]);
+    }
+
+    /**
+     * Petición con cuerpo y Content-Type (útil para probar handlers de
+     * POST/PUT sin levantar el servidor).
+     */
+    public static HttpRequest withBody(String method, URI uri, String contentType, byte[] body) {
+        byte[] target = targetBytes(uri);
+        byte[] name = "Content-Type".getBytes(StandardCharsets.US_ASCII);
+        byte[] value = contentType.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] head = new byte[target.length + name.length + value.length];
+        System.arraycopy(target, 0, head, 0, target.length);
+        System.arraycopy(name, 0, head, target.length, name.length);
+        System.arraycopy(value, 0, head, target.length + name.length, value.length);
+        int n = target.length + name.length;
+        HttpRequest req = new HttpRequest(method, "HTTP/1.1", head, 0, target.length,
+                new int[]{target.length, n, n, head.length});
+        req.setBody(new ByteArrayInputStream(body), body.length);
+        return req;
+    }
+
+    private HttpRequest(String method, String version, byte[] target, int[] headerIdx) {
+        this(method, version, target, 0, target.length, headerIdx);
+    }
+
+    HttpRequest(String method, String version, byte[] head, int targetStart, int targetEnd, int[] headerIdx) {
+        this.method = method;
+        this.version = version;
+        this.head = head;
+        this.headerIdx = headerIdx;
+
+        // Forma absoluta ("http://host/ruta"): el path empieza en la primera '/' tras la autoridad
+        int ts = targetStart;
+        if (targetEnd - ts > 7 && head[ts] != '/' && head[ts] != '*') {
+            int scheme = indexOf(head, ts, targetEnd, (byte) ':');
+            if (scheme > ts && scheme + 2 < targetEnd && head[scheme + 1] == '/' && head[scheme + 2] == '/') {
+                int slash = indexOf(head, scheme + 3, targetEnd, (byte) '/');
+                ts = slash < 0 ? targetEnd : slash;
+            }
+        }
+        this.targetStart = ts;
+        int q = indexOf(head, ts, targetEnd, (byte) '?');
+        int hash = indexOf(head, ts, targetEnd, (byte) '#');
+        this.targetEnd = hash < 0 ? targetEnd : hash;
+        this.queryStart = (q < 0 || (hash >= 0 && q > hash)) ? -1 : q;
+    }
+
+    private static byte[] targetBytes(URI uri) {
+        String p = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        String q = uri.getRawQuery();
+        return (q == null ? p : p + "?" + q).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Misma petición (cabeza, cuerpo y cliente) con otra versión; p.ej. la que pasa a HTTP/2 con Upgrade. */
+    HttpRequest withVersion(String newVersion) {
+        HttpRequest copy = new HttpRequest(method, newVersion, head, targetStart, targetEnd, headerIdx);
+        copy.setBody(body, contentLength);
+        copy.remoteAddress = remoteAddress;
+        return copy;
+    }
+
+    /** Bytes de la cabecera recibida (línea de inicio + headers). */
+    int headLength() {
+        return head.length;
+    }
+
+    /** Método HTTP ("GET", "POST", ...). */
+    public String getMethod() {
+        return method;
+    }
+
+    /** "HTTP/1.1", "HTTP/1.0" o "HTTP/2.0" (h2c). */
+    public String getVersion() {
+        return version;
+    }
+
+    /** Path decodificado (sin query). */
+    public String getPath() {
+        if (path == null) {
+            int end = queryStart >= 0 ? queryStart : targetEnd;
+            path = targetStart == end ? "/" : decodePath(head, targetStart, end);
+        }
+        return path;
+    }
+
+    /** Query tal como llegó (sin decodificar), o null si no hay. */
+    public String getRawQuery() {
+        if (queryStart < 0) return null;
+        if (rawQuery == null) rawQuery = new String(head, queryStart + 1, targetEnd - queryStart - 1, StandardCharsets.UTF_8);
+        return rawQuery;
     }
 
-    /** Retorna el valor de un parámetro (?name=Pedro) */
+    /** Valor del header (sin distinguir mayúsculas en el nombre), o null si no vino. */
+    public String getHeader(String name) {
+        for (int i = 0, n = headerIdx.length / 4; i < n; i++) {
+            if (nameEquals(i, name)) return headerValue(i);
+        }
+        return null;
+    }
+
+    /** Todos los headers; los nombres quedan en minúscula. Con nombres repetidos gana el primero. */
+    public Map<String, String> getHeaders() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0, n = headerIdx.length / 4; i < n; i++) {
+            String name = new String(head, headerIdx[4 * i], headerIdx[4 * i + 1] - headerIdx[4 * i], StandardCharsets.US_ASCII);
+            map.putIfAbsent(name.toLowerCase(Locale.ROOT), headerValue(i));
+        }
+        return map;
+    }
+
+    private boolean nameEquals(int i, String name) {
+        int from = headerIdx[4 * i], to = headerIdx[4 * i + 1];
+        if (to - from != name.length()) return false;
+        for (int k = 0; k < name.length(); k++) {
+            int a = head[from + k], b = name.charAt(k);
+            if (a != b && (a | 0x20) != (b | 0x20)) return false;
+        }
+        return true;
+    }
+
+    private String headerValue(int i) {
+        if (headerValues == null) headerValues = new String[headerIdx.length / 4];
+        String v = headerValues[i];
+        if (v == null) {
+            v = new String(head, headerIdx[4 * i + 2], headerIdx[4 * i + 3] - headerIdx[4 * i + 2], StandardCharsets.ISO_8859_1);
+            headerValues[i] = v;
+        }
+        return v;
+    }
+
+    // ---- Cliente ----
+
+    void setRemoteAddress(InetAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    /** IP de la conexión (sin mirar X-Forwarded-For); null si la petición no vino de un socket. */
+    public InetAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    // ---- Cuerpo ----
+
+    void setBody(InputStream body, long contentLength) {
+        this.body = body;
+        this.contentLength = contentLength;
+    }
+
+    /** ¿La petición trae cuerpo (Content-Length > 0 o chunked)? */
+    public boolean hasBody() {
+        return contentLength != 0;
+    }
+
+    /** Content-Length declarado; -1 si el cuerpo viene chunked (largo desconocido). */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Cuerpo como stream, leído directo de la conexión a medida que el
+     * handler lo consume (no se arma en memoria). Se puede leer una sola vez;
+     * si el cliente supera el máximo configurado la lectura falla y el
+     * servidor responde 413. Sin cuerpo es un stream vacío.
+     */
+    public InputStream getBody() {
+        return bodyBytes != null ? new ByteArrayInputStream(bodyBytes) : body;
+    }
+
+    /** Cuerpo completo en memoria (topado por el máximo configurado). */
+    public byte[] getBodyBytes() throws IOException {
+        if (bodyBytes == null) {
+            bodyBytes = contentLength > 0 && contentLength <= Integer.MAX_VALUE
+                    ? body.readNBytes((int) contentLength)
+                    : body.readAllBytes();
+        }
+        return bodyBytes;
+    }
+
+    /** Vista de solo lectura sobre {@link #getBodyBytes()}. */
+    public ByteBuffer getBodyBuffer() throws IOException {
+        return ByteBuffer.wrap(getBodyBytes()).asReadOnlyBuffer();
+    }
+
+    /** Cuerpo como texto, con el charset del Content-Type (UTF-8 si no lo indica). Útil para JSON. */
+    public String getBodyAsString() throws IOException {
+        return new String(getBodyBytes(), charset());
+    }
+
+    /**
+     * Campo de un formulario application/x-www-form-urlencoded, o "" si no
+     * viene (o si el cuerpo no es un formulario). El cuerpo se lee y se
+     * indexa en la primera consulta; cada valor se decodifica al pedirlo.
+     */
+    public String getFormValue(String name) throws IOException {
+        String v = form().get(name);
+        return v == null ? "" : v;
+    }
+
+    /** Todos los valores de un campo repetido del formulario, en orden. */
+    public List<String> getFormValues(String name) throws IOException {
+        return form().getAll(name);
+    }
+
+    /** Campos del formulario (con repetidos, el último valor). */
+    public Map<String, String> getFormMap() throws IOException {
+        return form().toMap();
+    }
+
+    private UrlEncoded form() throws IOException {
+        if (form == null) {
+            String type = getHeader("Content-Type");
+            boolean isForm = type != null && type.regionMatches(true, 0, "application/x-www-form-urlencoded", 0, 33);
+            byte[] b = isForm ? getBodyBytes() : null;
+            form = b == null ? UrlEncoded.EMPTY : new UrlEncoded(b, 0, b.length);
+        }
+        return form;
+    }
+
+    private Charset charset() {
+        String type = getHeader("Content-Type");
+        if (type != null) {
+            int i = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+            if (i >= 0) {
+                String name = type.substring(i + 8).split(";")[0].trim().replace("\"", "");
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException ignored) {
+                    // charset desconocido: UTF-8
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    void setPathParams(String path, String[] names, int[] bounds) {
+        this.path = path;
+        this.paramNames = names;
+        this.paramBounds = bounds;
+    }
+
+    /** Valor de un parámetro de ruta (":id" en /users/:id), o "" si no existe. */
+    public String getPathParam(String name) {
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(name)) return path.substring(paramBounds[2 * i], paramBounds[2 * i + 1]);
+        }
+        return "";
+    }
+
+    /** Todos los parámetros de ruta capturados. */
+    public Map<String, String> getPathParams() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String name : paramNames) map.put(name, getPathParam(name));
+        return map;
+    }
+
+    /**
+     * Retorna el valor de un parámetro (?name=Pedro), o "" si no viene. Con
+     * parámetros repetidos devuelve el último (ver {@link #getAll(String)}).
+     */
     public String getValues(String paramName) {
-        Map<String, String> all = getQueryMap();
-        return all.getOrDefault(paramName, "");
+        int i = lastIndexOfParam(paramName);
+        return i < 0 ? "" : queryValue(i);
     }
 
     /** Alias opcional (por si lo usan en pruebas) */
@@ -25,24 +321,195 @@ public class HttpRequest {
         return getValues(paramName);
     }
 
-    /** Mapa completo de parámetros de query. */
+    /** Todos los valores de un parámetro repetido (?tag=a&tag=b), en orden. */
+    public List<String> getAll(String paramName) {
+        List<String> values = new ArrayList<>(2);
+        int n = queryCount();
+        for (int i = 0; i < n; i++) {
+            if (keyEquals(i, paramName)) values.add(queryValue(i));
+        }
+        return values;
+    }
+
+    /** Parámetro entero; {@code defaultValue} si falta o no es un número. */
+    public int getInt(String paramName, int defaultValue) {
+        long v = getLong(paramName, Long.MIN_VALUE);
+        return v == Long.MIN_VALUE || v < Integer.MIN_VALUE || v > Integer.MAX_VALUE ? defaultValue : (int) v;
+    }
+
+    /** Parámetro long; {@code defaultValue} si falta o no es un número. Sin escapes se lee directo de los bytes. */
+    public long getLong(String paramName, long defaultValue) {
+        int i = lastIndexOfParam(paramName);
+        if (i < 0) return defaultValue;
+        int from = query[4 * i + 2], to = query[4 * i + 3];
+        if (needsDecoding(from, to)) {
+            try {
+                return Long.parseLong(queryValue(i).trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        if (from == to) return defaultValue;
+        boolean negative = head[from] == '-';
+        int p = negative ? from + 1 : from;
+        if (p == to) return defaultValue;
+        long acc = 0;
+        for (; p < to; p++) {
+            int d = head[p] - '0';
+            if (d < 0 || d > 9) return defaultValue;
+            if (acc > (Long.MAX_VALUE - d) / 10) return defaultValue; // desborde
+            acc = acc * 10 + d;
+        }
+        return negative ? -acc : acc;
+    }
+
+    /** Parámetro booleano: true/1/yes/on o false/0/no/off (sin distinguir mayúsculas). */
+    public boolean getBoolean(String paramName, boolean defaultValue) {
+        int i = lastIndexOfParam(paramName);
+        if (i < 0) return defaultValue;
+        int from = query[4 * i + 2], to = query[4 * i + 3];
+        if (needsDecoding(from, to)) {
+            String v = queryValue(i).trim();
+            return switch (v.toLowerCase(Locale.ROOT)) {
+                case "true", "1", "yes", "on" -> true;
+                case "false", "0", "no", "off" -> false;
+                default -> defaultValue;
+            };
+        }
+        if (equalsIgnoreCase(from, to, "true") || equalsIgnoreCase(from, to, "1")
+                || equalsIgnoreCase(from, to, "yes") || equalsIgnoreCase(from, to, "on")) return true;
+        if (equalsIgnoreCase(from, to, "false") || equalsIgnoreCase(from, to, "0")
+                || equalsIgnoreCase(from, to, "no") || equalsIgnoreCase(from, to, "off")) return false;
+        return defaultValue;
+    }
+
+    /** Mapa completo de parámetros de query (con repetidos, el último valor). */
     public Map<String, String> getQueryMap() {
-        String q = rawUri.getRawQuery();
         Map<String, String> map = new HashMap<>();
-        if (q == null || q.isEmpty()) return map;
+        int n = queryCount();
+        for (int i = 0; i < n; i++) map.put(queryKey(i), queryValue(i));
+        return map;
+    }
+
+    // ---- Query: índice de posiciones y decodificación perezosa ----
+
+    private int queryCount() {
+        if (query == null) indexQuery();
+        return query.length / 4;
+    }
 
-        for (String kv : q.split("&")) {
-            int i = kv.indexOf('=');
-            String k = i >= 0 ? kv.substring(0, i) : kv;
-            String v = i >= 0 ? kv.substring(i + 1) : "";
-            k = urlDecode(k);
-            v = urlDecode(v);
-            map.put(k, v);
+    private void indexQuery() {
+        if (queryStart < 0 || queryStart + 1 >= targetEnd) {
+            query = new int[0];
+            return;
         }
-        return map;
+        int from = queryStart + 1;
+        int pairs = 1;
+        for (int i = from; i < targetEnd; i++) if (head[i] == '&') pairs++;
+        int[] idx = new int[pairs * 4];
+        int n = 0;
+        for (int ks = from; ks <= targetEnd; ) {
+            int amp = indexOf(head, ks, targetEnd, (byte) '&');
+            int pe = amp < 0 ? targetEnd : amp;
+            if (pe > ks) { // "a=1&&b=2": los pares vacíos se ignoran
+                int eq = indexOf(head, ks, pe, (byte) '=');
+                idx[4 * n] = ks;
+                idx[4 * n + 1] = eq < 0 ? pe : eq;
+                idx[4 * n + 2] = eq < 0 ? pe : eq + 1;
+                idx[4 * n + 3] = pe;
+                n++;
+            }
+            ks = pe + 1;
+        }
+        query = n == pairs ? idx : Arrays.copyOf(idx, n * 4);
+        queryKeys = new String[n];
+        queryValues = new String[n];
+    }
+
+    private int lastIndexOfParam(String name) {
+        for (int i = queryCount() - 1; i >= 0; i--) {
+            if (keyEquals(i, name)) return i;
+        }
+        return -1;
+    }
+
+    /** Compara la clave cruda con {@code name} sin decodificar cuando no hay escapes. */
+    private boolean keyEquals(int i, String name) {
+        int from = query[4 * i], to = query[4 * i + 1];
+        if (queryKeys[i] != null || needsDecoding(from, to)) return queryKey(i).equals(name);
+        if (to - from != name.length()) return false;
+        for (int k = 0; k < name.length(); k++) {
+            if (head[from + k] != name.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    private String queryKey(int i) {
+        String k = queryKeys[i];
+        if (k == null) {
+            k = decode(head, query[4 * i], query[4 * i + 1], true);
+            queryKeys[i] = k;
+        }
+        return k;
+    }
+
+    private String queryValue(int i) {
+        String v = queryValues[i];
+        if (v == null) {
+            v = decode(head, query[4 * i + 2], query[4 * i + 3], true);
+            queryValues[i] = v;
+        }
+        return v;
+    }
+
+    /** ¿Hay '%', '+' o bytes no ASCII que obliguen a decodificar? */
+    private boolean needsDecoding(int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte c = head[i];
+            if (c == '%' || c == '+' || c < 0) return true;
+        }
+        return false;
+    }
+
+    private boolean equalsIgnoreCase(int from, int to, String s) {
+        if (to - from != s.length()) return false;
+        for (int k = 0; k < s.length(); k++) {
+            if ((head[from + k] | 0x20) != (s.charAt(k) | 0x20)) return false;
+        }
+        return true;
+    }
+
+    /** Decodifica %XX (UTF-8) del path; sin escapes ni bytes no ASCII no hay copia intermedia. */
+    static String decodePath(byte[] b, int from, int to) {
+        return decode(b, from, to, false);
+    }
+
+    /**
+     * Decodificación de URL sobre bytes: %XX como UTF-8 y, en la query, '+'
+     * como espacio. Un '%' mal formado se deja tal cual.
+     */
+    static String decode(byte[] b, int from, int to, boolean plusAsSpace) {
+        boolean plain = true;
+        for (int i = from; i < to && plain; i++) plain = b[i] != '%' && b[i] >= 0 && !(plusAsSpace && b[i] == '+');
+        if (plain) return new String(b, from, to - from, StandardCharsets.ISO_8859_1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(to - from);
+        for (int i = from; i < to; i++) {
+            int h, l;
+            if (b[i] == '%' && i + 2 < to && (h = Character.digit(b[i + 1], 16)) >= 0 && (l = Character.digit(b[i + 2], 16)) >= 0) {
+                out.write((h << 4) | l);
+                i += 2;
+            } else if (plusAsSpace && b[i] == '+') {
+                out.write(' ');
+            } else {
+                out.write(b[i]);
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
     }
 
-    private String urlDecode(String s) {
-        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    private static int indexOf(byte[] b, int from, int to, byte c) {
+        for (int i = from; i < to; i++) if (b[i] == c) return i;
+        return -1;
     }
 }
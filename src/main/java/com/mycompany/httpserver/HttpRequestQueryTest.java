@@ -3,9 +3,11 @@ package com.mycompany.httpserver;
 import org.testng.annotations.Test;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class HttpRequestQueryTest {
@@ -19,4 +21,27 @@ public class HttpRequestQueryTest {
         assertEquals("1", all.get("x"));
         assertTrue(all.containsKey("empty"));
     }
+
+    @Test
+    void repeatedParams_areAllKept_andGetValuesReturnsLast() {
+        HttpRequest req = new HttpRequest(URI.create("/search?tag=a&tag=b+c&&tag=%C3%B1"));
+        assertEquals(List.of("a", "b c", "ñ"), req.getAll("tag"));
+        assertEquals("ñ", req.getValues("tag"));
+        assertTrue(req.getAll("missing").isEmpty());
+    }
+
+    @Test
+    void typedAccessors_parseWithoutBoxing_andFallBackToDefault() {
+        HttpRequest req = new HttpRequest(URI.create("/x?n=42&neg=-7&big=9999999999&bad=4x&flag=ON&off=0&enc=%31%32"));
+        assertEquals(42, req.getInt("n", -1));
+        assertEquals(-7, req.getInt("neg", 0));
+        assertEquals(-1, req.getInt("big", -1));
+        assertEquals(9999999999L, req.getLong("big", 0));
+        assertEquals(5, req.getInt("bad", 5));
+        assertEquals(12, req.getInt("enc", 0));
+        assertEquals(3, req.getInt("missing", 3));
+        assertTrue(req.getBoolean("flag", false));
+        assertFalse(req.getBoolean("off", true));
+        assertTrue(req.getBoolean("n", true));
+    }
 }
@@ -1,4 +1,341 @@
 package com.mycompany.httpserver;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Respuesta HTTP: estado, Content-Type y headers. Si el handler devuelve un
+ * String, el servidor lo envía completo con estos valores. Para cuerpos
+ * grandes o que se generan de a poco, el handler escribe en
+ * {@link #outputStream()} / {@link #writer()}: la primera escritura envía los
+ * headers y el cuerpo sale en chunks (HTTP/1.1) o delimitado por cierre de
+ * conexión (HTTP/1.0), sin armarlo completo en memoria.
+ */
 public class HttpResponse {
+
+    private int status = 200;
+    private String contentType = "application/json; charset=utf-8";
+    private final List<String> headers = new ArrayList<>(4); // pares nombre, valor
+
+    private final OutputStream sink;
+    private final String version;
+    private final boolean detached;
+    private boolean keepAlive;
+
+    private volatile OutputStream body;   // no null una vez enviados los headers
+    private byte[] content;      // cuerpo ya codificado (body(byte[])), o null
+    private Writer writer;
+
+    // Un handler async (o un hilo suyo) puede pedir el stream mientras el servidor responde por su cuenta:
+    // enviar los headers y sellar se excluyen. ReentrantLock: no fija el hilo virtual mientras escribe
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private boolean sealed; // el servidor ya respondió (p.ej. 504) o toma el cuerpo devuelto
+
+    /** Respuesta desconectada: el cuerpo queda en memoria (útil para probar handlers). */
+    public HttpResponse() {
+        this(new ByteArrayOutputStream(), "HTTP/1.1", false, true);
+    }
+
+    HttpResponse(OutputStream sink, String version, boolean keepAlive) {
+        this(sink, version, keepAlive, false);
+    }
+
+    private HttpResponse(OutputStream sink, String version, boolean keepAlive, boolean detached) {
+        this.sink = sink;
+        this.version = version;
+        this.keepAlive = keepAlive;
+        this.detached = detached;
+    }
+
+    /** Código de estado (por defecto 200). */
+    public HttpResponse status(int code) {
+        if (code < 100 || code > 999) throw new IllegalArgumentException("Código de estado inválido: " + code);
+        checkNotCommitted();
+        this.status = code;
+        return this;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /** Content-Type (por defecto "application/json; charset=utf-8"). */
+    public HttpResponse type(String contentType) {
+        checkNotCommitted();
+        this.contentType = checkValue(contentType);
+        return this;
+    }
+
+    public String getType() {
+        return contentType;
+    }
+
+    /** Agrega un header. Content-Type, Connection y Transfer-Encoding los maneja el servidor. */
+    public HttpResponse header(String name, String value) {
+        checkNotCommitted();
+        if (name.isEmpty() || name.indexOf(':') >= 0) throw new IllegalArgumentException("Nombre de header inválido: " + name);
+        headers.add(checkValue(name));
+        headers.add(checkValue(value));
+        return this;
+    }
+
+    /** Primer valor del header agregado con {@link #header}, o null. */
+    public String getHeader(String name) {
+        for (int i = 0; i < headers.size(); i += 2) {
+            if (headers.get(i).equalsIgnoreCase(name)) return headers.get(i + 1);
+        }
+        return null;
+    }
+
+    /** ¿Ya se enviaron los headers? Después no se puede cambiar estado ni headers. */
+    public boolean isCommitted() {
+        return body != null;
+    }
+
+    /**
+     * Stream del cuerpo. Envía los headers en la primera llamada; cada
+     * {@code flush()} empuja al cliente lo escrito hasta ese momento. Si se
+     * declaró Content-Length con {@link #header} se respeta y no hay chunks.
+     */
+    public OutputStream outputStream() throws IOException {
+        commitLock.lock();
+        try {
+            if (sealed) throw new IllegalStateException("La respuesta ya fue enviada por el servidor");
+            if (body == null) commit();
+            return body;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /** Writer UTF-8 sobre {@link #outputStream()}. */
+    public Writer writer() throws IOException {
+        if (writer == null) writer = new OutputStreamWriter(outputStream(), StandardCharsets.UTF_8);
+        return writer;
+    }
+
+    /**
+     * Cuerpo ya codificado (p.ej. por {@link JsonWriter}): se envía igual que
+     * un String devuelto por el handler (Content-Length, compresión) pero sin
+     * pasar por un String. El handler devuelve null; {@code data} no debe
+     * modificarse después.
+     */
+    public HttpResponse body(byte[] data) {
+        checkNotCommitted();
+        content = Objects.requireNonNull(data);
+        return this;
+    }
+
+    /** Escribe el contenido restante de {@code data} en el cuerpo. */
+    public void write(ByteBuffer data) throws IOException {
+        OutputStream out = outputStream();
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        } else {
+            byte[] chunk = new byte[Math.min(data.remaining(), 8192)];
+            while (data.hasRemaining()) {
+                int n = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+    }
+
+    /** Cuerpo escrito en una respuesta desconectada (ver constructor público). */
+    public byte[] bodyBytes() throws IOException {
+        if (!detached) throw new IllegalStateException("La respuesta está conectada a un socket");
+        if (content != null) return content;
+        if (writer != null) writer.flush();
+        return ((ByteArrayOutputStream) sink).toByteArray();
+    }
+
+    // ---- Uso del servidor ----
+
+    /** ¿Puede seguir usándose la conexión después de esta respuesta? */
+    boolean keepAlive() {
+        return keepAlive;
+    }
+
+    /** Cuerpo fijado con {@link #body(byte[])}, o null. */
+    byte[] content() {
+        return content;
+    }
+
+    String[] headerArray() {
+        return headers.toArray(new String[0]);
+    }
+
+    /**
+     * El servidor escribe la respuesta por su cuenta (error, timeout o cuerpo
+     * devuelto): desde acá {@link #outputStream()} falla, así un handler que
+     * siguió corriendo no escribe sobre la conexión. Devuelve false si el
+     * handler ya había enviado los headers; entonces el cuerpo es suyo.
+     */
+    boolean seal() {
+        commitLock.lock();
+        try {
+            if (body != null) return false;
+            sealed = true;
+            return true;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Termina el cuerpo en streaming (chunk final) si el handler lo usó.
+     * Falla si escribió menos de lo que declaró en Content-Length: el
+     * cliente esperaría el resto, así que la conexión no puede seguir.
+     */
+    void finish() throws IOException {
+        if (body == null) return;
+        if (writer != null) writer.flush();
+        body.close();
+    }
+
+    private void commit() throws IOException {
+        if (detached) {
+            body = sink;
+            return;
+        }
+        String declared = getHeader("Content-Length");
+        boolean chunked = declared == null && "HTTP/1.1".equals(version);
+        if (declared == null && !chunked) keepAlive = false; // HTTP/1.0: el fin del cuerpo es el cierre
+        long length = -1;
+        if (declared != null) {
+            try {
+                length = Long.parseLong(declared.trim());
+            } catch (NumberFormatException ignored) {
+            }
+            if (length < 0) keepAlive = false; // no delimita nada: el fin del cuerpo es el cierre
+        }
+
+        List<String> extra = new ArrayList<>(headers);
+        if (chunked) {
+            extra.add("Transfer-Encoding");
+            extra.add("chunked");
+        }
+        HttpServer.writeHead(sink, version, status, contentType, -1, keepAlive, extra.toArray(new String[0]));
+        body = chunked ? new ChunkedOutputStream(sink) : new FixedLengthOutputStream(sink, length);
+    }
+
+    private void checkNotCommitted() {
+        if (body != null) throw new IllegalStateException("Los headers ya fueron enviados");
+    }
+
+    private static String checkValue(String v) {
+        if (v.indexOf('\r') >= 0 || v.indexOf('\n') >= 0) throw new IllegalArgumentException("CR/LF no permitido en headers");
+        return v;
+    }
+
+    /**
+     * Cuerpo sin chunks: con Content-Length declarado no deja escribir de más
+     * y al cerrar exige haberlo completado; si no, la conexión no se reutiliza.
+     */
+    private final class FixedLengthOutputStream extends FilterOutputStream {
+        private long remaining; // -1: sin Content-Length válido, delimitado por el cierre
+
+        FixedLengthOutputStream(OutputStream out, long length) {
+            super(out);
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            count(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count(len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush(); // no cierra el socket: lo maneja el servidor
+            if (remaining > 0) {
+                keepAlive = false;
+                throw new IOException("faltan " + remaining + " bytes del Content-Length declarado");
+            }
+        }
+
+        private void count(int len) throws IOException {
+            if (remaining < 0) return;
+            if (len > remaining) {
+                keepAlive = false;
+                throw new IOException("el cuerpo supera el Content-Length declarado");
+            }
+            remaining -= len;
+        }
+    }
+
+    /** Codificación chunked: un chunk por flush (o cada 8 KB), "0\r\n\r\n" al cerrar. */
+    private static final class ChunkedOutputStream extends OutputStream {
+        private static final byte[] CRLF = {'\r', '\n'};
+        private static final byte[] LAST = {'0', '\r', '\n', '\r', '\n'};
+
+        private final OutputStream out;
+        private final byte[] buf = new byte[8192];
+        private int count;
+        private boolean closed;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buf.length) writeChunk();
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) throw new IOException("stream cerrado");
+            if (len >= buf.length) { // bloque grande: va directo como su propio chunk
+                writeChunk();
+                chunk(b, off, len);
+                return;
+            }
+            if (len > buf.length - count) writeChunk();
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            writeChunk();
+            out.write(LAST);
+            out.flush();
+            closed = true;
+        }
+
+        private void writeChunk() throws IOException {
+            if (count == 0) return;
+            chunk(buf, 0, count);
+            count = 0;
+        }
+
+        private void chunk(byte[] b, int off, int len) throws IOException {
+            out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(b, off, len);
+            out.write(CRLF);
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class HttpResponseTest {
+
+    @Test
+    public void streamedBody_isChunkedOnHttp11() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HttpResponse resp = new HttpResponse(sink, "HTTP/1.1", true);
+        resp.status(201).type("text/plain").header("X-Id", "7");
+
+        OutputStream out = resp.outputStream();
+        out.write("hola".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        out.write("mundo!".getBytes(StandardCharsets.UTF_8));
+        resp.finish();
+
+        String raw = sink.toString(StandardCharsets.US_ASCII);
+        assertTrue(raw.startsWith("HTTP/1.1 201 Created\r\n"));
+        assertTrue(raw.contains("X-Id: 7\r\n"));
+        assertTrue(raw.contains("Transfer-Encoding: chunked\r\n"));
+        assertFalse(raw.contains("Content-Length"));
+        assertTrue(raw.endsWith("\r\n\r\n4\r\nhola\r\n6\r\nmundo!\r\n0\r\n\r\n"));
+        assertTrue(resp.keepAlive());
+        assertThrows(IllegalStateException.class, () -> resp.status(500));
+    }
+
+    @Test
+    public void streamedBody_onHttp10_closesConnection() throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HttpResponse resp = new HttpResponse(sink, "HTTP/1.0", true);
+        resp.writer().write("abc");
+        resp.finish();
+
+        String raw = sink.toString(StandardCharsets.US_ASCII);
+        assertTrue(raw.contains("Connection: close\r\n"));
+        assertTrue(raw.endsWith("\r\n\r\nabc"));
+        assertFalse(resp.keepAlive());
+    }
+
+    @Test
+    public void declaredContentLength_isEnforced() throws Exception {
+        HttpResponse exact = new HttpResponse(new ByteArrayOutputStream(), "HTTP/1.1", true);
+        exact.header("Content-Length", "4").outputStream().write("hola".getBytes(StandardCharsets.UTF_8));
+        exact.finish();
+        assertTrue(exact.keepAlive());
+
+        // Más corto: el cliente esperaría el resto, la conexión no puede seguir
+        HttpResponse shorter = new HttpResponse(new ByteArrayOutputStream(), "HTTP/1.1", true);
+        shorter.header("Content-Length", "10").outputStream().write("hola".getBytes(StandardCharsets.UTF_8));
+        assertThrows(java.io.IOException.class, shorter::finish);
+        assertFalse(shorter.keepAlive());
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        HttpResponse longer = new HttpResponse(sink, "HTTP/1.1", true);
+        OutputStream out = longer.header("Content-Length", "2").outputStream();
+        assertThrows(java.io.IOException.class, () -> out.write("hola".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(longer.keepAlive());
+        assertFalse(sink.toString(StandardCharsets.US_ASCII).contains("hola"));
+    }
+
+    @Test
+    public void seal_andOutputStream_excludeEachOther() throws Exception {
+        HttpResponse sealed = new HttpResponse(new ByteArrayOutputStream(), "HTTP/1.1", true);
+        assertTrue(sealed.seal());
+        assertThrows(IllegalStateException.class, sealed::outputStream);
+
+        // El handler ya envió los headers: el servidor no puede responder encima
+        HttpResponse committed = new HttpResponse(new ByteArrayOutputStream(), "HTTP/1.1", true);
+        committed.outputStream();
+        assertFalse(committed.seal());
+        assertNotNull(committed.outputStream());
+    }
+
+    @Test
+    public void detachedResponse_keepsBodyInMemory() throws Exception {
+        HttpResponse resp = new HttpResponse();
+        resp.writer().write("ñ");
+        assertArrayEquals("ñ".getBytes(StandardCharsets.UTF_8), resp.bodyBytes());
+        assertThrows(IllegalArgumentException.class, () -> new HttpResponse().header("X", "a\r\nb"));
+    }
+}
@@ -1,26 +1,27 @@
 package com.mycompany.httpserver;
 
 import java.io.*;
-import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * Mini framework para rutas GET con lambdas, parámetros de query y estáticos.
- * Puerto por defecto: 8080 (se puede pasar por args[0]).
+ * Fachada estática sobre un {@link WebServer} por defecto; para varios
+ * servidores en la misma JVM se crean instancias de {@code WebServer}.
  */
 public class HttpServer {
 
-    // ====== Variables RENOMBRADAS para diferenciación ======
-    // Registro de endpoints (antes: services)
-    private static final Map<String, Service> endpointRegistry = new HashMap<>();
+    /** Motor de red: BLOCKING (un hilo por conexión) o NIO (Selector + event loops). */
+    public enum Engine { BLOCKING, NIO }
 
-    // Carpeta base de estáticos en target/classes (antes: principalPath)
-    private static String assetsBasePath = "target/classes/webroot";
-
-    // Carpeta base de origen (dev) desde resources (para copiar)
-    private static String resourcesBasePath = "src/main/resources";
+    // Instancia detrás de los métodos estáticos
+    private static final WebServer DEFAULT = new WebServer();
 
     // Tipos MIME
     private static final Map<String, String> MIME = new HashMap<>();
@@ -39,183 +40,379 @@ public class HttpServer {
     }
 
     // --- normalización de rutas (case-insensitive y con '/' inicial)
-    private static String normalizeRoute(String r) {
+    static String normalizeRoute(String r) {
         if (r == null || r.isEmpty()) return "/";
         String s = r.trim();
         if (!s.startsWith("/")) s = "/" + s;
-        return s.toLowerCase(java.util.Locale.ROOT);
+        // Los nombres de parámetros (":userId") conservan su forma original
+        if (s.indexOf(':') < 0) return s.toLowerCase(java.util.Locale.ROOT);
+        StringBuilder sb = new StringBuilder(s.length());
+        for (String seg : s.substring(1).split("/", -1)) {
+            sb.append('/').append(seg.startsWith(":") ? seg : seg.toLowerCase(java.util.Locale.ROOT));
+        }
+        return sb.toString();
+    }
+
+    /** Servidor por defecto, el que configuran y arrancan los métodos estáticos. */
+    public static WebServer server() {
+        return DEFAULT;
     }
 
-    /** Define una ruta GET y su lambda. */
+    /**
+     * Define una ruta GET y su lambda. El patrón admite parámetros
+     * ({@code /users/:id}) y un comodín final ({@code /files/*}).
+     */
     public static void get(String route, Service handler) {
-        endpointRegistry.put(normalizeRoute(route), handler);
+        DEFAULT.get(route, handler);
+    }
+
+    /** Define una ruta POST. */
+    public static void post(String route, Service handler) {
+        DEFAULT.post(route, handler);
+    }
+
+    /** Define una ruta PUT. */
+    public static void put(String route, Service handler) {
+        DEFAULT.put(route, handler);
+    }
+
+    /** Define una ruta DELETE. */
+    public static void delete(String route, Service handler) {
+        DEFAULT.delete(route, handler);
+    }
+
+    /**
+     * Define una ruta GET con handler asíncrono. La respuesta se escribe cuando
+     * el future se completa; si tarda más que el timeout global
+     * ({@link #asyncTimeout}) se responde 504.
+     */
+    public static void getAsync(String route, AsyncService handler) {
+        DEFAULT.getAsync(route, handler);
+    }
+
+    /** GET asíncrono con timeout propio. */
+    public static void getAsync(String route, AsyncService handler, Duration timeout) {
+        DEFAULT.getAsync(route, handler, timeout);
+    }
+
+    /** Define una ruta POST con handler asíncrono. */
+    public static void postAsync(String route, AsyncService handler) {
+        DEFAULT.postAsync(route, handler);
+    }
+
+    /** POST asíncrono con timeout propio. */
+    public static void postAsync(String route, AsyncService handler, Duration timeout) {
+        DEFAULT.postAsync(route, handler, timeout);
+    }
+
+    /**
+     * Define una ruta de Server-Sent Events: los clientes de un mismo tópico
+     * (el que devuelve {@code topics} para la petición) comparten el productor de {@code stream}.
+     */
+    public static void sse(String route, EventStream stream, Function<HttpRequest, String> topics) {
+        DEFAULT.sse(route, stream, topics);
+    }
+
+    /** Registra las rutas de un controlador anotado con {@link RestController}. */
+    public static void controller(Object controller) {
+        DEFAULT.controller(controller);
+    }
+
+    /** Registra los controladores {@link RestController} de un paquete. Ej: scan("com.mycompany.webapplication") */
+    public static void scan(String basePackage) {
+        DEFAULT.scan(basePackage);
+    }
+
+    /**
+     * Access log asíncrono en {@code file} (formato Common Log + latencia en µs).
+     * Ej: accessLog(Path.of("logs/access.log"))
+     */
+    public static void accessLog(Path file) {
+        DEFAULT.accessLog(file);
+    }
+
+    /** Access log con configuración propia (capacidad, política con el buffer lleno, rotación). */
+    public static void accessLog(AccessLog log) {
+        DEFAULT.accessLog(log);
+    }
+
+    /** Timeout por defecto de los handlers asíncronos (30 s). */
+    public static void asyncTimeout(Duration timeout) {
+        DEFAULT.asyncTimeout(timeout);
     }
 
     /**
-     * Define la ruta de estáticos. Copia desde resources -> target/classes
-     * Ej: staticfiles("/webroot") -> copiará a target/classes/webroot
+     * Define la carpeta de estáticos y la indexa (sin copiar): desde
+     * src/main/resources en desarrollo o desde el classpath (también en un jar).
+     * Ej: staticfiles("/webroot")
      */
     public static void staticfiles(String staticFolder) {
-        String normalized = staticFolder.startsWith("/") ? staticFolder : ("/" + staticFolder);
-        assetsBasePath = "target/classes" + normalized;
-        String from = resourcesBasePath + normalized;
+        DEFAULT.staticfiles(staticFolder);
+    }
+
+    /** Sirve los estáticos de un directorio cualquiera del disco. */
+    public static void staticfiles(Path directory) {
+        DEFAULT.staticfiles(directory);
+    }
+
+    /**
+     * Activa o desactiva el modo concurrente. Con {@code false} se vuelve al
+     * comportamiento secuencial (una petición a la vez en el hilo del accept).
+     */
+    public static void concurrent(boolean enabled) {
+        DEFAULT.concurrent(enabled);
+    }
 
-        System.out.println("[staticfiles] Copiando estáticos:");
-        System.out.println("  from: " + from);
-        System.out.println("  to  : " + assetsBasePath);
+    /** Máximo de conexiones atendidas a la vez; con el cupo lleno las nuevas reciben 503 con Retry-After. */
+    public static void maxConnections(int max) {
+        DEFAULT.maxConnections(max);
+    }
 
-        try {
-            createDirectories(assetsBasePath);
-            copyRecursive(Paths.get(from), Paths.get(assetsBasePath));
-        } catch (IOException e) {
-            System.err.println("[staticfiles] Advertencia: no se pudieron copiar los archivos: " + e.getMessage());
-        }
+    /** Limita cada IP a {@code permits} peticiones por {@code period} en cada ruta (429 al excederlo). */
+    public static void rateLimit(int permits, Duration period) {
+        DEFAULT.rateLimit(permits, period);
+    }
+
+    /** Límite propio de {@code route} por IP. */
+    public static void rateLimit(String route, int permits, Duration period) {
+        DEFAULT.rateLimit(route, permits, period);
+    }
+
+    /** Acepta también HTTP/2 sin TLS (prefacio directo o Upgrade: h2c); solo motor bloqueante. */
+    public static void h2c(boolean enabled) {
+        DEFAULT.h2c(enabled);
+    }
+
+    /**
+     * Configura las conexiones persistentes: tiempo de inactividad antes de
+     * cerrar el socket y cantidad máxima de peticiones atendidas por conexión.
+     */
+    public static void keepAlive(int idleTimeoutMs, int maxRequests) {
+        DEFAULT.keepAlive(idleTimeoutMs, maxRequests);
+    }
+
+    /**
+     * Publica las métricas del servidor en {@code route} (p.ej. "/metrics")
+     * en formato de texto de Prometheus.
+     */
+    public static void metrics(String route) {
+        DEFAULT.metrics(route);
+    }
+
+    /** Publica en {@code route} 200 mientras el servidor acepta tráfico y 503 mientras se detiene. */
+    public static void readiness(String route) {
+        DEFAULT.readiness(route);
+    }
+
+    /** Selecciona el motor de red con el que arrancará {@link #startServer(ServerConfig)}. */
+    public static void engine(Engine selected) {
+        DEFAULT.engine(selected);
     }
 
-    /** Inicia el servidor (args[0] = puerto opcional) */
+    /** Cantidad de event loops del motor NIO (por defecto, uno por núcleo). */
+    public static void ioThreads(int threads) {
+        DEFAULT.ioThreads(threads);
+    }
+
+    /** Tamaño máximo (bytes) de la caché de estáticos; 0 la desactiva. */
+    public static void staticCacheSize(long maxBytes) {
+        DEFAULT.staticCacheSize(maxBytes);
+    }
+
+    /**
+     * Comprime con gzip/deflate (según Accept-Encoding) las respuestas de los
+     * handlers de al menos {@code minBytes} cuyo Content-Type empiece con
+     * alguno de {@code contentTypes}; sin tipos se usan los de texto, JSON,
+     * JavaScript y SVG. Por defecto activa con 1 KB.
+     */
+    public static void compression(int minBytes, String... contentTypes) {
+        DEFAULT.compression(minBytes, contentTypes);
+    }
+
+    /** Activa (con la configuración por defecto) o desactiva la compresión de respuestas dinámicas. */
+    public static void compression(boolean enabled) {
+        DEFAULT.compression(enabled);
+    }
+
+    /**
+     * Tamaño máximo del cuerpo de una petición (10 MB por defecto). Un
+     * Content-Length mayor se rechaza con 413 sin leer el cuerpo; un cuerpo
+     * chunked que lo supera corta la lectura del handler y también da 413.
+     */
+    public static void maxBodySize(long bytes) {
+        DEFAULT.maxBodySize(bytes);
+    }
+
+    /** Tamaño máximo de la cabeza de una petición (línea de inicio + headers). */
+    public static void maxHeaderSize(int bytes) {
+        DEFAULT.maxHeaderSize(bytes);
+    }
+
+    /**
+     * Inicia el servidor (args[0] = puerto opcional, 8080 por defecto).
+     * @deprecated usar {@link #startServer(ServerConfig)}
+     */
+    @Deprecated
     public static void startServer(String[] args) throws IOException {
         int port = 8080;
         if (args != null && args.length > 0) {
             try { port = Integer.parseInt(args[0]); } catch (NumberFormatException ignored) {}
         }
+        startServer(ServerConfig.port(port));
+    }
 
-        try (ServerSocket listener = new ServerSocket(port)) {
-            System.out.println("Servidor corriendo en http://localhost:" + port);
-            while (true) {
-                Socket client = listener.accept();
-                handleClient(client);
-            }
+    /**
+     * Inicia el servidor por defecto y bloquea el hilo actual hasta que se
+     * detenga (con {@link #stopServer(Duration)}, p.ej. desde un shutdown hook).
+     * Para no bloquear, usar {@code server().start(config)}.
+     */
+    public static void startServer(ServerConfig config) throws IOException {
+        DEFAULT.start(config);
+        try {
+            DEFAULT.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrumpido esperando al servidor");
         }
     }
 
-    // ================== Núcleo de atención ==================
-    private static void handleClient(Socket client) {
-        try (InputStream inRaw = client.getInputStream();
-             OutputStream outRaw = new BufferedOutputStream(client.getOutputStream());
-             BufferedReader in = new BufferedReader(new InputStreamReader(inRaw, StandardCharsets.US_ASCII))) {
-
-            String start = in.readLine(); // "GET /ruta?x=1 HTTP/1.1"
-            if (start == null || start.isEmpty()) return;
-
-            String[] parts = start.split(" ");
-            String method = parts.length > 0 ? parts[0] : "GET";
-            String target = parts.length > 1 ? parts[1] : "/";
-            String version = parts.length > 2 ? parts[2] : "HTTP/1.1";
-
-            // Consumir headers (no los usamos aún)
-            String line;
-            while ((line = in.readLine()) != null && !line.isEmpty()) {}
+    /** Detiene el servidor por defecto dejando {@code grace} para las peticiones en curso. */
+    public static boolean stopServer(Duration grace) {
+        return DEFAULT.stop(grace);
+    }
 
-            URI uri;
-            try {
-                uri = new URI(target);
-            } catch (URISyntaxException e) {
-                writeText(outRaw, version, 400, "Bad Request");
-                return;
-            }
+    // Atajos al servidor por defecto (tests y benchmarks)
+    static boolean respond(OutputStream out, HttpRequest req, boolean keepAlive) throws IOException {
+        return DEFAULT.respond(out, req, keepAlive);
+    }
 
-            String path = uri.getPath();
-
-            // 1) ¿Hay handler registrado exacto?
-            Service svc = endpointRegistry.get(normalizeRoute(path));
-            if ("GET".equalsIgnoreCase(method) && svc != null) {
-                HttpRequest req = new HttpRequest(uri);
-                HttpResponse resp = new HttpResponse();
-                String payload;
-                try {
-                    payload = svc.handle(req, resp);
-                } catch (Exception ex) {
-                    payload = "Internal Server Error: " + ex.getMessage();
-                    write(outRaw, version, 500, "text/plain; charset=utf-8", payload.getBytes(StandardCharsets.UTF_8));
-                    return;
-                }
-                write(outRaw, version, 200, "application/json; charset=utf-8", payload.getBytes(StandardCharsets.UTF_8));
-                return;
-            }
+    static CompletableFuture<Boolean> respondAsync(OutputStream out, HttpRequest req, boolean keepAlive, Executor completion) {
+        return DEFAULT.respondAsync(out, req, keepAlive, completion);
+    }
 
-            // 2) Servir estáticos desde assetsBasePath
-            serveStatic(outRaw, version, path);
+    static int serveStatic(OutputStream out, HttpRequest req, boolean keepAlive) throws IOException {
+        return DEFAULT.serveStatic(out, req, keepAlive);
+    }
 
-        } catch (IOException ioe) {
-            System.err.println("[handleClient] " + ioe.getMessage());
-        } finally {
-            try { client.close(); } catch (IOException ignored) {}
+    /** Content-Length declarado (0 si no viene), o -1 si es inválido. */
+    static long contentLength(HttpRequest req) {
+        String cl = req.getHeader("Content-Length");
+        if (cl == null) return 0;
+        try {
+            long n = Long.parseLong(cl.trim());
+            return n < 0 ? -1 : n;
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
-    // ================== Estáticos (binario-seguro) ==================
-    private static void serveStatic(OutputStream out, String version, String reqPath) throws IOException {
-        String clean = normalize(reqPath);
-        if ("/".equals(clean)) clean = "/index.html";
+    static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
 
-        // target/classes/webroot + clean
-        Path candidate = Paths.get(assetsBasePath + clean);
-        // Fallback: si no existe, intenta servir directo desde resources (útil en dev sin compilar)
-        Path devCandidate = Paths.get(resourcesBasePath + clean);
-
-        Path file = Files.exists(candidate) ? candidate : (Files.exists(devCandidate) ? devCandidate : null);
+    /** ¿El cliente espera un 100 Continue antes de mandar el cuerpo? (solo HTTP/1.1) */
+    static boolean expectsContinue(HttpRequest req) {
+        String expect = req.getHeader("Expect");
+        return expect != null && "HTTP/1.1".equals(req.getVersion()) && expect.trim().equalsIgnoreCase("100-continue");
+    }
 
-        if (file == null || Files.isDirectory(file) || !Files.exists(file)) {
-            writeText(out, version, 404, "Not Found: " + clean);
-            return;
+    /** HTTP/1.1 es persistente salvo "Connection: close"; HTTP/1.0 solo con "Connection: keep-alive". */
+    static boolean isKeepAlive(String version, String connection) {
+        if (connection != null) {
+            for (String token : connection.split(",")) {
+                String t = token.trim();
+                if (t.equalsIgnoreCase("close")) return false;
+                if (t.equalsIgnoreCase("keep-alive")) return true;
+            }
         }
-
-        byte[] data = Files.readAllBytes(file);
-        String ctype = detectContentType(file.toString());
-        write(out, version, 200, ctype, data);
+        return "HTTP/1.1".equals(version);
     }
 
-    private static String detectContentType(String path) {
+    // ================== Tipos de contenido ==================
+    static String detectContentType(String path) {
         int i = path.lastIndexOf('.');
         String ext = (i >= 0) ? path.substring(i + 1).toLowerCase() : "";
         return MIME.getOrDefault(ext, "application/octet-stream");
     }
 
-    private static String normalize(String p) {
-        String s = p.replace("\\", "/");
-        s = s.replaceAll("/+", "/");
-        s = s.replaceAll("\\.\\.", "");  // evita traversal
-        if (!s.startsWith("/")) s = "/" + s;
-        return s;
+    // ================== Escritura de respuestas ==================
+    static void writeText(OutputStream out, String version, int code, String text, boolean keepAlive) throws IOException {
+        write(out, version, code, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8), keepAlive);
     }
 
-    // ================== Escritura de respuestas ==================
-    private static void writeText(OutputStream out, String version, int code, String text) throws IOException {
-        write(out, version, code, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8));
-    }
-
-    private static void write(OutputStream out, String version, int code, String contentType, byte[] body) throws IOException {
-        String status = switch (code) { case 200 -> "OK"; case 400 -> "Bad Request"; case 404 -> "Not Found"; default -> "Status"; };
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        buf.write((version + " " + code + " " + status + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
-        buf.write(("Content-Type: " + contentType + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
-        buf.write(("Content-Length: " + body.length + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
-        buf.write(("Connection: close\r\n").getBytes(StandardCharsets.ISO_8859_1));
-        buf.write(("\r\n").getBytes(StandardCharsets.ISO_8859_1));
-        out.write(buf.toByteArray());
-        out.write(body);
-        out.flush();
-    }
-
-    // ================== Utilidades de copia ==================
-    private static void createDirectories(String dir) throws IOException {
-        Files.createDirectories(Paths.get(dir));
-    }
-
-    private static void copyRecursive(Path from, Path to) throws IOException {
-        if (!Files.exists(from)) return;
-        Files.walk(from).forEach(src -> {
-            try {
-                Path dest = to.resolve(from.relativize(src).toString());
-                if (Files.isDirectory(src)) {
-                    Files.createDirectories(dest);
-                } else {
-                    Files.createDirectories(dest.getParent());
-                    Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
+    /**
+     * Escribe la respuesta completa; el flush lo decide quien atiende la conexión.
+     * {@code extraHeaders} va en pares nombre, valor.
+     */
+    static void write(OutputStream out, String version, int code, String contentType, byte[] body,
+                      boolean keepAlive, String... extraHeaders) throws IOException {
+        ResponseHead.Buffer head = ResponseHead.encode(version, code, contentType, body.length, keepAlive, extraHeaders);
+        try {
+            if (out instanceof GatheringOutput g) {
+                g.writeGathered(head.bytes, head.length, body, 0, body.length);
+            } else {
+                out.write(head.bytes, 0, head.length);
+                out.write(body);
+            }
+        } finally {
+            head.release();
+        }
+    }
+
+    /** Como el anterior, con el cuerpo en un buffer (los bytes restantes de {@code body}). */
+    static void write(OutputStream out, String version, int code, String contentType, ByteBuffer body,
+                      boolean keepAlive, String... extraHeaders) throws IOException {
+        ResponseHead.Buffer head = ResponseHead.encode(version, code, contentType, body.remaining(), keepAlive, extraHeaders);
+        try {
+            if (out instanceof GatheringOutput g) {
+                g.writeGathered(head.bytes, head.length, body);
+            } else {
+                out.write(head.bytes, 0, head.length);
+                copy(body, out);
             }
-        });
+        } finally {
+            head.release();
+        }
+    }
+
+    /** Copia por bloques los bytes restantes de {@code body} (sin mover su posición). */
+    static void copy(ByteBuffer body, OutputStream out) throws IOException {
+        ByteBuffer src = body.duplicate();
+        byte[] chunk = new byte[Math.min(64 * 1024, src.remaining())];
+        while (src.hasRemaining()) {
+            int n = Math.min(chunk.length, src.remaining());
+            src.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Línea de estado y headers; el cuerpo de {@code contentLength} bytes lo
+     * escribe quien llama. Con {@code contentLength < 0} no se envía
+     * Content-Length (cuerpo chunked o delimitado por cierre).
+     */
+    static void writeHead(OutputStream out, String version, int code, String contentType, long contentLength,
+                                  boolean keepAlive, String... extraHeaders) throws IOException {
+        ResponseHead.Buffer head = ResponseHead.encode(version, code, contentType, contentLength, keepAlive, extraHeaders);
+        try {
+            out.write(head.bytes, 0, head.length);
+        } finally {
+            head.release();
+        }
+    }
+
+    /** Texto de la línea de estado. */
+    static String reason(int code) {
+        return switch (code) {
+            case 200 -> "OK"; case 201 -> "Created"; case 202 -> "Accepted"; case 204 -> "No Content";
+            case 206 -> "Partial Content"; case 301 -> "Moved Permanently"; case 302 -> "Found";
+            case 303 -> "See Other"; case 304 -> "Not Modified"; case 307 -> "Temporary Redirect";
+            case 400 -> "Bad Request"; case 401 -> "Unauthorized"; case 403 -> "Forbidden"; case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed"; case 409 -> "Conflict"; case 411 -> "Length Required";
+            case 413 -> "Content Too Large"; case 416 -> "Range Not Satisfiable"; case 417 -> "Expectation Failed";
+            case 422 -> "Unprocessable Content"; case 429 -> "Too Many Requests"; case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error"; case 501 -> "Not Implemented"; case 502 -> "Bad Gateway"; case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            case 505 -> "HTTP Version Not Supported";
+            default -> "Status";
+        };
     }
 }
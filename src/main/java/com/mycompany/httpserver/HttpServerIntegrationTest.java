@@ -3,6 +3,7 @@ package com.mycompany.httpserver;
 import org.junit.Test;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.util.concurrent.TimeUnit;
 // OJO: NO importes java.net.http.HttpRequest ni java.net.http.HttpResponse
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -15,21 +16,21 @@ public class HttpServerIntegrationTest {
         HttpServer.staticfiles("/static");
         HttpServer.get("/app/test", (HttpRequest req, HttpResponse resp) -> "{\"ok\":true}");
 
-        // Arrancar en hilo daemon para no bloquear los tests
+        // Arrancar en hilo daemon para no bloquear los tests; puerto libre elegido por el SO
         Thread t = new Thread(() -> {
             try {
-                HttpServer.startServer(new String[]{"36101"});
+                HttpServer.startServer(ServerConfig.port(0));
             } catch (Exception ignored) {}
         });
         t.setDaemon(true);
         t.start();
-        Thread.sleep(300); // pequeño margen para que arranque
+        int port = HttpServer.server().ready().get(5, TimeUnit.SECONDS).port();
 
         HttpClient client = HttpClient.newHttpClient();
 
         // 1) Ruta GET registrada
         java.net.http.HttpResponse<String> r1 = client.send(
-                java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:36101/app/test?x=1"))
+                java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/app/test?x=1"))
                         .GET().build(),
                 java.net.http.HttpResponse.BodyHandlers.ofString()
         );
@@ -38,7 +39,7 @@ public class HttpServerIntegrationTest {
 
         // 2) Index estático
         java.net.http.HttpResponse<String> r2 = client.send(
-                java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:36101/"))
+                java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/"))
                         .GET().build(),
                 java.net.http.HttpResponse.BodyHandlers.ofString()
         );
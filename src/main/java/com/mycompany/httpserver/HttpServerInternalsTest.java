@@ -19,9 +19,9 @@ public class HttpServerInternalsTest {
     @org.testng.annotations.Test
     void staticfiles_setsAssetsBasePath() throws Exception {
         HttpServer.staticfiles("/static");
-        Field f = HttpServer.class.getDeclaredField("assetsBasePath");
+        Field f = WebServer.class.getDeclaredField("assetsBasePath");
         f.setAccessible(true);
-        String v = (String) f.get(null);
+        String v = (String) f.get(HttpServer.server());
         assertTrue(v.replace('\\','/').endsWith("/static"));
     }
 }
@@ -0,0 +1,500 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritor de JSON que codifica directo a UTF-8 en un buffer de bytes
+ * reutilizado (de un {@link SlotPool}), sin Strings intermedios. Al cerrarlo,
+ * si el documento entró en {@link #BUFFER_LIMIT} bytes se entrega a la
+ * respuesta con {@link HttpResponse#body(byte[])} (Content-Length y
+ * compresión como cualquier handler); si no, desde que se llenó el buffer
+ * sale en streaming por {@link HttpResponse#outputStream()}, de a bloques,
+ * sin llegar a tener el documento completo en memoria.
+ *
+ * <pre>
+ * HttpServer.get("/users/:id", (req, resp) -&gt; {
+ *     try (JsonWriter json = JsonWriter.of(resp)) {
+ *         json.beginObject().name("id").value(req.getPathParam("id")).name("tags").value(tags).endObject();
+ *     }
+ *     return null;
+ * });
+ * // o, para un valor ya armado (Map, List, record...):
+ * HttpServer.get("/users", (req, resp) -&gt; JsonWriter.write(resp, users));
+ * </pre>
+ *
+ * No es thread-safe: uno por respuesta. Los errores de escritura del
+ * streaming salen como {@link UncheckedIOException}.
+ */
+public final class JsonWriter implements AutoCloseable {
+
+    /** Hasta este tamaño el documento se arma en memoria; más grande sale en streaming. */
+    public static final int BUFFER_LIMIT = 64 * 1024;
+
+    private static final int INITIAL = 8 * 1024;
+    private static final SlotPool<byte[]> POOL = SlotPool.perProcessor();
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    // Contexto de cada nivel de anidamiento
+    private static final byte EMPTY_DOCUMENT = 0, DOCUMENT = 1, EMPTY_ARRAY = 2, ARRAY = 3,
+            EMPTY_OBJECT = 4, OBJECT = 5, NAME = 6;
+    private static final int MAX_DEPTH = 256;
+
+    // Componentes de cada tipo record, con el nombre ya codificado ("\"nombre\":")
+    private static final ClassValue<Component[]> RECORDS = new ClassValue<>() {
+        @Override
+        protected Component[] computeValue(Class<?> type) {
+            RecordComponent[] rc = type.getRecordComponents();
+            Component[] out = new Component[rc.length];
+            for (int i = 0; i < rc.length; i++) {
+                Method accessor = rc[i].getAccessor();
+                accessor.setAccessible(true); // records no públicos (p.ej. declarados en un handler)
+                JsonWriter name = new JsonWriter(null);
+                name.string(rc[i].getName(), true);
+                name.put(':');
+                out[i] = new Component(Arrays.copyOf(name.buf, name.count), accessor);
+                name.release();
+            }
+            return out;
+        }
+    };
+
+    private record Component(byte[] name, Method accessor) {}
+
+    /** JSON ya codificado que se inserta tal cual, p.ej. el cuerpo de un upstream. */
+    public static final class Fragment {
+        private final byte[] bytes;
+        private final CharSequence text;
+
+        private Fragment(byte[] bytes, CharSequence text) {
+            this.bytes = bytes;
+            this.text = text;
+        }
+    }
+
+    private final HttpResponse resp;
+    private byte[] buf;
+    private int count;
+    private OutputStream stream; // no null desde que el documento pasó a streaming
+    private byte[] stack = new byte[16];
+    private int depth = 1;       // stack[0] = EMPTY_DOCUMENT
+    private boolean closed;
+
+    private JsonWriter(HttpResponse resp) {
+        this.resp = resp;
+        byte[] pooled = POOL.poll();
+        this.buf = pooled != null ? pooled : new byte[INITIAL];
+    }
+
+    /** Escritor sobre el cuerpo de {@code resp}; se entrega al cerrarlo. */
+    public static JsonWriter of(HttpResponse resp) {
+        return new JsonWriter(Objects.requireNonNull(resp));
+    }
+
+    /**
+     * Serializa {@code value} (ver {@link #value(Object)}) como cuerpo de
+     * {@code resp}. Devuelve null para usarlo como retorno del handler.
+     */
+    public static String write(HttpResponse resp, Object value) {
+        try (JsonWriter json = of(resp)) {
+            json.value(value);
+        }
+        return null;
+    }
+
+    /** JSON ya codificado en UTF-8; no se valida ni se copia. */
+    public static Fragment fragment(byte[] json) {
+        return new Fragment(Objects.requireNonNull(json), null);
+    }
+
+    /** JSON ya armado como texto; no se valida. */
+    public static Fragment fragment(CharSequence json) {
+        return new Fragment(null, Objects.requireNonNull(json));
+    }
+
+    // ====== Estructura ======
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        put('{');
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        return end(EMPTY_OBJECT, OBJECT, '}');
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        put('[');
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        return end(EMPTY_ARRAY, ARRAY, ']');
+    }
+
+    /** Nombre del próximo miembro del objeto abierto. */
+    public JsonWriter name(String name) {
+        beforeName();
+        string(name, true);
+        put(':');
+        return this;
+    }
+
+    // ====== Valores ======
+
+    public JsonWriter value(CharSequence s) {
+        if (s == null) return nullValue();
+        beforeValue();
+        string(s, true);
+        return this;
+    }
+
+    public JsonWriter value(long v) {
+        beforeValue();
+        writeLong(v);
+        return this;
+    }
+
+    /** NaN e infinitos no existen en JSON: IllegalArgumentException. */
+    public JsonWriter value(double v) {
+        if (!Double.isFinite(v)) throw new IllegalArgumentException("JSON no admite " + v);
+        beforeValue();
+        if (v == (long) v && Math.abs(v) < 1e15) writeLong((long) v); // enteros sin ".0"
+        else ascii(Double.toString(v));
+        return this;
+    }
+
+    public JsonWriter value(boolean v) {
+        beforeValue();
+        put(v ? TRUE : FALSE, 0, v ? 4 : 5);
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        put(NULL, 0, 4);
+        return this;
+    }
+
+    /**
+     * Cualquier valor: null, textos, números, booleanos, enums (por nombre),
+     * {@link Map} (claves con {@code String.valueOf}), {@link Iterable},
+     * arreglos, {@link Optional}, records (un miembro por componente) y
+     * {@link Fragment}. Otro tipo da IllegalArgumentException.
+     */
+    public JsonWriter value(Object v) {
+        if (v == null) return nullValue();
+        if (v instanceof CharSequence s) return value(s);
+        if (v instanceof Fragment f) return f.bytes != null ? raw(f.bytes, 0, f.bytes.length) : raw(f.text);
+        if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte
+                || v instanceof AtomicInteger || v instanceof AtomicLong) return value(((Number) v).longValue());
+        if (v instanceof Double || v instanceof Float) return value(((Number) v).doubleValue());
+        if (v instanceof Number n) { // BigDecimal, BigInteger, LongAdder...: su toString ya es un número JSON
+            beforeValue();
+            ascii(n.toString());
+            return this;
+        }
+        if (v instanceof Boolean b) return value(b.booleanValue());
+        if (v instanceof Character c) return value(String.valueOf(c));
+        if (v instanceof Enum<?> e) return value(e.name());
+        if (v instanceof Optional<?> o) return value(o.orElse(null));
+        if (v instanceof Map<?, ?> map) {
+            beginObject();
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                name(String.valueOf(e.getKey()));
+                value(e.getValue());
+            }
+            return endObject();
+        }
+        if (v instanceof Iterable<?> items) {
+            beginArray();
+            for (Object item : items) value(item);
+            return endArray();
+        }
+        Class<?> type = v.getClass();
+        if (type.isArray()) return array(v);
+        if (type.isRecord()) return record(v);
+        throw new IllegalArgumentException("No se puede serializar a JSON: " + type.getName());
+    }
+
+    /** JSON ya codificado en UTF-8, tal cual. Un bloque grande en streaming se escribe sin copiarlo. */
+    public JsonWriter raw(byte[] json, int off, int len) {
+        Objects.checkFromIndexSize(off, len, json.length);
+        beforeValue();
+        put(json, off, len);
+        return this;
+    }
+
+    /** JSON ya armado como texto, tal cual (se codifica a UTF-8 sin escapar). */
+    public JsonWriter raw(CharSequence json) {
+        beforeValue();
+        utf8(json, false);
+        return this;
+    }
+
+    // ====== Entrega ======
+
+    /**
+     * Entrega el documento: como cuerpo de la respuesta si entró en el
+     * buffer, o terminando el streaming. Un documento incompleto no se
+     * entrega (IllegalStateException; si ya venía una excepción del handler,
+     * queda como suprimida).
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            if (depth != 1 || stack[0] != DOCUMENT) {
+                throw new IllegalStateException("Documento JSON incompleto");
+            }
+            if (stream == null) {
+                resp.body(Arrays.copyOf(buf, count));
+            } else {
+                stream.write(buf, 0, count);
+                stream.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        byte[] b = buf;
+        buf = null;
+        if (b != null && b.length <= BUFFER_LIMIT) POOL.offer(b);
+    }
+
+    // ====== Internos ======
+
+    private JsonWriter array(Object a) {
+        beginArray();
+        if (a instanceof Object[] items) {
+            for (Object item : items) value(item);
+        } else if (a instanceof int[] ints) {
+            for (int i : ints) value(i);
+        } else if (a instanceof long[] longs) {
+            for (long l : longs) value(l);
+        } else if (a instanceof double[] doubles) {
+            for (double d : doubles) value(d);
+        } else {
+            for (int i = 0, n = Array.getLength(a); i < n; i++) value(Array.get(a, i));
+        }
+        return endArray();
+    }
+
+    private JsonWriter record(Object r) {
+        beginObject();
+        for (Component c : RECORDS.get(r.getClass())) {
+            beforeName();
+            put(c.name(), 0, c.name().length);
+            Object v;
+            try {
+                v = c.accessor().invoke(r);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException("Falló " + c.accessor(), e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            value(v);
+        }
+        return endObject();
+    }
+
+    private void push(byte context) {
+        if (depth == MAX_DEPTH) throw new IllegalStateException("Anidamiento JSON > " + MAX_DEPTH + " (¿referencia circular?)");
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = context;
+    }
+
+    private void beforeName() {
+        checkOpen();
+        byte top = stack[depth - 1];
+        if (top == OBJECT) put(',');
+        else if (top != EMPTY_OBJECT) throw new IllegalStateException("name() fuera de un objeto");
+        stack[depth - 1] = NAME;
+    }
+
+    private void beforeValue() {
+        checkOpen();
+        switch (stack[depth - 1]) {
+            case EMPTY_DOCUMENT -> stack[depth - 1] = DOCUMENT;
+            case EMPTY_ARRAY -> stack[depth - 1] = ARRAY;
+            case ARRAY -> put(',');
+            case NAME -> stack[depth - 1] = OBJECT;
+            case DOCUMENT -> throw new IllegalStateException("El documento JSON ya tiene un valor");
+            default -> throw new IllegalStateException("Falta name() antes del valor");
+        }
+    }
+
+    private JsonWriter end(byte empty, byte nonEmpty, char c) {
+        checkOpen();
+        byte top = stack[depth - 1];
+        if (top != empty && top != nonEmpty) throw new IllegalStateException("Cierre '" + c + "' sin apertura");
+        depth--;
+        put(c);
+        return this;
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("JsonWriter cerrado");
+    }
+
+    /** Texto entre comillas, escapado si {@code quoted}; U+2028/2029 también, por si va dentro de un script. */
+    private void string(CharSequence s, boolean quoted) {
+        put('"');
+        utf8(s, quoted);
+        put('"');
+    }
+
+    private void utf8(CharSequence s, boolean escape) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (buf.length - count < 6) grow(6);
+            byte[] b = buf;
+            if (c < 0x80) {
+                if (!escape || (c >= 0x20 && c != '"' && c != '\\')) {
+                    b[count++] = (byte) c;
+                    continue;
+                }
+                b[count++] = '\\';
+                switch (c) {
+                    case '"' -> b[count++] = '"';
+                    case '\\' -> b[count++] = '\\';
+                    case '\n' -> b[count++] = 'n';
+                    case '\r' -> b[count++] = 'r';
+                    case '\t' -> b[count++] = 't';
+                    case '\b' -> b[count++] = 'b';
+                    case '\f' -> b[count++] = 'f';
+                    default -> unicodeEscape(c);
+                }
+            } else if (c < 0x800) {
+                b[count++] = (byte) (0xC0 | (c >> 6));
+                b[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    b[count++] = (byte) (0xF0 | (cp >> 18));
+                    b[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    b[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    b[count++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    b[count++] = '?'; // surrogate suelto: como String.getBytes
+                }
+            } else if (escape && (c == '\u2028' || c == '\u2029')) {
+                b[count++] = '\\';
+                unicodeEscape(c);
+            } else {
+                b[count++] = (byte) (0xE0 | (c >> 12));
+                b[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /** "uXXXX" (la barra ya está escrita). */
+    private void unicodeEscape(char c) {
+        buf[count++] = 'u';
+        buf[count++] = HEX[(c >> 12) & 0xF];
+        buf[count++] = HEX[(c >> 8) & 0xF];
+        buf[count++] = HEX[(c >> 4) & 0xF];
+        buf[count++] = HEX[c & 0xF];
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return;
+        }
+        if (buf.length - count < 20) grow(20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) digits++;
+        int p = count + digits;
+        count = p;
+        do {
+            buf[--p] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+    }
+
+    private void ascii(String s) {
+        int n = s.length();
+        if (buf.length - count < n) grow(n);
+        for (int i = 0; i < n; i++) buf[count++] = (byte) s.charAt(i);
+    }
+
+    private void put(char c) {
+        if (count == buf.length) grow(1);
+        buf[count++] = (byte) c;
+    }
+
+    private void put(byte[] b, int off, int len) {
+        if (buf.length - count < len) {
+            if (stream == null && count + len <= BUFFER_LIMIT) {
+                grow(len);
+            } else {
+                spill();
+                if (len > buf.length) { // no entra ni vacío: va directo, sin copiarlo
+                    try {
+                        stream.write(b, off, len);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return;
+                }
+            }
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Hace lugar para {@code n} bytes: agranda el buffer hasta el límite y,
+     * pasado el límite, vuelca lo acumulado a la respuesta en streaming.
+     */
+    private void grow(int n) {
+        if (stream == null && count + n <= BUFFER_LIMIT) {
+            buf = Arrays.copyOf(buf, Math.min(BUFFER_LIMIT, Math.max(buf.length * 2, count + n)));
+            return;
+        }
+        spill();
+        if (buf.length < n) buf = new byte[n];
+    }
+
+    /** Pasa a streaming (si no lo estaba) y escribe lo acumulado. */
+    private void spill() {
+        if (resp == null) throw new IllegalStateException("Nombre de componente demasiado largo");
+        try {
+            if (stream == null) stream = resp.outputStream();
+            stream.write(buf, 0, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        count = 0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class JsonWriterTest {
+
+    private record Point(int x, double y, String label) {}
+
+    private static String json(Object value) throws IOException {
+        HttpResponse resp = new HttpResponse();
+        assertNull(JsonWriter.write(resp, value));
+        return new String(resp.bodyBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void escapesQuotesBackslashesControlsAndLineSeparators() throws Exception {
+        assertEquals("\"a\\\"b\\\\c\\n\\r\\t\\b\\f\\u0001\\u001f\"", json("a\"b\\c\n\r\t\b\f\u0001\u001f"));
+        assertEquals("\"</script>\\u2028\\u2029\"", json("</script>\u2028\u2029"));
+        // UTF-8 de 2, 3 y 4 bytes; un surrogate suelto queda como '?', igual que String.getBytes
+        assertEquals("\"ñ€😀?\"", json("ñ€😀\uD800"));
+    }
+
+    @Test
+    public void serializesMapsListsArraysRecordsAndNumbers() throws Exception {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("n", null);
+        m.put("long", Long.MIN_VALUE);
+        m.put("int", -42);
+        m.put("double", 1.5);
+        m.put("whole", 3.0);
+        m.put("big", new BigDecimal("1E+3"));
+        m.put("flags", new boolean[]{true, false});
+        m.put("ints", new int[]{1, 2});
+        m.put("list", List.of("a", 'b', Optional.empty()));
+        m.put("point", new Point(1, 2.25, "p"));
+        m.put("mode", HttpServer.Engine.NIO);
+        assertEquals("{\"n\":null,\"long\":-9223372036854775808,\"int\":-42,\"double\":1.5,\"whole\":3,"
+                + "\"big\":1E+3,\"flags\":[true,false],\"ints\":[1,2],\"list\":[\"a\",\"b\",null],"
+                + "\"point\":{\"x\":1,\"y\":2.25,\"label\":\"p\"},\"mode\":\"NIO\"}", json(m));
+        assertEquals("[]", json(List.of()));
+        assertEquals("{}", json(Map.of()));
+    }
+
+    @Test
+    public void fragmentsAreInsertedVerbatim() throws Exception {
+        byte[] upstream = "{\"Meta Data\":{\"1. Information\":\"Daily\"}}".getBytes(StandardCharsets.UTF_8);
+        HttpResponse resp = new HttpResponse();
+        try (JsonWriter json = JsonWriter.of(resp)) {
+            json.beginObject()
+                    .name("notice").value("hola")
+                    .name("data").raw(upstream, 0, upstream.length)
+                    .name("extra").value(JsonWriter.fragment("[1,2]"))
+                    .endObject();
+        }
+        assertEquals("{\"notice\":\"hola\",\"data\":{\"Meta Data\":{\"1. Information\":\"Daily\"}},\"extra\":[1,2]}",
+                new String(resp.bodyBytes(), StandardCharsets.UTF_8));
+        assertFalse(resp.isCommitted());
+    }
+
+    @Test
+    public void rejectsMisuse() {
+        HttpResponse resp = new HttpResponse();
+        JsonWriter json = JsonWriter.of(resp);
+        json.beginObject();
+        assertThrows(IllegalStateException.class, () -> json.value(1));       // falta name()
+        assertThrows(IllegalStateException.class, json::endArray);
+        assertThrows(IllegalStateException.class, json::close);                // documento incompleto
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.write(new HttpResponse(), Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.write(new HttpResponse(), new Object()));
+        List<Object> loop = new ArrayList<>();
+        loop.add(loop);
+        assertThrows(IllegalStateException.class, () -> JsonWriter.write(new HttpResponse(), loop));
+    }
+
+    @Test
+    public void largeDocument_streamsInsteadOfBuffering() throws Exception {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) points.add(new Point(i, i / 4.0, "punto \"" + i + "\""));
+        WebServer server = new WebServer()
+                .get("/small", (req, resp) -> JsonWriter.write(resp, Map.of("ok", true)))
+                .get("/large", (req, resp) -> JsonWriter.write(resp, points))
+                .start(ServerConfig.port(0));
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            java.net.http.HttpResponse<String> small = client.send(java.net.http.HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + server.port() + "/small")).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals("{\"ok\":true}", small.body());
+            assertEquals("11", small.headers().firstValue("Content-Length").orElse(null));
+            assertEquals("application/json; charset=utf-8", small.headers().firstValue("Content-Type").orElse(null));
+
+            java.net.http.HttpResponse<String> large = client.send(java.net.http.HttpRequest.newBuilder(
+                    URI.create("http://localhost:" + server.port() + "/large")).build(),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, large.statusCode());
+            assertEquals("chunked", large.headers().firstValue("Transfer-Encoding").orElse(null));
+            assertTrue(large.body().length() > JsonWriter.BUFFER_LIMIT);
+            assertTrue(large.body().startsWith("[{\"x\":0,\"y\":0,\"label\":\"punto \\\"0\\\"\"},{\"x\":1,\"y\":0.25,"));
+            assertTrue(large.body().endsWith("{\"x\":19999,\"y\":4999.75,\"label\":\"punto \\\"19999\\\"\"}]"));
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+}
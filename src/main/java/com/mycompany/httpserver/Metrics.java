@@ -0,0 +1,226 @@
+package com.mycompany.httpserver;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas del servidor, sin locks en el camino de cada petición: contadores
+ * {@link LongAdder} e histogramas de latencia log-lineales (estilo
+ * HdrHistogram) con celdas repartidas por hilo para no competir por la
+ * misma línea de caché. Se exportan en formato de texto de Prometheus.
+ */
+final class Metrics {
+
+    // Límites de los buckets exportados, en segundos (los de client_golang por defecto, más finos abajo)
+    private static final double[] EXPORT_BUCKETS =
+            {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    final LongAdder accepted = new LongAdder();
+    final LongAdder shed = new LongAdder();
+    final LongAdder h2Streams = new LongAdder();
+    final LongAdder sseClients = new LongAdder();
+    final LongAdder sseEvents = new LongAdder();
+    final LongAdder sseDropped = new LongAdder();
+    final LongAdder accessLogDropped = new LongAdder();
+    final LongAdder active = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    final LongAdder staticHits = new LongAdder();
+    final LongAdder staticMisses = new LongAdder();
+
+    private final LongAdder[] statuses = new LongAdder[500]; // 100..599
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Histogram>> routes = new ConcurrentHashMap<>();
+
+    Metrics() {
+        for (int i = 0; i < statuses.length; i++) statuses[i] = new LongAdder();
+    }
+
+    /** Registra una respuesta: {@code route} es el patrón registrado (o "static"). */
+    void record(String method, String route, int status, long nanos) {
+        status(status);
+        // El método lo elige el cliente: los desconocidos comparten una etiqueta para no crear series sin límite
+        if (Router.methodIndex(method) < 0 && !"HEAD".equals(method) && !"OPTIONS".equals(method)) method = "OTHER";
+        ConcurrentHashMap<String, Histogram> byRoute = routes.get(method);
+        if (byRoute == null) byRoute = routes.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        Histogram h = byRoute.get(route);
+        if (h == null) h = byRoute.computeIfAbsent(route, r -> new Histogram());
+        h.record(nanos);
+    }
+
+    /** Respuesta sin ruta asociada (p.ej. cabecera inválida). */
+    void status(int status) {
+        if (status >= 100 && status < 600) statuses[status - 100].increment();
+    }
+
+    /** Formato de exposición de texto de Prometheus (versión 0.0.4). */
+    String scrape(StaticCache cache, StaticIndex index) {
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "http_requests_total", "counter", "Peticiones atendidas por método y ruta.");
+        TreeMap<String, Histogram> sorted = sortedRoutes();
+        for (Map.Entry<String, Histogram> e : sorted.entrySet()) {
+            sb.append("http_requests_total{").append(e.getKey()).append("} ").append(e.getValue().count()).append('\n');
+        }
+
+        header(sb, "http_request_duration_seconds", "histogram", "Latencia desde la cabecera leída hasta la respuesta escrita.");
+        for (Map.Entry<String, Histogram> e : sorted.entrySet()) {
+            long[] counts = e.getValue().snapshot();
+            long cumulative = 0;
+            int fine = 0;
+            for (double le : EXPORT_BUCKETS) {
+                long limitMicros = (long) (le * 1_000_000);
+                while (fine < counts.length && Histogram.upperMicros(fine) <= limitMicros) cumulative += counts[fine++];
+                sb.append("http_request_duration_seconds_bucket{").append(e.getKey())
+                  .append(",le=\"").append(format(le)).append("\"} ").append(cumulative).append('\n');
+            }
+            while (fine < counts.length) cumulative += counts[fine++];
+            sb.append("http_request_duration_seconds_bucket{").append(e.getKey()).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+            sb.append("http_request_duration_seconds_sum{").append(e.getKey()).append("} ")
+              .append(format(e.getValue().sumNanos() / 1e9)).append('\n');
+            sb.append("http_request_duration_seconds_count{").append(e.getKey()).append("} ").append(cumulative).append('\n');
+        }
+
+        header(sb, "http_request_duration_quantile_seconds", "gauge", "Percentiles de latencia calculados en el servidor (error relativo < 12.5%).");
+        for (Map.Entry<String, Histogram> e : sorted.entrySet()) {
+            long[] counts = e.getValue().snapshot();
+            for (double q : QUANTILES) {
+                sb.append("http_request_duration_quantile_seconds{").append(e.getKey())
+                  .append(",quantile=\"").append(format(q)).append("\"} ")
+                  .append(format(Histogram.percentileMicros(counts, q) / 1e6)).append('\n');
+            }
+        }
+
+        header(sb, "http_responses_total", "counter", "Respuestas por código de estado.");
+        for (int i = 0; i < statuses.length; i++) {
+            long n = statuses[i].sum();
+            if (n > 0) sb.append("http_responses_total{code=\"").append(i + 100).append("\"} ").append(n).append('\n');
+        }
+
+        gauge(sb, "http_connections_active", "gauge", "Conexiones abiertas.", active.sum());
+        gauge(sb, "http_connections_accepted_total", "counter", "Conexiones aceptadas.", accepted.sum());
+        gauge(sb, "http_connections_shed_total", "counter", "Conexiones rechazadas con 503 por cupo lleno.", shed.sum());
+        gauge(sb, "http2_streams_total", "counter", "Streams HTTP/2 (h2c) atendidos.", h2Streams.sum());
+        gauge(sb, "sse_clients", "gauge", "Clientes conectados a rutas SSE.", sseClients.sum());
+        gauge(sb, "sse_events_total", "counter", "Eventos SSE enviados (sumando todos los clientes).", sseEvents.sum());
+        gauge(sb, "sse_dropped_total", "counter", "Clientes SSE desconectados por no consumir a tiempo.", sseDropped.sum());
+        gauge(sb, "access_log_dropped_total", "counter", "Líneas del access log descartadas con el buffer lleno.", accessLogDropped.sum());
+        gauge(sb, "http_request_bytes_total", "counter", "Bytes recibidos (cabecera + cuerpo).", bytesIn.sum());
+        gauge(sb, "http_response_bytes_total", "counter", "Bytes enviados.", bytesOut.sum());
+
+        long hits = staticHits.sum(), misses = staticMisses.sum();
+        gauge(sb, "static_cache_hits_total", "counter", "Estáticos servidos desde la caché.", hits);
+        gauge(sb, "static_cache_misses_total", "counter", "Estáticos cargados desde el índice (la caché no los tenía).", misses);
+        header(sb, "static_cache_hit_ratio", "gauge", "Proporción de aciertos de la caché de estáticos.");
+        sb.append("static_cache_hit_ratio ").append(format(hits + misses == 0 ? 0 : (double) hits / (hits + misses))).append('\n');
+        if (cache != null) gauge(sb, "static_cache_bytes", "gauge", "Bytes ocupados por la caché de estáticos.", cache.bytes());
+        if (index != null) {
+            gauge(sb, "static_index_files", "gauge", "Archivos en el índice de estáticos.", index.size());
+            gauge(sb, "static_index_bytes", "gauge", "Bytes de los archivos indexados.", index.bytes());
+        }
+        return sb.toString();
+    }
+
+    private TreeMap<String, Histogram> sortedRoutes() {
+        TreeMap<String, Histogram> sorted = new TreeMap<>();
+        routes.forEach((method, byRoute) -> byRoute.forEach((route, h) ->
+                sorted.put("method=\"" + method + "\",route=\"" + escape(route) + "\"", h)));
+        return sorted;
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String type, String help, long value) {
+        header(sb, name, type, help);
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String format(double v) {
+        String s = String.format(Locale.ROOT, "%.6f", v);
+        s = s.replaceAll("0+$", "");
+        return s.endsWith(".") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Histograma log-lineal en microsegundos: 8 sub-buckets por potencia de 2
+     * (error relativo máximo 12.5%), valores exactos por debajo de 8 µs y tope
+     * en 2^35 µs (~9.5 h). Las celdas se reparten en franjas por hilo; la
+     * lectura suma las franjas.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int MAX_EXP = 35;
+        static final int BUCKETS = SUB + (MAX_EXP - SUB_BITS + 1) * SUB;
+        private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * BUCKETS);
+        private final LongAdder sumNanos = new LongAdder();
+
+        void record(long nanos) {
+            int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+            cells.getAndIncrement(stripe * BUCKETS + index(nanos / 1000));
+            sumNanos.add(nanos);
+        }
+
+        static int index(long micros) {
+            if (micros < SUB) return (int) Math.max(micros, 0);
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            if (exp > MAX_EXP) return BUCKETS - 1;
+            int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB - 1);
+            return SUB + (exp - SUB_BITS) * SUB + sub;
+        }
+
+        /** Mayor valor (µs) que cae en el bucket {@code i}. */
+        static long upperMicros(int i) {
+            if (i < SUB) return i;
+            int exp = (i - SUB) / SUB + SUB_BITS;
+            int sub = (i - SUB) % SUB;
+            long lower = (long) (SUB + sub) << (exp - SUB_BITS);
+            return lower + (1L << (exp - SUB_BITS)) - 1;
+        }
+
+        long[] snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int s = 0; s < STRIPES; s++) {
+                for (int i = 0; i < BUCKETS; i++) counts[i] += cells.get(s * BUCKETS + i);
+            }
+            return counts;
+        }
+
+        long count() {
+            long n = 0;
+            for (int i = 0; i < cells.length(); i++) n += cells.get(i);
+            return n;
+        }
+
+        long sumNanos() {
+            return sumNanos.sum();
+        }
+
+        /** Percentil {@code q} (0..1) en µs, como el límite superior de su bucket. */
+        static long percentileMicros(long[] counts, double q) {
+            long total = 0;
+            for (long c : counts) total += c;
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= Math.max(rank, 1)) return upperMicros(i);
+            }
+            return upperMicros(counts.length - 1);
+        }
+    }
+}
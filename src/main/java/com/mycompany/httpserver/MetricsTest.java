@@ -0,0 +1,69 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void histogramBuckets_coverValues_withBoundedError() {
+        for (long v : new long[]{0, 1, 7, 8, 9, 15, 16, 100, 1_000, 12_345, 1_000_000, 60_000_000L}) {
+            int i = Metrics.Histogram.index(v);
+            long upper = Metrics.Histogram.upperMicros(i);
+            assertTrue("v=" + v, upper >= v);
+            assertTrue("v=" + v, i == 0 || Metrics.Histogram.upperMicros(i - 1) < v);
+            assertTrue("v=" + v, upper - v <= Math.max(1, v / 8));
+        }
+        assertEquals(Metrics.Histogram.BUCKETS - 1, Metrics.Histogram.index(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void percentiles_comeFromRecordedDistribution() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        for (int i = 0; i < 99; i++) h.record(100_000);      // 100 µs
+        h.record(50_000_000);                                 // 50 ms
+        long[] counts = h.snapshot();
+        assertEquals(100, h.count());
+        long p50 = Metrics.Histogram.percentileMicros(counts, 0.5);
+        long p999 = Metrics.Histogram.percentileMicros(counts, 0.999);
+        assertTrue(p50 >= 100 && p50 < 113);
+        assertTrue(p999 >= 50_000 && p999 < 56_250);
+    }
+
+    @Test
+    public void scrape_usesPrometheusTextFormat() {
+        Metrics m = new Metrics();
+        m.record("GET", "/app/hello", 200, 2_000_000);
+        m.record("GET", "/app/hello", 200, 3_000_000);
+        m.record("GET", "static", 404, 50_000);
+        m.status(431);
+        m.staticHits.add(3);
+        m.staticMisses.add(1);
+
+        String text = m.scrape(null, null);
+        assertTrue(text.contains("# TYPE http_request_duration_seconds histogram\n"));
+        assertTrue(text.contains("http_requests_total{method=\"GET\",route=\"/app/hello\"} 2\n"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/app/hello\",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/app/hello\",le=\"0.005\"} 2\n"));
+        assertTrue(text.contains("http_request_duration_seconds_count{method=\"GET\",route=\"static\"} 1\n"));
+        assertTrue(text.contains("http_request_duration_seconds_sum{method=\"GET\",route=\"/app/hello\"} 0.005\n"));
+        assertTrue(text.contains("http_responses_total{code=\"200\"} 2\n"));
+        assertTrue(text.contains("http_responses_total{code=\"431\"} 1\n"));
+        assertTrue(text.contains("static_cache_hit_ratio 0.75\n"));
+    }
+
+    @Test
+    public void record_groupsUnknownMethodsUnderOneLabel() {
+        Metrics m = new Metrics();
+        for (int i = 0; i < 50; i++) m.record("X" + i, "static", 405, 1_000);
+        m.record("HEAD", "static", 200, 1_000);
+        m.record("OPTIONS", "/app/hello", 405, 1_000);
+
+        String text = m.scrape(null, null);
+        assertTrue(text.contains("http_requests_total{method=\"OTHER\",route=\"static\"} 50\n"));
+        assertTrue(text.contains("http_requests_total{method=\"HEAD\",route=\"static\"} 1\n"));
+        assertTrue(text.contains("http_requests_total{method=\"OPTIONS\",route=\"/app/hello\"} 1\n"));
+        assertFalse(text.contains("X1"));
+    }
+}
@@ -0,0 +1,748 @@
+package com.mycompany.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Motor no bloqueante: uno o más acceptors reparten las conexiones entre N event
+ * loops (uno por Selector). Cada loop lee y parsea las peticiones desde
+ * ByteBuffers; los handlers corren en hilos virtuales para que uno lento no
+ * detenga el loop, y la respuesta vuelve al loop para escribirse. Lo crea y
+ * lo detiene {@link WebServer}, que es quien abre los sockets de escucha.
+ */
+final class NioServer {
+
+    private static final int INITIAL_BUFFER = 4 * 1024;
+    // Máximo de bytes de una respuesta en streaming esperando ser escritos
+    private static final long HIGH_WATER = 256 * 1024;
+
+    private final WebServer server;
+    private final ServerConfig config;
+    private final int idleTimeoutMs;
+    private final int maxRequestsPerConnection;
+    private final int maxHeadBytes;
+    private final long maxBodyBytes;
+    private final EventLoop[] loops;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    // Drenado: no se aceptan más peticiones por conexión; stopped termina los loops
+    private volatile boolean draining;
+    private volatile boolean stopped;
+
+    NioServer(WebServer server, ServerConfig config, int ioThreads, int idleTimeoutMs, int maxRequestsPerConnection,
+              int maxHeadBytes, long maxBodyBytes) throws IOException {
+        this.server = server;
+        this.config = config;
+        this.maxHeadBytes = maxHeadBytes;
+        this.maxBodyBytes = maxBodyBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.loops = new EventLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) loops[i] = new EventLoop(i);
+    }
+
+    /**
+     * Arranca los event loops y un hilo por acceptor (no daemon: mantienen
+     * viva la JVM), que devuelve. Con SO_REUSEPORT cada acceptor tiene su
+     * socket de escucha.
+     */
+    List<Thread> start(List<ServerSocketChannel> listeners) throws IOException {
+        for (EventLoop loop : loops) loop.thread.start();
+        List<Thread> acceptors = new ArrayList<>(config.getAcceptors());
+        for (int i = 0; i < config.getAcceptors(); i++) {
+            ServerSocketChannel listener = listeners.get(i % listeners.size());
+            int first = i;
+            Thread t = Thread.ofPlatform().name("nio-acceptor-" + i).daemon(false).unstarted(() -> {
+                try {
+                    accept(listener, first);
+                } catch (IOException e) {
+                    if (listener.isOpen()) System.err.println("[acceptor] " + e);
+                }
+            });
+            t.start();
+            acceptors.add(t);
+        }
+        System.out.println("Servidor NIO (" + loops.length + " event loops, " + config.getAcceptors()
+                + " acceptors) corriendo en http://localhost:" + ServerConfig.localPort(listeners.get(0)));
+        return acceptors;
+    }
+
+    /**
+     * Primera fase de la detención (los sockets de escucha ya están
+     * cerrados): se cierran las conexiones inactivas y las ocupadas se
+     * cierran al terminar su respuesta.
+     */
+    void drain() {
+        draining = true;
+        for (EventLoop loop : loops) loop.execute(loop::closeIdleAll);
+    }
+
+    /** Corta lo que quede abierto y termina los loops y los handlers. */
+    void close() {
+        stopped = true;
+        for (EventLoop loop : loops) loop.selector.wakeup();
+        workers.shutdownNow();
+    }
+
+    /** Reparte round-robin entre los loops; cada acceptor arranca en uno distinto. */
+    private void accept(ServerSocketChannel acceptor, int next) throws IOException {
+        next %= loops.length;
+        while (true) {
+            // accept bloqueante: el acceptor no necesita selector propio
+            SocketChannel ch = acceptor.accept();
+            server.metrics.accepted.increment();
+            try {
+                ch.configureBlocking(false);
+                config.configure(ch);
+            } catch (IOException e) {
+                ch.close();
+                continue;
+            }
+            loops[next].register(ch);
+            next = (next + 1) % loops.length;
+        }
+    }
+
+    /** Estado por conexión; solo lo toca el hilo de su event loop. */
+    private final class Conn {
+        final SocketChannel ch;
+        final InetAddress remote;
+        final boolean admitted; // false: llegó con el cupo lleno, su primera petición recibe 503
+        final RequestParser parser = new RequestParser(maxHeadBytes, RequestParser.DEFAULT_MAX_HEADERS);
+        ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER); // modo escritura: acumula lo leído
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        BodyDecoder decoder;    // cuerpo de la petición en curso aún sin terminar de leer
+        BodyPipe pipe;          // hacia el handler (descarta lo que llegue una vez respondida la petición)
+        boolean bodyFailed;     // cuerpo inválido o demasiado grande: se cierra tras responder
+        int served;
+        boolean busy;           // hay un handler en curso: las respuestas salen en orden
+        boolean responseDone;   // el handler terminó; falta vaciar la cola de salida
+        boolean closeAfterWrite;
+        long lastActivity = System.nanoTime();
+
+        // Backpressure del streaming: bytes entregados por el handler y aún no escritos al socket
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition drained = lock.newCondition();
+        private long pendingBytes;
+        private boolean closed;
+
+        Conn(SocketChannel ch, InetAddress remote, boolean admitted) {
+            this.ch = ch;
+            this.remote = remote;
+            this.admitted = admitted;
+        }
+
+        void queued(long bytes) {
+            lock.lock();
+            try { pendingBytes += bytes; } finally { lock.unlock(); }
+        }
+
+        void written(long bytes) {
+            lock.lock();
+            try {
+                pendingBytes -= bytes;
+                if (pendingBytes <= HIGH_WATER) drained.signalAll();
+            } finally { lock.unlock(); }
+        }
+
+        void closed() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    server.metrics.active.decrement();
+                    server.connectionClosed();
+                    if (admitted) server.releaseAdmission();
+                }
+                closed = true;
+                drained.signalAll();
+            } finally { lock.unlock(); }
+            BodyPipe p = pipe;
+            if (p != null) p.fail(new IOException("conexión cerrada por el cliente"));
+        }
+
+        /** Bloquea al handler mientras haya más de {@code limit} bytes sin enviar. */
+        void awaitDrain(long limit) throws IOException {
+            lock.lock();
+            try {
+                while (pendingBytes > limit && !closed) drained.awaitUninterruptibly();
+                if (closed) throw new IOException("conexión cerrada por el cliente");
+            } finally { lock.unlock(); }
+        }
+    }
+
+    private final class EventLoop {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Thread thread;
+        private final ByteBuffer[] gather = new ByteBuffer[16]; // reutilizado por flush, sólo desde este hilo
+
+        EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = Thread.ofPlatform().name("nio-loop-" + index).daemon(true).unstarted(this::loop);
+        }
+
+        void register(SocketChannel ch) {
+            execute(() -> {
+                try {
+                    if (draining) { // aceptada justo antes de cerrar la escucha
+                        ch.close();
+                        return;
+                    }
+                    InetAddress remote = ((InetSocketAddress) ch.getRemoteAddress()).getAddress();
+                    Conn c = new Conn(ch, remote, server.admit());
+                    try {
+                        ch.register(selector, SelectionKey.OP_READ, c);
+                    } catch (IOException e) {
+                        if (c.admitted) server.releaseAdmission();
+                        throw e;
+                    }
+                    server.metrics.active.increment();
+                    server.connectionOpened();
+                } catch (IOException e) {
+                    try { ch.close(); } catch (IOException ignored) {}
+                }
+            });
+        }
+
+        /** Corre {@code task} en el hilo del loop. */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        private void loop() {
+            long lastSweep = System.nanoTime();
+            while (!stopped) {
+                try {
+                    selector.select(1000);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("[nio] " + e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Conn c = (Conn) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) onReadable(key, c);
+                            if (key.isValid() && key.isWritable()) flush(key, c);
+                        } catch (IOException | CancelledKeyException e) {
+                            close(key);
+                        } catch (RuntimeException | InternalError e) {
+                            // Una conexión rota (p.ej. un buffer que falla al leerse) no puede tirar el loop entero
+                            System.err.println("[nio] " + e);
+                            close(key);
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    if (now - lastSweep >= 1_000_000_000L) {
+                        closeIdle(now);
+                        lastSweep = now;
+                    }
+                } catch (IOException e) {
+                    System.err.println("[nio] " + e.getMessage());
+                }
+            }
+            for (SelectionKey key : selector.keys()) close(key);
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+
+        private void onReadable(SelectionKey key, Conn c) throws IOException {
+            if (c.decoder != null && !c.in.hasRemaining()) return; // cuerpo en pausa: el handler va atrasado
+            if (!c.in.hasRemaining()) {
+                if (c.in.capacity() >= maxHeadBytes) {
+                    reject(key, c, 431, "Request Header Fields Too Large");
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(c.in.capacity() * 2, maxHeadBytes));
+                c.in.flip();
+                bigger.put(c.in);
+                c.in = bigger;
+            }
+            int n = c.ch.read(c.in);
+            if (n < 0) {
+                close(key);
+                return;
+            }
+            c.lastActivity = System.nanoTime();
+            processInput(key, c);
+        }
+
+        /**
+         * Entrega al handler el cuerpo pendiente y, si no hay otra petición en
+         * curso, busca la siguiente completa en el buffer y la despacha.
+         */
+        private void processInput(SelectionKey key, Conn c) {
+            ByteBuffer in = c.in;
+            in.flip();
+            try {
+                if (c.bodyFailed) {
+                    in.position(in.limit()); // ya no se puede delimitar nada: se cierra al responder
+                    return;
+                }
+                if (c.decoder != null) {
+                    feedBody(key, c, in);
+                    if (c.decoder != null) return;
+                }
+                if (c.busy) return;
+                HttpRequest req;
+                try {
+                    req = c.parser.parse(in.array(), in.position(), in.limit());
+                } catch (RequestParser.ParseException bad) {
+                    in.position(in.limit());
+                    reject(key, c, bad.status, bad.getMessage());
+                    return;
+                }
+                if (req == null) return;
+                if (!c.admitted) {
+                    in.position(in.limit());
+                    shed(key, c, req.getVersion());
+                    return;
+                }
+                in.position(in.position() + c.parser.consumed());
+                req.setRemoteAddress(c.remote);
+                if (dispatch(key, c, req)) feedBody(key, c, in);
+            } finally {
+                in.compact();
+            }
+        }
+
+        /**
+         * Pasa al pipe los datos del cuerpo que ya están en {@code in}. Se
+         * detiene (y deja de leer del socket) si el handler tiene
+         * demasiado sin consumir.
+         */
+        private void feedBody(SelectionKey key, Conn c, ByteBuffer in) {
+            BodyDecoder d = c.decoder;
+            try {
+                while (in.hasRemaining() && !d.isDone()) {
+                    if (c.pipe.pauseIfFull()) {
+                        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                        return;
+                    }
+                    int n = d.step(in.array(), in.position(), in.limit());
+                    if (d.dataTo > d.dataFrom) c.pipe.offer(in.array(), d.dataFrom, d.dataTo - d.dataFrom);
+                    in.position(in.position() + n);
+                }
+            } catch (BodyDecoder.BodyException e) {
+                c.pipe.fail(e);
+                c.decoder = null;
+                c.bodyFailed = true;
+                in.position(in.limit());
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                return;
+            }
+            if (d.isDone()) {
+                c.pipe.end();
+                c.decoder = null;
+                if (c.busy && key.isValid()) key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        /** OP_READ mientras haya cuerpo por recibir y el handler no esté atrasado. */
+        private int bodyInterest(Conn c) {
+            return c.decoder != null && !c.pipe.isPaused() ? SelectionKey.OP_READ : 0;
+        }
+
+        /** El handler consumió lo suficiente: se vuelve a leer el cuerpo (hilo del loop). */
+        private void resumeBody(SelectionKey key, Conn c) {
+            execute(() -> {
+                if (!key.isValid() || c.decoder == null) return;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                processInput(key, c);
+            });
+        }
+
+        /** Devuelve true si la petición quedó despachada y trae cuerpo por leer. */
+        private boolean dispatch(SelectionKey key, Conn c, HttpRequest req) {
+            BodyDecoder decoder;
+            try {
+                decoder = BodyDecoder.forRequest(req, maxBodyBytes);
+            } catch (RequestParser.ParseException bad) {
+                reject(key, c, bad.status, bad.getMessage());
+                return false;
+            }
+
+            c.served++;
+            // Al detenerse, la respuesta en curso es la última de la conexión
+            boolean keepAlive = !draining && c.served < maxRequestsPerConnection
+                    && HttpServer.isKeepAlive(req.getVersion(), req.getHeader("Connection"));
+            c.busy = true;
+            c.decoder = decoder;
+            c.pipe = decoder == null ? null : new BodyPipe(() -> resumeBody(key, c));
+            if (decoder != null) {
+                req.setBody(c.pipe, decoder.declaredLength());
+                if (HttpServer.expectsContinue(req)) {
+                    c.queued(HttpServer.CONTINUE.length);
+                    c.out.add(ByteBuffer.wrap(HttpServer.CONTINUE));
+                }
+            }
+            key.interestOps(bodyInterest(c) | (c.out.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+
+            workers.execute(() -> {
+                ConnOutput out = new ConnOutput(key, c);
+                // Un handler async no retiene este hilo: la respuesta se escribe al completarse.
+                // Si falla a mitad de respuesta, se cierra la conexión tras lo ya enviado.
+                try {
+                    server.respondAsync(out, req, keepAlive, workers)
+                            .whenComplete((persist, err) -> out.finish(err == null && persist));
+                } catch (Throwable t) {
+                    // Sin finish() la conexión quedaría ocupada para siempre (ni idle ni drain la cierran)
+                    out.finish(false);
+                    throw t;
+                }
+            });
+            return decoder != null;
+        }
+
+        /** Agrega buffers a la cola de salida (hilo del loop); {@code done} marca el fin de la respuesta. */
+        private void enqueue(SelectionKey key, Conn c, List<ByteBuffer> parts, boolean done, boolean keepAlive) {
+            if (!key.isValid()) return;
+            c.out.addAll(parts);
+            if (done) {
+                c.responseDone = true;
+                c.closeAfterWrite = !keepAlive || c.bodyFailed;
+                if (c.pipe != null) c.pipe.discard(); // lo que el handler no leyó del cuerpo se descarta
+            }
+            try {
+                flush(key, c);
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+
+        private void flush(SelectionKey key, Conn c) throws IOException {
+            while (!c.out.isEmpty()) {
+                // Cabecera, cuerpo y respuestas en pipeline salen en un solo write gather
+                int n = 0;
+                for (ByteBuffer b : c.out) {
+                    gather[n++] = b;
+                    if (n == gather.length) break;
+                }
+                server.metrics.bytesOut.add(c.ch.write(gather, 0, n));
+                boolean partial = gather[n - 1].hasRemaining();
+                Arrays.fill(gather, 0, n, null);
+                while (!c.out.isEmpty() && !c.out.peek().hasRemaining()) c.written(c.out.poll().limit());
+                if (partial) {
+                    key.interestOps(SelectionKey.OP_WRITE | bodyInterest(c));
+                    return;
+                }
+            }
+            if (!c.responseDone) { // el handler sigue generando el cuerpo
+                key.interestOps(bodyInterest(c));
+                return;
+            }
+            if (c.closeAfterWrite || draining) {
+                close(key);
+                return;
+            }
+            c.busy = false;
+            c.responseDone = false;
+            c.lastActivity = System.nanoTime();
+            key.interestOps(SelectionKey.OP_READ);
+            processInput(key, c); // puede haber peticiones en pipeline ya leídas
+        }
+
+        private void reject(SelectionKey key, Conn c, int code, String text) {
+            server.metrics.status(code);
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try {
+                HttpServer.writeText(buf, "HTTP/1.1", code, text, false);
+            } catch (IOException ignored) {
+                // ByteArrayOutputStream no lanza
+            }
+            sendLast(key, c, buf);
+        }
+
+        /** Conexión aceptada con el cupo lleno: 503 sin pasar por los handlers. */
+        private void shed(SelectionKey key, Conn c, String version) {
+            server.metrics.shed.increment();
+            server.metrics.status(503);
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try {
+                WebServer.writeOverloaded(buf, version);
+            } catch (IOException ignored) {
+                // ByteArrayOutputStream no lanza
+            }
+            sendLast(key, c, buf);
+        }
+
+        /** Última respuesta de la conexión: se cierra al terminar de escribirla. */
+        private void sendLast(SelectionKey key, Conn c, ByteArrayOutputStream buf) {
+            c.busy = true;
+            c.decoder = null;
+            c.queued(buf.size());
+            enqueue(key, c, List.of(ByteBuffer.wrap(buf.toByteArray())), true, false);
+        }
+
+        private void closeIdleAll() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Conn c && !c.busy) close(key);
+            }
+        }
+
+        private void closeIdle(long now) {
+            long limit = idleTimeoutMs * 1_000_000L;
+            for (SelectionKey key : selector.keys()) {
+                Object att = key.attachment();
+                if (att instanceof Conn c && !c.busy && now - c.lastActivity > limit) close(key);
+            }
+        }
+
+        private void close(SelectionKey key) {
+            key.cancel();
+            try { key.channel().close(); } catch (IOException ignored) {}
+            if (key.attachment() instanceof Conn c) c.closed();
+        }
+
+        /**
+         * Salida de un handler hacia la conexión. Acumula en memoria y en cada
+         * flush() entrega lo escrito al loop; si hay más de HIGH_WATER bytes sin
+         * enviar, el hilo (virtual) del handler espera a que el cliente lea.
+         * Las regiones de archivo se leen por bloques acotados: nada queda
+         * mapeado, así un archivo truncado en el lugar es un error de E/S de
+         * esta respuesta y no una falla del loop.
+         */
+        private final class ConnOutput extends ByteArrayOutputStream
+                implements FileTransfer, GatheringOutput, CountingOutput {
+            private static final int FILE_CHUNK = 64 * 1024;
+
+            private final SelectionKey key;
+            private final Conn c;
+            private List<ByteBuffer> parts = new ArrayList<>(2);
+            private long written; // una ConnOutput por respuesta
+
+            ConnOutput(SelectionKey key, Conn c) {
+                super(1024);
+                this.key = key;
+                this.c = c;
+            }
+
+            @Override
+            public synchronized void write(int b) {
+                super.write(b);
+                written++;
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                written += len;
+            }
+
+            @Override
+            public synchronized long written() {
+                return written;
+            }
+
+            @Override
+            public void transfer(FileChannel file, long position, long length) throws IOException {
+                written += length;
+                cut();
+                while (length > 0) {
+                    // flush() por bloque: con HIGH_WATER sin enviar el handler espera, así el heap queda acotado
+                    ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(length, FILE_CHUNK));
+                    while (chunk.hasRemaining()) {
+                        int n = file.read(chunk, position + chunk.position());
+                        if (n < 0) throw new EOFException("archivo truncado durante la transferencia");
+                    }
+                    parts.add(chunk.flip());
+                    position += chunk.remaining();
+                    length -= chunk.remaining();
+                    flush();
+                }
+            }
+
+            @Override
+            public void writeGathered(byte[] head, int headLength, byte[] body, int off, int len) {
+                write(head, 0, headLength);
+                if (len < 1024) {
+                    write(body, off, len);
+                } else {
+                    // El cuerpo va tal cual, sin copiarlo al buffer
+                    cut();
+                    parts.add(ByteBuffer.wrap(body, off, len).slice());
+                    written += len;
+                }
+            }
+
+            @Override
+            public void writeGathered(byte[] head, int headLength, ByteBuffer body) {
+                write(head, 0, headLength);
+                cut();
+                parts.add(body.duplicate());
+                written += body.remaining();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                cut();
+                if (parts.isEmpty()) return;
+                post(false, true);
+                c.awaitDrain(HIGH_WATER);
+            }
+
+            /** Última entrega: el loop decide si la conexión sigue abierta. */
+            void finish(boolean keepAlive) {
+                cut();
+                post(true, keepAlive);
+            }
+
+            private void post(boolean done, boolean keepAlive) {
+                List<ByteBuffer> batch = parts;
+                parts = new ArrayList<>(2);
+                long bytes = 0;
+                for (ByteBuffer b : batch) bytes += b.remaining();
+                c.queued(bytes);
+                execute(() -> enqueue(key, c, batch, done, keepAlive));
+            }
+
+            private void cut() {
+                if (count > 0) {
+                    parts.add(ByteBuffer.wrap(toByteArray()));
+                    reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuerpo de la petición en curso: el event loop lo llena y el handler lo
+     * lee desde su hilo virtual. Con más de {@code HIGH} bytes sin leer el loop
+     * deja de leer del socket (el cliente queda frenado por TCP) hasta que el
+     * handler consume la mitad. Usa ReentrantLock para no fijar el hilo
+     * virtual a su carrier mientras espera.
+     */
+    static final class BodyPipe extends InputStream {
+        private static final int HIGH = 64 * 1024;
+
+        private final Runnable resume;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+        private byte[] current;
+        private int pos;
+        private int buffered;
+        private boolean paused, ended, discarding;
+        private IOException failure;
+
+        BodyPipe(Runnable resume) {
+            this.resume = resume;
+        }
+
+        // ---- Lado del loop ----
+
+        void offer(byte[] b, int off, int len) {
+            lock.lock();
+            try {
+                if (discarding) return;
+                chunks.add(Arrays.copyOfRange(b, off, off + len));
+                buffered += len;
+                ready.signalAll();
+            } finally { lock.unlock(); }
+        }
+
+        /** Si el handler va atrasado marca la pausa y devuelve true. */
+        boolean pauseIfFull() {
+            lock.lock();
+            try {
+                paused = buffered >= HIGH && !discarding;
+                return paused;
+            } finally { lock.unlock(); }
+        }
+
+        boolean isPaused() {
+            lock.lock();
+            try { return paused; } finally { lock.unlock(); }
+        }
+
+        void end() {
+            lock.lock();
+            try {
+                ended = true;
+                ready.signalAll();
+            } finally { lock.unlock(); }
+        }
+
+        void fail(IOException e) {
+            lock.lock();
+            try {
+                if (failure == null && !ended) failure = e;
+                ready.signalAll();
+            } finally { lock.unlock(); }
+        }
+
+        /** La respuesta ya salió: lo que quede del cuerpo se tira. */
+        void discard() {
+            lock.lock();
+            try {
+                discarding = true;
+                paused = false;
+                chunks.clear();
+                current = null;
+                buffered = 0;
+                ready.signalAll();
+            } finally { lock.unlock(); }
+        }
+
+        // ---- Lado del handler ----
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            boolean wake = false;
+            int n;
+            lock.lock();
+            try {
+                while (current == null || pos == current.length) {
+                    current = chunks.poll();
+                    pos = 0;
+                    if (current != null) break;
+                    if (failure != null) throw failure;
+                    if (ended || discarding) return -1;
+                    ready.awaitUninterruptibly();
+                }
+                n = Math.min(len, current.length - pos);
+                System.arraycopy(current, pos, b, off, n);
+                pos += n;
+                buffered -= n;
+                if (paused && buffered <= HIGH / 2) {
+                    paused = false;
+                    wake = true;
+                }
+            } finally { lock.unlock(); }
+            if (wake) resume.run();
+            return n;
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try { return buffered; } finally { lock.unlock(); }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.mycompany.httpserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Parámetro de ruta ({@code :id} en {@code /users/:id}) de un método de
+ * {@link RestController}; mismos tipos que {@link RequestParam}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface PathVariable {
+    /** Nombre en el patrón; vacío = el del parámetro Java (compilado con -parameters). */
+    String value() default "";
+}
@@ -0,0 +1,96 @@
+package com.mycompany.httpserver;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Límite de peticiones por cliente (IP) y ruta con token bucket: cada par
+ * (ruta, IP) admite ráfagas de hasta {@code permits} peticiones y recupera
+ * {@code permits} cada {@code period}.
+ *
+ * <p>Cada balde es un único AtomicLong con el instante en que volvería a
+ * estar lleno (GCRA, equivalente a un token bucket): admitir es un CAS, sin
+ * locks. Los baldes viven en ConcurrentHashMap (uno por ruta, con la IP como
+ * clave), así que clientes distintos no compiten entre sí. Los baldes que ya
+ * se llenaron se descartan en un barrido periódico: un balde lleno y uno
+ * inexistente se comportan igual.
+ */
+final class RateLimiter {
+
+    // Cada cuánto se intenta barrer los baldes llenos
+    private static final long SWEEP_NANOS = 10_000_000_000L;
+
+    /** Regla de una ruta y sus baldes por IP. */
+    private static final class Limit {
+        final long intervalNanos;   // lo que "cuesta" una petición
+        final long periodNanos;     // capacidad del balde expresada en tiempo
+        final boolean inherited;    // copia del límite por defecto
+        final ConcurrentHashMap<InetAddress, AtomicLong> clients = new ConcurrentHashMap<>();
+
+        Limit(long intervalNanos, long periodNanos, boolean inherited) {
+            this.intervalNanos = intervalNanos;
+            this.periodNanos = periodNanos;
+            this.inherited = inherited;
+        }
+
+        static Limit of(int permits, Duration period, boolean inherited) {
+            if (permits < 1) throw new IllegalArgumentException("rateLimit requiere permits >= 1: " + permits);
+            if (period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("rateLimit requiere un período > 0: " + period);
+            }
+            long periodNanos = period.toNanos();
+            return new Limit(Math.max(1, periodNanos / permits), periodNanos, inherited);
+        }
+    }
+
+    // Rutas con límite propio (patrón registrado, o "static")
+    private final ConcurrentHashMap<String, Limit> routes = new ConcurrentHashMap<>();
+    // Límite para las rutas sin uno propio (null = sin límite); cada ruta recibe sus baldes
+    private volatile Limit defaults;
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_NANOS);
+
+    /** Límite de {@code route}; reemplaza el anterior (y sus baldes). */
+    void limit(String route, int permits, Duration period) {
+        routes.put(route, Limit.of(permits, period, false));
+    }
+
+    /** Límite para toda ruta sin uno propio. */
+    void limitAll(int permits, Duration period) {
+        defaults = Limit.of(permits, period, true);
+        routes.values().removeIf(l -> l.inherited);
+    }
+
+    /**
+     * Consume una petición de {@code client} en {@code route}. Devuelve 0 si
+     * se admite o, si no, los nanosegundos hasta que se admitiría.
+     */
+    long acquire(String route, InetAddress client, long now) {
+        Limit limit = routes.get(route);
+        if (limit == null) {
+            Limit d = defaults;
+            if (d == null) return 0;
+            limit = routes.computeIfAbsent(route, r -> new Limit(d.intervalNanos, d.periodNanos, true));
+        }
+        sweepIfDue(now);
+
+        AtomicLong full = limit.clients.get(client);
+        if (full == null) full = limit.clients.computeIfAbsent(client, c -> new AtomicLong(now));
+        while (true) {
+            long t = full.get();
+            long next = (t - now > 0 ? t : now) + limit.intervalNanos;
+            long over = next - now - limit.periodNanos;
+            if (over > 0) return over;
+            if (full.compareAndSet(t, next)) return 0;
+        }
+    }
+
+    /** Lo hace un solo hilo a la vez: el que gana el CAS del próximo barrido. */
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_NANOS)) return;
+        // Una petición que cae justo en un balde recién quitado arranca con uno lleno: a lo sumo una de más
+        for (Limit limit : routes.values()) limit.clients.values().removeIf(full -> full.get() - now <= 0);
+    }
+}
@@ -0,0 +1,71 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private static InetAddress ip(int last) throws Exception {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) last});
+    }
+
+    @Test
+    public void allowsBurstThenAsksToWait() throws Exception {
+        RateLimiter limiter = new RateLimiter();
+        limiter.limit("/stocks", 3, Duration.ofSeconds(3));
+        long now = 0;
+        for (int i = 0; i < 3; i++) assertEquals(0, limiter.acquire("/stocks", ip(1), now));
+
+        // Un token por segundo: el próximo llega en 1 s
+        assertEquals(SECOND, limiter.acquire("/stocks", ip(1), now));
+        assertEquals(SECOND / 2, limiter.acquire("/stocks", ip(1), now + SECOND / 2));
+        assertEquals(0, limiter.acquire("/stocks", ip(1), now + SECOND));
+        assertTrue(limiter.acquire("/stocks", ip(1), now + SECOND) > 0);
+    }
+
+    @Test
+    public void refillsUpToBurstOnly() throws Exception {
+        RateLimiter limiter = new RateLimiter();
+        limiter.limit("/a", 2, Duration.ofSeconds(1));
+        assertEquals(0, limiter.acquire("/a", ip(1), 0));
+        // Tras mucho tiempo quieto el balde vuelve a estar lleno, pero no acumula más de 2
+        long later = 60 * SECOND;
+        assertEquals(0, limiter.acquire("/a", ip(1), later));
+        assertEquals(0, limiter.acquire("/a", ip(1), later));
+        assertTrue(limiter.acquire("/a", ip(1), later) > 0);
+    }
+
+    @Test
+    public void bucketsAreIndependentPerClientAndRoute() throws Exception {
+        RateLimiter limiter = new RateLimiter();
+        limiter.limitAll(1, Duration.ofSeconds(1));
+        assertEquals(0, limiter.acquire("/a", ip(1), 0));
+        assertTrue(limiter.acquire("/a", ip(1), 0) > 0);
+        assertEquals(0, limiter.acquire("/a", ip(2), 0));
+        assertEquals(0, limiter.acquire("/b", ip(1), 0));
+    }
+
+    @Test
+    public void routeLimitOverridesDefault_andUnlimitedWithoutRules() throws Exception {
+        RateLimiter limiter = new RateLimiter();
+        for (int i = 0; i < 100; i++) assertEquals(0, limiter.acquire("/free", ip(1), 0));
+
+        limiter.limit("/x", 5, Duration.ofSeconds(1));
+        limiter.limitAll(1, Duration.ofSeconds(1));
+        for (int i = 0; i < 5; i++) assertEquals(0, limiter.acquire("/x", ip(1), 0));
+        assertTrue(limiter.acquire("/x", ip(1), 0) > 0);
+    }
+
+    @Test
+    public void rejectsInvalidRules() {
+        RateLimiter limiter = new RateLimiter();
+        assertThrows(IllegalArgumentException.class, () -> limiter.limit("/a", 0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> limiter.limitAll(1, Duration.ZERO));
+    }
+}
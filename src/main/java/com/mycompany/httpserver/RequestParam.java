@@ -0,0 +1,28 @@
+package com.mycompany.httpserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Parámetro de query de un método de {@link RestController}. Tipos:
+ * String, int, long, double y boolean (o sus wrappers). Falta el parámetro
+ * (o viene vacío): se usa {@link #defaultValue}; sin default y requerido,
+ * 400. Un número inválido da 400 si el parámetro es requerido; con default
+ * vale lo mismo que {@link HttpRequest#getInt}: se usa el default.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface RequestParam {
+    /** Nombre en la query; vacío = el del parámetro Java (compilado con -parameters). */
+    String value() default "";
+
+    /** Valor si falta; no vacío implica {@code required = false}. */
+    String defaultValue() default "";
+
+    /** Sin default y no requerido: null para String, 0/false para los primitivos. */
+    boolean required() default true;
+}
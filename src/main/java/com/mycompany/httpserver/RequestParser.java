@@ -0,0 +1,303 @@
+package com.mycompany.httpserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+/**
+ * Parser de la cabeza HTTP/1.x que trabaja directo sobre bytes. Solo registra
+ * posiciones (método, target, query, nombre/valor de cada header); los
+ * Strings se crean en {@link HttpRequest} cuando alguien los pide.
+ *
+ * Sirve a los dos motores: {@link #parse(byte[], int, int)} para el buffer de
+ * NIO y {@link #read(InputStream)} para el motor bloqueante, que reutiliza un
+ * buffer propio por conexión (las peticiones en pipeline quedan ahí).
+ */
+final class RequestParser {
+
+    static final int DEFAULT_MAX_HEAD = 16 * 1024;
+    static final int DEFAULT_MAX_HEADERS = 100;
+
+    /** Cabeza inválida; {@code status} es el código a responder antes de cerrar. */
+    static final class ParseException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ParseException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final int maxHeadBytes;
+    private final int maxHeaders;
+
+    // Posiciones del último parse (absolutas sobre el buffer recibido)
+    private int methodEnd, targetStart, targetEnd, versionStart;
+    private int[] headers = new int[4 * 16]; // nombreInicio, nombreFin, valorInicio, valorFin
+    private int headerCount;
+    private int consumed;
+
+    // Buffer del motor bloqueante: [start, end) aún no consumido
+    private byte[] buf;
+    private int start, end;
+
+    RequestParser(int maxHeadBytes, int maxHeaders) {
+        this.maxHeadBytes = maxHeadBytes;
+        this.maxHeaders = maxHeaders;
+    }
+
+    /** Bytes que ocupó la última cabeza parseada (incluye CRLF previos). */
+    int consumed() {
+        return consumed;
+    }
+
+    /**
+     * Intenta parsear una cabeza completa en {@code b[from, to)}. Devuelve null
+     * si todavía no llegó la línea vacía final.
+     */
+    HttpRequest parse(byte[] b, int from, int to) throws ParseException {
+        int p = from;
+        while (p < to && (b[p] == '\r' || b[p] == '\n')) p++; // CRLF sobrantes entre peticiones
+        int headStart = p;
+        int lineStart = p;
+        int line = 0;
+        headerCount = 0;
+
+        // El límite cuenta desde from: los CRLF sobrantes también ocupan el buffer
+        for (int i = p; i < to; i++) {
+            if (i - from >= maxHeadBytes) throw new ParseException(431, "cabecera demasiado grande");
+            if (b[i] != '\n') continue;
+            int lineEnd = (i > lineStart && b[i - 1] == '\r') ? i - 1 : i;
+            if (lineEnd == lineStart) {
+                if (line == 0) throw new ParseException(400, "línea de inicio vacía");
+                consumed = i + 1 - from;
+                return build(b, headStart, i + 1);
+            }
+            if (line == 0) requestLine(b, lineStart, lineEnd);
+            else headerLine(b, lineStart, lineEnd);
+            line++;
+            lineStart = i + 1;
+        }
+        if (to - from >= maxHeadBytes) throw new ParseException(431, "cabecera demasiado grande");
+        return null;
+    }
+
+    /**
+     * Lee la siguiente petición del stream. Devuelve null si el cliente cerró
+     * la conexión limpiamente entre peticiones.
+     */
+    HttpRequest read(InputStream in) throws IOException, ParseException {
+        if (buf == null) buf = new byte[4096];
+        while (true) {
+            HttpRequest req = parse(buf, start, end);
+            if (req != null) {
+                start += consumed;
+                return req;
+            }
+            if (start > 0) { // compactar para aprovechar el espacio ya consumido
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            if (end == buf.length) {
+                // Sin esto, read(buf, end, 0) devolvería 0 para siempre
+                if (buf.length >= maxHeadBytes + 4) throw new ParseException(431, "cabecera demasiado grande");
+                buf = Arrays.copyOf(buf, Math.min(buf.length * 2, maxHeadBytes + 4));
+            }
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                if (end == start) return null;
+                throw new EOFException("conexión cerrada a mitad de la cabecera");
+            }
+            end += n;
+        }
+    }
+
+    /**
+     * ¿La conexión empieza con {@code magic}? Lee solo hasta poder decidir:
+     * si coincide lo consume; si no, lo leído queda en el buffer para
+     * {@link #read(InputStream)}.
+     */
+    boolean startsWith(InputStream in, byte[] magic) throws IOException {
+        if (buf == null) buf = new byte[4096];
+        while (true) {
+            int n = Math.min(end - start, magic.length);
+            for (int i = 0; i < n; i++) {
+                if (buf[start + i] != magic[i]) return false;
+            }
+            if (n == magic.length) {
+                start += n;
+                return true;
+            }
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            int r = in.read(buf, end, buf.length - end);
+            if (r < 0) return false;
+            end += r;
+        }
+    }
+
+    /**
+     * Lo que queda en el buffer seguido del resto del stream: para pasarle
+     * la conexión a otro protocolo (h2c). El parser no se vuelve a usar.
+     */
+    InputStream rest(InputStream in) {
+        if (buf == null || start == end) return in;
+        InputStream buffered = new ByteArrayInputStream(buf, start, end - start);
+        start = end;
+        return new SequenceInputStream(buffered, in);
+    }
+
+    /** ¿Quedan bytes ya recibidos (p.ej. la siguiente petición en pipeline)? */
+    boolean hasBuffered() {
+        return end > start;
+    }
+
+    /** Descarta {@code n} bytes de cuerpo: primero lo que está en el buffer y luego del stream. */
+    void skip(InputStream in, long n) throws IOException {
+        int fromBuf = (int) Math.min(n, end - start);
+        start += fromBuf;
+        n -= fromBuf;
+        while (n > 0) {
+            long k = in.skip(n);
+            if (k <= 0) {
+                if (in.read() < 0) throw new EOFException("cuerpo incompleto");
+                k = 1;
+            }
+            n -= k;
+        }
+    }
+
+    /**
+     * Cuerpo de la última petición leída con {@link #read(InputStream)}:
+     * sale primero de lo que ya está en el buffer y después del stream, sin
+     * pasarse del final (lo que sigue es la próxima petición).
+     */
+    InputStream body(InputStream in, BodyDecoder decoder) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] dst, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                while (!decoder.isDone()) {
+                    if (start == end && !fill(in)) throw new BodyDecoder.BodyException(400, "conexión cerrada a mitad del cuerpo");
+                    start += decoder.step(buf, start, Math.min(end, start + len));
+                    int n = decoder.dataTo - decoder.dataFrom;
+                    if (n > 0) {
+                        System.arraycopy(buf, decoder.dataFrom, dst, off, n);
+                        return n;
+                    }
+                }
+                return -1;
+            }
+        };
+    }
+
+    /** Lee más bytes del stream al buffer; false si el cliente cerró. */
+    private boolean fill(InputStream in) throws IOException {
+        start = end = 0; // solo se llama con el buffer vacío
+        int n = in.read(buf, 0, buf.length);
+        if (n < 0) return false;
+        end = n;
+        return true;
+    }
+
+    private void requestLine(byte[] b, int from, int to) throws ParseException {
+        int sp1 = indexOf(b, from, to, (byte) ' ');
+        if (sp1 <= from) throw new ParseException(400, "línea de inicio inválida");
+        int sp2 = indexOf(b, sp1 + 1, to, (byte) ' ');
+        if (sp2 <= sp1 + 1) throw new ParseException(400, "línea de inicio inválida");
+        for (int i = from; i < sp1; i++) {
+            if (!isTokenChar(b[i])) throw new ParseException(400, "método inválido");
+        }
+        for (int i = sp1 + 1; i < sp2; i++) {
+            if (b[i] <= ' ' || b[i] == 0x7f) throw new ParseException(400, "target inválido");
+        }
+        int v = sp2 + 1;
+        if (to - v != 8 || !equalsAscii(b, v, v + 5, "HTTP/") || b[v + 6] != '.'
+                || !Character.isDigit(b[v + 5]) || !Character.isDigit(b[v + 7])) {
+            throw new ParseException(400, "línea de inicio inválida");
+        }
+        if (b[v + 5] != '1') throw new ParseException(505, "versión HTTP no soportada");
+        methodEnd = sp1;
+        targetStart = sp1 + 1;
+        targetEnd = sp2;
+        versionStart = sp2 + 1;
+    }
+
+    private void headerLine(byte[] b, int from, int to) throws ParseException {
+        if (b[from] == ' ' || b[from] == '\t') throw new ParseException(400, "obs-fold no soportado");
+        int colon = indexOf(b, from, to, (byte) ':');
+        if (colon <= from) throw new ParseException(400, "header inválido");
+        for (int i = from; i < colon; i++) {
+            if (!isTokenChar(b[i])) throw new ParseException(400, "nombre de header inválido");
+        }
+        int vs = colon + 1, ve = to;
+        while (vs < ve && (b[vs] == ' ' || b[vs] == '\t')) vs++;
+        while (ve > vs && (b[ve - 1] == ' ' || b[ve - 1] == '\t')) ve--;
+
+        if (headerCount == maxHeaders) throw new ParseException(431, "demasiados headers");
+        int k = headerCount * 4;
+        if (k + 4 > headers.length) headers = Arrays.copyOf(headers, headers.length * 2);
+        headers[k] = from;
+        headers[k + 1] = colon;
+        headers[k + 2] = vs;
+        headers[k + 3] = ve;
+        headerCount++;
+    }
+
+    /** Copia la cabeza (el buffer se reutiliza) y traslada las posiciones a esa copia. */
+    private HttpRequest build(byte[] b, int headStart, int headEnd) {
+        byte[] head = Arrays.copyOfRange(b, headStart, headEnd);
+        int[] h = new int[headerCount * 4];
+        for (int i = 0; i < h.length; i++) h[i] = headers[i] - headStart;
+
+        String method = method(b, headStart, methodEnd);
+        String version = b[versionStart + 7] == '0' ? "HTTP/1.0" : "HTTP/1.1";
+        return new HttpRequest(method, version, head, targetStart - headStart, targetEnd - headStart, h);
+    }
+
+    /** Métodos conocidos como constantes: evita crear un String por petición. */
+    private static String method(byte[] b, int from, int to) {
+        for (String m : Router.METHODS) {
+            if (equalsAscii(b, from, to, m)) return m;
+        }
+        if (equalsAscii(b, from, to, "HEAD")) return "HEAD";
+        if (equalsAscii(b, from, to, "OPTIONS")) return "OPTIONS";
+        return new String(b, from, to - from, java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    static boolean equalsAscii(byte[] b, int from, int to, String s) {
+        if (to - from != s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (b[from + i] != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] b, int from, int to, byte c) {
+        for (int i = from; i < to; i++) if (b[i] == c) return i;
+        return -1;
+    }
+
+    private static boolean isTokenChar(byte c) {
+        if (c <= ' ' || c >= 0x7f) return false;
+        return switch (c) {
+            case '(', ')', '<', '>', '@', ',', ';', ':', '\\', '"', '/', '[', ']', '?', '=', '{', '}' -> false;
+            default -> true;
+        };
+    }
+}
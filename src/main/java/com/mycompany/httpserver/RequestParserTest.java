@@ -0,0 +1,82 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class RequestParserTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void parsesStartLine_headers_andQuery() throws Exception {
+        byte[] b = bytes("\r\nGET /app/Hello%20World?name=Ana&x=1 HTTP/1.1\r\nHost: localhost\r\nX-Test:  a b \r\n\r\nrest");
+        RequestParser p = new RequestParser(1024, 10);
+        HttpRequest req = p.parse(b, 0, b.length);
+
+        assertNotNull(req);
+        assertEquals(b.length - 4, p.consumed());
+        assertSame("GET", req.getMethod());
+        assertEquals("HTTP/1.1", req.getVersion());
+        assertEquals("/app/Hello World", req.getPath());
+        assertEquals("name=Ana&x=1", req.getRawQuery());
+        assertEquals("Ana", req.getValues("name"));
+        assertEquals("localhost", req.getHeader("host"));
+        assertEquals("a b", req.getHeader("X-TEST"));
+        assertNull(req.getHeader("Missing"));
+    }
+
+    @Test
+    public void incompleteHead_returnsNull_andLimitsAreEnforced() throws Exception {
+        byte[] partial = bytes("GET / HTTP/1.1\r\nHost: x\r\n");
+        assertNull(new RequestParser(1024, 10).parse(partial, 0, partial.length));
+
+        byte[] big = bytes("GET / HTTP/1.1\r\nX: " + "a".repeat(2000) + "\r\n\r\n");
+        RequestParser.ParseException e = assertThrows(RequestParser.ParseException.class,
+                () -> new RequestParser(1024, 10).parse(big, 0, big.length));
+        assertEquals(431, e.status);
+
+        byte[] bad = bytes("GET /a b HTTP/1.1\r\n\r\n");
+        e = assertThrows(RequestParser.ParseException.class, () -> new RequestParser(1024, 10).parse(bad, 0, bad.length));
+        assertEquals(400, e.status);
+    }
+
+    @Test
+    public void leadingCrlf_countsAgainstTheHeadLimit() throws Exception {
+        // Solo CRLF: antes el buffer se llenaba y read() giraba leyendo 0 bytes
+        byte[] crlf = bytes("\r\n".repeat(10 * 1024));
+        RequestParser.ParseException e = assertThrows(RequestParser.ParseException.class,
+                () -> new RequestParser(RequestParser.DEFAULT_MAX_HEAD, 10).read(new ByteArrayInputStream(crlf)));
+        assertEquals(431, e.status);
+
+        // Unos CRLF y una cabeza justo bajo el límite, sin línea vacía final
+        byte[] head = bytes("\r\n".repeat(8) + "GET / HTTP/1.1\r\nX: " + "a".repeat(1000));
+        e = assertThrows(RequestParser.ParseException.class,
+                () -> new RequestParser(1024, 10).read(new ByteArrayInputStream(head)));
+        assertEquals(431, e.status);
+        e = assertThrows(RequestParser.ParseException.class, () -> new RequestParser(1024, 10).parse(head, 0, head.length));
+        assertEquals(431, e.status);
+    }
+
+    @Test
+    public void read_handlesPipelinedRequests_fromOneStream() throws Exception {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes(
+                "POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nabcGET http://host/b?q=1 HTTP/1.0\r\n\r\n"));
+        RequestParser p = new RequestParser(1024, 10);
+
+        HttpRequest first = p.read(in);
+        assertEquals("/a", first.getPath());
+        p.skip(in, HttpServer.contentLength(first));
+
+        HttpRequest second = p.read(in);
+        assertEquals("/b", second.getPath());
+        assertEquals("HTTP/1.0", second.getVersion());
+        assertEquals("1", second.getValues("q"));
+        assertNull(p.read(in));
+    }
+}
@@ -0,0 +1,211 @@
+package com.mycompany.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Caché de respuestas para un handler. Envuelve un {@link Service} y guarda
+ * en memoria lo que devuelve, con clave path + query:
+ *
+ * <ul>
+ *   <li>Durante {@code ttl} la respuesta se sirve sin llamar al handler.</li>
+ *   <li>Durante {@code staleFor} después del ttl se sirve la copia vieja y
+ *       se refresca en segundo plano (stale-while-revalidate).</li>
+ *   <li>Varios misses simultáneos de la misma clave ejecutan el handler una
+ *       sola vez; los demás esperan ese resultado (single-flight).</li>
+ * </ul>
+ *
+ * Solo se guardan respuestas 2xx que no traigan {@code Cache-Control: no-store}.
+ * La caché es LRU acotada por cantidad de entradas. Acepta handlers
+ * síncronos o asíncronos y se puede registrar de las dos formas:
+ *
+ * <pre>
+ * HttpServer.get("/stocks", new ResponseCache(stocks, Duration.ofMinutes(1), Duration.ofMinutes(5), 1000));
+ * HttpServer.getAsync("/stocks", ResponseCache.async(stocksAsync, Duration.ofMinutes(1), Duration.ofMinutes(5), 1000));
+ * </pre>
+ */
+public final class ResponseCache implements Service, AsyncService {
+
+    private final AsyncService delegate;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final LongSupplier clock;
+
+    private final Map<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    /** Respuesta guardada: lo necesario para reproducirla en otra petición. */
+    private static final class Entry {
+        final int status;
+        final String contentType;
+        final String[] headers;
+        final byte[] body;           // ya codificado: cada hit lo reenvía tal cual, sin pasar por un String
+        final long storedAt;
+
+        Entry(int status, String contentType, String[] headers, byte[] body, long storedAt) {
+            this.status = status;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.body = body;
+            this.storedAt = storedAt;
+        }
+    }
+
+    public ResponseCache(Service delegate, Duration ttl, Duration staleFor, int maxEntries) {
+        this(sync(delegate), ttl, staleFor, maxEntries, System::nanoTime);
+    }
+
+    /** Caché sobre un handler asíncrono: los misses no bloquean hilos mientras se resuelven. */
+    public static ResponseCache async(AsyncService delegate, Duration ttl, Duration staleFor, int maxEntries) {
+        return new ResponseCache(delegate, ttl, staleFor, maxEntries, System::nanoTime);
+    }
+
+    ResponseCache(Service delegate, Duration ttl, Duration staleFor, int maxEntries, LongSupplier clock) {
+        this(sync(delegate), ttl, staleFor, maxEntries, clock);
+    }
+
+    private ResponseCache(AsyncService delegate, Duration ttl, Duration staleFor, int maxEntries, LongSupplier clock) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries debe ser > 0");
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+        this.staleNanos = staleFor.toNanos();
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<String> handleAsync(HttpRequest req, HttpResponse resp) {
+        String key = key(req);
+        Entry e = get(key);
+        long now = clock.getAsLong();
+
+        if (e != null && now - e.storedAt <= ttlNanos) return CompletableFuture.completedFuture(replay(e, resp, "HIT"));
+        if (e != null && now - e.storedAt <= ttlNanos + staleNanos) {
+            refreshInBackground(key, req);
+            return CompletableFuture.completedFuture(replay(e, resp, "STALE"));
+        }
+        return load(key, req).thenApply(loaded -> replay(loaded, resp, "MISS"));
+    }
+
+    @Override
+    public String handle(HttpRequest req, HttpResponse resp) throws Exception {
+        try {
+            return handleAsync(req, resp).join();
+        } catch (CompletionException ce) {
+            throw AsyncRoute.unwrap(ce);
+        }
+    }
+
+    /** Descarta todas las entradas guardadas. */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /** Cantidad de entradas guardadas. */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // ====== Internos ======
+
+    private static String key(HttpRequest req) {
+        String q = req.getRawQuery();
+        return q == null || q.isEmpty() ? req.getPath() : req.getPath() + '?' + q;
+    }
+
+    private Entry get(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Ejecuta el handler para {@code key}, o devuelve la ejecución que ya esté
+     * en curso para esa clave.
+     */
+    private CompletableFuture<Entry> load(String key, HttpRequest req) {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) return running;
+
+        // El handler escribe sobre una respuesta en memoria para poder guardarla
+        HttpResponse captured = new HttpResponse();
+        CompletableFuture<String> body;
+        try {
+            body = delegate.handleAsync(req, captured);
+        } catch (Exception ex) {
+            body = CompletableFuture.failedFuture(ex);
+        }
+        body.whenComplete((text, err) -> {
+            if (err != null) {
+                inFlight.remove(key, mine);
+                mine.completeExceptionally(AsyncRoute.unwrap(err));
+                return;
+            }
+            Entry e;
+            try {
+                byte[] bytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : captured.bodyBytes();
+                e = new Entry(captured.getStatus(), captured.getType(), captured.headerArray(), bytes, clock.getAsLong());
+            } catch (Exception ex) {
+                inFlight.remove(key, mine);
+                mine.completeExceptionally(ex);
+                return;
+            }
+            if (cacheable(e)) {
+                synchronized (entries) {
+                    entries.put(key, e);
+                }
+            }
+            inFlight.remove(key, mine);
+            mine.complete(e);
+        });
+        return mine;
+    }
+
+    /** Refresco de una entrada vencida; a lo sumo uno por clave a la vez. */
+    private void refreshInBackground(String key, HttpRequest req) {
+        if (inFlight.containsKey(key)) return;
+        // En un hilo aparte: un handler síncrono no debe demorar la respuesta stale
+        Thread.startVirtualThread(() -> load(key, req).exceptionally(err -> {
+            // se sigue sirviendo la copia vieja hasta que venza staleFor
+            System.err.println("[cache] refresco fallido para " + key + ": " + err.getMessage());
+            return null;
+        }));
+    }
+
+    private static AsyncService sync(Service s) {
+        return (req, resp) -> CompletableFuture.completedFuture(s.handle(req, resp));
+    }
+
+    private static boolean cacheable(Entry e) {
+        if (e.status < 200 || e.status > 299) return false;
+        for (int i = 0; i < e.headers.length; i += 2) {
+            if (e.headers[i].equalsIgnoreCase("Cache-Control") && e.headers[i + 1].contains("no-store")) return false;
+        }
+        return true;
+    }
+
+    /** Copia la respuesta guardada en {@code resp}; el cuerpo va por body(byte[]), así que devuelve null. */
+    private static String replay(Entry e, HttpResponse resp, String outcome) {
+        resp.status(e.status).type(e.contentType);
+        for (int i = 0; i < e.headers.length; i += 2) resp.header(e.headers[i], e.headers[i + 1]);
+        resp.header("X-Cache", outcome);
+        resp.body(e.body);
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+
+    private static HttpRequest get(String uri) {
+        return new HttpRequest(URI.create(uri));
+    }
+
+    /** Lo que ve el cliente: la caché reproduce el cuerpo con body(byte[]) y el handler devuelve null. */
+    private static String serve(ResponseCache cache, String uri, HttpResponse resp) throws Exception {
+        assertNull(cache.handle(get(uri), resp));
+        return new String(resp.bodyBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void servesFromMemory_untilTtl_thenStale_thenReloads() throws Exception {
+        AtomicLong now = new AtomicLong();
+        AtomicInteger calls = new AtomicInteger();
+        ResponseCache cache = new ResponseCache((req, resp) -> "{\"n\":" + calls.incrementAndGet() + "}",
+                Duration.ofSeconds(10), Duration.ofSeconds(30), 100, now::get);
+
+        HttpResponse r1 = new HttpResponse();
+        assertEquals("{\"n\":1}", serve(cache, "/stocks?symbol=IBM", r1));
+        assertEquals("MISS", r1.getHeader("X-Cache"));
+
+        now.set(TimeUnit.SECONDS.toNanos(5));
+        HttpResponse r2 = new HttpResponse();
+        assertEquals("{\"n\":1}", serve(cache, "/stocks?symbol=IBM", r2));
+        assertEquals("HIT", r2.getHeader("X-Cache"));
+        assertSame("el hit no copia el cuerpo", r1.bodyBytes(), r2.bodyBytes());
+        assertEquals("{\"n\":2}", serve(cache, "/stocks?symbol=MSFT", new HttpResponse())); // otra clave
+
+        // Vencida pero dentro de la ventana stale: se sirve la vieja y se refresca aparte
+        now.set(TimeUnit.SECONDS.toNanos(15));
+        HttpResponse r3 = new HttpResponse();
+        assertEquals("{\"n\":1}", serve(cache, "/stocks?symbol=IBM", r3));
+        assertEquals("STALE", r3.getHeader("X-Cache"));
+        for (int i = 0; i < 100 && calls.get() < 3; i++) Thread.sleep(10);
+        assertEquals(3, calls.get());
+        for (int i = 0; i < 100 && !"{\"n\":3}".equals(serve(cache, "/stocks?symbol=IBM", new HttpResponse())); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("{\"n\":3}", serve(cache, "/stocks?symbol=IBM", new HttpResponse()));
+
+        // Más allá de ttl + staleFor: miss síncrono
+        now.set(TimeUnit.SECONDS.toNanos(100));
+        assertEquals("{\"n\":4}", serve(cache, "/stocks?symbol=IBM", new HttpResponse()));
+    }
+
+    @Test
+    public void concurrentMisses_runHandlerOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseCache cache = new ResponseCache((req, resp) -> {
+            calls.incrementAndGet();
+            release.await();
+            return "ok";
+        }, Duration.ofMinutes(1), Duration.ZERO, 10);
+
+        List<Thread> threads = new ArrayList<>();
+        List<String> results = java.util.Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    results.add(serve(cache, "/slow", new HttpResponse()));
+                } catch (Exception e) {
+                    results.add("error");
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Thread t : threads) t.join(5000);
+
+        assertEquals(1, calls.get());
+        assertEquals(8, results.size());
+        for (String r : results) assertEquals("ok", r);
+    }
+
+    @Test
+    public void errorsAndNoStore_areNotCached_andSizeIsBounded() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ResponseCache cache = new ResponseCache((req, resp) -> {
+            calls.incrementAndGet();
+            if (req.getPath().equals("/fail")) resp.status(502);
+            if (req.getPath().equals("/note")) resp.header("Cache-Control", "no-store");
+            return "x";
+        }, Duration.ofMinutes(1), Duration.ZERO, 2);
+
+        HttpResponse failed = new HttpResponse();
+        serve(cache, "/fail", failed);
+        assertEquals(502, failed.getStatus());
+        serve(cache, "/fail", new HttpResponse());
+        serve(cache, "/note", new HttpResponse());
+        serve(cache, "/note", new HttpResponse());
+        assertEquals(4, calls.get());
+        assertEquals(0, cache.size());
+
+        serve(cache, "/a", new HttpResponse());
+        serve(cache, "/b", new HttpResponse());
+        serve(cache, "/c", new HttpResponse());
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,159 @@
+package com.mycompany.httpserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serialización de la línea de estado y los headers sin armar Strings:
+ * líneas de estado y headers comunes ya codificados, el header Date
+ * recalculado a lo sumo una vez por segundo y buffers reutilizados desde un
+ * {@link SlotPool}.
+ */
+final class ResponseHead {
+
+    private static final byte[][] STATUS_11 = new byte[600][];
+    private static final byte[][] STATUS_10 = new byte[600][];
+    static {
+        for (int code = 100; code < 600; code++) {
+            STATUS_11[code] = ascii("HTTP/1.1 " + code + " " + HttpServer.reason(code) + "\r\n");
+            STATUS_10[code] = ascii("HTTP/1.0 " + code + " " + HttpServer.reason(code) + "\r\n");
+        }
+    }
+
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] KEEP_ALIVE = ascii("Connection: keep-alive\r\n");
+    private static final byte[] CLOSE = ascii("Connection: close\r\n");
+    private static final byte[] COLON = ascii(": ");
+    private static final byte[] CRLF = ascii("\r\n");
+
+    // Líneas "Content-Type: ...\r\n" ya codificadas; los tipos de una app son pocos
+    private static final int MAX_CACHED_TYPES = 256;
+    private static final ConcurrentHashMap<String, byte[]> CONTENT_TYPES = new ConcurrentHashMap<>();
+
+    /** "Date: ...\r\n" del segundo {@code second}; se reemplaza entero al cambiar de segundo. */
+    private record DateLine(long second, byte[] bytes) {}
+    private static volatile DateLine date = new DateLine(-1, null);
+
+    // ====== Pool de buffers ======
+    private static final int INITIAL = 1024;
+    private static final int MAX_POOLED = 16 * 1024;  // buffers que crecieron más que esto no vuelven al pool
+    private static final SlotPool<Buffer> POOL = SlotPool.perProcessor();
+
+    private ResponseHead() {}
+
+    /** Cabecera codificada; devolverla con {@link #release()} después de escribirla. */
+    static final class Buffer {
+        byte[] bytes = new byte[INITIAL];
+        int length;
+
+        void release() {
+            ResponseHead.release(this);
+        }
+
+        private void put(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        /** ISO-8859-1; los caracteres fuera de rango salen como '?'. */
+        private void put(String s) {
+            int n = s.length();
+            ensure(n);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                bytes[length++] = c <= 0xFF ? (byte) c : (byte) '?';
+            }
+        }
+
+        private void putLong(long v) {
+            ensure(20);
+            if (v == 0) {
+                bytes[length++] = '0';
+                return;
+            }
+            int start = length;
+            while (v > 0) {
+                bytes[length++] = (byte) ('0' + (v % 10));
+                v /= 10;
+            }
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte t = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = t;
+            }
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = java.util.Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    /**
+     * Línea de estado y headers. {@code contentLength < 0} omite
+     * Content-Length; un 304 nunca lo lleva. {@code extraHeaders} va en pares
+     * nombre, valor.
+     */
+    static Buffer encode(String version, int code, String contentType, long contentLength,
+                         boolean keepAlive, String... extraHeaders) {
+        Buffer b = acquire();
+        byte[] status = code >= 100 && code < 600 ? ("HTTP/1.0".equals(version) ? STATUS_10 : STATUS_11)[code] : null;
+        if (status != null) {
+            b.put(status);
+        } else {
+            b.put(version + " " + code + " " + HttpServer.reason(code) + "\r\n");
+        }
+        b.put(dateLine());
+        if (contentType != null) b.put(contentTypeLine(contentType));
+        if (code != 304 && contentLength >= 0) {
+            b.put(CONTENT_LENGTH);
+            b.putLong(contentLength);
+            b.put(CRLF);
+        }
+        for (int i = 0; i + 1 < extraHeaders.length; i += 2) {
+            b.put(extraHeaders[i]);
+            b.put(COLON);
+            b.put(extraHeaders[i + 1]);
+            b.put(CRLF);
+        }
+        b.put(keepAlive ? KEEP_ALIVE : CLOSE);
+        b.put(CRLF);
+        return b;
+    }
+
+    static byte[] dateLine() {
+        long now = System.currentTimeMillis() / 1000;
+        DateLine d = date;
+        if (d.second != now) {
+            d = new DateLine(now, ascii("Date: " + StaticCache.httpDate(now) + "\r\n"));
+            date = d;
+        }
+        return d.bytes;
+    }
+
+    private static byte[] contentTypeLine(String contentType) {
+        byte[] line = CONTENT_TYPES.get(contentType);
+        if (line == null) {
+            line = ascii("Content-Type: " + contentType + "\r\n");
+            if (CONTENT_TYPES.size() < MAX_CACHED_TYPES) CONTENT_TYPES.putIfAbsent(contentType, line);
+        }
+        return line;
+    }
+
+    private static Buffer acquire() {
+        Buffer b = POOL.poll();
+        return b != null ? b : new Buffer();
+    }
+
+    private static void release(Buffer b) {
+        if (b.bytes.length > MAX_POOLED) return;
+        b.length = 0;
+        POOL.offer(b);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
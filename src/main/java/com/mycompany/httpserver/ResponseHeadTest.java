@@ -0,0 +1,60 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ResponseHeadTest {
+
+    private static String text(ResponseHead.Buffer b) {
+        return new String(b.bytes, 0, b.length, StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void encode_matchesHandWrittenHead() {
+        ResponseHead.Buffer b = ResponseHead.encode("HTTP/1.1", 200, "text/html", 1234567890123L, true, "ETag", "\"v1\"");
+        String date = new String(ResponseHead.dateLine(), StandardCharsets.ISO_8859_1);
+        assertEquals("HTTP/1.1 200 OK\r\n" + date
+                + "Content-Type: text/html\r\nContent-Length: 1234567890123\r\nETag: \"v1\"\r\n"
+                + "Connection: keep-alive\r\n\r\n", text(b));
+        b.release();
+
+        b = ResponseHead.encode("HTTP/1.0", 304, null, 0, false);
+        assertTrue(text(b).startsWith("HTTP/1.0 304 Not Modified\r\nDate: "));
+        assertFalse(text(b).contains("Content-Length"));
+        assertTrue(text(b).endsWith("Connection: close\r\n\r\n"));
+        b.release();
+
+        b = ResponseHead.encode("HTTP/1.1", 204, null, 0, true);
+        assertTrue(text(b).contains("Content-Length: 0\r\n"));
+        b.release();
+    }
+
+    @Test
+    public void dateLine_isRfc1123_andSharedWithinTheSecond() {
+        byte[] a = ResponseHead.dateLine();
+        byte[] b = ResponseHead.dateLine();
+        String s = new String(a, StandardCharsets.ISO_8859_1);
+        assertTrue(s.matches("Date: [A-Z][a-z]{2}, \\d{2} [A-Z][a-z]{2} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT\r\n"));
+        assertTrue(a == b || !s.equals(new String(b, StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void buffers_areReused_andWriteStillWorksWithPlainStreams() throws Exception {
+        ResponseHead.Buffer first = ResponseHead.encode("HTTP/1.1", 200, "text/plain", 2, true);
+        first.release();
+        ResponseHead.Buffer second = ResponseHead.encode("HTTP/1.1", 404, "text/plain", 2, true);
+        assertSame(first, second);
+        assertTrue(text(second).startsWith("HTTP/1.1 404 Not Found\r\n"));
+        second.release();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServer.write(out, "HTTP/1.1", 200, "text/plain", "ok".getBytes(StandardCharsets.UTF_8), false);
+        String raw = out.toString(StandardCharsets.ISO_8859_1);
+        assertTrue(raw.startsWith("HTTP/1.1 200 OK\r\nDate: "));
+        assertTrue(raw.endsWith("Content-Length: 2\r\nConnection: close\r\n\r\nok"));
+    }
+}
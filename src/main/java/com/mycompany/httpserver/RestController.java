@@ -0,0 +1,20 @@
+package com.mycompany.httpserver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Clase con rutas declaradas por anotaciones ({@link GetMapping},
+ * {@link PostMapping}). {@link WebServer#scan} la encuentra en el classpath;
+ * también se puede registrar una instancia con {@link WebServer#controller}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface RestController {
+    /** Prefijo de las rutas de la clase (p.ej. "/app"); vacío = sin prefijo. */
+    String value() default "";
+}
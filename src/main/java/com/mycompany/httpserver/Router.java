@@ -0,0 +1,230 @@
+package com.mycompany.httpserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Árbol de rutas por segmentos. Cada nodo tiene hijos literales (tabla hash
+ * abierta, comparación sin distinguir mayúsculas), a lo sumo un hijo
+ * {@code :param} y un comodín {@code *} que captura el resto del path, más una
+ * tabla de handlers por método HTTP.
+ *
+ * La búsqueda recorre el path por índices: no crea substrings ni pasa a
+ * minúscula; el costo depende de la cantidad de segmentos, no de rutas.
+ * Prioridad por segmento: literal, luego parámetro, luego comodín.
+ * Las rutas se registran antes de arrancar; la búsqueda es solo lectura.
+ */
+final class Router {
+
+    static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH"};
+
+    private final Node root = new Node(null);
+    private int maxParams;
+
+    static int methodIndex(String method) {
+        return switch (method) {
+            case "GET" -> 0;
+            case "POST" -> 1;
+            case "PUT" -> 2;
+            case "DELETE" -> 3;
+            case "PATCH" -> 4;
+            default -> -1;
+        };
+    }
+
+    /** Resultado de {@link #find}: handler + límites de los parámetros capturados. */
+    static final class Match {
+        Service handler;      // null: la ruta existe pero no para este método (405)
+        Node node;
+        final int[] bounds;   // pares [inicio, fin) sobre el path, en orden de aparición
+
+        Match(int params) {
+            this.bounds = new int[params * 2];
+        }
+
+        String[] paramNames() {
+            return node.paramNames;
+        }
+
+        /** Patrón con el que se registró la ruta (etiqueta para métricas). */
+        String route() {
+            for (String p : node.patterns) if (p != null) return p;
+            return null;
+        }
+
+        /** Métodos registrados para la ruta, para el header Allow. */
+        String allow() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < METHODS.length; i++) {
+                if (node.handlers[i] == null) continue;
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(METHODS[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /** Registra {@code handler} para {@code method} y el patrón ("/users/:id", "/files/*"). */
+    void add(String method, String pattern, Service handler) {
+        int mi = methodIndex(method);
+        if (mi < 0) throw new IllegalArgumentException("Método no soportado: " + method);
+
+        Node node = root;
+        List<String> names = new ArrayList<>();
+        String[] segments = pattern.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            String seg = segments[i].trim();
+            if (seg.isEmpty()) continue;
+            if (seg.charAt(0) == ':') {
+                String name = seg.substring(1);
+                if (node.param == null) {
+                    node.param = new Node(null);
+                    node.paramName = name;
+                } else if (!node.paramName.equals(name)) {
+                    throw new IllegalArgumentException("Parámetro ':" + name + "' choca con ':" + node.paramName + "' en " + pattern);
+                }
+                names.add(name);
+                node = node.param;
+            } else if (seg.charAt(0) == '*') {
+                if (i != segments.length - 1) throw new IllegalArgumentException("'*' solo puede ir al final: " + pattern);
+                if (node.wildcard == null) node.wildcard = new Node(null);
+                names.add(seg.length() > 1 ? seg.substring(1) : "*");
+                node = node.wildcard;
+            } else {
+                node = node.literalOrCreate(lower(seg));
+            }
+        }
+        node.handlers[mi] = handler;
+        node.patterns[mi] = pattern;
+        node.paramNames = names.toArray(new String[0]);
+        maxParams = Math.max(maxParams, names.size());
+    }
+
+    /**
+     * Busca la ruta de {@code path}; null si ningún patrón coincide. HEAD usa
+     * el handler de GET; un método sin tabla (OPTIONS, uno inventado) nunca
+     * tiene handler: si la ruta existe, el resultado es un 405.
+     */
+    Match find(String method, String path) {
+        Match m = new Match(maxParams);
+        int mi = methodIndex("HEAD".equals(method) ? "GET" : method);
+        if (mi >= 0) {
+            Node exact = match(root, path, 0, mi, m, 0);
+            if (exact != null) {
+                m.node = exact;
+                m.handler = exact.handlers[mi];
+                return m;
+            }
+        }
+        // Sin handler para el método: ¿existe la ruta con otro método? (405)
+        Node any = match(root, path, 0, -1, m, 0);
+        if (any != null) {
+            m.node = any;
+            return m;
+        }
+        return null;
+    }
+
+    /**
+     * Recorrido con backtracking. Con {@code mi == -1} acepta cualquier nodo
+     * con al menos un handler (para detectar 405).
+     */
+    private static Node match(Node node, String path, int pos, int mi, Match m, int ncap) {
+        int len = path.length();
+        while (pos < len && path.charAt(pos) == '/') pos++;
+        if (pos == len) {
+            if (node.accepts(mi)) return node;
+            if (node.wildcard != null && node.wildcard.accepts(mi)) {
+                m.bounds[2 * ncap] = pos;
+                m.bounds[2 * ncap + 1] = pos;
+                return node.wildcard;
+            }
+            return null;
+        }
+        int end = path.indexOf('/', pos);
+        if (end < 0) end = len;
+
+        Node child = node.literal(path, pos, end);
+        if (child != null) {
+            Node r = match(child, path, end, mi, m, ncap);
+            if (r != null) return r;
+        }
+        if (node.param != null) {
+            m.bounds[2 * ncap] = pos;
+            m.bounds[2 * ncap + 1] = end;
+            Node r = match(node.param, path, end, mi, m, ncap + 1);
+            if (r != null) return r;
+        }
+        if (node.wildcard != null && node.wildcard.accepts(mi)) {
+            m.bounds[2 * ncap] = pos;
+            m.bounds[2 * ncap + 1] = len;
+            return node.wildcard;
+        }
+        return null;
+    }
+
+    private static final class Node {
+        final String segment;              // literal en minúscula (null para raíz, params y comodín)
+        Node[] table = new Node[4];        // hijos literales, direccionamiento abierto
+        int size;
+        Node param;
+        String paramName;
+        Node wildcard;
+        final Service[] handlers = new Service[METHODS.length];
+        final String[] patterns = new String[METHODS.length];
+        String[] paramNames = new String[0];
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+
+        boolean accepts(int mi) {
+            if (mi >= 0) return handlers[mi] != null;
+            for (Service s : handlers) if (s != null) return true;
+            return false;
+        }
+
+        Node literal(String path, int from, int to) {
+            int mask = table.length - 1;
+            for (int i = hash(path, from, to) & mask; ; i = (i + 1) & mask) {
+                Node n = table[i];
+                if (n == null) return null;
+                if (n.segment.length() == to - from && n.segment.regionMatches(true, 0, path, from, to - from)) return n;
+            }
+        }
+
+        Node literalOrCreate(String seg) {
+            Node existing = literal(seg, 0, seg.length());
+            if (existing != null) return existing;
+            if ((size + 1) * 2 > table.length) {
+                Node[] old = table;
+                table = new Node[old.length * 2];
+                for (Node n : old) if (n != null) insert(n);
+            }
+            Node created = new Node(seg);
+            insert(created);
+            size++;
+            return created;
+        }
+
+        private void insert(Node n) {
+            int mask = table.length - 1;
+            int i = hash(n.segment, 0, n.segment.length()) & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = n;
+        }
+    }
+
+    /** Hash sin distinguir mayúsculas sobre path[from, to). */
+    private static int hash(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) h = 31 * h + Character.toLowerCase(s.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    private static String lower(String s) {
+        char[] c = s.toCharArray();
+        for (int i = 0; i < c.length; i++) c[i] = Character.toLowerCase(c[i]);
+        return new String(c);
+    }
+}
@@ -0,0 +1,84 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+public class RouterTest {
+
+    private static final Service A = (req, resp) -> "a";
+    private static final Service B = (req, resp) -> "b";
+    private static final Service C = (req, resp) -> "c";
+
+    @Test
+    public void literalRoutes_areCaseInsensitive_andIgnoreExtraSlashes() {
+        Router r = new Router();
+        r.add("GET", "/app/hello", A);
+        assertSame(A, r.find("GET", "/APP/Hello").handler);
+        assertSame(A, r.find("GET", "/app//hello/").handler);
+        assertNull(r.find("GET", "/app/hell"));
+    }
+
+    @Test
+    public void literalWins_overParam_andParamIsCaptured() throws Exception {
+        Router r = new Router();
+        r.add("GET", "/users/new", A);
+        r.add("GET", "/users/:userId", B);
+        r.add("GET", "/files/*path", C);
+        assertSame(A, r.find("GET", "/users/new").handler);
+
+        Router.Match m = r.find("GET", "/users/Ana");
+        assertSame(B, m.handler);
+        HttpRequest req = new HttpRequest(new URI("/users/Ana"));
+        req.setPathParams("/users/Ana", m.paramNames(), m.bounds);
+        assertEquals("Ana", req.getPathParam("userId"));
+        assertEquals("", req.getPathParam("missing"));
+
+        m = r.find("GET", "/files/css/styles.css");
+        assertSame(C, m.handler);
+        assertEquals("css/styles.css", "/files/css/styles.css".substring(m.bounds[0], m.bounds[1]));
+    }
+
+    @Test
+    public void methodTables_areSeparate_andReport405() {
+        Router r = new Router();
+        r.add("GET", "/items/:id", A);
+        r.add("DELETE", "/items/:id", B);
+        assertSame(B, r.find("DELETE", "/items/7").handler);
+
+        Router.Match m = r.find("PUT", "/items/7");
+        assertNotNull(m);
+        assertNull(m.handler);
+        assertEquals("GET, DELETE", m.allow());
+    }
+
+    @Test
+    public void head_usesGetHandler_andUnknownMethodsReport405() {
+        Router r = new Router();
+        r.add("GET", "/app/hello", A);
+        r.add("POST", "/items/:id", B);
+        assertSame(A, r.find("HEAD", "/app/hello").handler);
+
+        Router.Match m = r.find("HEAD", "/items/7");
+        assertNotNull(m);
+        assertNull(m.handler);
+
+        for (String method : new String[]{"OPTIONS", "TRACE", "M0"}) {
+            m = r.find(method, "/app/hello");
+            assertNotNull(method, m);
+            assertNull(method, m.handler);
+            assertEquals("GET", m.allow());
+        }
+        assertNull(r.find("OPTIONS", "/nope"));
+    }
+
+    @Test
+    public void backtracks_whenLiteralBranchHasNoMatch() {
+        Router r = new Router();
+        r.add("GET", "/a/b/c", A);
+        r.add("GET", "/a/:x/d", B);
+        assertSame(B, r.find("GET", "/a/b/d").handler);
+    }
+}
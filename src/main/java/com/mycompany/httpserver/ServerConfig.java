@@ -0,0 +1,189 @@
+package com.mycompany.httpserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.NetworkChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuración de red del servidor: puerto, backlog de accept, opciones de
+ * socket y cantidad de acceptors. Con varios acceptors y SO_REUSEPORT
+ * (Linux) cada uno tiene su propio socket de escucha en el mismo puerto y el
+ * kernel reparte las conexiones entre ellos; donde no hay SO_REUSEPORT
+ * comparten un único socket.
+ *
+ * <pre>
+ * HttpServer.startServer(ServerConfig.builder()
+ *         .port(35000)
+ *         .backlog(4096)
+ *         .acceptors(4)
+ *         .build());
+ * </pre>
+ */
+public final class ServerConfig {
+
+    private final int port;
+    private final int backlog;
+    private final boolean tcpNoDelay;
+    private final int receiveBufferSize;
+    private final int sendBufferSize;
+    private final boolean reuseAddress;
+    private final int acceptors;
+
+    private ServerConfig(Builder b) {
+        this.port = b.port;
+        this.backlog = b.backlog;
+        this.tcpNoDelay = b.tcpNoDelay;
+        this.receiveBufferSize = b.receiveBufferSize;
+        this.sendBufferSize = b.sendBufferSize;
+        this.reuseAddress = b.reuseAddress;
+        this.acceptors = b.acceptors;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Configuración por defecto en el puerto indicado. */
+    public static ServerConfig port(int port) {
+        return builder().port(port).build();
+    }
+
+    public int getPort() { return port; }
+    public int getBacklog() { return backlog; }
+    public boolean isTcpNoDelay() { return tcpNoDelay; }
+    public int getReceiveBufferSize() { return receiveBufferSize; }
+    public int getSendBufferSize() { return sendBufferSize; }
+    public boolean isReuseAddress() { return reuseAddress; }
+    public int getAcceptors() { return acceptors; }
+
+    /** ¿El SO reparte conexiones entre sockets con SO_REUSEPORT? (Linux >= 3.9) */
+    static boolean reusePortBalances() {
+        return System.getProperty("os.name", "").startsWith("Linux");
+    }
+
+    /**
+     * Abre y enlaza los sockets de escucha: uno por acceptor si se puede usar
+     * SO_REUSEPORT, si no uno solo (que los acceptors comparten).
+     */
+    List<ServerSocketChannel> bind() throws IOException {
+        int sockets = 1;
+        if (acceptors > 1 && reusePortBalances()) {
+            try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+                if (probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) sockets = acceptors;
+            }
+        }
+        List<ServerSocketChannel> listeners = new ArrayList<>(sockets);
+        int bindPort = port;
+        try {
+            for (int i = 0; i < sockets; i++) {
+                ServerSocketChannel ch = ServerSocketChannel.open();
+                listeners.add(ch);
+                ch.setOption(StandardSocketOptions.SO_REUSEADDR, reuseAddress);
+                if (sockets > 1) ch.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                // Se hereda en los sockets aceptados; debe fijarse antes del bind para ventanas > 64 KB
+                if (receiveBufferSize > 0) ch.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+                ch.bind(new InetSocketAddress(bindPort), backlog);
+                // Con puerto 0 el resto de los sockets va al mismo puerto que eligió el SO para el primero
+                bindPort = localPort(ch);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ServerSocketChannel ch : listeners) {
+                try { ch.close(); } catch (IOException ignored) {}
+            }
+            throw e;
+        }
+        return listeners;
+    }
+
+    static int localPort(ServerSocketChannel ch) throws IOException {
+        return ((InetSocketAddress) ch.getLocalAddress()).getPort();
+    }
+
+    /** Opciones por conexión aceptada. */
+    void configure(NetworkChannel ch) throws IOException {
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+        if (sendBufferSize > 0) ch.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig{port=" + port + ", backlog=" + backlog + ", tcpNoDelay=" + tcpNoDelay
+                + ", rcvbuf=" + receiveBufferSize + ", sndbuf=" + sendBufferSize
+                + ", reuseAddress=" + reuseAddress + ", acceptors=" + acceptors + "}";
+    }
+
+    public static final class Builder {
+        private int port = 8080;
+        private int backlog = 1024;
+        private boolean tcpNoDelay = true;
+        private int receiveBufferSize;  // 0 = lo que decida el SO
+        private int sendBufferSize;
+        private boolean reuseAddress = true;
+        private int acceptors = 1;
+
+        private Builder() {}
+
+        /** Puerto de escucha (0 = uno libre elegido por el SO). */
+        public Builder port(int port) {
+            if (port < 0 || port > 65535) throw new IllegalArgumentException("Puerto inválido: " + port);
+            this.port = port;
+            return this;
+        }
+
+        /** Conexiones pendientes de accept que encola el SO (topado por net.core.somaxconn). */
+        public Builder backlog(int backlog) {
+            if (backlog < 1) throw new IllegalArgumentException("backlog debe ser >= 1: " + backlog);
+            this.backlog = backlog;
+            return this;
+        }
+
+        /** Desactiva Nagle en las conexiones aceptadas (por defecto true). */
+        public Builder tcpNoDelay(boolean on) {
+            this.tcpNoDelay = on;
+            return this;
+        }
+
+        /** SO_RCVBUF en bytes; 0 deja el valor del SO. */
+        public Builder receiveBufferSize(int bytes) {
+            if (bytes < 0) throw new IllegalArgumentException("receiveBufferSize debe ser >= 0: " + bytes);
+            this.receiveBufferSize = bytes;
+            return this;
+        }
+
+        /** SO_SNDBUF en bytes; 0 deja el valor del SO. */
+        public Builder sendBufferSize(int bytes) {
+            if (bytes < 0) throw new IllegalArgumentException("sendBufferSize debe ser >= 0: " + bytes);
+            this.sendBufferSize = bytes;
+            return this;
+        }
+
+        /** SO_REUSEADDR en el socket de escucha (por defecto true: reinicios sin esperar TIME_WAIT). */
+        public Builder reuseAddress(boolean on) {
+            this.reuseAddress = on;
+            return this;
+        }
+
+        /**
+         * Hilos que aceptan conexiones. Con más de uno, en Linux cada acceptor
+         * escucha en su propio socket con SO_REUSEPORT.
+         */
+        public Builder acceptors(int n) {
+            if (n < 1) throw new IllegalArgumentException("acceptors debe ser >= 1: " + n);
+            this.acceptors = n;
+            return this;
+        }
+
+        /** Un acceptor por núcleo. */
+        public Builder acceptorPerCore() {
+            return acceptors(Runtime.getRuntime().availableProcessors());
+        }
+
+        public ServerConfig build() {
+            return new ServerConfig(this);
+        }
+    }
+}
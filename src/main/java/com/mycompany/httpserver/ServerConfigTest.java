@@ -0,0 +1,63 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ServerConfigTest {
+
+    @Test
+    public void builder_hasDefaults_andRejectsInvalidValues() {
+        ServerConfig c = ServerConfig.port(9000);
+        assertEquals(9000, c.getPort());
+        assertEquals(1024, c.getBacklog());
+        assertTrue(c.isTcpNoDelay());
+        assertTrue(c.isReuseAddress());
+        assertEquals(1, c.getAcceptors());
+
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.builder().port(70000));
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.builder().backlog(0));
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.builder().acceptors(0));
+        assertThrows(IllegalArgumentException.class, () -> ServerConfig.builder().sendBufferSize(-1));
+    }
+
+    @Test
+    public void bind_opensOneSocketPerAcceptor_whenReusePortBalances() throws Exception {
+        ServerConfig c = ServerConfig.builder().port(0).acceptors(3).receiveBufferSize(128 * 1024).build();
+        List<ServerSocketChannel> listeners = c.bind();
+        try {
+            int expected = ServerConfig.reusePortBalances() ? 3 : 1;
+            assertEquals(expected, listeners.size());
+            int port = ServerConfig.localPort(listeners.get(0));
+            for (ServerSocketChannel ch : listeners) {
+                assertEquals(port, ServerConfig.localPort(ch));
+                assertTrue(ch.getOption(StandardSocketOptions.SO_REUSEADDR));
+            }
+
+            // Las opciones por conexión se aplican a lo aceptado
+            try (Socket client = new Socket("localhost", port)) {
+                SocketChannel accepted = null;
+                for (int i = 0; i < 200 && accepted == null; i++) {
+                    for (ServerSocketChannel ch : listeners) {
+                        ch.configureBlocking(false);
+                        if ((accepted = ch.accept()) != null) break;
+                    }
+                    if (accepted == null) Thread.sleep(5);
+                }
+                assertNotNull(accepted);
+                assertTrue(client.isConnected());
+                c.configure(accepted);
+                assertTrue(accepted.getOption(StandardSocketOptions.TCP_NODELAY));
+                accepted.close();
+            }
+        } finally {
+            for (ServerSocketChannel ch : listeners) ch.close();
+        }
+    }
+}
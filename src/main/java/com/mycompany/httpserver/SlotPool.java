@@ -0,0 +1,49 @@
+package com.mycompany.httpserver;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pool acotado y sin locks de objetos reutilizables. Cada hilo arranca a
+ * buscar en el slot que le toca por id, así los hilos no compiten por el
+ * mismo slot. Sirve también con hilos virtuales, donde un ThreadLocal daría
+ * una copia por petición.
+ */
+final class SlotPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+
+    /** {@code size} se redondea a potencia de 2. */
+    SlotPool(int size) {
+        int n = Integer.highestOneBit(Math.max(1, size - 1) << 1);
+        this.slots = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    /** Pool con 4 slots por procesador, hasta 64. */
+    static <T> SlotPool<T> perProcessor() {
+        return new SlotPool<>(Math.min(64, Runtime.getRuntime().availableProcessors() * 4));
+    }
+
+    /** Un objeto del pool, o null si está vacío. */
+    T poll() {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i <= mask; i++) {
+            int slot = (start + i) & mask;
+            if (slots.get(slot) != null) {
+                T item = slots.getAndSet(slot, null);
+                if (item != null) return item;
+            }
+        }
+        return null;
+    }
+
+    /** Devuelve {@code item} al pool; false si está lleno (el llamador lo descarta). */
+    boolean offer(T item) {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i <= mask; i++) {
+            if (slots.compareAndSet((start + i) & mask, null, item)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mycompany.httpserver;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Ruta registrada con {@link WebServer#sse}: cada petición queda abierta como
+ * un stream {@code text/event-stream} suscrito a un tópico de un
+ * {@link EventStream}. El hilo (virtual) de la conexión espera en la cola del
+ * cliente y escribe lo que llega en un solo flush; sin eventos manda un
+ * comentario como heartbeat, que además detecta clientes que se fueron.
+ */
+final class SseRoute implements Service {
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final EventStream stream;
+    private final Function<HttpRequest, String> topics;
+    private final WebServer server;
+
+    // Suscripciones abiertas por esta ruta, para terminarlas al detener el servidor
+    private final Set<EventStream.Subscription> open = ConcurrentHashMap.newKeySet();
+
+    SseRoute(EventStream stream, Function<HttpRequest, String> topics, WebServer server) {
+        this.stream = stream;
+        this.topics = topics;
+        this.server = server;
+    }
+
+    @Override
+    public String handle(HttpRequest req, HttpResponse resp) throws Exception {
+        String topic = topics.apply(req);
+        if (topic == null) {
+            resp.status(400).type("text/plain; charset=utf-8");
+            return "Bad Request: tópico inválido";
+        }
+        EventStream.Subscription sub = stream.subscribe(topic, req.getHeader("Last-Event-ID"));
+        if (sub == null) {
+            resp.status(503).type("text/plain; charset=utf-8").header("Retry-After", "5");
+            return "Service Unavailable: demasiados tópicos";
+        }
+        open.add(sub);
+        // drain() pudo recorrer las suscripciones justo antes de que esta se registrara
+        if (!server.isReady()) sub.end();
+        server.metrics.sseClients.increment();
+        try {
+            resp.type("text/event-stream; charset=utf-8")
+                    .header("Cache-Control", "no-store")
+                    .header("X-Accel-Buffering", "no"); // que un proxy (nginx) no acumule los eventos
+            OutputStream out = resp.outputStream();
+            out.write(("retry: " + stream.retryMs() + "\n\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            List<byte[]> batch = new ArrayList<>();
+            int n;
+            while ((n = sub.poll(batch, stream.heartbeatMs())) >= 0) {
+                if (n == 0) {
+                    out.write(HEARTBEAT);
+                } else {
+                    for (byte[] frame : batch) out.write(frame);
+                    server.metrics.sseEvents.add(n);
+                    batch.clear();
+                }
+                out.flush();
+            }
+            if (sub.dropped()) server.metrics.sseDropped.increment();
+            return null;
+        } finally {
+            server.metrics.sseClients.decrement();
+            open.remove(sub);
+            sub.close();
+        }
+    }
+
+    /** Termina los streams abiertos (el servidor se está deteniendo). */
+    void drain() {
+        for (EventStream.Subscription sub : open) sub.end();
+    }
+}
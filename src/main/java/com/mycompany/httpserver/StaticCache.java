@@ -0,0 +1,185 @@
+package com.mycompany.httpserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caché LRU en memoria para archivos estáticos, acotada por tamaño total en
+ * bytes. Cada entrada guarda el contenido original, la variante gzip (si el
+ * tipo es comprimible y realmente ahorra espacio), el Content-Type y los
+ * validadores (ETag fuerte y Last-Modified) ya calculados.
+ */
+final class StaticCache {
+
+    // Archivos más grandes que esto no se cachean: se envían desde el archivo
+    static final long MAX_ENTRY_BYTES = 1024 * 1024;
+
+    // IMF-fixdate (día con dos dígitos); RFC_1123_DATE_TIME no rellena con cero
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    private final long maxBytes;
+    private long currentBytes;
+    private final LinkedHashMap<String, Asset> lru = new LinkedHashMap<>(64, 0.75f, true);
+
+    StaticCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Bytes ocupados por las entradas actuales. */
+    synchronized long bytes() {
+        return currentBytes;
+    }
+
+    /** Representación precalculada de un archivo estático. */
+    static final class Asset {
+        final byte[] raw;
+        final byte[] gzip;           // null si no vale la pena comprimir
+        final String contentType;
+        final String etag;           // ETag de la variante sin comprimir
+        final String gzipEtag;       // ETag de la variante gzip (representación distinta)
+        final long lastModifiedSec;
+        final String lastModified;   // formato IMF-fixdate
+
+        Asset(byte[] raw, byte[] gzip, String contentType, String etag, long lastModifiedSec) {
+            this.raw = raw;
+            this.gzip = gzip;
+            this.contentType = contentType;
+            this.etag = "\"" + etag + "\"";
+            this.gzipEtag = "\"" + etag + "-gz\"";
+            this.lastModifiedSec = lastModifiedSec;
+            this.lastModified = httpDate(lastModifiedSec);
+        }
+
+        long weight() {
+            return raw.length + (gzip == null ? 0 : gzip.length);
+        }
+
+        /**
+         * ¿Está fresca la copia del cliente? If-None-Match tiene prioridad
+         * sobre If-Modified-Since (RFC 9110 §13.2.2).
+         */
+        boolean notModified(String ifNoneMatch, String ifModifiedSince) {
+            return StaticCache.notModified(etag, gzipEtag, lastModifiedSec, ifNoneMatch, ifModifiedSince);
+        }
+    }
+
+    /** Evaluación de precondiciones para cualquier representación (cacheada o no). */
+    static boolean notModified(String etag, String altEtag, long lastModifiedSec,
+                               String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                if (t.equals("*") || t.equals(etag) || t.equals(altEtag)) return true;
+            }
+            return false;
+        }
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+                return lastModifiedSec <= since;
+            } catch (DateTimeParseException ignored) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    synchronized Asset get(String key) {
+        return lru.get(key);
+    }
+
+    synchronized void put(String key, Asset asset) {
+        long w = asset.weight();
+        if (w > maxBytes) return;
+        Asset previous = lru.put(key, asset);
+        if (previous != null) currentBytes -= previous.weight();
+        currentBytes += w;
+
+        Iterator<Map.Entry<String, Asset>> it = lru.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Asset> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            currentBytes -= eldest.getValue().weight();
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        lru.clear();
+        currentBytes = 0;
+    }
+
+    /** Lee el contenido de una entrada del índice y precalcula variantes y validadores. */
+    static Asset load(StaticIndex.Entry entry) throws IOException {
+        byte[] raw = entry.read();
+        String contentType = entry.contentType;
+        byte[] gz = null;
+        if (isCompressible(contentType) && raw.length > 256) {
+            byte[] candidate = gzip(raw);
+            if (candidate.length < raw.length) gz = candidate;
+        }
+        return new Asset(raw, gz, contentType, digest(raw), entry.lastModifiedSec);
+    }
+
+    static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json")
+                || contentType.startsWith("image/svg+xml");
+    }
+
+    /** ¿El header Accept-Encoding admite gzip (sin q=0)? */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] p = part.trim().split(";");
+            String coding = p[0].trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) continue;
+            for (int i = 1; i < p.length; i++) {
+                String param = p[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        if (Double.parseDouble(param.substring(2)) <= 0) return false;
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static String httpDate(long epochSecond) {
+        return HTTP_DATE.format(Instant.ofEpochSecond(epochSecond));
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(raw.length / 2);
+        try (GZIPOutputStream gz = new GZIPOutputStream(buf)) {
+            gz.write(raw);
+        }
+        return buf.toByteArray();
+    }
+
+    private static String digest(byte[] raw) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(raw);
+            return HexFormat.of().formatHex(h, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
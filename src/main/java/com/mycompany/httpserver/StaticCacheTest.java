@@ -0,0 +1,46 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StaticCacheTest {
+
+    private static StaticCache.Asset asset(int size, long lastModifiedSec) {
+        return new StaticCache.Asset(new byte[size], null, "text/plain; charset=utf-8", "abc", lastModifiedSec);
+    }
+
+    @Test
+    public void evicts_leastRecentlyUsed_whenOverBudget() {
+        StaticCache cache = new StaticCache(100);
+        cache.put("/a", asset(40, 0));
+        cache.put("/b", asset(40, 0));
+        cache.get("/a");                 // /b queda como el menos usado
+        cache.put("/c", asset(40, 0));
+
+        assertNotNull(cache.get("/a"));
+        assertNull(cache.get("/b"));
+        assertNotNull(cache.get("/c"));
+    }
+
+    @Test
+    public void conditionalHeaders_matchEtagAndDate() {
+        StaticCache.Asset a = asset(1, 784111777L); // Sun, 06 Nov 1994 08:49:37 GMT
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", a.lastModified);
+        assertTrue(a.notModified("\"abc\"", null));
+        assertTrue(a.notModified("\"x\", \"abc-gz\"", null));
+        assertFalse(a.notModified("\"other\"", "Sun, 06 Nov 1994 08:49:37 GMT")); // If-None-Match manda
+        assertTrue(a.notModified(null, "Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertFalse(a.notModified(null, "Sat, 05 Nov 1994 08:49:37 GMT"));
+    }
+
+    @Test
+    public void acceptEncoding_respectsQZero() {
+        assertTrue(StaticCache.acceptsGzip("gzip, deflate, br"));
+        assertFalse(StaticCache.acceptsGzip("gzip;q=0, deflate"));
+        assertFalse(StaticCache.acceptsGzip("identity"));
+        assertFalse(StaticCache.acceptsGzip(null));
+        assertTrue(StaticCache.isCompressible("text/css; charset=utf-8"));
+        assertFalse(StaticCache.isCompressible("image/png"));
+    }
+}
@@ -0,0 +1,281 @@
+package com.mycompany.httpserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Índice inmutable de un árbol de estáticos: ruta pedida -> contenido,
+ * tamaño, Content-Type y validadores, todo calculado al construirlo. Servir
+ * un archivo es una búsqueda en un HashMap, sin stat ni lecturas por
+ * petición para los archivos chicos, que después de la primera lectura salen
+ * de {@link StaticCache}. Los recursos dentro de un jar se leen una vez al heap.
+ *
+ * <p>Los archivos del disco no se mapean: el árbol está vigilado porque se
+ * edita, y leer un mapeo de un archivo truncado en el lugar hace fallar a la
+ * JVM en vez de dar un error de E/S. Se leen al servirlos ({@link Entry#read()}
+ * y {@link Entry#open()}); abrir el archivo y comparar su tamaño con el
+ * indexado (un fstat sobre el descriptor ya abierto) es el costo de que un
+ * cambio en el lugar se detecte antes de escribir los headers.
+ *
+ * <p>Para cambiar el contenido se construye otro índice y se reemplaza el
+ * anterior de una vez (ver {@link Watcher}); las respuestas en curso siguen
+ * usando el suyo.
+ */
+final class StaticIndex {
+
+    static final StaticIndex EMPTY = new StaticIndex(Map.of(), "(sin estáticos)");
+
+    /** Archivo indexado; {@code content} es de solo lectura y se comparte entre peticiones. */
+    static final class Entry {
+        final String path;
+        final ByteBuffer content;    // solo recursos de un jar; los del disco se leen desde file
+        final Path file;             // null para recursos dentro de un jar
+        final long size;
+        final String contentType;
+        final long lastModifiedSec;
+        final String lastModified;   // formato IMF-fixdate
+        final String etag;           // "tamaño-mtime" en hexadecimal
+        final String cacheKey;       // clave en StaticCache: cambia con el ETag, así no se sirve una versión vieja
+
+        Entry(String path, ByteBuffer content, Path file, long size, String contentType, long lastModifiedSec) {
+            this.path = path;
+            this.content = content;
+            this.file = file;
+            this.size = size;
+            this.contentType = contentType;
+            this.lastModifiedSec = lastModifiedSec;
+            this.lastModified = StaticCache.httpDate(lastModifiedSec);
+            this.etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModifiedSec) + "\"";
+            this.cacheKey = path + '#' + etag;
+        }
+
+        /** Vista de {@code [from, from + length)} del contenido, independiente de otras peticiones. */
+        ByteBuffer slice(long from, long length) {
+            return content.slice((int) from, (int) length);
+        }
+
+        /**
+         * Abre el archivo del disco; falla con {@link ChangedException} si ya
+         * no tiene el tamaño indexado (truncado o reescrito en el lugar).
+         */
+        FileChannel open() throws IOException {
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+            if (ch.size() != size) {
+                ch.close();
+                throw new ChangedException(file);
+            }
+            return ch;
+        }
+
+        /**
+         * Entrada con lo que hay ahora en el disco, para servir un archivo que
+         * cambió antes de que llegue el índice nuevo; null si ya no existe.
+         */
+        Entry reload() throws IOException {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) return null;
+                return new Entry(path, null, file, attrs.size(), contentType, attrs.lastModifiedTime().to(TimeUnit.SECONDS));
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+
+        /** Contenido completo en el heap (solo para entradas chicas). */
+        byte[] read() throws IOException {
+            byte[] raw = new byte[(int) size];
+            if (content != null) {
+                content.get(0, raw);
+                return raw;
+            }
+            try (FileChannel ch = open()) {
+                ByteBuffer dst = ByteBuffer.wrap(raw);
+                while (dst.hasRemaining()) {
+                    if (ch.read(dst) < 0) throw new ChangedException(file);
+                }
+            }
+            return raw;
+        }
+    }
+
+    /** El archivo cambió de tamaño desde que se indexó; el watcher trae el índice nuevo. */
+    static final class ChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ChangedException(Path file) {
+            super("cambió desde que se indexó: " + file);
+        }
+    }
+
+    private final Map<String, Entry> entries;
+    private final long bytes;
+    final String root;
+
+    private StaticIndex(Map<String, Entry> entries, String root) {
+        this.entries = entries;
+        this.root = root;
+        long total = 0;
+        for (Entry e : entries.values()) total += e.size;
+        this.bytes = total;
+    }
+
+    /** Entrada para la ruta ya normalizada (p.ej. "/css/styles.css"), o null. */
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /** Suma de los tamaños de los archivos indexados. */
+    long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Ubica la carpeta de estáticos: primero {@code sourceBase + folder} (en
+     * desarrollo, así los cambios se ven sin recompilar) y si no existe el
+     * recurso {@code folder} del classpath (directorio o dentro de un jar).
+     * Devuelve null si no hay ninguna.
+     */
+    static URI locate(String folder, String sourceBase, ClassLoader loader) {
+        Path source = Paths.get(sourceBase + folder);
+        if (Files.isDirectory(source)) return source.toUri();
+        URL url = loader == null ? null : loader.getResource(folder.substring(1));
+        if (url == null) return null;
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /** Construye el índice de un directorio del disco o de una carpeta dentro de un jar. */
+    static StaticIndex build(URI location) throws IOException {
+        if (!"jar".equals(location.getScheme())) return ofDirectory(Paths.get(location));
+        FileSystem jar;
+        boolean opened = false;
+        try {
+            jar = FileSystems.newFileSystem(location, Map.of());
+            opened = true;
+        } catch (FileSystemAlreadyExistsException e) {
+            jar = FileSystems.getFileSystem(location);
+        }
+        try {
+            return scan(Paths.get(location), location.toString(), false);
+        } finally {
+            if (opened) jar.close();
+        }
+    }
+
+    static StaticIndex ofDirectory(Path dir) throws IOException {
+        return scan(dir, dir.toString().replace('\\', '/'), true);
+    }
+
+    private static StaticIndex scan(Path dir, String root, boolean onDisk) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                String path = "/" + dir.relativize(file).toString().replace('\\', '/');
+                long size = attrs.size();
+                // Sin mapear el árbol vigilado: un archivo truncado en el lugar haría fallar al leer el mapeo
+                ByteBuffer content = onDisk ? null : ByteBuffer.wrap(Files.readAllBytes(file)).asReadOnlyBuffer();
+                entries.put(path, new Entry(path, content, onDisk ? file : null, size,
+                        HttpServer.detectContentType(path), attrs.lastModifiedTime().to(TimeUnit.SECONDS)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // Borrado entre el listado y la lectura: se omite, el próximo índice ya no lo tendrá
+                if (e instanceof NoSuchFileException) return FileVisitResult.CONTINUE;
+                throw new UncheckedIOException(e);
+            }
+        });
+        return new StaticIndex(Map.copyOf(entries), root);
+    }
+
+    /**
+     * Vigila un directorio (y sus subdirectorios) y, ante cambios, construye
+     * un índice nuevo y se lo entrega a {@code onChange}. Las ráfagas de
+     * eventos (un editor que guarda, un build que copia) se juntan antes de
+     * reindexar. Mientras tanto, un archivo que ya no coincide con el índice
+     * se rechaza al servirlo en vez de enviarse a medias.
+     */
+    static final class Watcher implements Closeable {
+        private static final long SETTLE_MS = 50;
+
+        private final Path root;
+        private final WatchService service;
+        private final Consumer<StaticIndex> onChange;
+        private boolean closed;
+
+        Watcher(Path root, Consumer<StaticIndex> onChange) throws IOException {
+            this.root = root;
+            this.onChange = onChange;
+            this.service = root.getFileSystem().newWatchService();
+            registerAll();
+            Thread.ofPlatform().name("static-watch").daemon(true).unstarted(this::run).start();
+        }
+
+        /** Registrar de nuevo un directorio ya vigilado no duplica nada: sirve para sumar los nuevos. */
+        private void registerAll() throws IOException {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    WatchKey key = service.take();
+                    do {
+                        key.pollEvents();
+                        key.reset();
+                    } while ((key = service.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null);
+                    try {
+                        registerAll();
+                        deliver(ofDirectory(root));
+                    } catch (IOException | UncheckedIOException e) {
+                        // Se sigue sirviendo el índice anterior; el próximo cambio vuelve a intentarlo
+                        System.err.println("[staticfiles] No se pudo reindexar " + root + ": " + e.getMessage());
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // close()
+            }
+        }
+
+        /** Un reindexado que termina después de close() se descarta. */
+        private synchronized void deliver(StaticIndex index) {
+            if (!closed) onChange.accept(index);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            service.close();
+        }
+    }
+}
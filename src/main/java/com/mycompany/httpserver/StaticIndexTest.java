@@ -0,0 +1,192 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class StaticIndexTest {
+
+    private static String text(StaticIndex.Entry e) throws IOException {
+        return new String(e.read(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void ofDirectory_indexesFilesWithMetadata() throws Exception {
+        Path dir = Files.createTempDirectory("static-index");
+        Files.createDirectories(dir.resolve("css"));
+        Files.writeString(dir.resolve("index.html"), "<h1>hola</h1>");
+        Files.writeString(dir.resolve("css/site.css"), "body{}");
+
+        StaticIndex index = StaticIndex.ofDirectory(dir);
+        assertEquals(2, index.size());
+        assertEquals(19, index.bytes());
+
+        StaticIndex.Entry html = index.get("/index.html");
+        assertEquals("<h1>hola</h1>", text(html));
+        assertEquals(13, html.size);
+        assertTrue(html.contentType.startsWith("text/html"));
+        assertTrue(html.etag.startsWith("\"d-"));
+        assertEquals(StaticCache.httpDate(html.lastModifiedSec), html.lastModified);
+        assertEquals("body{}", text(index.get("/css/site.css")));
+        assertNull(index.get("/css"));
+        assertNull(index.get("/missing.js"));
+    }
+
+    @Test
+    public void build_readsFolderInsideJar() throws Exception {
+        Path jar = Files.createTempFile("static-index", ".jar");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+            zip.putNextEntry(new ZipEntry("web/app.js"));
+            zip.write("console.log(1)".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("other/skip.txt"));
+            zip.write('x');
+        }
+
+        StaticIndex index = StaticIndex.build(URI.create("jar:" + jar.toUri() + "!/web"));
+        assertEquals(1, index.size());
+        StaticIndex.Entry js = index.get("/app.js");
+        assertEquals("console.log(1)", text(js));
+        assertNull(js.file);
+        assertTrue(js.contentType.startsWith("application/javascript"));
+    }
+
+    @Test
+    public void fileTruncatedInPlace_isRejectedInsteadOfFaulting() throws Exception {
+        Path dir = Files.createTempDirectory("static-truncate");
+        Path small = Files.writeString(dir.resolve("a.txt"), "contenido original");
+        Path large = dir.resolve("big.bin");
+        Files.write(large, new byte[(int) StaticCache.MAX_ENTRY_BYTES * 2]);
+        StaticIndex index = StaticIndex.ofDirectory(dir);
+
+        // Mismo inodo, menos bytes: lo que hace un editor o un build que reescribe sin renombrar
+        try (FileChannel ch = FileChannel.open(small, StandardOpenOption.WRITE)) {
+            ch.truncate(3);
+        }
+        try (FileChannel ch = FileChannel.open(large, StandardOpenOption.WRITE)) {
+            ch.truncate(1000);
+        }
+        assertThrows(StaticIndex.ChangedException.class, () -> StaticCache.load(index.get("/a.txt")));
+        assertThrows(StaticIndex.ChangedException.class, () -> index.get("/big.bin").open());
+
+        StaticIndex.Entry fresh = index.get("/a.txt").reload();
+        assertEquals(3, fresh.size);
+        assertEquals("con", text(fresh));
+        Files.delete(small);
+        assertNull(index.get("/a.txt").reload());
+    }
+
+    @Test
+    public void fileTruncatedInPlace_isServedAsItIsNow() throws Exception {
+        Path dir = Files.createTempDirectory("static-reload");
+        Path small = Files.writeString(dir.resolve("a.txt"), "contenido original");
+        Path large = dir.resolve("big.bin");
+        byte[] data = new byte[(int) StaticCache.MAX_ENTRY_BYTES * 2];
+        Arrays.fill(data, (byte) 7);
+        Files.write(large, data);
+
+        for (HttpServer.Engine engine : HttpServer.Engine.values()) {
+            WebServer server = new WebServer().engine(engine).ioThreads(1).staticfiles(dir).start(ServerConfig.port(0));
+            try {
+                try (FileChannel ch = FileChannel.open(small, StandardOpenOption.WRITE)) {
+                    ch.truncate(9);
+                }
+                try (FileChannel ch = FileChannel.open(large, StandardOpenOption.WRITE)) {
+                    ch.truncate(StaticCache.MAX_ENTRY_BYTES + 10);
+                }
+                // Con o sin el índice nuevo del watcher, la respuesta es la del archivo actual
+                HttpClient client = HttpClient.newHttpClient();
+                URI base = URI.create("http://localhost:" + server.port());
+                java.net.http.HttpResponse<String> a = client.send(java.net.http.HttpRequest.newBuilder(base.resolve("/a.txt"))
+                        .timeout(Duration.ofSeconds(5)).build(), java.net.http.HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, a.statusCode());
+                assertEquals("contenido", a.body());
+                java.net.http.HttpResponse<byte[]> big = client.send(java.net.http.HttpRequest.newBuilder(base.resolve("/big.bin"))
+                        .timeout(Duration.ofSeconds(5)).build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+                assertEquals(200, big.statusCode());
+                assertArrayEquals(Arrays.copyOf(data, (int) StaticCache.MAX_ENTRY_BYTES + 10), big.body());
+            } finally {
+                server.stop(Duration.ofSeconds(5));
+            }
+            Files.writeString(small, "contenido original");
+            Files.write(large, data);
+        }
+    }
+
+    @Test
+    public void watcher_swapsInIndexAfterChanges() throws Exception {
+        Path dir = Files.createTempDirectory("static-watch");
+        Files.writeString(dir.resolve("a.txt"), "uno");
+        BlockingQueue<StaticIndex> changes = new ArrayBlockingQueue<>(16);
+
+        StaticIndex.Watcher watcher = new StaticIndex.Watcher(dir, changes::add);
+        try {
+            Files.createDirectories(dir.resolve("sub"));
+            Files.writeString(dir.resolve("sub/b.txt"), "dos");
+
+            // Puede llegar más de un índice (el directorio primero, el archivo después)
+            StaticIndex latest;
+            do {
+                latest = changes.poll(10, TimeUnit.SECONDS);
+                assertNotNull("sin reindexado", latest);
+            } while (latest.get("/sub/b.txt") == null);
+            assertEquals("dos", text(latest.get("/sub/b.txt")));
+            assertEquals("uno", text(latest.get("/a.txt")));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void largeFile_servedFromFileWithRanges() throws Exception {
+        Path dir = Files.createTempDirectory("static-large");
+        byte[] data = new byte[(int) StaticCache.MAX_ENTRY_BYTES * 2];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i * 31);
+        try (OutputStream out = Files.newOutputStream(dir.resolve("big.bin"))) {
+            out.write(data);
+        }
+
+        for (HttpServer.Engine engine : HttpServer.Engine.values()) {
+            WebServer server = new WebServer().engine(engine).ioThreads(1).staticfiles(dir).start(ServerConfig.port(0));
+            try {
+                HttpClient client = HttpClient.newHttpClient();
+                URI uri = URI.create("http://localhost:" + server.port() + "/big.bin");
+
+                java.net.http.HttpResponse<byte[]> full = client.send(java.net.http.HttpRequest.newBuilder(uri)
+                        .timeout(Duration.ofSeconds(5)).build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+                assertEquals(200, full.statusCode());
+                assertArrayEquals(data, full.body());
+
+                java.net.http.HttpResponse<byte[]> part = client.send(java.net.http.HttpRequest.newBuilder(uri)
+                        .header("Range", "bytes=1000-1999").timeout(Duration.ofSeconds(5)).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+                assertEquals(206, part.statusCode());
+                assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), part.body());
+
+                String etag = full.headers().firstValue("ETag").orElseThrow();
+                java.net.http.HttpResponse<byte[]> cached = client.send(java.net.http.HttpRequest.newBuilder(uri)
+                        .header("If-None-Match", etag).timeout(Duration.ofSeconds(5)).build(),
+                        java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+                assertEquals(304, cached.statusCode());
+            } finally {
+                server.stop(Duration.ofSeconds(5));
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mycompany.httpserver;
+
+import java.util.*;
+
+/**
+ * Pares clave=valor en formato application/x-www-form-urlencoded sobre un
+ * byte[] (cuerpo de un formulario). Como la query de {@link HttpRequest}:
+ * se indexan las posiciones una vez y cada clave/valor se decodifica recién
+ * cuando se consulta.
+ */
+final class UrlEncoded {
+
+    static final UrlEncoded EMPTY = new UrlEncoded(new byte[0], 0, 0);
+
+    private final byte[] b;
+    private final int[] idx;        // claveInicio, claveFin, valorInicio, valorFin
+    private final String[] keys;
+    private final String[] values;
+
+    UrlEncoded(byte[] b, int from, int to) {
+        this.b = b;
+        int pairs = from < to ? 1 : 0;
+        for (int i = from; i < to; i++) if (b[i] == '&') pairs++;
+        int[] idx = new int[pairs * 4];
+        int n = 0;
+        for (int ks = from; ks < to; ) {
+            int pe = ks;
+            while (pe < to && b[pe] != '&') pe++;
+            if (pe > ks) { // los pares vacíos se ignoran
+                int eq = ks;
+                while (eq < pe && b[eq] != '=') eq++;
+                idx[4 * n] = ks;
+                idx[4 * n + 1] = eq;
+                idx[4 * n + 2] = eq < pe ? eq + 1 : pe;
+                idx[4 * n + 3] = pe;
+                n++;
+            }
+            ks = pe + 1;
+        }
+        this.idx = n == pairs ? idx : Arrays.copyOf(idx, n * 4);
+        this.keys = new String[n];
+        this.values = new String[n];
+    }
+
+    /** Último valor de {@code name}, o null. */
+    String get(String name) {
+        for (int i = keys.length - 1; i >= 0; i--) {
+            if (key(i).equals(name)) return value(i);
+        }
+        return null;
+    }
+
+    List<String> getAll(String name) {
+        List<String> out = new ArrayList<>(2);
+        for (int i = 0; i < keys.length; i++) {
+            if (key(i).equals(name)) out.add(value(i));
+        }
+        return out;
+    }
+
+    /** Con claves repetidas gana el último valor. */
+    Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i++) map.put(key(i), value(i));
+        return map;
+    }
+
+    private String key(int i) {
+        String k = keys[i];
+        if (k == null) keys[i] = k = HttpRequest.decode(b, idx[4 * i], idx[4 * i + 1], true);
+        return k;
+    }
+
+    private String value(int i) {
+        String v = values[i];
+        if (v == null) values[i] = v = HttpRequest.decode(b, idx[4 * i + 2], idx[4 * i + 3], true);
+        return v;
+    }
+}
@@ -0,0 +1,1499 @@
+package com.mycompany.httpserver;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static com.mycompany.httpserver.HttpServer.CONTINUE;
+import static com.mycompany.httpserver.HttpServer.contentLength;
+import static com.mycompany.httpserver.HttpServer.detectContentType;
+import static com.mycompany.httpserver.HttpServer.expectsContinue;
+import static com.mycompany.httpserver.HttpServer.isKeepAlive;
+import static com.mycompany.httpserver.HttpServer.normalizeRoute;
+import static com.mycompany.httpserver.HttpServer.reason;
+import static com.mycompany.httpserver.HttpServer.write;
+import static com.mycompany.httpserver.HttpServer.writeHead;
+import static com.mycompany.httpserver.HttpServer.writeText;
+
+/**
+ * Un servidor HTTP con su propio estado: rutas, estáticos, caché, métricas y
+ * configuración. Se pueden tener varios en la misma JVM (en puertos
+ * distintos); {@link HttpServer} es la fachada estática sobre una instancia
+ * por defecto.
+ *
+ * <pre>
+ * WebServer server = new WebServer()
+ *         .get("/hello", (req, resp) -&gt; "hola")
+ *         .start(ServerConfig.port(0));   // vuelve con el socket ya escuchando
+ * int port = server.port();
+ * ...
+ * server.stop(Duration.ofSeconds(10));    // deja terminar lo que está en curso
+ * </pre>
+ */
+public final class WebServer implements AutoCloseable {
+
+    /** Ciclo de vida: cada instancia arranca y se detiene una sola vez. */
+    public enum State { NEW, RUNNING, DRAINING, STOPPED }
+
+    // Plazo de close(): lo que siga en curso después se corta
+    private static final Duration DEFAULT_GRACE = Duration.ofSeconds(5);
+
+    // ====== Configuración ======
+    // Árbol de rutas con tablas por método HTTP
+    private final Router endpointRegistry = new Router();
+
+    // Origen de los estáticos indexados (directorio o recurso dentro de un jar)
+    private String assetsBasePath = "target/classes/webroot";
+
+    // Carpeta base de origen (dev): tiene prioridad sobre el classpath para ver cambios sin recompilar
+    private String resourcesBasePath = "src/main/resources";
+
+    // Índice de estáticos (ruta -> archivo mapeado); se reemplaza entero cuando cambia la carpeta
+    private volatile StaticIndex staticIndex = StaticIndex.EMPTY;
+
+    // Vigila la carpeta indexada si está en disco (null si no hay o está en un jar)
+    private StaticIndex.Watcher staticWatcher;
+
+    // Modo concurrente: cada conexión aceptada se atiende en su propio hilo virtual
+    private boolean concurrentMode = true;
+
+    // Tope de conexiones en vuelo; las que llegan con el cupo lleno reciben 503 + Retry-After
+    private int maxInFlight = 1024;
+
+    // Retry-After (segundos) de esos 503
+    private static final String OVERLOAD_RETRY_AFTER = "1";
+    private static final byte[] OVERLOADED = "Service Unavailable: demasiadas conexiones".getBytes(StandardCharsets.UTF_8);
+
+    // Límites de peticiones por cliente y ruta (null = sin límites); 429 + Retry-After al excederlos
+    private volatile RateLimiter rateLimiter;
+
+    // HTTP/2 sin TLS (prefacio directo o Upgrade: h2c); solo con el motor bloqueante
+    private boolean h2c;
+
+    // Keep-alive: espera máxima entre peticiones (ms) y tope de peticiones por conexión
+    private int keepAliveTimeoutMs = 5000;
+    private int maxRequestsPerConnection = 100;
+
+    // Caché en memoria de estáticos (LRU acotada por bytes)
+    private StaticCache staticCache = new StaticCache(32L * 1024 * 1024);
+
+    // Compresión de respuestas dinámicas (null = desactivada)
+    private volatile Compression compression = new Compression(Compression.DEFAULT_MIN_BYTES);
+
+    // Rutas SSE: sus streams no terminan solos, se cortan al detener el servidor
+    private final List<SseRoute> sseRoutes = new CopyOnWriteArrayList<>();
+
+    // Plazo por defecto de los handlers async (getAsync/postAsync sin timeout propio)
+    private volatile long asyncTimeoutMs = 30_000;
+
+    // Contadores e histogramas; se exponen con metrics(ruta)
+    final Metrics metrics = new Metrics();
+
+    // Access log asíncrono (null = sin log)
+    private volatile AccessLog accessLog;
+
+    // Tope de bytes para línea de inicio + headers (431 si se excede)
+    private int maxHeaderBytes = RequestParser.DEFAULT_MAX_HEAD;
+
+    // Tope del cuerpo de una petición (413 si se excede)
+    private long maxBodyBytes = 10L * 1024 * 1024;
+
+    // Motor de red y cantidad de event loops (solo aplica a NIO)
+    private HttpServer.Engine engine = HttpServer.Engine.BLOCKING;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+
+    // ====== Ciclo de vida ======
+    private final AtomicReference<State> state = new AtomicReference<>(State.NEW);
+    private final CompletableFuture<WebServer> ready = new CompletableFuture<>();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile int port = -1;
+    private List<ServerSocketChannel> listeners = List.of();
+    private List<Thread> acceptors = List.of();
+    private ExecutorService workers;   // motor bloqueante
+    private NioServer nio;
+    private Semaphore admission;       // cupo de conexiones (maxConnections)
+
+    // Conexiones abiertas (ambos motores); stop() espera a que lleguen a cero
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Condition noConnections = drainLock.newCondition();
+    private int openConnections;
+
+    // Conexiones del motor bloqueante, para cerrar las inactivas al detenerse
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Define una ruta GET y su lambda. El patrón admite parámetros
+     * ({@code /users/:id}) y un comodín final ({@code /files/*}).
+     */
+    public WebServer get(String route, Service handler) {
+        endpointRegistry.add("GET", normalizeRoute(route), handler);
+        return this;
+    }
+
+    /** Define una ruta POST. */
+    public WebServer post(String route, Service handler) {
+        endpointRegistry.add("POST", normalizeRoute(route), handler);
+        return this;
+    }
+
+    /** Define una ruta PUT. */
+    public WebServer put(String route, Service handler) {
+        endpointRegistry.add("PUT", normalizeRoute(route), handler);
+        return this;
+    }
+
+    /** Define una ruta DELETE. */
+    public WebServer delete(String route, Service handler) {
+        endpointRegistry.add("DELETE", normalizeRoute(route), handler);
+        return this;
+    }
+
+    /**
+     * Registra los métodos {@link GetMapping}/{@link PostMapping} de un
+     * controlador ya construido (p.ej. con dependencias propias).
+     */
+    public WebServer controller(Object controller) {
+        for (Controllers.Binding b : Controllers.bind(controller)) register(b);
+        return this;
+    }
+
+    /**
+     * Busca las clases {@link RestController} de {@code basePackage} (y
+     * subpaquetes), las instancia con su constructor sin argumentos y
+     * registra sus rutas. Los handlers quedan enlazados aquí, una vez.
+     */
+    public WebServer scan(String basePackage) {
+        long start = System.nanoTime();
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) loader = WebServer.class.getClassLoader();
+        List<Class<?>> types;
+        try {
+            types = Controllers.scan(basePackage, loader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo recorrer el paquete " + basePackage, e);
+        }
+        int routes = 0;
+        for (Class<?> type : types) {
+            for (Controllers.Binding b : Controllers.bind(Controllers.instantiate(type))) {
+                register(b);
+                routes++;
+            }
+        }
+        System.out.println("[scan] " + basePackage + ": " + types.size() + " controladores, " + routes + " rutas en "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return this;
+    }
+
+    private void register(Controllers.Binding b) {
+        Service handler = b.async() != null ? new AsyncRoute(b.async(), 0, this) : b.handler();
+        endpointRegistry.add(b.method(), normalizeRoute(b.route()), handler);
+    }
+
+    /**
+     * Define una ruta GET con handler asíncrono. La respuesta se escribe cuando
+     * el future se completa; si tarda más que el timeout global
+     * ({@link #asyncTimeout}) se responde 504.
+     */
+    public WebServer getAsync(String route, AsyncService handler) {
+        endpointRegistry.add("GET", normalizeRoute(route), new AsyncRoute(handler, 0, this));
+        return this;
+    }
+
+    /** GET asíncrono con timeout propio. */
+    public WebServer getAsync(String route, AsyncService handler, Duration timeout) {
+        endpointRegistry.add("GET", normalizeRoute(route), new AsyncRoute(handler, positiveMillis(timeout), this));
+        return this;
+    }
+
+    /** Define una ruta POST con handler asíncrono. */
+    public WebServer postAsync(String route, AsyncService handler) {
+        endpointRegistry.add("POST", normalizeRoute(route), new AsyncRoute(handler, 0, this));
+        return this;
+    }
+
+    /** POST asíncrono con timeout propio. */
+    public WebServer postAsync(String route, AsyncService handler, Duration timeout) {
+        endpointRegistry.add("POST", normalizeRoute(route), new AsyncRoute(handler, positiveMillis(timeout), this));
+        return this;
+    }
+
+    /**
+     * Define una ruta GET de Server-Sent Events: cada petición queda abierta
+     * como {@code text/event-stream} suscrita al tópico que devuelve
+     * {@code topics} (null responde 400). Los clientes del mismo tópico
+     * comparten un solo productor; ver {@link EventStream}.
+     */
+    public WebServer sse(String route, EventStream stream, Function<HttpRequest, String> topics) {
+        SseRoute sse = new SseRoute(Objects.requireNonNull(stream), Objects.requireNonNull(topics), this);
+        endpointRegistry.add("GET", normalizeRoute(route), sse);
+        sseRoutes.add(sse);
+        return this;
+    }
+
+    /** Timeout por defecto de los handlers asíncronos (30 s). */
+    public WebServer asyncTimeout(Duration timeout) {
+        asyncTimeoutMs = positiveMillis(timeout);
+        return this;
+    }
+
+    long asyncTimeoutMs() {
+        return asyncTimeoutMs;
+    }
+
+    private static long positiveMillis(Duration d) {
+        long ms = d.toMillis();
+        if (ms < 1) throw new IllegalArgumentException("El timeout debe ser >= 1 ms: " + d);
+        return ms;
+    }
+
+    /**
+     * Define la carpeta de estáticos y la indexa, sin copiar nada: primero
+     * src/main/resources + carpeta (dev) y si no existe el recurso del
+     * classpath, también dentro de un jar. Una carpeta en disco se vigila y
+     * al cambiar se reindexa.
+     * Ej: staticfiles("/webroot")
+     */
+    public WebServer staticfiles(String staticFolder) {
+        String normalized = staticFolder.startsWith("/") ? staticFolder : ("/" + staticFolder);
+        URI location = StaticIndex.locate(normalized, resourcesBasePath, WebServer.class.getClassLoader());
+        if (location == null) {
+            System.err.println("[staticfiles] Advertencia: no se encontró " + normalized
+                    + " ni en " + resourcesBasePath + " ni en el classpath");
+            closeStaticWatcher();
+            assetsBasePath = resourcesBasePath + normalized;
+            setStaticIndex(StaticIndex.EMPTY);
+            return this;
+        }
+        return indexStatic(location);
+    }
+
+    /** Sirve los estáticos de un directorio cualquiera del disco (vigilado). */
+    public WebServer staticfiles(Path directory) {
+        return indexStatic(directory.toAbsolutePath().toUri());
+    }
+
+    private synchronized WebServer indexStatic(URI location) {
+        closeStaticWatcher();
+        try {
+            StaticIndex index = StaticIndex.build(location);
+            assetsBasePath = index.root;
+            setStaticIndex(index);
+            if (!"jar".equals(location.getScheme())) {
+                staticWatcher = new StaticIndex.Watcher(Paths.get(location), this::setStaticIndex);
+            }
+            System.out.println("[staticfiles] " + index.size() + " archivos (" + index.bytes()
+                    + " bytes) indexados desde " + index.root);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("[staticfiles] Advertencia: no se pudo indexar " + location + ": " + e.getMessage());
+        }
+        return this;
+    }
+
+    private void setStaticIndex(StaticIndex index) {
+        staticIndex = index;
+        // Las claves llevan el ETag, así que nada viejo se serviría; se vacía para liberar memoria
+        staticCache.clear();
+    }
+
+    private synchronized void closeStaticWatcher() {
+        if (staticWatcher == null) return;
+        try {
+            staticWatcher.close();
+        } catch (IOException ignored) {
+        }
+        staticWatcher = null;
+    }
+
+    /**
+     * Activa o desactiva el modo concurrente. Con {@code false} se vuelve al
+     * comportamiento secuencial (una petición a la vez en el hilo del accept).
+     */
+    public WebServer concurrent(boolean enabled) {
+        concurrentMode = enabled;
+        return this;
+    }
+
+    /**
+     * Máximo de conexiones atendidas a la vez. Con el cupo lleno las
+     * conexiones nuevas reciben 503 con Retry-After en su primera petición
+     * y se cierran, sin llegar a los handlers (en modo secuencial el accept
+     * espera a que se libere la única conexión).
+     */
+    public WebServer maxConnections(int max) {
+        if (max < 1) throw new IllegalArgumentException("maxConnections debe ser >= 1: " + max);
+        maxInFlight = max;
+        return this;
+    }
+
+    /**
+     * Configura las conexiones persistentes: tiempo de inactividad antes de
+     * cerrar el socket y cantidad máxima de peticiones atendidas por conexión.
+     */
+    public WebServer keepAlive(int idleTimeoutMs, int maxRequests) {
+        if (idleTimeoutMs < 1 || maxRequests < 1) {
+            throw new IllegalArgumentException("keepAlive requiere valores >= 1");
+        }
+        keepAliveTimeoutMs = idleTimeoutMs;
+        maxRequestsPerConnection = maxRequests;
+        return this;
+    }
+
+    /**
+     * Acepta HTTP/2 sin TLS (h2c) además de HTTP/1.1: clientes que abren con
+     * el prefacio de HTTP/2 o que piden {@code Upgrade: h2c}. Cada stream se
+     * atiende en su propio hilo virtual con las mismas rutas y estáticos.
+     * Solo lo soporta el motor bloqueante.
+     */
+    public WebServer h2c(boolean enabled) {
+        h2c = enabled;
+        return this;
+    }
+
+    /**
+     * Limita cada IP a {@code permits} peticiones por {@code period} en cada
+     * ruta (token bucket: admite ráfagas de hasta {@code permits}). Aplica a
+     * todas las rutas sin límite propio, estáticos incluidos; al excederlo se
+     * responde 429 con Retry-After.
+     */
+    public WebServer rateLimit(int permits, Duration period) {
+        rateLimiter().limitAll(permits, period);
+        return this;
+    }
+
+    /** Límite propio de {@code route} por IP, p.ej. {@code rateLimit("/stocks", 5, Duration.ofMinutes(1))}. */
+    public WebServer rateLimit(String route, int permits, Duration period) {
+        rateLimiter().limit(normalizeRoute(route), permits, period);
+        return this;
+    }
+
+    private synchronized RateLimiter rateLimiter() {
+        if (rateLimiter == null) rateLimiter = new RateLimiter();
+        return rateLimiter;
+    }
+
+    /**
+     * Registra cada respuesta en {@code log} (formato Common Log + latencia).
+     * Se abre al iniciar el servidor y se vacía y cierra al detenerlo.
+     */
+    public WebServer accessLog(AccessLog log) {
+        accessLog = log;
+        return this;
+    }
+
+    /** Access log en {@code file} con la configuración por defecto. */
+    public WebServer accessLog(Path file) {
+        return accessLog(new AccessLog(file));
+    }
+
+    /**
+     * Publica las métricas del servidor en {@code route} (p.ej. "/metrics")
+     * en formato de texto de Prometheus.
+     */
+    public WebServer metrics(String route) {
+        return get(route, (req, resp) -> {
+            resp.type("text/plain; version=0.0.4; charset=utf-8").header("Cache-Control", "no-store");
+            return metrics.scrape(staticCache, staticIndex);
+        });
+    }
+
+    /**
+     * Publica en {@code route} (p.ej. "/ready") el estado para el balanceador:
+     * 200 mientras el servidor acepta tráfico y 503 desde que empieza a
+     * detenerse, así deja de recibir peticiones nuevas durante el drenado.
+     */
+    public WebServer readiness(String route) {
+        return get(route, (req, resp) -> {
+            resp.type("text/plain; charset=utf-8").header("Cache-Control", "no-store");
+            if (isReady()) return "ready";
+            resp.status(503);
+            return "draining";
+        });
+    }
+
+    /** Selecciona el motor de red con el que arrancará {@link #start(ServerConfig)}. */
+    public WebServer engine(HttpServer.Engine selected) {
+        engine = Objects.requireNonNull(selected);
+        return this;
+    }
+
+    /** Cantidad de event loops del motor NIO (por defecto, uno por núcleo). */
+    public WebServer ioThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("ioThreads debe ser >= 1: " + threads);
+        ioThreads = threads;
+        return this;
+    }
+
+    /** Tamaño máximo (bytes) de la caché de estáticos; 0 la desactiva. */
+    public WebServer staticCacheSize(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("staticCacheSize debe ser >= 0: " + maxBytes);
+        staticCache = new StaticCache(maxBytes);
+        return this;
+    }
+
+    /**
+     * Comprime con gzip/deflate (según Accept-Encoding) las respuestas de los
+     * handlers de al menos {@code minBytes} cuyo Content-Type empiece con
+     * alguno de {@code contentTypes}; sin tipos se usan los de texto, JSON,
+     * JavaScript y SVG. Por defecto activa con 1 KB.
+     */
+    public WebServer compression(int minBytes, String... contentTypes) {
+        compression = new Compression(minBytes, contentTypes);
+        return this;
+    }
+
+    /** Activa (con la configuración por defecto) o desactiva la compresión de respuestas dinámicas. */
+    public WebServer compression(boolean enabled) {
+        compression = enabled ? new Compression(Compression.DEFAULT_MIN_BYTES) : null;
+        return this;
+    }
+
+    /**
+     * Tamaño máximo del cuerpo de una petición (10 MB por defecto). Un
+     * Content-Length mayor se rechaza con 413 sin leer el cuerpo; un cuerpo
+     * chunked que lo supera corta la lectura del handler y también da 413.
+     */
+    public WebServer maxBodySize(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("maxBodySize debe ser >= 0: " + bytes);
+        maxBodyBytes = bytes;
+        return this;
+    }
+
+    /** Tamaño máximo de la cabeza de una petición (línea de inicio + headers). */
+    public WebServer maxHeaderSize(int bytes) {
+        if (bytes < 256) throw new IllegalArgumentException("maxHeaderSize debe ser >= 256: " + bytes);
+        maxHeaderBytes = bytes;
+        return this;
+    }
+
+    // ================== Ciclo de vida ==================
+
+    /**
+     * Abre los sockets de escucha y arranca los acceptors (y los event loops
+     * con el motor NIO). Vuelve cuando el servidor ya acepta conexiones; con
+     * puerto 0 el elegido por el SO queda en {@link #port()}.
+     */
+    public WebServer start(ServerConfig config) throws IOException {
+        if (!state.compareAndSet(State.NEW, State.RUNNING)) {
+            throw new IllegalStateException("El servidor ya fue iniciado (" + state.get() + ")");
+        }
+        try {
+            // Sockets respaldados por canal: permiten FileChannel.transferTo (zero-copy) hacia el cliente
+            listeners = config.bind();
+            port = ServerConfig.localPort(listeners.get(0));
+            AccessLog log = accessLog;
+            if (log != null) log.open();
+            // En modo secuencial (solo motor bloqueante) el cupo es 1 y el accept espera
+            admission = new Semaphore(engine == HttpServer.Engine.BLOCKING && !concurrentMode ? 1 : maxInFlight);
+            if (engine == HttpServer.Engine.NIO) {
+                if (h2c) System.err.println("[h2c] El motor NIO no soporta HTTP/2: se atiende solo HTTP/1.1");
+                nio = new NioServer(this, config, ioThreads, keepAliveTimeoutMs, maxRequestsPerConnection,
+                        maxHeaderBytes, maxBodyBytes);
+                acceptors = nio.start(listeners);
+            } else {
+                acceptors = startAcceptors(config);
+                System.out.println("Servidor corriendo en http://localhost:" + port
+                        + (config.getAcceptors() > 1 ? " (" + config.getAcceptors() + " acceptors, "
+                        + listeners.size() + " sockets de escucha)" : ""));
+            }
+        } catch (IOException | RuntimeException e) {
+            closeListeners();
+            // stop() no va a correr: el hilo escritor y el archivo del log se liberan acá
+            AccessLog log = accessLog;
+            if (log != null) log.close();
+            state.set(State.STOPPED);
+            ready.completeExceptionally(e);
+            terminated.countDown();
+            throw e;
+        }
+        ready.complete(this);
+        return this;
+    }
+
+    /**
+     * Deja de aceptar conexiones, cierra las inactivas y espera hasta
+     * {@code grace} a que terminen las peticiones en curso (que responden con
+     * "Connection: close"); al vencer el plazo corta las que queden. Devuelve
+     * true si todo terminó a tiempo.
+     */
+    public boolean stop(Duration grace) {
+        return shutdown(grace).join();
+    }
+
+    /**
+     * Como {@link #stop(Duration)} pero sin bloquear: al volver ya no se
+     * aceptan conexiones y el drenado sigue en otro hilo; el future se
+     * completa al terminar.
+     */
+    public CompletableFuture<Boolean> shutdown(Duration grace) {
+        long deadline = System.nanoTime() + grace.toNanos();
+        if (!state.compareAndSet(State.RUNNING, State.DRAINING)) {
+            if (state.compareAndSet(State.NEW, State.STOPPED)) {
+                ready.completeExceptionally(new IllegalStateException("El servidor se detuvo sin haber iniciado"));
+                terminated.countDown();
+            }
+            // Otro hilo ya lo está deteniendo: se espera a que termine
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            });
+        }
+        closeListeners();
+        awaitAcceptors(deadline);
+        for (SseRoute sse : sseRoutes) sse.drain();
+        if (nio != null) {
+            nio.drain();
+        } else {
+            for (Connection c : connections) c.drain();
+        }
+
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        Thread.ofPlatform().name("drain-" + port).daemon(false).unstarted(() -> {
+            boolean clean = awaitNoConnections(deadline);
+            if (nio != null) {
+                nio.close();
+            } else {
+                for (Connection c : connections) c.close();
+                workers.shutdownNow();
+            }
+            closeStaticWatcher();
+            AccessLog log = accessLog;
+            if (log != null) log.close(); // lo pendiente llega al archivo
+            state.set(State.STOPPED);
+            terminated.countDown();
+            System.out.println("Servidor en el puerto " + port + " detenido"
+                    + (clean ? "" : " (plazo vencido: se cortaron conexiones en curso)"));
+            done.complete(clean);
+        }).start();
+        return done;
+    }
+
+    /** Detiene el servidor con un plazo de 5 s para lo que esté en curso. */
+    @Override
+    public void close() {
+        stop(DEFAULT_GRACE);
+    }
+
+    /** Se completa cuando el servidor acepta conexiones (o falla si no pudo iniciar). */
+    public CompletableFuture<WebServer> ready() {
+        return ready;
+    }
+
+    /** ¿Acepta tráfico? Deja de serlo en cuanto empieza a detenerse. */
+    public boolean isReady() {
+        return state.get() == State.RUNNING;
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    /** Puerto de escucha real (útil con puerto 0), o -1 si no inició. */
+    public int port() {
+        return port;
+    }
+
+    /** Bloquea hasta que el servidor termine de detenerse. */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    private void closeListeners() {
+        for (ServerSocketChannel ch : listeners) {
+            try { ch.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Un accept bloqueado retiene el socket de escucha hasta que su hilo sale
+     * del syscall: se los interrumpe y espera para que, al volver de
+     * shutdown(), el puerto ya rechace conexiones.
+     */
+    private void awaitAcceptors(long deadline) {
+        for (Thread t : acceptors) t.interrupt();
+        try {
+            for (Thread t : acceptors) {
+                long left = deadline - System.nanoTime();
+                if (left > 0) t.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(left)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Toma un lugar del cupo para una conexión del motor NIO; false si está lleno. */
+    boolean admit() {
+        return admission.tryAcquire();
+    }
+
+    void releaseAdmission() {
+        admission.release();
+    }
+
+    /** 503 para una conexión que llegó con el cupo lleno; siempre cierra la conexión. */
+    static void writeOverloaded(OutputStream out, String version) throws IOException {
+        write(out, version, 503, "text/plain; charset=utf-8", OVERLOADED, false, "Retry-After", OVERLOAD_RETRY_AFTER);
+    }
+
+    /** Alta de una conexión (ambos motores). */
+    void connectionOpened() {
+        drainLock.lock();
+        try { openConnections++; } finally { drainLock.unlock(); }
+    }
+
+    void connectionClosed() {
+        drainLock.lock();
+        try {
+            if (--openConnections == 0) noConnections.signalAll();
+        } finally { drainLock.unlock(); }
+    }
+
+    private boolean awaitNoConnections(long deadline) {
+        drainLock.lock();
+        try {
+            long left;
+            while (openConnections > 0 && (left = deadline - System.nanoTime()) > 0) {
+                noConnections.awaitNanos(left);
+            }
+            return openConnections == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return openConnections == 0;
+        } finally { drainLock.unlock(); }
+    }
+
+    // ================== Accept (motor bloqueante) ==================
+
+    /**
+     * Un hilo de plataforma por acceptor (accept bloqueante, uno por socket
+     * de escucha si hay SO_REUSEPORT). No son daemon: mantienen viva la JVM
+     * hasta que el servidor se detiene.
+     */
+    private List<Thread> startAcceptors(ServerConfig config) {
+        workers = Executors.newVirtualThreadPerTaskExecutor();
+        int count = concurrentMode ? config.getAcceptors() : 1;
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ServerSocket listener = listeners.get(i % listeners.size()).socket();
+            Thread t = Thread.ofPlatform().name("acceptor-" + port + "-" + i).daemon(false).unstarted(() -> {
+                try {
+                    acceptLoop(listener, config);
+                } catch (IOException e) {
+                    if (!listener.isClosed()) System.err.println("[acceptor] " + e);
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        return threads;
+    }
+
+    /**
+     * Ciclo de accept: un hilo virtual por conexión. Con el cupo lleno la
+     * conexión se acepta igual, pero solo para responderle 503 (así el
+     * cliente se entera enseguida en vez de quedar esperando en el backlog).
+     * En modo secuencial el permiso se toma ANTES de aceptar: no se acepta
+     * otra conexión hasta cerrar la actual.
+     */
+    private void acceptLoop(ServerSocket listener, ServerConfig config) throws IOException {
+        boolean sequential = !concurrentMode;
+        while (true) {
+            if (sequential) {
+                try {
+                    admission.acquire();
+                } catch (InterruptedException e) {
+                    return; // stop(): con la conexión en curso el acceptor espera acá y no en accept
+                }
+            }
+            Connection c;
+            try {
+                c = accept(listener, config);
+            } catch (IOException e) {
+                if (sequential) admission.release();
+                throw e;
+            }
+            if (c == null) {
+                if (sequential) admission.release();
+                continue;
+            }
+            boolean admitted = sequential || admission.tryAcquire();
+            workers.execute(() -> {
+                try {
+                    handleClient(c, admitted);
+                } finally {
+                    if (admitted) admission.release();
+                }
+            });
+        }
+    }
+
+    /** Acepta y registra una conexión; null si ya se cayó o el servidor se está deteniendo. */
+    private Connection accept(ServerSocket listener, ServerConfig config) throws IOException {
+        Socket client = listener.accept();
+        metrics.accepted.increment();
+        if (!configure(client, config)) return null;
+        Connection c = new Connection(client);
+        connections.add(c);
+        connectionOpened();
+        // stop() pudo recorrer las conexiones justo antes de que esta se registrara
+        if (!isReady()) c.closeIfIdle();
+        return c;
+    }
+
+    /** Aplica las opciones de socket; si la conexión ya se cayó la cierra y devuelve false. */
+    private static boolean configure(Socket client, ServerConfig config) {
+        try {
+            config.configure(client.getChannel());
+            return true;
+        } catch (IOException e) {
+            try { client.close(); } catch (IOException ignored) {}
+            return false;
+        }
+    }
+
+    /**
+     * Conexión del motor bloqueante. Al detenerse, el servidor cierra de
+     * inmediato las que esperan otra petición (IDLE); las ocupadas terminan
+     * su respuesta y se cierran solas.
+     */
+    private static final class Connection {
+        private static final int IDLE = 0, BUSY = 1, CLOSED = 2;
+
+        final Socket socket;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        volatile Http2Connection http2; // después del prefacio o del Upgrade a h2c
+
+        Connection(Socket socket) { this.socket = socket; }
+
+        /** Empieza a atender una petición; false si el servidor ya la cerró. */
+        boolean begin() {
+            return state.compareAndSet(IDLE, BUSY);
+        }
+
+        void end() {
+            state.compareAndSet(BUSY, IDLE);
+        }
+
+        void closeIfIdle() {
+            if (state.compareAndSet(IDLE, CLOSED)) closeSocket();
+        }
+
+        /** stop(): HTTP/2 recibe GOAWAY enseguida; la conexión se cierra si no tiene nada en curso. */
+        void drain() {
+            Http2Connection h2 = http2;
+            if (h2 != null) h2.drain();
+            closeIfIdle();
+        }
+
+        void close() {
+            state.set(CLOSED);
+            closeSocket();
+        }
+
+        boolean isClosed() {
+            return state.get() == CLOSED;
+        }
+
+        private void closeSocket() {
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // ================== Núcleo de atención ==================
+    private void handleClient(Connection conn, boolean admitted) {
+        Socket client = conn.socket;
+        metrics.active.increment();
+        try (InputStream in = client.getInputStream();
+             SocketOutput outRaw = new SocketOutput(client, metrics)) {
+
+            // Una conexión rechazada no merece esperar todo el keep-alive a que mande su petición
+            client.setSoTimeout(admitted ? keepAliveTimeoutMs : Math.min(keepAliveTimeoutMs, 1000));
+            RequestParser parser = new RequestParser(maxHeaderBytes, RequestParser.DEFAULT_MAX_HEADERS);
+
+            // h2c con conocimiento previo: el cliente abre directamente con el prefacio de HTTP/2
+            boolean preface;
+            try {
+                preface = h2c && parser.startsWith(in, Http2Connection.PREFACE);
+            } catch (SocketTimeoutException idle) {
+                return;
+            }
+            if (preface) {
+                if (!admitted) {
+                    metrics.shed.increment();
+                    Http2Connection.refuse(outRaw);
+                    return;
+                }
+                http2(conn, parser.rest(in), outRaw).serve();
+                return;
+            }
+
+            int served = 0;
+            boolean keepAlive = true;
+
+            // Una iteración por petición; las peticiones en pipeline quedan en el buffer del parser
+            while (keepAlive) {
+                HttpRequest req;
+                try {
+                    req = parser.read(in);
+                } catch (SocketTimeoutException idle) {
+                    return;
+                } catch (RequestParser.ParseException bad) {
+                    metrics.status(bad.status);
+                    writeText(outRaw, "HTTP/1.1", bad.status, bad.getMessage(), false);
+                    outRaw.flush();
+                    return;
+                }
+                if (req == null) return;
+                if (!admitted) {
+                    metrics.shed.increment();
+                    metrics.status(503);
+                    writeOverloaded(outRaw, req.getVersion());
+                    outRaw.flush();
+                    return;
+                }
+                req.setRemoteAddress(client.getInetAddress());
+
+                // Upgrade: h2c (sin cuerpo): 101 y la misma petición pasa a ser el stream 1
+                byte[] h2Settings = h2c ? Http2Connection.upgradeSettings(req) : null;
+                if (h2Settings != null) {
+                    outRaw.write(Http2Connection.SWITCHING_PROTOCOLS);
+                    outRaw.flush();
+                    http2(conn, parser.rest(in), outRaw).serveUpgrade(req.withVersion(Http2Connection.VERSION), h2Settings);
+                    return;
+                }
+                if (!conn.begin()) return;
+
+                try {
+                    served++;
+                    // En modo secuencial una conexión persistente bloquearía al resto de clientes;
+                    // si el servidor se está deteniendo, esta es la última respuesta de la conexión
+                    keepAlive = concurrentMode && served < maxRequestsPerConnection && isReady()
+                            && isKeepAlive(req.getVersion(), req.getHeader("Connection"));
+
+                    BodyDecoder body;
+                    try {
+                        body = BodyDecoder.forRequest(req, maxBodyBytes);
+                    } catch (RequestParser.ParseException bad) {
+                        metrics.status(bad.status);
+                        writeText(outRaw, req.getVersion(), bad.status, bad.getMessage(), false);
+                        outRaw.flush();
+                        return;
+                    }
+                    if (body != null) {
+                        if (expectsContinue(req)) {
+                            outRaw.write(CONTINUE);
+                            outRaw.flush();
+                        }
+                        req.setBody(parser.body(in, body), body.declaredLength());
+                    }
+
+                    outRaw.resetWritten();
+                    keepAlive = respond(outRaw, req, keepAlive);
+
+                    // Lo que el handler no leyó del cuerpo se descarta para llegar a la próxima petición
+                    if (keepAlive && body != null && !body.isDone()) {
+                        try {
+                            req.getBody().transferTo(OutputStream.nullOutputStream());
+                        } catch (IOException e) {
+                            keepAlive = false;
+                        }
+                    }
+
+                    // Si ya llegó la siguiente petición (pipelining) se agrupan las respuestas en un solo flush
+                    if (!keepAlive || !(parser.hasBuffered() || in.available() > 0)) outRaw.flush();
+                } finally {
+                    conn.end();
+                }
+                // stop() empezó durante la petición: no se espera la siguiente
+                if (!isReady()) return;
+            }
+
+        } catch (IOException ioe) {
+            // Una conexión cerrada por stop() no es un error
+            if (!conn.isClosed()) System.err.println("[handleClient] " + ioe.getMessage());
+        } finally {
+            metrics.active.decrement();
+            conn.close();
+            if (connections.remove(conn)) connectionClosed();
+        }
+    }
+
+    /** La conexión pasa a HTTP/2: queda ocupada mientras tenga streams en curso. */
+    private Http2Connection http2(Connection conn, InputStream in, OutputStream out) {
+        Http2Connection h2 = new Http2Connection(this, workers, conn.socket, in, out, conn::begin, conn::end,
+                maxHeaderBytes, maxBodyBytes);
+        conn.http2 = h2;
+        return h2;
+    }
+
+    /**
+     * Atiende una petición ya parseada: handler registrado o archivo estático.
+     * Devuelve si la conexión puede seguir abierta (un cuerpo en streaming en
+     * HTTP/1.0 se delimita cerrando la conexión). Los handlers async se
+     * esperan en el hilo actual (en el motor bloqueante es un hilo virtual).
+     */
+    boolean respond(OutputStream out, HttpRequest req, boolean keepAlive) throws IOException {
+        if ("HEAD".equals(req.getMethod())) out = new HeadOutput(out);
+        long start = System.nanoTime();
+        metrics.bytesIn.add(req.headLength() + Math.max(contentLength(req), 0));
+        Router.Match match = endpointRegistry.find(req.getMethod(), req.getPath());
+        if (rateLimited(out, req, match, keepAlive, start)) return keepAlive;
+
+        if (match != null && match.handler instanceof AsyncRoute async) {
+            HttpResponse resp = prepare(out, req, match, keepAlive);
+            String payload = null;
+            Exception error = null;
+            try {
+                payload = async.start(req, resp, asyncTimeoutMs).get();
+            } catch (ExecutionException e) {
+                error = AsyncRoute.unwrap(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrumpido esperando al handler");
+            }
+            return complete(out, req, match, resp, keepAlive, payload, error, start);
+        }
+        return respond(out, req, keepAlive, match, start);
+    }
+
+    /**
+     * Variante para el motor NIO: un handler async no ocupa hilo mientras
+     * espera; la respuesta se escribe en {@code completion} cuando el future
+     * se resuelve. El resultado indica si la conexión sigue abierta.
+     */
+    CompletableFuture<Boolean> respondAsync(OutputStream sink, HttpRequest req, boolean keepAlive, Executor completion) {
+        OutputStream out = "HEAD".equals(req.getMethod()) ? new HeadOutput(sink) : sink;
+        long start = System.nanoTime();
+        metrics.bytesIn.add(req.headLength() + Math.max(contentLength(req), 0));
+        Router.Match match = endpointRegistry.find(req.getMethod(), req.getPath());
+        try {
+            if (rateLimited(out, req, match, keepAlive, start)) return CompletableFuture.completedFuture(keepAlive);
+            if (match != null && match.handler instanceof AsyncRoute async) {
+                HttpResponse resp = prepare(out, req, match, keepAlive);
+                return async.start(req, resp, asyncTimeoutMs).handleAsync((payload, err) -> {
+                    try {
+                        return complete(out, req, match, resp, keepAlive, payload, err == null ? null : AsyncRoute.unwrap(err), start);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, completion);
+            }
+            return CompletableFuture.completedFuture(respond(out, req, keepAlive, match, start));
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Descuenta la petición del límite de su cliente y ruta. Si lo excede
+     * responde 429 con el Retry-After (en segundos, redondeado hacia arriba)
+     * y devuelve true.
+     */
+    private boolean rateLimited(OutputStream out, HttpRequest req, Router.Match match,
+                                boolean keepAlive, long start) throws IOException {
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null || req.getRemoteAddress() == null) return false;
+        String route = match != null ? match.route() : "static";
+        long wait = limiter.acquire(route, req.getRemoteAddress(), start);
+        if (wait == 0) return false;
+        long seconds = Math.max(1, (wait + 999_999_999L) / 1_000_000_000L);
+        write(out, req.getVersion(), 429, "text/plain; charset=utf-8",
+                ("Too Many Requests: " + route).getBytes(StandardCharsets.UTF_8), keepAlive,
+                "Retry-After", Long.toString(seconds));
+        record(out, req, route, 429, start);
+        return true;
+    }
+
+    private boolean respond(OutputStream out, HttpRequest req, boolean keepAlive,
+                            Router.Match match, long start) throws IOException {
+        String version = req.getVersion();
+        String method = req.getMethod();
+
+        // 1) ¿Hay handler registrado para la ruta y el método?
+        // GET/HEAD sin handler para la ruta caen a los estáticos; el resto recibe 405
+        if (match != null && match.handler == null && !"GET".equals(method) && !"HEAD".equals(method)) {
+            write(out, version, 405, "text/plain; charset=utf-8",
+                    ("Method Not Allowed: " + method).getBytes(StandardCharsets.UTF_8), keepAlive, "Allow", match.allow());
+            record(out, req, match.route(), 405, start);
+            return keepAlive;
+        }
+        if (match != null && match.handler != null) {
+            HttpResponse resp = prepare(out, req, match, keepAlive);
+            String payload = null;
+            Exception error = null;
+            try {
+                payload = match.handler.handle(req, resp);
+            } catch (Exception ex) {
+                error = ex;
+            }
+            return complete(out, req, match, resp, keepAlive, payload, error, start);
+        }
+
+        // 2) Servir estáticos desde assetsBasePath
+        int status = serveStatic(out, req, keepAlive);
+        record(out, req, "static", status, start);
+        return keepAlive;
+    }
+
+    private static HttpResponse prepare(OutputStream out, HttpRequest req, Router.Match match, boolean keepAlive) {
+        req.setPathParams(req.getPath(), match.paramNames(), match.bounds);
+        return new HttpResponse(out, req.getVersion(), keepAlive);
+    }
+
+    /** Escribe el resultado de un handler (cuerpo devuelto, streaming o error). */
+    private boolean complete(OutputStream out, HttpRequest req, Router.Match match, HttpResponse resp,
+                             boolean keepAlive, String payload, Exception error, long start) throws IOException {
+        String version = req.getVersion();
+        String route = match.route();
+        if (error != null) {
+            // seal() y el outputStream() de un handler que siguió corriendo no se cruzan
+            if (!resp.seal()) {
+                record(out, req, route, resp.getStatus(), start);
+                // Los headers ya salieron: solo queda cortar la conexión para que el cliente lo note
+                throw new IOException("handler falló durante el streaming: " + error.getMessage(), error);
+            }
+            int code = error instanceof TimeoutException ? 504 : 500;
+            String text = code == 504 ? "Gateway Timeout" : "Internal Server Error: " + error.getMessage();
+            BodyDecoder.BodyException badBody = bodyError(error);
+            if (badBody != null) {
+                // El resto del cuerpo no se puede delimitar (o no conviene leerlo): se cierra la conexión
+                code = badBody.status;
+                text = reason(code) + ": " + badBody.getMessage();
+                keepAlive = false;
+            }
+            write(out, version, code, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8), keepAlive);
+            record(out, req, route, code, start);
+            return keepAlive;
+        }
+        boolean persist = keepAlive;
+        if (!resp.seal()) {
+            if (payload != null) resp.outputStream().write(payload.getBytes(StandardCharsets.UTF_8));
+            try {
+                resp.finish();
+            } catch (IOException e) {
+                // Cuerpo más corto o más largo que su Content-Length: la conexión quedó desfasada y se corta
+                record(out, req, route, resp.getStatus(), start);
+                throw e;
+            }
+            persist = resp.keepAlive();
+        } else {
+            byte[] body = payload != null ? payload.getBytes(StandardCharsets.UTF_8)
+                    : resp.content() != null ? resp.content() : new byte[0];
+            String[] headers = resp.headerArray();
+            Compression policy = compression;
+            if (policy != null && resp.getStatus() >= 200 && resp.getStatus() != 204 && resp.getStatus() != 304
+                    && resp.getHeader("Content-Encoding") == null && policy.eligible(resp.getType(), body.length)) {
+                Compression.Coding coding = Compression.negotiate(req.getHeader("Accept-Encoding"));
+                byte[] encoded = coding == null ? null : Compression.encode(body, coding);
+                headers = compressedHeaders(headers, encoded == null ? null : coding);
+                if (encoded != null) body = encoded;
+            }
+            write(out, version, resp.getStatus(), resp.getType(), body, keepAlive, headers);
+        }
+        record(out, req, route, resp.getStatus(), start);
+        return persist;
+    }
+
+    /** Cierra la cuenta de una respuesta: métricas y, si hay, una línea del access log. */
+    private void record(OutputStream out, HttpRequest req, String route, int status, long start) {
+        long nanos = System.nanoTime() - start;
+        metrics.record(req.getMethod(), route, status, nanos);
+        AccessLog log = accessLog;
+        if (log != null && !log.log(req, status, out instanceof CountingOutput c ? c.written() : -1, nanos)) {
+            metrics.accessLogDropped.increment();
+        }
+    }
+
+    /**
+     * Headers de una respuesta que depende de Accept-Encoding: siempre Vary;
+     * si se comprimió, Content-Encoding y un ETag distinto para esa variante.
+     */
+    private static String[] compressedHeaders(String[] headers, Compression.Coding coding) {
+        String[] h = Arrays.copyOf(headers, headers.length + (coding == null ? 2 : 4));
+        int n = headers.length;
+        h[n++] = "Vary";
+        h[n++] = "Accept-Encoding";
+        if (coding != null) {
+            h[n++] = "Content-Encoding";
+            h[n] = coding.token;
+            for (int i = 0; i < headers.length; i += 2) {
+                String etag = h[i + 1];
+                if (h[i].equalsIgnoreCase("ETag") && etag.endsWith("\"")) {
+                    h[i + 1] = etag.substring(0, etag.length() - 1) + coding.etagSuffix + "\"";
+                }
+            }
+        }
+        return h;
+    }
+
+    /** Error de lectura del cuerpo, aunque el handler lo haya envuelto (p.ej. en UncheckedIOException). */
+    private static BodyDecoder.BodyException bodyError(Throwable error) {
+        for (int depth = 0; error != null && depth < 5; depth++, error = error.getCause()) {
+            if (error instanceof BodyDecoder.BodyException bad) return bad;
+        }
+        return null;
+    }
+
+    // ================== Estáticos (binario-seguro) ==================
+    int serveStatic(OutputStream out, HttpRequest req, boolean keepAlive) throws IOException {
+        String version = req.getVersion();
+        String clean = normalize(req.getPath());
+        if ("/".equals(clean)) clean = "/index.html";
+
+        // Una búsqueda en el índice: sin stat ni lecturas de disco por petición
+        StaticIndex.Entry entry = staticIndex.get(clean);
+        if (entry == null) {
+            writeText(out, version, 404, "Not Found: " + clean, keepAlive);
+            return 404;
+        }
+        try {
+            return serveIndexed(out, version, entry, req, keepAlive);
+        } catch (StaticIndex.ChangedException e) {
+            // Reescrito en el lugar y todavía sin índice nuevo: se sirve lo que hay ahora (nada salió aún)
+            StaticIndex.Entry fresh = entry.reload();
+            if (fresh == null) {
+                writeText(out, version, 404, "Not Found: " + clean, keepAlive);
+                return 404;
+            }
+            try {
+                return serveIndexed(out, version, fresh, req, keepAlive);
+            } catch (StaticIndex.ChangedException again) {
+                // Sigue cambiando (p.ej. un build a mitad de copiarlo): que el cliente reintente
+                write(out, version, 503, "text/plain; charset=utf-8",
+                        "Service Unavailable".getBytes(StandardCharsets.UTF_8), keepAlive, "Retry-After", "1");
+                return 503;
+            }
+        }
+    }
+
+    /** Sirve una entrada; falla con ChangedException antes de escribir nada si el archivo ya no coincide. */
+    private int serveIndexed(OutputStream out, String version, StaticIndex.Entry entry,
+                             HttpRequest req, boolean keepAlive) throws IOException {
+        if (entry.size > StaticCache.MAX_ENTRY_BYTES) {
+            return serveEntry(out, version, entry, req, keepAlive);
+        }
+
+        // Archivos chicos: la caché guarda además la variante gzip ya calculada
+        StaticCache.Asset asset = staticCache.get(entry.cacheKey);
+        if (asset != null) {
+            metrics.staticHits.increment();
+        } else {
+            metrics.staticMisses.increment();
+            asset = StaticCache.load(entry);
+            staticCache.put(entry.cacheKey, asset);
+        }
+        return serveAsset(out, version, asset, req, keepAlive);
+    }
+
+    /** Responde con la variante adecuada del asset (o 304 si el cliente ya la tiene); devuelve el estado. */
+    private static int serveAsset(OutputStream out, String version, StaticCache.Asset asset,
+                                  HttpRequest req, boolean keepAlive) throws IOException {
+        boolean gzip = asset.gzip != null && StaticCache.acceptsGzip(req.getHeader("Accept-Encoding"));
+        String etag = gzip ? asset.gzipEtag : asset.etag;
+
+        if (asset.notModified(req.getHeader("If-None-Match"), req.getHeader("If-Modified-Since"))) {
+            write(out, version, 304, null, new byte[0], keepAlive,
+                    "ETag", etag, "Last-Modified", asset.lastModified);
+            return 304;
+        }
+        if (gzip) {
+            write(out, version, 200, asset.contentType, asset.gzip, keepAlive,
+                    "Content-Encoding", "gzip", "Vary", "Accept-Encoding",
+                    "ETag", etag, "Last-Modified", asset.lastModified);
+        } else if (asset.gzip != null) {
+            write(out, version, 200, asset.contentType, asset.raw, keepAlive,
+                    "Vary", "Accept-Encoding", "ETag", etag, "Last-Modified", asset.lastModified);
+        } else {
+            write(out, version, 200, asset.contentType, asset.raw, keepAlive,
+                    "ETag", etag, "Last-Modified", asset.lastModified);
+        }
+        return 200;
+    }
+
+    /**
+     * Archivos grandes: el cuerpo sale del archivo sin pasar por un byte[]
+     * del heap; soporta un único rango (206). Validadores y tamaño vienen del
+     * índice, y el archivo se abre antes de escribir los headers para
+     * comprobar que todavía tiene ese tamaño.
+     */
+    private static int serveEntry(OutputStream out, String version, StaticIndex.Entry entry,
+                                  HttpRequest req, boolean keepAlive) throws IOException {
+        long size = entry.size;
+        String etag = entry.etag;
+        String lastModified = entry.lastModified;
+
+        if (StaticCache.notModified(etag, null, entry.lastModifiedSec, req.getHeader("If-None-Match"), req.getHeader("If-Modified-Since"))) {
+            write(out, version, 304, null, new byte[0], keepAlive, "ETag", etag, "Last-Modified", lastModified);
+            return 304;
+        }
+
+        long start = 0, length = size;
+        int code = 200;
+        String rangeHeader = req.getHeader("Range");
+        String ifRange = req.getHeader("If-Range");
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified))) {
+            long[] range = parseRange(rangeHeader, size);
+            if (range == UNSATISFIABLE) {
+                write(out, version, 416, null, new byte[0], keepAlive, "Content-Range", "bytes */" + size);
+                return 416;
+            }
+            if (range != null) {
+                code = 206;
+                start = range[0];
+                length = range[1] - range[0] + 1;
+            }
+        }
+
+        String[] extra = code == 206
+                ? new String[]{"Accept-Ranges", "bytes", "ETag", etag, "Last-Modified", lastModified,
+                               "Content-Range", "bytes " + start + "-" + (start + length - 1) + "/" + size}
+                : new String[]{"Accept-Ranges", "bytes", "ETag", etag, "Last-Modified", lastModified};
+        if (entry.content != null) {
+            write(out, version, code, entry.contentType, entry.slice(start, length), keepAlive, extra);
+            return code;
+        }
+
+        try (FileChannel ch = entry.open()) {
+            writeHead(out, version, code, entry.contentType, length, keepAlive, extra);
+            if (out instanceof FileTransfer ft) {
+                ft.transfer(ch, start, length);
+            } else {
+                // Destino sin soporte zero-copy: se copia por bloques, con heap acotado igualmente
+                InputStream in = Channels.newInputStream(ch.position(start));
+                byte[] chunk = new byte[64 * 1024];
+                long remaining = length;
+                while (remaining > 0) {
+                    int n = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                    if (n < 0) throw new EOFException("archivo truncado: " + entry.file);
+                    out.write(chunk, 0, n);
+                    remaining -= n;
+                }
+            }
+        }
+        return code;
+    }
+
+    // Marca de un Range que no se puede satisfacer (416)
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Interpreta "bytes=a-b", "bytes=a-" o "bytes=-n". Devuelve {inicio, fin}
+     * inclusivo, {@code null} si el header se ignora (sintaxis no soportada o
+     * varios rangos, se responde 200 completo) o UNSATISFIABLE.
+     */
+    private static long[] parseRange(String header, long size) {
+        String h = header.trim();
+        if (!h.startsWith("bytes=") || h.indexOf(',') >= 0) return null;
+        String spec = h.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String a = spec.substring(0, dash).trim();
+            String b = spec.substring(dash + 1).trim();
+            long start, end;
+            if (a.isEmpty()) {
+                if (b.isEmpty()) return null;
+                long suffix = Long.parseLong(b);
+                if (suffix <= 0) return UNSATISFIABLE;
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(a);
+                end = b.isEmpty() ? size - 1 : Math.min(Long.parseLong(b), size - 1);
+                if (end < start) return b.isEmpty() || Long.parseLong(b) >= start ? UNSATISFIABLE : null;
+            }
+            if (start >= size) return UNSATISFIABLE;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String normalize(String p) {
+        String s = p.replace("\\", "/");
+        s = s.replaceAll("/+", "/");
+        s = s.replaceAll("\\.\\.", "");  // evita traversal
+        if (!s.startsWith("/")) s = "/" + s;
+        return s;
+    }
+
+    /**
+     * Respuesta a HEAD: deja pasar la línea de estado y los headers (con el
+     * Content-Length que tendría el GET) y descarta el cuerpo, sea cual sea
+     * el camino que lo escribe (handler, estáticos, errores, streaming).
+     */
+    static final class HeadOutput extends OutputStream implements FileTransfer, GatheringOutput, CountingOutput {
+        private final OutputStream out;
+        private int matched;      // bytes de "\r\n\r\n" ya vistos
+        private boolean headDone;
+
+        HeadOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (headDone) return;
+            int end = off;
+            while (end < off + len && matched < 4) {
+                byte c = b[end++];
+                matched = c == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : c == '\r' ? 1 : 0;
+            }
+            out.write(b, off, end - off);
+            headDone = matched == 4;
+        }
+
+        @Override
+        public void writeGathered(byte[] head, int headLength, byte[] body, int off, int len) throws IOException {
+            write(head, 0, headLength);
+        }
+
+        @Override
+        public void writeGathered(byte[] head, int headLength, ByteBuffer body) throws IOException {
+            write(head, 0, headLength);
+        }
+
+        @Override
+        public void transfer(FileChannel file, long position, long length) {
+            // el cuerpo de un HEAD no se envía
+        }
+
+        @Override
+        public long written() {
+            return out instanceof CountingOutput c ? c.written() : -1;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Salida del motor bloqueante: buffer normal + transferTo directo al canal
+     * del socket. Cabecera y cuerpo que no caben juntos en el buffer salen en
+     * una sola escritura gather.
+     */
+    private static final class SocketOutput extends BufferedOutputStream
+            implements FileTransfer, GatheringOutput, CountingOutput {
+        private final Socket socket;
+        private final Metrics metrics;
+        private long written; // de la respuesta en curso
+
+        SocketOutput(Socket socket, Metrics metrics) throws IOException {
+            super(socket.getOutputStream());
+            this.socket = socket;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+            metrics.bytesOut.increment();
+            written++;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            metrics.bytesOut.add(len);
+            written += len;
+        }
+
+        @Override
+        public synchronized void writeGathered(byte[] head, int headLength, byte[] body, int off, int len) throws IOException {
+            SocketChannel ch = socket.getChannel();
+            if (ch == null || headLength + len <= buf.length - count) {
+                // Cabe en el buffer (o no hay canal): se junta con lo pendiente y sale en el próximo flush
+                write(head, 0, headLength);
+                write(body, off, len);
+                return;
+            }
+            flush();
+            ByteBuffer[] parts = {ByteBuffer.wrap(head, 0, headLength), ByteBuffer.wrap(body, off, len)};
+            long total = headLength + (long) len;
+            for (long sent = 0; sent < total; ) sent += ch.write(parts);
+            metrics.bytesOut.add(total);
+            written += total;
+        }
+
+        @Override
+        public synchronized void writeGathered(byte[] head, int headLength, ByteBuffer body) throws IOException {
+            SocketChannel ch = socket.getChannel();
+            int len = body.remaining();
+            if (ch == null || headLength + len <= buf.length - count) {
+                write(head, 0, headLength);
+                HttpServer.copy(body, this);
+                return;
+            }
+            flush();
+            ByteBuffer[] parts = {ByteBuffer.wrap(head, 0, headLength), body.duplicate()};
+            long total = headLength + (long) len;
+            for (long sent = 0; sent < total; ) sent += ch.write(parts);
+            metrics.bytesOut.add(total);
+            written += total;
+        }
+
+        @Override
+        public void transfer(FileChannel file, long position, long length) throws IOException {
+            flush(); // los headers ya están en el buffer: deben salir antes del cuerpo
+            WritableByteChannel target = socket.getChannel() != null ? socket.getChannel() : Channels.newChannel(out);
+            while (length > 0) {
+                long n = file.transferTo(position, length, target);
+                if (n <= 0) throw new EOFException("archivo truncado durante la transferencia");
+                position += n;
+                length -= n;
+                metrics.bytesOut.add(n);
+                written += n;
+            }
+        }
+
+        @Override
+        public synchronized long written() {
+            return written;
+        }
+
+        /** El motor bloqueante atiende una respuesta por vez: la cuenta empieza de nuevo en cada una. */
+        synchronized void resetWritten() {
+            written = 0;
+        }
+    }
+}
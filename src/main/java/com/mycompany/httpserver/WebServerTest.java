@@ -0,0 +1,266 @@
+package com.mycompany.httpserver;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WebServerTest {
+
+    private static java.net.http.HttpRequest get(int port, String path) {
+        return java.net.http.HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(5)).GET().build();
+    }
+
+    private static String body(HttpClient client, int port, String path) throws Exception {
+        java.net.http.HttpResponse<String> r = client.send(get(port, path), java.net.http.HttpResponse.BodyHandlers.ofString());
+        return r.statusCode() + " " + r.body();
+    }
+
+    private static void assertRefused(int port) {
+        assertThrows(ConnectException.class, () -> new Socket("localhost", port).close());
+    }
+
+    @Test
+    public void twoServers_onEphemeralPorts_haveIsolatedRoutes() throws Exception {
+        WebServer a = new WebServer().get("/who", (req, resp) -> "a").get("/only-a", (req, resp) -> "x")
+                .start(ServerConfig.port(0));
+        WebServer b = new WebServer().engine(HttpServer.Engine.NIO).ioThreads(1).get("/who", (req, resp) -> "b")
+                .start(ServerConfig.port(0));
+        try {
+            assertTrue(a.isReady() && b.isReady());
+            assertNotEquals(a.port(), b.port());
+            HttpClient client = HttpClient.newHttpClient();
+            assertEquals("200 a", body(client, a.port(), "/who"));
+            assertEquals("200 b", body(client, b.port(), "/who"));
+            assertTrue(body(client, b.port(), "/only-a").startsWith("404 "));
+        } finally {
+            assertTrue(a.stop(Duration.ofSeconds(5)));
+            assertTrue(b.stop(Duration.ofSeconds(5)));
+        }
+        assertEquals(WebServer.State.STOPPED, a.state());
+        assertRefused(a.port());
+        assertRefused(b.port());
+        assertThrows(IllegalStateException.class, () -> a.start(ServerConfig.port(0)));
+    }
+
+    @Test
+    public void shutdown_drainsInFlightRequest_blocking() throws Exception {
+        drainsInFlightRequest(HttpServer.Engine.BLOCKING);
+    }
+
+    @Test
+    public void shutdown_drainsInFlightRequest_nio() throws Exception {
+        drainsInFlightRequest(HttpServer.Engine.NIO);
+    }
+
+    private static void drainsInFlightRequest(HttpServer.Engine engine) throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WebServer server = new WebServer().engine(engine).ioThreads(1)
+                .get("/slow", (req, resp) -> {
+                    entered.countDown();
+                    release.await();
+                    return "done";
+                })
+                .start(ServerConfig.port(0));
+        int port = server.port();
+
+        CompletableFuture<java.net.http.HttpResponse<String>> inFlight = HttpClient.newHttpClient()
+                .sendAsync(get(port, "/slow"), java.net.http.HttpResponse.BodyHandlers.ofString());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> stopped = server.shutdown(Duration.ofSeconds(10));
+        // Ya no acepta conexiones, pero espera a la petición en curso
+        assertFalse(server.isReady());
+        assertRefused(port);
+        assertFalse(stopped.isDone());
+
+        release.countDown();
+        java.net.http.HttpResponse<String> r = inFlight.get(5, TimeUnit.SECONDS);
+        assertEquals(200, r.statusCode());
+        assertEquals("done", r.body());
+        assertTrue(stopped.get(5, TimeUnit.SECONDS));
+        assertEquals(WebServer.State.STOPPED, server.state());
+    }
+
+    @Test
+    public void stop_cutsRequestsStillRunningAtDeadline() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch never = new CountDownLatch(1);
+        WebServer server = new WebServer()
+                .get("/stuck", (req, resp) -> {
+                    entered.countDown();
+                    never.await();
+                    return "late";
+                })
+                .start(ServerConfig.port(0));
+
+        CompletableFuture<java.net.http.HttpResponse<String>> inFlight = HttpClient.newHttpClient()
+                .sendAsync(get(server.port(), "/stuck"), java.net.http.HttpResponse.BodyHandlers.ofString());
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        assertFalse(server.stop(Duration.ofMillis(100)));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> inFlight.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+        never.countDown();
+    }
+
+    @Test
+    public void rateLimit_answers429WithRetryAfter() throws Exception {
+        WebServer server = new WebServer().get("/quota", (req, resp) -> "ok").get("/free", (req, resp) -> "ok")
+                .rateLimit("/quota", 2, Duration.ofMinutes(1))
+                .start(ServerConfig.port(0));
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            assertEquals("200 ok", body(client, server.port(), "/quota"));
+            assertEquals("200 ok", body(client, server.port(), "/quota"));
+            java.net.http.HttpResponse<String> r = client.send(get(server.port(), "/quota"),
+                    java.net.http.HttpResponse.BodyHandlers.ofString());
+            assertEquals(429, r.statusCode());
+            long retryAfter = Long.parseLong(r.headers().firstValue("Retry-After").orElseThrow());
+            assertTrue(retryAfter >= 1 && retryAfter <= 30);
+            // Otra ruta sin límite propio no se ve afectada
+            assertEquals("200 ok", body(client, server.port(), "/free"));
+        } finally {
+            server.stop(Duration.ofSeconds(5));
+        }
+    }
+
+    @Test
+    public void maxConnections_shedsExtraConnectionsWith503() throws Exception {
+        for (HttpServer.Engine engine : HttpServer.Engine.values()) {
+            WebServer server = new WebServer().engine(engine).ioThreads(1).maxConnections(1)
+                    .get("/hi", (req, resp) -> "hi")
+                    .start(ServerConfig.port(0));
+            try (Socket first = new Socket("localhost", server.port())) {
+                // La primera conexión ocupa el único lugar (keep-alive)
+                assertTrue(exchange(first).startsWith("HTTP/1.1 200"));
+                try (Socket second = new Socket("localhost", server.port())) {
+                    String response = exchange(second);
+                    assertTrue(response, response.startsWith("HTTP/1.1 503"));
+                    assertTrue(response, response.contains("Retry-After: 1\r\n"));
+                    assertTrue(response, response.contains("Connection: close\r\n"));
+                }
+                // La admitida sigue funcionando
+                assertTrue(exchange(first).startsWith("HTTP/1.1 200"));
+            } finally {
+                server.stop(Duration.ofSeconds(5));
+            }
+        }
+    }
+
+    @Test
+    public void head_sendsHeadersWithoutBody_soPipelinedResponsesStayFramed() throws Exception {
+        Path dir = Files.createTempDirectory("head");
+        Files.writeString(dir.resolve("a.txt"), "Hola, mundo!\n");
+        for (HttpServer.Engine engine : HttpServer.Engine.values()) {
+            WebServer server = new WebServer().engine(engine).ioThreads(1).staticfiles(dir)
+                    .get("/hi", (req, resp) -> "hi")
+                    .start(ServerConfig.port(0));
+            try (Socket s = new Socket("localhost", server.port())) {
+                s.setSoTimeout(5000);
+                OutputStream out = s.getOutputStream();
+                out.write(("HEAD /a.txt HTTP/1.1\r\nHost: x\r\n\r\n"
+                        + "GET /a.txt HTTP/1.1\r\nHost: x\r\n\r\n"
+                        + "HEAD /hi HTTP/1.1\r\nHost: x\r\n\r\n"
+                        + "HEAD /missing HTTP/1.1\r\nHost: x\r\n\r\n"
+                        + "GET /hi HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                String all = new String(s.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                String[] parts = all.split("\r\n\r\n", -1);
+                assertEquals(engine + ": " + all, 6, parts.length);
+                // HEAD: mismos headers que el GET (Content-Length incluido), sin cuerpo
+                assertTrue(all, parts[0].startsWith("HTTP/1.1 200") && parts[0].contains("Content-Length: 13"));
+                assertTrue(all, parts[1].startsWith("HTTP/1.1 200") && parts[1].contains("Content-Length: 13"));
+                assertTrue(all, parts[2].startsWith("Hola, mundo!\nHTTP/1.1 200") && parts[2].contains("Content-Length: 2"));
+                assertTrue(all, parts[3].startsWith("HTTP/1.1 404"));
+                assertTrue(all, parts[4].startsWith("HTTP/1.1 200") && parts[4].contains("Content-Length: 2"));
+                assertEquals(all, "hi", parts[5]);
+            } finally {
+                server.stop(Duration.ofSeconds(5));
+            }
+        }
+    }
+
+    @Test
+    public void nio_errorEscapingTheHandler_closesConnectionInsteadOfHanging() throws Exception {
+        WebServer server = new WebServer().engine(HttpServer.Engine.NIO).ioThreads(1)
+                .get("/boom", (req, resp) -> {
+                    throw new AssertionError("boom");
+                })
+                .get("/hi", (req, resp) -> "hi")
+                .start(ServerConfig.port(0));
+        try (Socket s = new Socket("localhost", server.port())) {
+            s.setSoTimeout(5000);
+            s.getOutputStream().write("GET /boom HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            s.getOutputStream().flush();
+            assertEquals(-1, s.getInputStream().read()); // cerrada, no colgada hasta el timeout
+            try (Socket next = new Socket("localhost", server.port())) {
+                assertTrue(exchange(next).startsWith("HTTP/1.1 200"));
+            }
+        } finally {
+            assertTrue("sin conexiones ocupadas para siempre", server.stop(Duration.ofSeconds(2)));
+        }
+    }
+
+    @Test
+    public void shortBodyForDeclaredContentLength_closesConnection() throws Exception {
+        for (HttpServer.Engine engine : HttpServer.Engine.values()) {
+            WebServer server = new WebServer().engine(engine).ioThreads(1)
+                    .get("/short", (req, resp) -> {
+                        resp.type("text/plain").header("Content-Length", "10")
+                                .outputStream().write("hola".getBytes(StandardCharsets.US_ASCII));
+                        return null;
+                    })
+                    .start(ServerConfig.port(0));
+            try (Socket s = new Socket("localhost", server.port())) {
+                s.setSoTimeout(5000);
+                s.getOutputStream().write("GET /short HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                s.getOutputStream().flush();
+                // Sin cierre, el cliente tomaría la próxima respuesta como los 6 bytes que faltan
+                String all = new String(s.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                assertTrue(engine + ": " + all, all.startsWith("HTTP/1.1 200") && all.endsWith("\r\n\r\nhola"));
+            } finally {
+                server.stop(Duration.ofSeconds(5));
+            }
+        }
+    }
+
+    /** Manda GET /hi y lee una respuesta (cabecera + cuerpo por Content-Length). */
+    private static String exchange(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        OutputStream out = socket.getOutputStream();
+        out.write("GET /hi HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        InputStream in = socket.getInputStream();
+        StringBuilder sb = new StringBuilder();
+        while (sb.indexOf("\r\n\r\n") < 0) {
+            int b = in.read();
+            if (b < 0) break;
+            sb.append((char) b);
+        }
+        String head = sb.toString();
+        int at = head.indexOf("Content-Length: ");
+        if (at >= 0) {
+            int length = Integer.parseInt(head.substring(at + 16, head.indexOf("\r\n", at)).trim());
+            sb.append(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+}
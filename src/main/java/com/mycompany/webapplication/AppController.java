@@ -0,0 +1,22 @@
+package com.mycompany.webapplication;
+
+import com.mycompany.httpserver.GetMapping;
+import com.mycompany.httpserver.RequestParam;
+import com.mycompany.httpserver.RestController;
+
+import java.util.Map;
+
+/** Rutas /app que usa el front; el Map devuelto sale como JSON. */
+@RestController("/app")
+class AppController {
+
+    @GetMapping("/hello")
+    Map<String, String> hello(@RequestParam(value = "name", required = false) String name) {
+        return Map.of("message", "Hello " + (name == null ? "" : name));
+    }
+
+    @GetMapping("/pi")
+    Map<String, String> pi() {
+        return Map.of("pi", String.valueOf(Math.PI));
+    }
+}
@@ -1,78 +1,174 @@
 package com.mycompany.webapplication;
 
+import com.mycompany.httpserver.AsyncService;
+import com.mycompany.httpserver.EventStream;
 import com.mycompany.httpserver.HttpRequest;
 import com.mycompany.httpserver.HttpResponse;
 import com.mycompany.httpserver.HttpServer;
+import com.mycompany.httpserver.JsonWriter;
+import com.mycompany.httpserver.ResponseCache;
+import com.mycompany.httpserver.ServerConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
 
 public class WebAplication {
 
-    public static void main(String[] args) throws Exception {
-        // Sirve src/main/resources/static -> target/classes/static
-        HttpServer.staticfiles("/static");
-
-        // Rutas que usa el front
-        HttpServer.get("/app/hello", (HttpRequest req, HttpResponse resp) ->
-                "{\"message\":\"Hello " + escape(req.getValues("name")) + "\"}"
-        );
+    // Un solo cliente para todas las peticiones: reutiliza conexiones (pool) y su executor
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
 
-        HttpServer.get("/app/pi", (req, resp) ->
-                "{\"pi\":\"" + Math.PI + "\"}"
-        );
+    // Claves con las que AlphaVantage avisa límites o uso de la key demo
+    private static final byte[] NOTE = "\"Note\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INFORMATION = "\"Information\"".getBytes(StandardCharsets.US_ASCII);
 
-        // ---- /stocks: proxy sencillo que devuelve JSON siempre ----
-// ---- /stocks: proxy que soporta key "demo" y siempre devuelve JSON ----
-        HttpServer.get("/stocks", (req, resp) -> {
-            String requested = req.getValues("symbol");
-            if (requested == null || requested.isBlank()) requested = "IBM";
+    // Símbolos bursátiles: acota los tópicos SSE a algo con sentido
+    private static final Pattern SYMBOL = Pattern.compile("[A-Z0-9.\\-]{1,16}");
 
-            String apiKey = System.getenv().getOrDefault("ALPHAVANTAGE_API_KEY", "demo");
-            boolean usingDemo = "demo".equalsIgnoreCase(apiKey);
+    public static void main(String[] args) throws Exception {
+        // Sirve src/main/resources/static (o /static del classpath si se corre desde el jar)
+        HttpServer.staticfiles("/static");
+        HttpServer.metrics("/metrics");
+        // Una línea por respuesta, escrita en segundo plano (ACCESS_LOG cambia el archivo)
+        HttpServer.accessLog(Path.of(System.getenv().getOrDefault("ACCESS_LOG", "logs/access.log")));
+
+        // Rutas que usa el front: los @RestController de este paquete (AppController)
+        HttpServer.scan("com.mycompany.webapplication");
+
+        // ---- /stocks: proxy a AlphaVantage con caché (1 min fresca + 5 min stale) ----
+        String apiKey = System.getenv().getOrDefault("ALPHAVANTAGE_API_KEY", "demo");
+        String baseUrl = System.getenv().getOrDefault("ALPHAVANTAGE_URL", "https://www.alphavantage.co");
+        HttpServer.getAsync("/stocks", ResponseCache.async(stocks(baseUrl, apiKey),
+                Duration.ofMinutes(1), Duration.ofMinutes(5), 1000), Duration.ofSeconds(20));
+        // Un cliente no puede agotar la cuota del upstream: 30 consultas por minuto por IP (429 al pasarse)
+        HttpServer.rateLimit("/stocks", 30, Duration.ofMinutes(1));
+
+        // ---- /stocks/stream: SSE; una sola consulta por minuto y símbolo, la vean cuantas pestañas la vean ----
+        EventStream quotes = new EventStream(EventStream.polling(Duration.ofMinutes(1),
+                symbol -> quoteText(baseUrl, apiKey, symbol)));
+        HttpServer.sse("/stocks/stream", quotes, WebAplication::symbolTopic);
+
+        // HTTP/2 sin TLS además de HTTP/1.1: un navegador detrás de un proxy h2c multiplexa los estáticos
+        HttpServer.h2c(true);
+
+        // Balanceador: 200 mientras atiende, 503 desde que empieza a detenerse
+        HttpServer.readiness("/ready");
+
+        // SIGTERM (p.ej. al redesplegar): deja de aceptar y da 10 s a lo que está en curso
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> HttpServer.stopServer(Duration.ofSeconds(10))));
+
+        // Arranca en 35000, un acceptor por núcleo
+        HttpServer.startServer(ServerConfig.builder()
+                .port(35000)
+                .backlog(4096)
+                .acceptorPerCore()
+                .build());
+    }
 
-            // Con la key demo AlphaVantage solo permite IBM
-            String effectiveSymbol = usingDemo ? "IBM" : requested;
+    /**
+     * Handler de /stocks contra {@code baseUrl} (configurable para probar con
+     * un upstream local). Asíncrono: mientras AlphaVantage responde no se
+     * ocupa ningún hilo. Siempre devuelve JSON; los errores del upstream
+     * salen con 502 y los avisos de límite con no-store, así la caché no los guarda.
+     */
+    static AsyncService stocks(String baseUrl, String apiKey) {
+        return (req, resp) -> quote(baseUrl, apiKey, req.getValues("symbol"), resp);
+    }
 
-            String url = "https://www.alphavantage.co/query?function=TIME_SERIES_DAILY"
-                    + "&symbol=" + java.net.URLEncoder.encode(effectiveSymbol, java.nio.charset.StandardCharsets.UTF_8)
-                    + "&apikey=" + java.net.URLEncoder.encode(apiKey, java.nio.charset.StandardCharsets.UTF_8);
+    /** Consulta a AlphaVantage de un símbolo; el estado de error queda en {@code resp}. */
+    static CompletableFuture<String> quote(String baseUrl, String apiKey, String symbol, HttpResponse resp) {
+        boolean usingDemo = "demo".equalsIgnoreCase(apiKey);
+        String requested = (symbol == null || symbol.isBlank()) ? "IBM" : symbol;
+
+        // Con la key demo AlphaVantage solo permite IBM
+        String effectiveSymbol = usingDemo ? "IBM" : requested;
+
+        String url = baseUrl + "/query?function=TIME_SERIES_DAILY"
+                + "&symbol=" + URLEncoder.encode(effectiveSymbol, StandardCharsets.UTF_8)
+                + "&apikey=" + URLEncoder.encode(apiKey, StandardCharsets.UTF_8);
+
+        java.net.http.HttpRequest httpReq = java.net.http.HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(15))
+                .GET()
+                .build();
+
+        // El cuerpo del upstream se queda en bytes: se reenvía o se envuelve sin decodificarlo
+        return CLIENT.sendAsync(httpReq, java.net.http.HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(r -> {
+                    byte[] body = (r.body() == null) ? new byte[0] : r.body();
+                    if (r.statusCode() != 200) {
+                        resp.status(502);
+                        return JsonWriter.write(resp, Map.of("error", "upstream status " + r.statusCode()));
+                    }
+
+                    // Si la respuesta trae "Note"/"Information" (límite o demo), encapsulamos con un aviso claro
+                    if (usingDemo && !requested.equalsIgnoreCase("IBM")) {
+                        try (JsonWriter json = JsonWriter.of(resp)) {
+                            json.beginObject()
+                                    .name("notice").value("demo key in use; AlphaVantage solo permite 'IBM'. "
+                                            + "Requested='" + requested + "', served='IBM'.")
+                                    .name("data").raw(body, 0, body.length)
+                                    .endObject();
+                        }
+                        return null;
+                    }
+                    // Si vino un mensaje de límite o info, al menos devuélvelo como JSON válido
+                    if (contains(body, NOTE) || contains(body, INFORMATION)) {
+                        resp.header("Cache-Control", "no-store");
+                        return JsonWriter.write(resp, Map.of("upstream", JsonWriter.fragment(body)));
+                    }
+                    resp.body(body); // JSON normal, tal cual llegó
+                    return null;
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    resp.status(502);
+                    return JsonWriter.write(resp, Map.of("error", String.valueOf(cause.getMessage())));
+                });
+    }
 
+    /** {@link #quote} como texto, para publicarlo por SSE. */
+    static CompletableFuture<String> quoteText(String baseUrl, String apiKey, String symbol) {
+        HttpResponse captured = new HttpResponse();
+        return quote(baseUrl, apiKey, symbol, captured).thenApply(text -> {
             try {
-                java.net.http.HttpClient client = java.net.http.HttpClient.newBuilder()
-                        .connectTimeout(java.time.Duration.ofSeconds(10))
-                        .build();
-
-                java.net.http.HttpRequest httpReq = java.net.http.HttpRequest.newBuilder()
-                        .uri(java.net.URI.create(url))
-                        .timeout(java.time.Duration.ofSeconds(15))
-                        .GET()
-                        .build();
-
-                java.net.http.HttpResponse<String> r =
-                        client.send(httpReq, java.net.http.HttpResponse.BodyHandlers.ofString());
-
-                String body = (r.body() == null) ? "" : r.body();
-
-                // Si la respuesta trae "Note"/"Information" (límite o demo), encapsulamos con un aviso claro
-                if (usingDemo && !requested.equalsIgnoreCase("IBM")) {
-                    return "{\"notice\":\"demo key in use; AlphaVantage solo permite 'IBM'. "
-                            + "Requested='" + escape(requested) + "', served='IBM'.\","
-                            + "\"data\":" + body + "}";
-                }
-                // Si vino un mensaje de límite o info, al menos devuélvelo como JSON válido
-                if (body.contains("\"Note\"") || body.contains("\"Information\"")) {
-                    return "{\"upstream\":" + body + "}";
-                }
-                return body; // JSON normal
-            } catch (Exception e) {
-                return "{\"error\":\"" + escape(e.getMessage()) + "\"}";
+                return text != null ? text : new String(captured.bodyBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         });
+    }
 
-        // Arranca en 35000
-        HttpServer.startServer(new String[]{"35000"});
+    /** Tópico SSE de la petición: el símbolo en mayúsculas (IBM por defecto); null si no es válido. */
+    static String symbolTopic(HttpRequest req) {
+        String symbol = req.getValues("symbol");
+        if (symbol == null || symbol.isBlank()) return "IBM";
+        symbol = symbol.trim().toUpperCase(Locale.ROOT);
+        return SYMBOL.matcher(symbol).matches() ? symbol : null;
     }
 
-    private static String escape(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    private static boolean contains(byte[] data, byte[] marker) {
+        outer:
+        for (int i = 0; i <= data.length - marker.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (data[i + j] != marker[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
     }
 }
@@ -0,0 +1,57 @@
+package com.mycompany.webapplication;
+
+import com.mycompany.httpserver.HttpRequest;
+import com.mycompany.httpserver.HttpResponse;
+import com.mycompany.httpserver.ResponseCache;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WebAplicationTest {
+
+    @Test
+    public void stocks_hitsUpstreamOnce_forRepeatedSymbol() throws Exception {
+        // Upstream local que imita a AlphaVantage
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        com.sun.net.httpserver.HttpServer stub = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/query", ex -> {
+            upstreamCalls.incrementAndGet();
+            byte[] body = ("{\"Meta Data\":{\"query\":\"" + ex.getRequestURI().getRawQuery() + "\"}}").getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(200, body.length);
+            ex.getResponseBody().write(body);
+            ex.close();
+        });
+        stub.start();
+        try {
+            String base = "http://localhost:" + stub.getAddress().getPort();
+            ResponseCache stocks = ResponseCache.async(WebAplication.stocks(base, "k"), Duration.ofMinutes(1), Duration.ZERO, 10);
+
+            for (int i = 0; i < 3; i++) {
+                HttpResponse resp = new HttpResponse();
+                assertNull(stocks.handle(new HttpRequest(URI.create("/stocks?symbol=MSFT")), resp)); // cuerpo en bytes
+                assertTrue(new String(resp.bodyBytes(), StandardCharsets.UTF_8).contains("symbol=MSFT"));
+            }
+            assertEquals(1, upstreamCalls.get());
+
+            stocks.handle(new HttpRequest(URI.create("/stocks?symbol=IBM")), new HttpResponse());
+            assertEquals(2, upstreamCalls.get());
+        } finally {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    public void stocks_upstreamDown_returns502_andIsNotCached() throws Exception {
+        ResponseCache stocks = ResponseCache.async(WebAplication.stocks("http://localhost:1", "k"), Duration.ofMinutes(1), Duration.ZERO, 10);
+        HttpResponse resp = new HttpResponse();
+        assertNull(stocks.handle(new HttpRequest(URI.create("/stocks?symbol=IBM")), resp));
+        assertEquals(502, resp.getStatus());
+        assertTrue(new String(resp.bodyBytes(), StandardCharsets.UTF_8).startsWith("{\"error\":"));
+    }
+}
@@ -10,17 +10,23 @@ function loadGetMsg() {
         });
 }
 
+// Una conexión SSE por pestaña: el servidor empuja cada cambio del símbolo (sin sondeo)
+// y el navegador reconecta solo, retomando desde el último evento recibido
+let stockStream = null;
+
 function fetchStockData() {
     const symbol = document.getElementById('stockSymbol').value;
     document.getElementById('stockData').innerHTML = "Loading...";
-    
-    fetch('/stocks?symbol=' + symbol)
-        .then(response => response.json())
-        .then(data => {
-            document.getElementById('stockData').innerHTML = 
-                JSON.stringify(data, null, 2);
-        })
-        .catch(err => {
-            document.getElementById('stockData').innerHTML = 'Error: ' + err;
-        });
+
+    if (stockStream) stockStream.close();
+    stockStream = new EventSource('/stocks/stream?symbol=' + encodeURIComponent(symbol));
+    stockStream.onmessage = event => {
+        document.getElementById('stockData').innerHTML =
+            JSON.stringify(JSON.parse(event.data), null, 2);
+    };
+    stockStream.onerror = () => {
+        if (stockStream.readyState === EventSource.CLOSED) {
+            document.getElementById('stockData').innerHTML = 'Error: stream cerrado';
+        }
+    };
 }